@@ -0,0 +1,494 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+import utils.ApplicationConfig;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.ClusterChangeNotifier;
+import utils.QueryExecutor;
+import utils.RoaringBitmap;
+import utils.RowMapperFactory;
+
+/**
+ * Which actions apply to which object types, per association type (create,
+ * update, view, ...), held in memory as compressed bitmaps so action menus
+ * and permission checks do not query {@code action_object_type_associations}.
+ *
+ * <p>
+ * For every association type there is one matrix of actions by object types,
+ * stored twice as {@link RoaringBitmap}s: the actions of each object type
+ * (rows) and the object types of each action (columns). Only active
+ * associations count; association types are compared ignoring case. An
+ * action applies while at least one active association links it, so pairs
+ * linked more than once are counted.
+ * </p>
+ *
+ * <p>
+ * The matrices are loaded on first use by streaming the associations from the
+ * primary. Afterwards every change published on the {@link ChangeEventBus} is
+ * applied in place: a created or updated association is reread by id from
+ * the primary, a deleted one is removed, a deleted object type or action
+ * removes its associations, and a change to the whole table drops them.
+ * Resyncs of {@link utils.ClusterChangeNotifier} drop the matrices, and the
+ * next query loads them again. While the matrices are disabled or cannot be
+ * loaded, queries read the table. Enabled with
+ * {@code ontology.applicability.enabled}, together with
+ * {@code cluster.notify.enabled} only: the matrices are never refreshed, so
+ * they would miss the changes of other nodes.
+ * </p>
+ */
+public final class ActionApplicabilityMatrix {
+
+	private static final Logger LOGGER = Logger.getLogger(ActionApplicabilityMatrix.class.getName());
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("ontology.applicability.enabled", false)
+			&& ClusterChangeNotifier.isEnabled();
+
+	private static final String SELECT = "SELECT id, fk_action_id, fk_object_type_id, association_type, is_active FROM action_object_type_associations";
+
+	/**
+	 * A row of {@code action_object_type_associations}.
+	 */
+	private static final class Link {
+
+		final int id;
+		final int actionId;
+		final int objectTypeId;
+		final String type;
+		final boolean active;
+
+		Link(int id, int actionId, int objectTypeId, String type, boolean active) {
+			this.id = id;
+			this.actionId = actionId;
+			this.objectTypeId = objectTypeId;
+			this.type = normalize(type);
+			this.active = active;
+		}
+	}
+
+	private static final RowMapperFactory<Link> LINK = columns -> rs -> new Link(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+			rs.getString(4), rs.getBoolean(5));
+
+	private static final RowMapperFactory<Integer> ID = columns -> rs -> rs.getInt(1);
+
+	/**
+	 * The actions by object types of one association type.
+	 */
+	private static final class Matrix {
+
+		final Map<Integer, RoaringBitmap> actionsByObjectType = new HashMap<>();
+		final Map<Integer, RoaringBitmap> objectTypesByAction = new HashMap<>();
+		// links beyond the first of the same pair
+		final Map<Long, Integer> extraLinks = new HashMap<>();
+
+		void add(int actionId, int objectTypeId) {
+			if (!actionsByObjectType.computeIfAbsent(objectTypeId, k -> new RoaringBitmap()).add(actionId)) {
+				extraLinks.merge(pair(actionId, objectTypeId), 1, Integer::sum);
+				return;
+			}
+			objectTypesByAction.computeIfAbsent(actionId, k -> new RoaringBitmap()).add(objectTypeId);
+		}
+
+		void remove(int actionId, int objectTypeId) {
+			Long pair = pair(actionId, objectTypeId);
+			Integer extra = extraLinks.get(pair);
+			if (extra != null) {
+				if (extra == 1) {
+					extraLinks.remove(pair);
+				} else {
+					extraLinks.put(pair, extra - 1);
+				}
+				return;
+			}
+			clear(actionsByObjectType, objectTypeId, actionId);
+			clear(objectTypesByAction, actionId, objectTypeId);
+		}
+
+		private static void clear(Map<Integer, RoaringBitmap> bitmaps, int key, int value) {
+			RoaringBitmap bitmap = bitmaps.get(key);
+			if (bitmap != null && bitmap.remove(value) && bitmap.isEmpty()) {
+				bitmaps.remove(key);
+			}
+		}
+
+		private static Long pair(int actionId, int objectTypeId) {
+			return ((long) actionId << 32) | (objectTypeId & 0xffffffffL);
+		}
+	}
+
+	/** Loads discarded because a change arrived meanwhile before giving up until the next query. */
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+
+	private static final ReadWriteLock LOCK = new ReentrantReadWriteLock();
+	private static volatile boolean loaded;
+	/** Counts the changes that concern the matrices, so a load can tell whether one raced with it. */
+	private static final AtomicLong CHANGES = new AtomicLong();
+	private static final Map<String, Matrix> MATRICES = new HashMap<>();
+	private static final Map<Integer, Link> LINKS = new HashMap<>();
+
+	private static final AtomicLong QUERIES = new AtomicLong();
+	private static final AtomicLong FALLBACKS = new AtomicLong();
+	private static final AtomicLong BUILDS = new AtomicLong();
+	private static final AtomicLong UPDATES = new AtomicLong();
+	private static final AtomicLong FAILURES = new AtomicLong();
+
+	static {
+		if (ENABLED) {
+			ChangeEventBus.subscribe(ActionApplicabilityMatrix::onChange);
+		} else if (ApplicationConfig.getBoolean("ontology.applicability.enabled", false)) {
+			LOGGER.warning("ontology.applicability.enabled ignored: it requires cluster.notify.enabled, or associations"
+					+ " changed on other nodes would never reach the matrices");
+		}
+	}
+
+	private ActionApplicabilityMatrix() {
+	}
+
+	/**
+	 * @return whether the matrices are enabled
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Finds the actions that apply to an object type.
+	 *
+	 * @param objectTypeId    the object type
+	 * @param associationType the association type, in any case
+	 * @return the ids of the actions with an active association
+	 * @throws SQLException if the matrices are unavailable and the table
+	 *                      cannot be read
+	 */
+	public static RoaringBitmap actionsOf(int objectTypeId, String associationType) throws SQLException {
+		QUERIES.incrementAndGet();
+		String type = normalize(associationType);
+		if (acquire()) {
+			try {
+				return row(MATRICES.get(type), objectTypeId, true);
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		FALLBACKS.incrementAndGet();
+		return bitmap(QueryExecutor.query("SELECT DISTINCT fk_action_id FROM action_object_type_associations"
+				+ " WHERE is_active AND fk_object_type_id = ? AND lower(association_type) = ?", ID, objectTypeId, type));
+	}
+
+	/**
+	 * Finds the object types an action applies to.
+	 *
+	 * @param actionId        the action
+	 * @param associationType the association type, in any case
+	 * @return the ids of the object types with an active association
+	 * @throws SQLException if the matrices are unavailable and the table
+	 *                      cannot be read
+	 */
+	public static RoaringBitmap objectTypesOf(int actionId, String associationType) throws SQLException {
+		QUERIES.incrementAndGet();
+		String type = normalize(associationType);
+		if (acquire()) {
+			try {
+				return row(MATRICES.get(type), actionId, false);
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		FALLBACKS.incrementAndGet();
+		return bitmap(QueryExecutor.query("SELECT DISTINCT fk_object_type_id FROM action_object_type_associations"
+				+ " WHERE is_active AND fk_action_id = ? AND lower(association_type) = ?", ID, actionId, type));
+	}
+
+	/**
+	 * Finds the actions that apply to every one of some object types, for
+	 * menus over a selection of several object types.
+	 *
+	 * @param objectTypeIds   the object types
+	 * @param associationType the association type, in any case
+	 * @return the ids of the actions with an active association to each of
+	 *         them; empty when no object type is given
+	 * @throws SQLException if the matrices are unavailable and the table
+	 *                      cannot be read
+	 */
+	public static RoaringBitmap actionsOfAll(Collection<Integer> objectTypeIds, String associationType) throws SQLException {
+		QUERIES.incrementAndGet();
+		if (objectTypeIds.isEmpty()) {
+			return new RoaringBitmap();
+		}
+		String type = normalize(associationType);
+		if (acquire()) {
+			try {
+				Matrix matrix = MATRICES.get(type);
+				RoaringBitmap result = null;
+				for (int objectTypeId : objectTypeIds) {
+					RoaringBitmap actions = matrix == null ? null : matrix.actionsByObjectType.get(objectTypeId);
+					if (actions == null) {
+						return new RoaringBitmap();
+					}
+					result = result == null ? actions.copy() : RoaringBitmap.and(result, actions);
+					if (result.isEmpty()) {
+						break;
+					}
+				}
+				return result;
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		FALLBACKS.incrementAndGet();
+		List<Integer> distinct = new ArrayList<>(new HashSet<>(objectTypeIds));
+		return bitmap(QueryExecutor.query("SELECT fk_action_id FROM action_object_type_associations"
+				+ " WHERE is_active AND fk_object_type_id = ANY(?) AND lower(association_type) = ?"
+				+ " GROUP BY fk_action_id HAVING COUNT(DISTINCT fk_object_type_id) = ?", ID, distinct, type, distinct.size()));
+	}
+
+	/**
+	 * Tells whether an action applies to an object type.
+	 *
+	 * @param actionId        the action
+	 * @param objectTypeId    the object type
+	 * @param associationType the association type, in any case
+	 * @return whether an active association links them
+	 * @throws SQLException if the matrices are unavailable and the table
+	 *                      cannot be read
+	 */
+	public static boolean isApplicable(int actionId, int objectTypeId, String associationType) throws SQLException {
+		QUERIES.incrementAndGet();
+		String type = normalize(associationType);
+		if (acquire()) {
+			try {
+				Matrix matrix = MATRICES.get(type);
+				RoaringBitmap actions = matrix == null ? null : matrix.actionsByObjectType.get(objectTypeId);
+				return actions != null && actions.contains(actionId);
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		FALLBACKS.incrementAndGet();
+		return !QueryExecutor.query("SELECT 1 FROM action_object_type_associations WHERE is_active AND fk_action_id = ?"
+				+ " AND fk_object_type_id = ? AND lower(association_type) = ? LIMIT 1", ID, actionId, objectTypeId, type).isEmpty();
+	}
+
+	/**
+	 * Drops the matrices; the next query loads them again.
+	 */
+	public static void invalidate() {
+		CHANGES.incrementAndGet();
+		LOCK.writeLock().lock();
+		try {
+			clear();
+		} finally {
+			LOCK.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the state of the matrices.
+	 *
+	 * @return whether they are enabled and loaded, the associations and
+	 *         bitmap memory per association type, and the query, build, update
+	 *         and failure counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("enabled", ENABLED);
+		json.put("loaded", loaded);
+		if (loaded && LOCK.readLock().tryLock()) {
+			try {
+				if (loaded) {
+					json.put("associations", LINKS.size());
+					JSONObject types = new JSONObject();
+					for (Map.Entry<String, Matrix> entry : MATRICES.entrySet()) {
+						Matrix matrix = entry.getValue();
+						long pairs = 0;
+						long bytes = 0;
+						for (RoaringBitmap actions : matrix.actionsByObjectType.values()) {
+							pairs += actions.getCardinality();
+							bytes += actions.getSizeInBytes();
+						}
+						for (RoaringBitmap objectTypes : matrix.objectTypesByAction.values()) {
+							bytes += objectTypes.getSizeInBytes();
+						}
+						JSONObject type = new JSONObject();
+						type.put("objectTypes", matrix.actionsByObjectType.size());
+						type.put("actions", matrix.objectTypesByAction.size());
+						type.put("pairs", pairs);
+						type.put("sizeBytes", bytes);
+						types.put(entry.getKey(), type);
+					}
+					json.put("associationTypes", types);
+				}
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		json.put("queries", QUERIES.get());
+		json.put("fallbacks", FALLBACKS.get());
+		json.put("builds", BUILDS.get());
+		json.put("updates", UPDATES.get());
+		json.put("failures", FAILURES.get());
+		return json;
+	}
+
+	private static String normalize(String associationType) {
+		return associationType == null ? "" : associationType.trim().toLowerCase(Locale.ROOT);
+	}
+
+	private static RoaringBitmap row(Matrix matrix, int id, boolean byObjectType) {
+		if (matrix == null) {
+			return new RoaringBitmap();
+		}
+		RoaringBitmap bitmap = (byObjectType ? matrix.actionsByObjectType : matrix.objectTypesByAction).get(id);
+		return bitmap == null ? new RoaringBitmap() : bitmap.copy();
+	}
+
+	private static RoaringBitmap bitmap(List<Integer> ids) {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		for (int id : ids) {
+			bitmap.add(id);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Takes the read lock on loaded matrices, loading them first if needed.
+	 *
+	 * @return false, without the lock, when the matrices are disabled or
+	 *         cannot be loaded
+	 */
+	private static boolean acquire() {
+		if (!ENABLED) {
+			return false;
+		}
+		if (!loaded) {
+			load();
+		}
+		LOCK.readLock().lock();
+		if (loaded) {
+			return true;
+		}
+		LOCK.readLock().unlock();
+		return false;
+	}
+
+	/**
+	 * Streams the associations into the matrices. A change published while
+	 * they are read may be missing from them and was not applied, as there
+	 * were no matrices yet, so such a load is discarded and repeated; after
+	 * {@link #MAX_LOAD_ATTEMPTS} the matrices stay unloaded and the next query
+	 * tries again.
+	 */
+	private static void load() {
+		LOCK.writeLock().lock();
+		try {
+			for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS && !loaded; attempt++) {
+				long changes = CHANGES.get();
+				clear();
+				QueryExecutor.forEachPrimary(SELECT, LINK, ActionApplicabilityMatrix::put);
+				if (CHANGES.get() == changes) {
+					loaded = true;
+					BUILDS.incrementAndGet();
+				}
+			}
+			if (!loaded) {
+				clear();
+			}
+		} catch (SQLException | RuntimeException e) {
+			FAILURES.incrementAndGet();
+			LOGGER.log(Level.SEVERE, "Error loading the action applicability matrices, queries read the table", e);
+			clear();
+		} finally {
+			LOCK.writeLock().unlock();
+		}
+	}
+
+	private static void clear() {
+		loaded = false;
+		MATRICES.clear();
+		LINKS.clear();
+	}
+
+	private static void put(Link link) {
+		remove(link.id);
+		if (link.active) {
+			LINKS.put(link.id, link);
+			MATRICES.computeIfAbsent(link.type, k -> new Matrix()).add(link.actionId, link.objectTypeId);
+		}
+	}
+
+	private static void remove(int id) {
+		Link link = LINKS.remove(id);
+		if (link != null) {
+			MATRICES.get(link.type).remove(link.actionId, link.objectTypeId);
+		}
+	}
+
+	private static void onChange(ChangeEvent event) {
+		if (event.isAllTables()) {
+			invalidate();
+			return;
+		}
+		boolean associations = "action_object_type_associations".equals(event.getTable());
+		boolean ownerDeleted = event.getType() == ChangeEvent.Type.DELETED
+				&& ("object_types".equals(event.getTable()) || "actions".equals(event.getTable()));
+		if (!associations && !ownerDeleted) {
+			return;
+		}
+		CHANGES.incrementAndGet();
+		if (!loaded) {
+			return; // nothing loaded, the next query loads the current state
+		}
+		LOCK.writeLock().lock();
+		try {
+			if (!loaded) {
+				return;
+			}
+			if (event.isWholeTable()) {
+				clear(); // the next query reloads the table
+				return;
+			}
+			if (ownerDeleted) {
+				boolean objectType = "object_types".equals(event.getTable());
+				for (Iterator<Link> it = LINKS.values().iterator(); it.hasNext();) {
+					Link link = it.next();
+					if ((objectType ? link.objectTypeId : link.actionId) == event.getId()) {
+						it.remove();
+						MATRICES.get(link.type).remove(link.actionId, link.objectTypeId);
+					}
+				}
+			} else if (event.getType() == ChangeEvent.Type.DELETED) {
+				remove(event.getId());
+			} else {
+				List<Link> rows = QueryExecutor.queryPrimary(SELECT + " WHERE id = ?", LINK, event.getId());
+				if (rows.isEmpty()) {
+					remove(event.getId());
+				} else {
+					put(rows.get(0));
+				}
+			}
+			UPDATES.incrementAndGet();
+		} catch (SQLException | RuntimeException e) {
+			FAILURES.incrementAndGet();
+			LOGGER.log(Level.SEVERE, "Error applying " + event + " to the action applicability matrices, dropping them", e);
+			clear();
+		} finally {
+			LOCK.writeLock().unlock();
+		}
+	}
+}
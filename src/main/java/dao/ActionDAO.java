@@ -2,7 +2,12 @@ package dao;
 
 
 import model.*;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -25,25 +30,31 @@ public class ActionDAO {
 	public boolean createAction(String actionName, String actionPurpose, Action.StatusOptions isActive) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
-	    boolean result = false;
+	    ResultSet rs = null;
+	    int id = 0;
 	    try {
 	        conn = DatabaseUtility.connect();
-	        String sql = "INSERT INTO actions (action_name, action_purpose, is_active) VALUES (?, ?, ?::status_options)";
+	        String sql = "INSERT INTO actions (action_name, action_purpose, is_active) VALUES (?, ?, ?::status_options) RETURNING id";
 	        pstmt = conn.prepareStatement(sql);
 	        pstmt.setString(1, actionName);
 	        pstmt.setString(2, actionPurpose);
 	        pstmt.setString(3, isActive.toString());
 	
-	        int affectedRows = pstmt.executeUpdate();
-	        if (affectedRows > 0) {
-	            result = true;
+	        rs = pstmt.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
 	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
 	    } finally {
+	        if (rs != null) try { rs.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.WARNING, null, e); }
 	        if (pstmt != null) try { pstmt.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.WARNING, null, e); }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    boolean result = id > 0;
+	    if (result) {
+	        ChangeEventBus.publish("actions", ChangeEvent.Type.CREATED, id);
+	    }
 	    return result;
 	}
 	
@@ -88,6 +99,9 @@ public class ActionDAO {
 	        }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (updateSuccess) {
+	        ChangeEventBus.publish("actions", ChangeEvent.Type.UPDATED, id);
+	    }
 	    return updateSuccess;
 	}
 	
@@ -122,6 +136,9 @@ public class ActionDAO {
 	        }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (isSuccess) {
+	        ChangeEventBus.publish("actions", ChangeEvent.Type.DELETED, id);
+	    }
 	    return isSuccess;
 	}
 	
@@ -134,31 +151,24 @@ public class ActionDAO {
 	 * @return The action object retrieved, or null if no action found.
 	 */
 	public Action fetchActionById(int id) {
-	    Connection connection = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
-	    Action action = null;
-	    try {
-	        connection = DatabaseUtility.connect();
-	        String query = "SELECT * FROM actions WHERE id = ?";
-	        pstmt = connection.prepareStatement(query);
-	        pstmt.setInt(1, id);
-	        rs = pstmt.executeQuery();
-	        if (rs.next()) {
-	            action = new Action();
-	            action.setId(rs.getInt("id"));
-	            action.setActionName(rs.getString("action_name"));
-	            action.setActionPurpose(rs.getString("action_purpose"));
-	            action.setIsActive(Action.StatusOptions.valueOf(rs.getString("is_active").toLowerCase()));
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        Action cached = snapshot.getAction(id);
+	        if (cached != null) {
+	            return OntologySnapshot.copy(cached);
 	        }
+	        // not in the snapshot yet, e.g. created on another node; read it from the database
+	    }
+	    return EntityCache.ACTIONS.get(id, this::loadActionById);
+	}
+	
+	private Action loadActionById(int id) {
+	    try {
+	        return QueryExecutor.queryOne("SELECT * FROM actions WHERE id = ?", RowMappers.ACTION, id);
 	    } catch (SQLException e) {
 	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error fetching action by ID", e);
-	    } finally {
-	        DatabaseUtility.disconnect(connection);
-	        if (pstmt != null) try { pstmt.close(); } catch (SQLException e) { Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, e); }
-	        if (rs != null) try { rs.close(); } catch (SQLException e) { Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, e); }
+	        return null;
 	    }
-	    return action;
 	}
 	
 	
@@ -168,30 +178,94 @@ public class ActionDAO {
 	 * @return List of all actions in the system.
 	 */
 	public List<Action> listAllActions() {
-	    List<Action> actions = new ArrayList<>();
-	    String sql = "SELECT id, action_name, action_purpose, is_active FROM actions";
-	    Connection conn = null;
-	    PreparedStatement stmt = null;
-	    ResultSet rs = null;
 	    try {
-	        conn = DatabaseUtility.connect();
-	        stmt = conn.prepareStatement(sql);
-	        rs = stmt.executeQuery();
-	        while (rs.next()) {
-	            Action action = new Action();
-	            action.setId(rs.getInt("id"));
-	            action.setActionName(rs.getString("action_name"));
-	            action.setActionPurpose(rs.getString("action_purpose"));
-	            action.setIsActive(Action.StatusOptions.valueOf(rs.getString("is_active")));
-	            actions.add(action);
-	        }
+	        return QueryExecutor.query("SELECT id, action_name, action_purpose, is_active FROM actions", RowMappers.ACTION);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	    } finally {
-	        try { if (rs != null) rs.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e); }
-	        try { if (stmt != null) stmt.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e); }
-	        DatabaseUtility.disconnect(conn);
+	        return new ArrayList<>();
+	    }
+	}
+	
+	
+	/**
+	 * Hands every action to the consumer as it is read, for exports and full scans of large tables.
+	 * Rows are fetched through a server-side cursor, so memory use does not grow with the table.
+	 *
+	 * @param consumer Receives the actions in id order.
+	 * @return boolean indicating whether all actions were read.
+	 */
+	public boolean forEachAction(Consumer<? super Action> consumer) {
+	    try {
+	        QueryExecutor.forEach("SELECT id, action_name, action_purpose, is_active FROM actions ORDER BY id", RowMappers.ACTION, consumer);
+	        return true;
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error streaming actions", e);
+	        return false;
+	    }
+	}
+	
+	/**
+	 * Returns a lazy stream over all actions, read through a server-side cursor.
+	 * The stream holds a database connection and must be closed, preferably with try-with-resources.
+	 *
+	 * @return Stream of all actions in id order, empty if the query could not be started.
+	 *         Reading it throws UncheckedSQLException if fetching further rows fails.
+	 */
+	public Stream<Action> streamAllActions() {
+	    try {
+	        return QueryExecutor.stream("SELECT id, action_name, action_purpose, is_active FROM actions ORDER BY id", RowMappers.ACTION);
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error streaming actions", e);
+	        return Stream.empty();
+	    }
+	}
+	
+	/**
+	 * Fetches many actions in one query, replacing a loop over fetchActionById.
+	 *
+	 * @param ids The identifiers of the actions to fetch.
+	 * @return Map of the actions found, keyed by id; ids without a row are absent. Empty if the query fails.
+	 */
+	public Map<Integer, Action> fetchActionsByIds(Collection<Integer> ids) {
+	    Map<Integer, Action> found = new LinkedHashMap<>();
+	    Collection<Integer> missing = ids;
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        missing = new ArrayList<>();
+	        for (Integer id : ids) {
+	            Action row = snapshot.getAction(id);
+	            if (row != null) {
+	                found.put(id, OntologySnapshot.copy(row));
+	            } else {
+	                missing.add(id);
+	            }
+	        }
+	        if (missing.isEmpty()) {
+	            return found;
+	        }
+	    }
+	    try {
+	        found.putAll(QueryExecutor.queryByIds("SELECT * FROM actions WHERE id = ANY(?)", missing, RowMappers.ACTION, Action::getId));
+	        return found;
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching actions by ids", e);
+	        return new HashMap<>();
+	    }
+	}
+	
+	/**
+	 * Finds everything an edit or delete of an action would affect: the use cases linked to it and the object types it is
+	 * associated with.
+	 *
+	 * @param id The identifier of the action.
+	 * @return The ids of the dependent rows, or null if they cannot be read.
+	 */
+	public ImpactIndex.Impact fetchActionImpact(int id) {
+	    try {
+	        return ImpactIndex.ofAction(id);
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching the impact of action with ID: " + id, e);
+	        return null;
 	    }
-	    return actions;
 	}
 }
@@ -2,7 +2,15 @@ package dao;
 
 
 import model.*;
+import utils.BatchInserter;
+import utils.BatchResult;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
+import utils.RoaringBitmap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
 
@@ -15,35 +23,12 @@ public class ActionObjectTypeAssociationDAO {
 	 * @return List of ActionObjectTypeAssociation
 	 */
 	public List<ActionObjectTypeAssociation> fetchActionObjectTypeAssociations() {
-	    List<ActionObjectTypeAssociation> associations = new ArrayList<>();
-	    Connection connection = null;
-	    Statement stmt = null;
-	    ResultSet rs = null;
 	    try {
-	        connection = DatabaseUtility.connect();
-	        stmt = connection.createStatement();
-	        String sql = "SELECT * FROM action_object_type_associations";
-	        rs = stmt.executeQuery(sql);
-	        while(rs.next()) {
-	            ActionObjectTypeAssociation association = new ActionObjectTypeAssociation();
-	            association.setId(rs.getInt("id"));
-	            association.setAssociationName(rs.getString("association_name"));
-	            association.setAssociationType(rs.getString("association_type"));
-	            association.setIsActive(rs.getBoolean("is_active"));
-	            association.setFkAction(new Action());
-	            association.getFkAction().setId(rs.getInt("fk_action_id"));
-	            association.setFkObjectType(new ObjectType());
-	            association.getFkObjectType().setId(rs.getInt("fk_object_type_id"));
-	            associations.add(association);
-	        }
+	        return QueryExecutor.query("SELECT * FROM action_object_type_associations", RowMappers.ACTION_OBJECT_TYPE_ASSOCIATION);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	    } finally {
-	        if (rs != null) try { rs.close(); } catch (SQLException e) { /* ignored */ }
-	        if (stmt != null) try { stmt.close(); } catch (SQLException e) { /* ignored */ }
-	        DatabaseUtility.disconnect(connection);
+	        return new ArrayList<>();
 	    }
-	    return associations;
 	}
 	
 	
@@ -59,25 +44,64 @@ public class ActionObjectTypeAssociationDAO {
 	    public boolean createActionObjectTypeAssociation(String associationName, String associationType, boolean isActive, int fkActionId, int fkObjectTypeId) {
 	        Connection conn = null;
 	        PreparedStatement pstmt = null;
+	        ResultSet rs = null;
+	        int id = 0;
 	        try {
 	            conn = DatabaseUtility.connect();
-	            String sql = "INSERT INTO action_object_type_associations (association_name, association_type, is_active, fk_action_id, fk_object_type_id) VALUES (?, ?, ?, ?, ?)";
+	            String sql = "INSERT INTO action_object_type_associations (association_name, association_type, is_active, fk_action_id, fk_object_type_id) VALUES (?, ?, ?, ?, ?) RETURNING id";
 	            pstmt = conn.prepareStatement(sql);
 	            pstmt.setString(1, associationName);
 	            pstmt.setString(2, associationType);
 	            pstmt.setBoolean(3, isActive);
 	            pstmt.setInt(4, fkActionId);
 	            pstmt.setInt(5, fkObjectTypeId);
-	            int affectedRows = pstmt.executeUpdate();
-	            return affectedRows > 0;
+	            rs = pstmt.executeQuery();
+	            if (rs.next()) {
+	                id = rs.getInt(1);
+	            }
 	        } catch (SQLException e) {
 	            Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error inserting action-object type association", e);
 	            return false;
 	        } finally {
+	            if (rs != null) try { rs.close(); } catch (SQLException ignored) {}
 	            if (pstmt != null) try { pstmt.close(); } catch (SQLException ignored) {}
 	            DatabaseUtility.disconnect(conn);
 	        }
+	        boolean success = id > 0;
+	        if (success) {
+	            ChangeEventBus.publish("action_object_type_associations", ChangeEvent.Type.CREATED, id);
+	        }
+	        return success;
+	    }
+
+	
+	/**
+	 * Inserts many action-object type associations with JDBC batching.
+	 * Each association needs its Action and ObjectType set. The generated ids are stored in the given objects.
+	 * @param associations The associations to insert.
+	 * @return BatchResult holding the generated id of every inserted association and the failure of every rejected one.
+	 */
+	public BatchResult createActionObjectTypeAssociations(List<ActionObjectTypeAssociation> associations) {
+	    String sql = "INSERT INTO action_object_type_associations (association_name, association_type, is_active, fk_action_id, fk_object_type_id) VALUES (?, ?, ?, ?, ?)";
+	    BatchResult result = BatchInserter.insert(sql, associations, (pstmt, association) -> {
+	        pstmt.setString(1, association.getAssociationName());
+	        pstmt.setString(2, association.getAssociationType());
+	        pstmt.setBoolean(3, association.isIsActive());
+	        pstmt.setInt(4, association.getFkAction().getId());
+	        pstmt.setInt(5, association.getFkObjectType().getId());
+	    });
+	    for (int i = 0; i < associations.size(); i++) {
+	        if (result.getId(i) > 0) {
+	            associations.get(i).setId(result.getId(i));
+	            ChangeEventBus.publish("action_object_type_associations", ChangeEvent.Type.CREATED, result.getId(i));
+	        }
 	    }
+	    if (!result.isSuccessful()) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "Bulk association insert incomplete: " + result);
+	    }
+	    return result;
+	}
+
 	
 	/**
 	 * Updates an existing action-object type association in the database.
@@ -117,6 +141,9 @@ public class ActionObjectTypeAssociationDAO {
 	             Logger.getLogger(ActionObjectTypeAssociationDAO.class.getName()).log(Level.SEVERE, null, e);
 	         }
 	     }
+	     if (updateSuccess) {
+	         ChangeEventBus.publish("action_object_type_associations", ChangeEvent.Type.UPDATED, associationId);
+	     }
 	     return updateSuccess;
 	}
 	
@@ -149,7 +176,121 @@ public class ActionObjectTypeAssociationDAO {
 	                Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Failed to close resources", e);
 	            }
 	        }
+	        if (isDeleted) {
+	            ChangeEventBus.publish("action_object_type_associations", ChangeEvent.Type.DELETED, associationId);
+	        }
 	        return isDeleted;
 	    }
 	
+	
+	/**
+	 * Hands every action-object type association to the consumer as it is read, for exports and full scans.
+	 * Rows are fetched through a server-side cursor, so memory use does not grow with the table.
+	 * The Action and ObjectType of each association hold only their id.
+	 * @param consumer Receives the associations in id order.
+	 * @return boolean indicating whether all associations were read.
+	 */
+	public boolean forEachActionObjectTypeAssociation(Consumer<? super ActionObjectTypeAssociation> consumer) {
+	    try {
+	        QueryExecutor.forEach("SELECT * FROM action_object_type_associations ORDER BY id", RowMappers.ACTION_OBJECT_TYPE_ASSOCIATION, consumer);
+	        return true;
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error streaming action-object type associations", e);
+	        return false;
+	    }
+	}
+	
+	/**
+	 * Returns a lazy stream over all action-object type associations, read through a server-side cursor.
+	 * The stream holds a database connection and must be closed, preferably with try-with-resources.
+	 * @return Stream of all associations in id order, empty if the query could not be started.
+	 *         Reading it throws UncheckedSQLException if fetching further rows fails.
+	 */
+	public Stream<ActionObjectTypeAssociation> streamActionObjectTypeAssociations() {
+	    try {
+	        return QueryExecutor.stream("SELECT * FROM action_object_type_associations ORDER BY id", RowMappers.ACTION_OBJECT_TYPE_ASSOCIATION);
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error streaming action-object type associations", e);
+	        return Stream.empty();
+	    }
+	}
+	
+	/**
+	 * Finds the actions that apply to an object type for one association type, for action menus and permission checks.
+	 * Answered from the in-memory applicability matrix when it is enabled, otherwise from the table.
+	 * @param objectTypeId Identifier of the Object Type.
+	 * @param associationType Type of the association (create, update, or view), in any case.
+	 * @return Ids of the actions with an active association, ascending; empty if there are none or the lookup fails.
+	 */
+	public List<Integer> fetchApplicableActionIds(int objectTypeId, String associationType) {
+	    try {
+	        return toList(ActionApplicabilityMatrix.actionsOf(objectTypeId, associationType));
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error fetching applicable actions of object type " + objectTypeId, e);
+	        return new ArrayList<>();
+	    }
+	}
+	
+	/**
+	 * Finds the actions that apply to an object type for one association type, with their details.
+	 * @param objectTypeId Identifier of the Object Type.
+	 * @param associationType Type of the association (create, update, or view), in any case.
+	 * @return The applicable actions; empty if there are none or the lookup fails.
+	 */
+	public List<Action> fetchApplicableActions(int objectTypeId, String associationType) {
+	    return new ArrayList<>(new ActionDAO().fetchActionsByIds(fetchApplicableActionIds(objectTypeId, associationType)).values());
+	}
+	
+	/**
+	 * Finds the actions that apply to every one of several object types, for menus over a multi-selection.
+	 * @param objectTypeIds Identifiers of the Object Types.
+	 * @param associationType Type of the association (create, update, or view), in any case.
+	 * @return Ids of the actions with an active association to each object type, ascending; empty if there are none,
+	 *         no object type is given or the lookup fails.
+	 */
+	public List<Integer> fetchActionIdsApplicableToAll(Collection<Integer> objectTypeIds, String associationType) {
+	    try {
+	        return toList(ActionApplicabilityMatrix.actionsOfAll(objectTypeIds, associationType));
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error fetching actions applicable to object types " + objectTypeIds, e);
+	        return new ArrayList<>();
+	    }
+	}
+	
+	/**
+	 * Finds the object types an action applies to for one association type.
+	 * @param actionId Identifier of the Action.
+	 * @param associationType Type of the association (create, update, or view), in any case.
+	 * @return Ids of the object types with an active association, ascending; empty if there are none or the lookup fails.
+	 */
+	public List<Integer> fetchApplicableObjectTypeIds(int actionId, String associationType) {
+	    try {
+	        return toList(ActionApplicabilityMatrix.objectTypesOf(actionId, associationType));
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error fetching object types of action " + actionId, e);
+	        return new ArrayList<>();
+	    }
+	}
+	
+	/**
+	 * Checks whether an action may be performed on an object type for one association type.
+	 * @param actionId Identifier of the Action.
+	 * @param objectTypeId Identifier of the Object Type.
+	 * @param associationType Type of the association (create, update, or view), in any case.
+	 * @return true if an active association links them; false if not or the lookup fails.
+	 */
+	public boolean isActionApplicable(int actionId, int objectTypeId, String associationType) {
+	    try {
+	        return ActionApplicabilityMatrix.isApplicable(actionId, objectTypeId, associationType);
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error checking action " + actionId + " on object type " + objectTypeId, e);
+	        return false;
+	    }
+	}
+	
+	private static List<Integer> toList(RoaringBitmap bitmap) {
+	    List<Integer> ids = new ArrayList<>(bitmap.getCardinality());
+	    bitmap.forEach(ids::add);
+	    return ids;
+	}
 }
@@ -2,7 +2,10 @@ package dao;
 
 
 import model.*;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
 
@@ -21,19 +24,29 @@ public class ActionsInputTypeDAO {
 	public boolean createActionsInputType(ActionsInputType.DataType inputDataType, int actionId) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
-	    boolean isSuccess = false;
-	    String sql = "INSERT INTO actions_input_types (input_data_type, fk_action_id) VALUES (?, ?)";
+	    ResultSet rs = null;
+	    int id = 0;
+	    String sql = "INSERT INTO actions_input_types (input_data_type, fk_action_id) VALUES (?, ?) RETURNING id";
 	    try {
 	        conn = DatabaseUtility.connect();
 	        pstmt = conn.prepareStatement(sql);
 	        pstmt.setString(1, inputDataType.toString());
 	        pstmt.setInt(2, actionId);
-	        int affectedRows = pstmt.executeUpdate();
-	        isSuccess = affectedRows > 0;
+	        rs = pstmt.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
+	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error inserting actions input type", e);
 	    } finally {
 	        DatabaseUtility.disconnect(conn);
+	        if (rs != null) {
+	            try {
+	                rs.close();
+	            } catch (SQLException e) {
+	                Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Failed to close ResultSet", e);
+	            }
+	        }
 	        if (pstmt != null) {
 	            try {
 	                pstmt.close();
@@ -42,6 +55,10 @@ public class ActionsInputTypeDAO {
 	            }
 	        }
 	    }
+	    boolean isSuccess = id > 0;
+	    if (isSuccess) {
+	        ChangeEventBus.publish("actions_input_types", ChangeEvent.Type.CREATED, id);
+	    }
 	    return isSuccess;
 	}
 	
@@ -54,33 +71,20 @@ public class ActionsInputTypeDAO {
 	 * @return List of ActionsInputType objects linked to the given action ID.
 	 */
 	public List<ActionsInputType> fetchActionsInputTypesByActionId(int actionId) {
-	    List<ActionsInputType> inputTypes = new ArrayList<>();
-	    Connection connection = null;
-	    PreparedStatement preparedStatement = null;
-	    ResultSet resultSet = null;
-	    try {
-	        connection = DatabaseUtility.connect();
-	        String query = "SELECT * FROM actions_input_types WHERE fk_action_id = ?";
-	        preparedStatement = connection.prepareStatement(query);
-	        preparedStatement.setInt(1, actionId);
-	        resultSet = preparedStatement.executeQuery();
-	        while (resultSet.next()) {
-	            ActionsInputType inputType = new ActionsInputType();
-	            inputType.setId(resultSet.getInt("id"));
-	            inputType.setInputDataType(ActionsInputType.DataType.valueOf(resultSet.getString("input_data_type")));
-	            Action action = new Action();
-	            action.setId(resultSet.getInt("fk_action_id"));
-	            inputType.setAction(action);
-	            inputTypes.add(inputType);
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        List<ActionsInputType> cached = new ArrayList<>();
+	        for (ActionsInputType inputType : snapshot.getInputTypesByActionId(actionId)) {
+	            cached.add(OntologySnapshot.copy(inputType));
 	        }
+	        return cached;
+	    }
+	    try {
+	        return QueryExecutor.query("SELECT * FROM actions_input_types WHERE fk_action_id = ?", RowMappers.ACTIONS_INPUT_TYPE, actionId);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching actions input types by action ID", e);
-	    } finally {
-	        if (resultSet != null) try { resultSet.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Failed to close ResultSet", e); }
-	        if (preparedStatement != null) try { preparedStatement.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Failed to close PreparedStatement", e); }
-	        DatabaseUtility.disconnect(connection);
+	        return new ArrayList<>();
 	    }
-	    return inputTypes;
 	}
 	
 	
@@ -120,6 +124,9 @@ public class ActionsInputTypeDAO {
 	            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
 	        }
 	    }
+	    if (updateSuccess) {
+	        ChangeEventBus.publish("actions_input_types", ChangeEvent.Type.UPDATED, inputTypeId);
+	    }
 	    return updateSuccess;
 	}
 	
@@ -135,15 +142,15 @@ public class ActionsInputTypeDAO {
 	    Connection connection = null;
 	    PreparedStatement preparedStatement = null;
 	    String sql = "DELETE FROM actions_input_types WHERE id = ?;";
+	    boolean deleted = false;
 	    try {
 	        connection = DatabaseUtility.connect();
 	        preparedStatement = connection.prepareStatement(sql);
 	        preparedStatement.setInt(1, inputTypeId);
 	        int affectedRows = preparedStatement.executeUpdate();
-	        return affectedRows > 0;
+	        deleted = affectedRows > 0;
 	    } catch (SQLException e) {
 	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error deleting ActionsInputType with ID: " + inputTypeId, e);
-	        return false;
 	    } finally {
 	        // Clean up JDBC objects
 	        try {
@@ -155,5 +162,9 @@ public class ActionsInputTypeDAO {
 	        }
 	        DatabaseUtility.disconnect(connection);
 	    }
+	    if (deleted) {
+	        ChangeEventBus.publish("actions_input_types", ChangeEvent.Type.DELETED, inputTypeId);
+	    }
+	    return deleted;
 	}
 }
@@ -0,0 +1,165 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import model.Action;
+import model.ActionObjectTypeAssociation;
+import model.ActionsInputType;
+import model.DashboardPreference;
+import model.FacilityDocument;
+import model.ObjectAttribute;
+import model.ObjectFilter;
+import model.ObjectRelationship;
+import model.ObjectType;
+import model.UseCase;
+import model.UseCaseAction;
+import utils.AsyncExecutor;
+
+/**
+ * Non-blocking facade over the read methods of the DAOs.
+ *
+ * <p>
+ * Each method runs the matching blocking DAO call on the bounded
+ * {@link AsyncExecutor} and returns a {@link CompletableFuture}, so a page
+ * that needs several independent lists can issue them together and wait as
+ * long as the slowest one:
+ * </p>
+ *
+ * <pre>{@code
+ * CompletableFuture<UseCase> useCase = asyncDAO.fetchUseCaseById(id);
+ * CompletableFuture<List<UseCaseAction>> actions = asyncDAO.fetchUseCaseActionByCaseId(id);
+ * CompletableFuture<List<FacilityDocument>> documents = asyncDAO.fetchFacilityDocuments(facilityId);
+ * CompletableFuture.allOf(useCase, actions, documents).join();
+ * }</pre>
+ *
+ * <p>
+ * Results are the same as those of the blocking methods, including
+ * {@code null} or empty lists on database errors. Futures fail when the
+ * executor queue is full or the deadline passes; see {@link AsyncExecutor}.
+ * Other DAO calls can be wrapped with {@link AsyncExecutor#supply}.
+ * </p>
+ */
+public class AsyncDAO {
+
+	private final ActionDAO actionDAO = new ActionDAO();
+	private final ActionObjectTypeAssociationDAO actionObjectTypeAssociationDAO = new ActionObjectTypeAssociationDAO();
+	private final ActionsInputTypeDAO actionsInputTypeDAO = new ActionsInputTypeDAO();
+	private final DashboardPreferenceDAO dashboardPreferenceDAO = new DashboardPreferenceDAO();
+	private final FacilityDocumentDAO facilityDocumentDAO = new FacilityDocumentDAO();
+	private final ObjectAttributeDAO objectAttributeDAO = new ObjectAttributeDAO();
+	private final ObjectFilterDAO objectFilterDAO = new ObjectFilterDAO();
+	private final ObjectRelationshipDAO objectRelationshipDAO = new ObjectRelationshipDAO();
+	private final ObjectTypeDAO objectTypeDAO = new ObjectTypeDAO();
+	private final UseCaseActionDAO useCaseActionDAO = new UseCaseActionDAO();
+	private final UseCaseDAO useCaseDAO = new UseCaseDAO();
+
+	/**
+	 * @see ActionDAO#fetchActionById(int)
+	 */
+	public CompletableFuture<Action> fetchActionById(int id) {
+		return AsyncExecutor.supply(() -> actionDAO.fetchActionById(id));
+	}
+
+	/**
+	 * @see ActionDAO#listAllActions()
+	 */
+	public CompletableFuture<List<Action>> listAllActions() {
+		return AsyncExecutor.supply(actionDAO::listAllActions);
+	}
+
+	/**
+	 * @see ActionObjectTypeAssociationDAO#fetchActionObjectTypeAssociations()
+	 */
+	public CompletableFuture<List<ActionObjectTypeAssociation>> fetchActionObjectTypeAssociations() {
+		return AsyncExecutor.supply(actionObjectTypeAssociationDAO::fetchActionObjectTypeAssociations);
+	}
+
+	/**
+	 * @see ActionsInputTypeDAO#fetchActionsInputTypesByActionId(int)
+	 */
+	public CompletableFuture<List<ActionsInputType>> fetchActionsInputTypesByActionId(int actionId) {
+		return AsyncExecutor.supply(() -> actionsInputTypeDAO.fetchActionsInputTypesByActionId(actionId));
+	}
+
+	/**
+	 * @see DashboardPreferenceDAO#fetchDashboardPreferencesByUserId(int)
+	 */
+	public CompletableFuture<List<DashboardPreference>> fetchDashboardPreferencesByUserId(int userId) {
+		return AsyncExecutor.supply(() -> dashboardPreferenceDAO.fetchDashboardPreferencesByUserId(userId));
+	}
+
+	/**
+	 * @see FacilityDocumentDAO#fetchFacilityDocuments(int)
+	 */
+	public CompletableFuture<List<FacilityDocument>> fetchFacilityDocuments(int facilityId) {
+		return AsyncExecutor.supply(() -> facilityDocumentDAO.fetchFacilityDocuments(facilityId));
+	}
+
+	/**
+	 * @see ObjectAttributeDAO#getAttributeByObjectTypeId(int)
+	 */
+	public CompletableFuture<List<ObjectAttribute>> getAttributeByObjectTypeId(int objectTypeId) {
+		return AsyncExecutor.supply(() -> objectAttributeDAO.getAttributeByObjectTypeId(objectTypeId));
+	}
+
+	/**
+	 * Fails with a {@link CompletionException} wrapping the
+	 * {@link SQLException} thrown by the blocking method.
+	 *
+	 * @see ObjectFilterDAO#fetchObjectFilters(int)
+	 */
+	public CompletableFuture<List<ObjectFilter>> fetchObjectFilters(int objectTypeId) {
+		return AsyncExecutor.supply(() -> {
+			try {
+				return objectFilterDAO.fetchObjectFilters(objectTypeId);
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * @see ObjectRelationshipDAO#fetchObjectRelationshipById(int)
+	 */
+	public CompletableFuture<ObjectRelationship> fetchObjectRelationshipById(int id) {
+		return AsyncExecutor.supply(() -> objectRelationshipDAO.fetchObjectRelationshipById(id));
+	}
+
+	/**
+	 * @see ObjectTypeDAO#fetchObjectTypeById(int)
+	 */
+	public CompletableFuture<ObjectType> fetchObjectTypeById(int id) {
+		return AsyncExecutor.supply(() -> objectTypeDAO.fetchObjectTypeById(id));
+	}
+
+	/**
+	 * @see ObjectTypeDAO#fetchAllObjectTypes(int, int, String, String)
+	 */
+	public CompletableFuture<List<ObjectType>> fetchAllObjectTypes(int limit, int offset, String sortBy, String sortDirection) {
+		return AsyncExecutor.supply(() -> objectTypeDAO.fetchAllObjectTypes(limit, offset, sortBy, sortDirection));
+	}
+
+	/**
+	 * @see UseCaseActionDAO#fetchUseCaseActionByCaseId(int)
+	 */
+	public CompletableFuture<List<UseCaseAction>> fetchUseCaseActionByCaseId(int useCaseId) {
+		return AsyncExecutor.supply(() -> useCaseActionDAO.fetchUseCaseActionByCaseId(useCaseId));
+	}
+
+	/**
+	 * @see UseCaseDAO#fetchUseCaseById(int)
+	 */
+	public CompletableFuture<UseCase> fetchUseCaseById(int id) {
+		return AsyncExecutor.supply(() -> useCaseDAO.fetchUseCaseById(id));
+	}
+
+	/**
+	 * @see UseCaseDAO#fetchAllUseCases(int, int)
+	 */
+	public CompletableFuture<List<UseCase>> fetchAllUseCases(int limit, int offset) {
+		return AsyncExecutor.supply(() -> useCaseDAO.fetchAllUseCases(limit, offset));
+	}
+}
@@ -0,0 +1,411 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import utils.FilterExpression;
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Operator;
+
+/**
+ * Evaluates a {@link FilterPlan} over a {@link ColumnarSnapshot} a column at
+ * a time.
+ *
+ * <p>
+ * Each comparison is one pass over the column that packs its outcome for 64
+ * rows into a {@code long}, with no per-row dispatch or boxing; AND, OR and
+ * NOT then combine whole words. Numeric comparisons are reduced to a closed
+ * range test, and text comparisons are decided once per distinct value of the
+ * dictionary and then looked up by code. Every node yields the rows where it
+ * is true and the rows where it is false, so NULLs follow SQL's three-valued
+ * logic: a comparison with NULL is neither, and {@code NOT} keeps it neither.
+ * </p>
+ *
+ * <p>
+ * Results match the SQL rendering of the plan except that FLOAT values are
+ * compared as {@code double}s. Text is matched by code point, and ordered in
+ * the collation of its column: in memory for the collations that order by
+ * code point, otherwise by {@link ColumnarSnapshot.DictionaryColumn#matchCollatedRange},
+ * which asks the database before the columns are evaluated.
+ * </p>
+ */
+final class ColumnarEvaluator {
+
+	/** IN lists longer than this are tested by binary search instead of one pass per value. */
+	private static final int SHORT_IN_LIST = 8;
+
+	/**
+	 * The rows where a node is true and where it is false; the remaining rows
+	 * are unknown.
+	 */
+	private static final class Truth {
+
+		final long[] isTrue;
+		final long[] isFalse;
+
+		Truth(long[] isTrue, long[] isFalse) {
+			this.isTrue = isTrue;
+			this.isFalse = isFalse;
+		}
+	}
+
+	private ColumnarEvaluator() {
+	}
+
+	/**
+	 * @param plan     the compiled filter
+	 * @param snapshot the objects
+	 * @return a bitset of the rows where the filter is true
+	 * @throws SQLException if a text range under a database collation cannot
+	 *                      be decided
+	 */
+	static long[] evaluate(FilterPlan plan, ColumnarSnapshot snapshot) throws SQLException {
+		Map<Comparison, boolean[]> collatedRanges = new IdentityHashMap<>();
+		matchCollatedRanges(plan, snapshot, plan.getExpression(), collatedRanges);
+		int rows = snapshot.getRowCount();
+		long[] all = new long[(rows + 63) >>> 6];
+		Arrays.fill(all, -1L);
+		if ((rows & 63) != 0) {
+			all[all.length - 1] = (1L << rows) - 1;
+		}
+		return plan.getExpression().accept(new FilterExpression.Visitor<Truth>() {
+
+			@Override
+			public Truth visitAnd(FilterExpression.And and) {
+				Truth result = null;
+				for (FilterExpression operand : and.getOperands()) {
+					Truth truth = operand.accept(this);
+					if (result == null) {
+						result = truth;
+					} else {
+						for (int w = 0; w < all.length; w++) {
+							result.isTrue[w] &= truth.isTrue[w];
+							result.isFalse[w] |= truth.isFalse[w];
+						}
+					}
+				}
+				return result;
+			}
+
+			@Override
+			public Truth visitOr(FilterExpression.Or or) {
+				Truth result = null;
+				for (FilterExpression operand : or.getOperands()) {
+					Truth truth = operand.accept(this);
+					if (result == null) {
+						result = truth;
+					} else {
+						for (int w = 0; w < all.length; w++) {
+							result.isTrue[w] |= truth.isTrue[w];
+							result.isFalse[w] &= truth.isFalse[w];
+						}
+					}
+				}
+				return result;
+			}
+
+			@Override
+			public Truth visitNot(FilterExpression.Not not) {
+				Truth truth = not.getOperand().accept(this);
+				return new Truth(truth.isFalse, truth.isTrue);
+			}
+
+			@Override
+			public Truth visitComparison(Comparison comparison) {
+				FilterPlan.Predicate predicate = plan.getPredicate(comparison);
+				ColumnarSnapshot.Column column = snapshot.column(predicate.getAttribute());
+				long[] nulls = column.nulls;
+				long[] isTrue = new long[all.length];
+				long[] isFalse = new long[all.length];
+				Operator operator = predicate.getOperator();
+				if (operator == Operator.IS_NULL || operator == Operator.IS_NOT_NULL) {
+					for (int w = 0; w < all.length; w++) {
+						isTrue[w] = nulls[w];
+						isFalse[w] = all[w] & ~nulls[w];
+					}
+					return operator == Operator.IS_NULL ? new Truth(isTrue, isFalse) : new Truth(isFalse, isTrue);
+				}
+				long[] matches = new long[all.length];
+				if (column instanceof ColumnarSnapshot.DictionaryColumn) {
+					ColumnarSnapshot.DictionaryColumn text = (ColumnarSnapshot.DictionaryColumn) column;
+					boolean[] dictionaryMatches = collatedRanges.get(comparison);
+					if (dictionaryMatches == null) {
+						dictionaryMatches = matchDictionary(text.dictionary, operator, predicate.getValues());
+					}
+					matchCodes(text.codes, dictionaryMatches, matches);
+				} else if (column instanceof ColumnarSnapshot.DoubleColumn) {
+					matchDoubles(((ColumnarSnapshot.DoubleColumn) column).values, operator, predicate.getValues(), matches);
+				} else {
+					matchLongs(((ColumnarSnapshot.LongColumn) column).values, operator, predicate.getValues(), matches);
+				}
+				boolean negated = operator == Operator.NE || operator == Operator.NOT_IN || operator == Operator.NOT_LIKE;
+				for (int w = 0; w < all.length; w++) {
+					long known = all[w] & ~nulls[w];
+					isTrue[w] = matches[w] & known;
+					isFalse[w] = ~matches[w] & known;
+				}
+				return negated ? new Truth(isFalse, isTrue) : new Truth(isTrue, isFalse);
+			}
+		}).isTrue;
+	}
+
+	/**
+	 * Decides the ordering comparisons on text columns whose collation does
+	 * not order by code point.
+	 */
+	private static void matchCollatedRanges(FilterPlan plan, ColumnarSnapshot snapshot, FilterExpression node,
+			Map<Comparison, boolean[]> ranges) throws SQLException {
+		if (node instanceof FilterExpression.Junction) {
+			for (FilterExpression operand : ((FilterExpression.Junction) node).getOperands()) {
+				matchCollatedRanges(plan, snapshot, operand, ranges);
+			}
+		} else if (node instanceof FilterExpression.Not) {
+			matchCollatedRanges(plan, snapshot, ((FilterExpression.Not) node).getOperand(), ranges);
+		} else {
+			Comparison comparison = (Comparison) node;
+			FilterPlan.Predicate predicate = plan.getPredicate(comparison);
+			if (!predicate.getOperator().isOrdering()) {
+				return;
+			}
+			ColumnarSnapshot.Column column = snapshot.column(predicate.getAttribute());
+			if (column instanceof ColumnarSnapshot.DictionaryColumn && ((ColumnarSnapshot.DictionaryColumn) column).collation != null) {
+				ranges.put(comparison,
+						((ColumnarSnapshot.DictionaryColumn) column).matchCollatedRange(predicate.getOperator(), predicate.getValues()));
+			}
+		}
+	}
+
+	/**
+	 * Sets the rows matching the positive form of the operator: EQ for NE, IN
+	 * for NOT_IN.
+	 */
+	private static void matchLongs(long[] values, Operator operator, List<Object> operands, long[] matches) {
+		if (operator == Operator.IN || operator == Operator.NOT_IN) {
+			long[] set = new long[operands.size()];
+			for (int i = 0; i < set.length; i++) {
+				set[i] = toLong(operands.get(i));
+			}
+			if (set.length <= SHORT_IN_LIST) {
+				for (long value : set) {
+					orLongRange(values, value, value, matches);
+				}
+			} else {
+				Arrays.sort(set);
+				for (int row = 0; row < values.length; row++) {
+					if (Arrays.binarySearch(set, values[row]) >= 0) {
+						matches[row >>> 6] |= 1L << row;
+					}
+				}
+			}
+			return;
+		}
+		long first = toLong(operands.get(0));
+		switch (operator) {
+		case LT:
+			if (first != Long.MIN_VALUE) {
+				orLongRange(values, Long.MIN_VALUE, first - 1, matches);
+			}
+			break;
+		case LE:
+			orLongRange(values, Long.MIN_VALUE, first, matches);
+			break;
+		case GT:
+			if (first != Long.MAX_VALUE) {
+				orLongRange(values, first + 1, Long.MAX_VALUE, matches);
+			}
+			break;
+		case GE:
+			orLongRange(values, first, Long.MAX_VALUE, matches);
+			break;
+		case BETWEEN:
+			orLongRange(values, first, toLong(operands.get(1)), matches);
+			break;
+		default: // EQ, NE
+			orLongRange(values, first, first, matches);
+		}
+	}
+
+	private static void orLongRange(long[] values, long low, long high, long[] matches) {
+		int rows = values.length;
+		for (int w = 0, base = 0; base < rows; w++, base += 64) {
+			int end = Math.min(64, rows - base);
+			long bits = 0;
+			for (int b = 0; b < end; b++) {
+				long value = values[base + b];
+				bits |= (value >= low & value <= high ? 1L : 0L) << b;
+			}
+			matches[w] |= bits;
+		}
+	}
+
+	private static void matchDoubles(double[] values, Operator operator, List<Object> operands, long[] matches) {
+		if (operator == Operator.IN || operator == Operator.NOT_IN) {
+			for (Object operand : operands) {
+				double value = toDouble(operand);
+				orDoubleRange(values, value, value, matches);
+			}
+			return;
+		}
+		double first = toDouble(operands.get(0));
+		switch (operator) {
+		case LT:
+			orDoubleRange(values, Double.NEGATIVE_INFINITY, Math.nextDown(first), matches);
+			break;
+		case LE:
+			orDoubleRange(values, Double.NEGATIVE_INFINITY, first, matches);
+			break;
+		case GT:
+			orDoubleRange(values, Math.nextUp(first), Double.POSITIVE_INFINITY, matches);
+			break;
+		case GE:
+			orDoubleRange(values, first, Double.POSITIVE_INFINITY, matches);
+			break;
+		case BETWEEN:
+			orDoubleRange(values, first, toDouble(operands.get(1)), matches);
+			break;
+		default: // EQ, NE
+			orDoubleRange(values, first, first, matches);
+		}
+	}
+
+	private static void orDoubleRange(double[] values, double low, double high, long[] matches) {
+		int rows = values.length;
+		for (int w = 0, base = 0; base < rows; w++, base += 64) {
+			int end = Math.min(64, rows - base);
+			long bits = 0;
+			for (int b = 0; b < end; b++) {
+				double value = values[base + b];
+				bits |= (value >= low & value <= high ? 1L : 0L) << b;
+			}
+			matches[w] |= bits;
+		}
+	}
+
+	/**
+	 * Decides the positive form of the operator for every distinct value,
+	 * ordering by code point.
+	 */
+	private static boolean[] matchDictionary(String[] dictionary, Operator operator, List<Object> operands) {
+		boolean[] matches = new boolean[dictionary.length];
+		if (operator == Operator.LIKE || operator == Operator.NOT_LIKE) {
+			Pattern pattern = likePattern((String) operands.get(0));
+			for (int code = 0; code < dictionary.length; code++) {
+				matches[code] = pattern.matcher(dictionary[code]).matches();
+			}
+			return matches;
+		}
+		if (operator == Operator.EQ || operator == Operator.NE || operator == Operator.IN || operator == Operator.NOT_IN) {
+			for (Object operand : operands) {
+				int code = Arrays.binarySearch(dictionary, (String) operand, ColumnarSnapshot.CODE_POINT_ORDER);
+				if (code >= 0) {
+					matches[code] = true;
+				}
+			}
+			return matches;
+		}
+		// the dictionary is sorted, so an ordering comparison selects a range of codes
+		int low = 0;
+		int high = dictionary.length;
+		String first = (String) operands.get(0);
+		switch (operator) {
+		case LT:
+			high = lowerBound(dictionary, first);
+			break;
+		case LE:
+			high = upperBound(dictionary, first);
+			break;
+		case GT:
+			low = upperBound(dictionary, first);
+			break;
+		case GE:
+			low = lowerBound(dictionary, first);
+			break;
+		default: // BETWEEN
+			low = lowerBound(dictionary, first);
+			high = upperBound(dictionary, (String) operands.get(1));
+		}
+		for (int code = low; code < high; code++) {
+			matches[code] = true;
+		}
+		return matches;
+	}
+
+	private static void matchCodes(int[] codes, boolean[] dictionaryMatches, long[] matches) {
+		if (dictionaryMatches.length == 0) {
+			return; // every value is NULL
+		}
+		int rows = codes.length;
+		for (int w = 0, base = 0; base < rows; w++, base += 64) {
+			int end = Math.min(64, rows - base);
+			long bits = 0;
+			for (int b = 0; b < end; b++) {
+				bits |= (dictionaryMatches[codes[base + b]] ? 1L : 0L) << b;
+			}
+			matches[w] = bits;
+		}
+	}
+
+	/**
+	 * @return the first code whose value is not less than the key
+	 */
+	private static int lowerBound(String[] dictionary, String key) {
+		int index = Arrays.binarySearch(dictionary, key, ColumnarSnapshot.CODE_POINT_ORDER);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * @return the first code whose value is greater than the key
+	 */
+	private static int upperBound(String[] dictionary, String key) {
+		int index = Arrays.binarySearch(dictionary, key, ColumnarSnapshot.CODE_POINT_ORDER);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	/**
+	 * Translates a LIKE pattern, with {@code \} escaping the next character
+	 * as in PostgreSQL.
+	 */
+	private static Pattern likePattern(String like) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < like.length(); i++) {
+			char c = like.charAt(i);
+			if (c == '\\' && i + 1 < like.length()) {
+				literal.append(like.charAt(++i));
+			} else if (c == '%' || c == '_') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '%' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	private static long toLong(Object value) {
+		if (value instanceof Date) {
+			return ((Date) value).toLocalDate().toEpochDay();
+		}
+		if (value instanceof Timestamp) {
+			return ((Timestamp) value).getTime();
+		}
+		return (Long) value;
+	}
+
+	private static double toDouble(Object value) {
+		return ((BigDecimal) value).doubleValue();
+	}
+}
@@ -0,0 +1,547 @@
+package dao;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import model.ObjectAttribute;
+import utils.ApplicationConfig;
+import utils.FilterExpression.Operator;
+import utils.QueryExecutor;
+import utils.RoaringBitmap;
+import utils.RowMapperFactory;
+
+/**
+ * The objects of one object type held in memory column by column, so saved
+ * filters can be applied repeatedly without a query per filter.
+ *
+ * <p>
+ * Every attribute becomes one column of the type given by its
+ * {@link ObjectAttribute.DataTypes}: INTEGER values as {@code long}s, FLOAT
+ * values as {@code double}s, DATE values as epoch days and DATETIME values as
+ * epoch milliseconds, and VARCHAR, TEXT and ENUM values dictionary-encoded as
+ * {@code int} codes into the distinct values sorted by code point. NULLs are
+ * kept in a separate bitset per column. Rows are held in ascending id order.
+ * </p>
+ *
+ * <p>
+ * The load also reads the collation of every VARCHAR and TEXT column. Under
+ * {@code C}, {@code POSIX} and {@code ucs_basic} the code point order is the
+ * order of the database, so text ranges are decided in memory; under any
+ * other collation the database orders the dictionary against the bounds of
+ * each distinct range comparison, once per snapshot.
+ * </p>
+ *
+ * <p>
+ * {@link #select(FilterPlan)} evaluates a compiled plan with
+ * {@link ColumnarEvaluator}, a column at a time, and returns the ids of the
+ * matching objects as a {@link RoaringBitmap} so the results of several
+ * filters can be combined with {@link RoaringBitmap#and} and
+ * {@link RoaringBitmap#or}. A snapshot is immutable and never refreshed: it
+ * shows the rows as they were when it was loaded, and callers load a new one
+ * when they need newer data. Loading stops with an
+ * {@link IllegalArgumentException} beyond {@code filter.columnar.maxRows}
+ * rows (default 2000000).
+ * </p>
+ */
+public final class ColumnarSnapshot {
+
+	private static final Logger LOGGER = Logger.getLogger(ColumnarSnapshot.class.getName());
+	private static final int MAX_ROWS = ApplicationConfig.getInt("filter.columnar.maxRows", 2000000);
+
+	/** Collations that order text by code point, as {@link #CODE_POINT_ORDER} does. */
+	private static final List<String> CODE_POINT_COLLATIONS = Arrays.asList("C", "POSIX", "ucs_basic");
+
+	/** A collation as {@code pg_collation_for} names it: quoted where needed, optionally schema-qualified. */
+	private static final Pattern COLLATION_NAME = Pattern
+			.compile("(?:(?:[a-z_][a-z0-9_$]*|\"(?:[^\"]|\"\")+\")\\.)?([a-z_][a-z0-9_$]*|\"(?:[^\"]|\"\")+\")");
+
+	/** Range comparisons remembered per dictionary column under a database collation. */
+	private static final int MAX_REMEMBERED_RANGES = 16;
+
+	/**
+	 * Orders strings by Unicode code point, as PostgreSQL's {@code C}
+	 * collation orders UTF-8 text; {@link String#compareTo} differs for
+	 * characters outside the Basic Multilingual Plane.
+	 */
+	static final Comparator<String> CODE_POINT_ORDER = (a, b) -> {
+		int length = Math.min(a.length(), b.length());
+		for (int i = 0; i < length; i++) {
+			char x = a.charAt(i);
+			char y = b.charAt(i);
+			if (x != y) {
+				// a surrogate stands for a code point above every other char
+				boolean xSurrogate = Character.isSurrogate(x);
+				if (xSurrogate != Character.isSurrogate(y)) {
+					return xSurrogate ? 1 : -1;
+				}
+				return x - y;
+			}
+		}
+		return a.length() - b.length();
+	};
+
+	/**
+	 * The values of one attribute. NULL rows hold 0 in the value arrays.
+	 */
+	abstract static class Column {
+
+		final ObjectAttribute.DataTypes type;
+		final long[] nulls;
+
+		Column(ObjectAttribute.DataTypes type, long[] nulls) {
+			this.type = type;
+			this.nulls = nulls;
+		}
+	}
+
+	/**
+	 * INTEGER values, DATE epoch days or DATETIME epoch milliseconds.
+	 */
+	static final class LongColumn extends Column {
+
+		final long[] values;
+
+		LongColumn(ObjectAttribute.DataTypes type, long[] values, long[] nulls) {
+			super(type, nulls);
+			this.values = values;
+		}
+	}
+
+	/**
+	 * FLOAT values.
+	 */
+	static final class DoubleColumn extends Column {
+
+		final double[] values;
+
+		DoubleColumn(double[] values, long[] nulls) {
+			super(ObjectAttribute.DataTypes.FLOAT, nulls);
+			this.values = values;
+		}
+	}
+
+	/**
+	 * VARCHAR, TEXT or ENUM values as codes into the dictionary sorted by
+	 * {@link #CODE_POINT_ORDER}.
+	 */
+	static final class DictionaryColumn extends Column {
+
+		final int[] codes;
+		final String[] dictionary;
+		/** The collation for a {@code COLLATE} clause, or null if the column orders text by code point. */
+		final String collation;
+		private final Map<List<Object>, boolean[]> ranges = new ConcurrentHashMap<>();
+
+		DictionaryColumn(ObjectAttribute.DataTypes type, int[] codes, String[] dictionary, String collation, long[] nulls) {
+			super(type, nulls);
+			this.codes = codes;
+			this.dictionary = dictionary;
+			this.collation = collation;
+		}
+
+		/**
+		 * Decides an ordering comparison for every value of the dictionary in
+		 * the collation of the column, by the database.
+		 *
+		 * @param operator LT, LE, GT, GE or BETWEEN
+		 * @param operands the bounds
+		 * @return whether each code is in the range
+		 * @throws SQLException if the database cannot be asked
+		 */
+		boolean[] matchCollatedRange(Operator operator, List<Object> operands) throws SQLException {
+			List<Object> key = Arrays.asList(operator, operands);
+			boolean[] matches = ranges.get(key);
+			if (matches == null) {
+				boolean[] inRange = new boolean[dictionary.length];
+				if (dictionary.length > 0) {
+					String condition = operator == Operator.BETWEEN ? "BETWEEN ? AND ?" : operator.getSymbol() + " ?";
+					Object[] params = new Object[operands.size() + 1];
+					params[0] = Arrays.asList(dictionary);
+					for (int i = 0; i < operands.size(); i++) {
+						params[i + 1] = operands.get(i);
+					}
+					QueryExecutor.forEach("SELECT ord FROM unnest(?) WITH ORDINALITY AS d(v, ord) WHERE v COLLATE " + collation + " "
+							+ condition, columns -> rs -> rs.getInt(1), ord -> inRange[ord - 1] = true, params);
+				}
+				if (ranges.size() >= MAX_REMEMBERED_RANGES) {
+					ranges.clear();
+				}
+				ranges.put(key, inRange);
+				matches = inRange;
+			}
+			return matches;
+		}
+	}
+
+	private final int objectTypeId;
+	private final FilterTarget target;
+	private final int[] ids;
+	private final Map<String, Column> columns;
+	private final long loadedAt;
+
+	private ColumnarSnapshot(int objectTypeId, FilterTarget target, int[] ids, Map<String, Column> columns) {
+		this.objectTypeId = objectTypeId;
+		this.target = target;
+		this.ids = ids;
+		this.columns = Collections.unmodifiableMap(columns);
+		this.loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Loads the objects of an object type.
+	 *
+	 * @param target       the table holding the objects
+	 * @param objectTypeId the object type, used to restrict the rows when the
+	 *                     target has an object type column
+	 * @param attributes   the attributes of the object type, one column each
+	 * @return the snapshot
+	 * @throws SQLException             if the rows cannot be read
+	 * @throws IllegalArgumentException if an attribute has no column in the
+	 *                                  target or there are too many rows
+	 */
+	public static ColumnarSnapshot load(FilterTarget target, int objectTypeId, List<ObjectAttribute> attributes) throws SQLException {
+		StringBuilder sql = new StringBuilder("SELECT ").append(target.getIdColumn());
+		List<ColumnBuilder> builders = new ArrayList<>();
+		for (ObjectAttribute attribute : attributes) {
+			if (attribute.getDataType() == null) {
+				continue;
+			}
+			sql.append(", ").append(target.columnOf(attribute));
+			builders.add(new ColumnBuilder(attribute));
+		}
+		readCollations(target, builders);
+		sql.append(" FROM ").append(target.getTable());
+		Object[] params = {};
+		if (target.getObjectTypeColumn() != null) {
+			sql.append(" WHERE ").append(target.getObjectTypeColumn()).append(" = ?");
+			params = new Object[] { objectTypeId };
+		}
+		sql.append(" ORDER BY ").append(target.getIdColumn());
+
+		int[][] ids = { new int[1024] };
+		int[] count = new int[1];
+		long started = System.nanoTime();
+		RowMapperFactory<Integer> factory = columnIndex -> rs -> {
+			int row = count[0];
+			if (row == MAX_ROWS) {
+				throw new IllegalArgumentException(target + " holds more than " + MAX_ROWS + " objects of type " + objectTypeId);
+			}
+			if (row == ids[0].length) {
+				ids[0] = Arrays.copyOf(ids[0], row * 2);
+			}
+			ids[0][row] = rs.getInt(1);
+			for (int i = 0; i < builders.size(); i++) {
+				builders.get(i).read(rs, i + 2, row);
+			}
+			return count[0]++;
+		};
+		QueryExecutor.forEach(sql.toString(), factory, row -> {
+		}, params);
+
+		int rows = count[0];
+		Map<String, Column> columns = new LinkedHashMap<>();
+		for (ColumnBuilder builder : builders) {
+			columns.put(builder.attribute.getAttributeName(), builder.build(rows));
+		}
+		LOGGER.fine(() -> "Loaded " + rows + " objects of type " + objectTypeId + " from " + target + " in "
+				+ (System.nanoTime() - started) / 1000000 + " ms");
+		return new ColumnarSnapshot(objectTypeId, target, Arrays.copyOf(ids[0], rows), columns);
+	}
+
+	/**
+	 * Builds a snapshot from values in memory, for tests and benchmarks. Text
+	 * columns order by code point.
+	 *
+	 * @param objectTypeId the object type
+	 * @param target       the table the values stand for
+	 * @param attributes   the attributes, one column each
+	 * @param ids          the object ids, ascending
+	 * @param rows         per object, a value per attribute: a {@link Number}
+	 *                     for INTEGER and FLOAT, a {@link String} for VARCHAR,
+	 *                     TEXT and ENUM, a {@link Date} or {@link Timestamp}, or
+	 *                     null
+	 * @return the snapshot
+	 */
+	static ColumnarSnapshot of(int objectTypeId, FilterTarget target, List<ObjectAttribute> attributes, int[] ids, Object[][] rows) {
+		Map<String, Column> columns = new LinkedHashMap<>();
+		for (int a = 0; a < attributes.size(); a++) {
+			ColumnBuilder builder = new ColumnBuilder(attributes.get(a));
+			for (int row = 0; row < ids.length; row++) {
+				builder.put(row, rows[row][a]);
+			}
+			columns.put(builder.attribute.getAttributeName(), builder.build(ids.length));
+		}
+		return new ColumnarSnapshot(objectTypeId, target, ids.clone(), columns);
+	}
+
+	/**
+	 * Reads the collation of the VARCHAR and TEXT columns and the collation
+	 * the database uses for {@code "default"}, whose provider only newer
+	 * versions report.
+	 */
+	private static void readCollations(FilterTarget target, List<ColumnBuilder> builders) throws SQLException {
+		List<ColumnBuilder> text = new ArrayList<>();
+		StringBuilder sql = new StringBuilder("SELECT d.datcollate, to_jsonb(d) ->> 'datlocprovider'");
+		for (ColumnBuilder builder : builders) {
+			ObjectAttribute.DataTypes type = builder.attribute.getDataType();
+			if (type == ObjectAttribute.DataTypes.VARCHAR || type == ObjectAttribute.DataTypes.TEXT) {
+				sql.append(", pg_collation_for((SELECT ").append(target.columnOf(builder.attribute)).append("::text FROM ")
+						.append(target.getTable()).append(" LIMIT 0))");
+				text.add(builder);
+			}
+		}
+		if (text.isEmpty()) {
+			return;
+		}
+		sql.append(" FROM pg_database d WHERE d.datname = current_database()");
+		QueryExecutor.queryOne(sql.toString(), columns -> rs -> {
+			boolean codePointDefault = CODE_POINT_COLLATIONS.contains(rs.getString(1))
+					&& (rs.getString(2) == null || "c".equals(rs.getString(2)));
+			for (int i = 0; i < text.size(); i++) {
+				String collation = rs.getString(i + 3);
+				Matcher name = COLLATION_NAME.matcher(collation);
+				if (!name.matches()) {
+					throw new SQLException("Unexpected collation " + collation + " of " + text.get(i).attribute.getAttributeName());
+				}
+				boolean codePoint = "\"default\"".equals(collation) ? codePointDefault
+						: CODE_POINT_COLLATIONS.contains(unquote(name.group(1)));
+				text.get(i).collation = codePoint ? null : collation;
+			}
+			return null;
+		});
+	}
+
+	private static String unquote(String identifier) {
+		return identifier.startsWith("\"") ? identifier.substring(1, identifier.length() - 1).replace("\"\"", "\"") : identifier;
+	}
+
+	public int getObjectTypeId() {
+		return objectTypeId;
+	}
+
+	public FilterTarget getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return the number of objects
+	 */
+	public int getRowCount() {
+		return ids.length;
+	}
+
+	/**
+	 * @return when the snapshot was loaded, in epoch milliseconds
+	 */
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	/**
+	 * @return the ids of all objects
+	 */
+	public RoaringBitmap getIds() {
+		RoaringBitmap all = new RoaringBitmap();
+		for (int id : ids) {
+			all.add(id);
+		}
+		return all;
+	}
+
+	/**
+	 * Applies a compiled filter.
+	 *
+	 * @param plan the filter, compiled for the snapshot's object type
+	 * @return the ids of the matching objects
+	 * @throws SQLException             if a text range under a database
+	 *                                  collation cannot be decided
+	 * @throws IllegalArgumentException if the plan belongs to another object
+	 *                                  type or reads an attribute the snapshot
+	 *                                  does not hold
+	 */
+	public RoaringBitmap select(FilterPlan plan) throws SQLException {
+		if (plan.getObjectTypeId() != objectTypeId) {
+			throw new IllegalArgumentException(plan + " does not apply to objects of type " + objectTypeId);
+		}
+		long[] selected = ColumnarEvaluator.evaluate(plan, this);
+		RoaringBitmap result = new RoaringBitmap();
+		for (int w = 0; w < selected.length; w++) {
+			long word = selected[w];
+			while (word != 0) {
+				result.add(ids[(w << 6) + Long.numberOfTrailingZeros(word)]);
+				word &= word - 1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param attribute an attribute of the object type
+	 * @return its column
+	 * @throws IllegalArgumentException if the snapshot does not hold it
+	 */
+	Column column(ObjectAttribute attribute) {
+		Column column = columns.get(attribute.getAttributeName());
+		if (column == null || column.type != attribute.getDataType()) {
+			throw new IllegalArgumentException("Snapshot of " + target + " holds no " + attribute.getDataType() + " attribute '"
+					+ attribute.getAttributeName() + "'; load a new snapshot after changing the attributes");
+		}
+		return column;
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnarSnapshot[objectType=" + objectTypeId + ", " + target + ", rows=" + ids.length + "]";
+	}
+
+	/**
+	 * Collects the values of one attribute while the rows are read.
+	 */
+	private static final class ColumnBuilder {
+
+		final ObjectAttribute attribute;
+		long[] longs;
+		double[] doubles;
+		int[] codes;
+		Map<String, Integer> dictionary;
+		String collation;
+		long[] nulls = new long[16];
+
+		ColumnBuilder(ObjectAttribute attribute) {
+			this.attribute = attribute;
+			switch (attribute.getDataType()) {
+			case FLOAT:
+				doubles = new double[1024];
+				break;
+			case VARCHAR:
+			case TEXT:
+			case ENUM:
+				codes = new int[1024];
+				dictionary = new HashMap<>();
+				break;
+			default:
+				longs = new long[1024];
+			}
+		}
+
+		void read(ResultSet rs, int index, int row) throws SQLException {
+			grow(row);
+			boolean isNull;
+			switch (attribute.getDataType()) {
+			case FLOAT:
+				doubles[row] = rs.getDouble(index);
+				isNull = rs.wasNull();
+				break;
+			case VARCHAR:
+			case TEXT:
+			case ENUM:
+				String text = rs.getString(index);
+				isNull = text == null;
+				if (!isNull) {
+					codes[row] = code(text);
+				}
+				break;
+			case DATE:
+				Date date = rs.getDate(index);
+				isNull = date == null;
+				longs[row] = isNull ? 0 : date.toLocalDate().toEpochDay();
+				break;
+			case DATETIME:
+				Timestamp timestamp = rs.getTimestamp(index);
+				isNull = timestamp == null;
+				longs[row] = isNull ? 0 : timestamp.getTime();
+				break;
+			default:
+				longs[row] = rs.getLong(index);
+				isNull = rs.wasNull();
+			}
+			if (isNull) {
+				nulls[row >>> 6] |= 1L << row;
+			}
+		}
+
+		void put(int row, Object value) {
+			grow(row);
+			if (value == null) {
+				nulls[row >>> 6] |= 1L << row;
+				return;
+			}
+			switch (attribute.getDataType()) {
+			case FLOAT:
+				doubles[row] = ((Number) value).doubleValue();
+				break;
+			case VARCHAR:
+			case TEXT:
+			case ENUM:
+				codes[row] = code((String) value);
+				break;
+			case DATE:
+				longs[row] = ((Date) value).toLocalDate().toEpochDay();
+				break;
+			case DATETIME:
+				longs[row] = ((Timestamp) value).getTime();
+				break;
+			default:
+				longs[row] = ((Number) value).longValue();
+			}
+		}
+
+		private void grow(int row) {
+			if ((row >>> 6) == nulls.length) {
+				nulls = Arrays.copyOf(nulls, nulls.length * 2);
+			}
+			if (doubles != null && row == doubles.length) {
+				doubles = Arrays.copyOf(doubles, row * 2);
+			} else if (codes != null && row == codes.length) {
+				codes = Arrays.copyOf(codes, row * 2);
+			} else if (longs != null && row == longs.length) {
+				longs = Arrays.copyOf(longs, row * 2);
+			}
+		}
+
+		private int code(String text) {
+			Integer code = dictionary.get(text);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.put(text, code);
+			}
+			return code;
+		}
+
+		Column build(int rows) {
+			long[] nullWords = Arrays.copyOf(nulls, (rows + 63) >>> 6);
+			if (doubles != null) {
+				return new DoubleColumn(Arrays.copyOf(doubles, rows), nullWords);
+			}
+			if (longs != null) {
+				return new LongColumn(attribute.getDataType(), Arrays.copyOf(longs, rows), nullWords);
+			}
+			// renumber the codes in the order of the values so ranges of values are ranges of codes
+			String[] sorted = dictionary.keySet().toArray(new String[0]);
+			Arrays.sort(sorted, CODE_POINT_ORDER);
+			int[] recode = new int[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				recode[dictionary.get(sorted[i])] = i;
+			}
+			int[] sortedCodes = Arrays.copyOf(codes, rows);
+			for (int row = 0; row < rows && sorted.length > 0; row++) {
+				sortedCodes[row] = recode[sortedCodes[row]];
+			}
+			return new DictionaryColumn(attribute.getDataType(), sortedCodes, sorted, collation, nullWords);
+		}
+	}
+}
@@ -2,6 +2,8 @@ package dao;
 
 
 import model.*;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
@@ -23,10 +25,12 @@ public class CompanyDAO {
 	public boolean createCompany(String companyName, Company.CompanySector companySectors, int companySize, String headquartersAddress, String contactName, String email, String phone) {
 	    Connection connection = null;
 	    PreparedStatement preparedStatement = null;
-	    boolean isSuccess = false;
+	    ResultSet rs = null;
+	    int id = 0;
+	    CompanyNameIndex.add(companyName);
 	    try {
 	        connection = DatabaseUtility.connect();
-	        String sql = "INSERT INTO companies (company_name, company_sectors, company_size, headquarters_address, contact_name, email, phone) VALUES (?, ?, ?, ?, ?, ?, ?)";
+	        String sql = "INSERT INTO companies (company_name, company_sectors, company_size, headquarters_address, contact_name, email, phone) VALUES (?, ?, ?, ?, ?, ?, ?) RETURNING id";
 	        preparedStatement = connection.prepareStatement(sql);
 	        preparedStatement.setString(1, companyName);
 	        preparedStatement.setString(2, companySectors.name());
@@ -35,11 +39,20 @@ public class CompanyDAO {
 	        preparedStatement.setString(5, contactName);
 	        preparedStatement.setString(6, email);
 	        preparedStatement.setString(7, phone);
-	        int affectedRows = preparedStatement.executeUpdate();
-	        isSuccess = affectedRows > 0;
+	        rs = preparedStatement.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
+	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(CompanyDAO.class.getName()).log(Level.SEVERE, null, e);
 	    } finally {
+	        if (rs != null) {
+	            try {
+	                rs.close();
+	            } catch (SQLException e) {
+	                Logger.getLogger(CompanyDAO.class.getName()).log(Level.SEVERE, null, e);
+	            }
+	        }
 	        if (preparedStatement != null) {
 	            try {
 	                preparedStatement.close();
@@ -49,27 +62,35 @@ public class CompanyDAO {
 	        }
 	        DatabaseUtility.disconnect(connection);
 	    }
+	    boolean isSuccess = id > 0;
+	    if (isSuccess) {
+	        ChangeEventBus.publish("companies", ChangeEvent.Type.CREATED, id);
+	    }
 	    return isSuccess;
 	}
 	
 	/*
 	 * Checks if the provided company name is unique in the system to avoid duplicates.
 	 * Used in the Company Registration form to validate the uniqueness of the company name before submission.
+	 * Names the CompanyNameIndex filter has definitely not seen are unique without a query; only possible
+	 * matches are checked against the table.
 	 */
 	public boolean checkCompanyNameUnique(String companyName) {
+	    if (CompanyNameIndex.isDefinitelyAbsent(companyName)) {
+	        return true;
+	    }
 	    Connection conn = null;
 	    PreparedStatement stmt = null;
 	    ResultSet rs = null;
 	    try {
 	        conn = DatabaseUtility.connect();
-	        String query = "SELECT COUNT(*) AS count FROM companies WHERE company_name = ?";
+	        String query = "SELECT 1 FROM companies WHERE company_name = ? LIMIT 1";
 	        stmt = conn.prepareStatement(query);
 	        stmt.setString(1, companyName);
 	        rs = stmt.executeQuery();
-	        if (rs.next() && rs.getInt("count") > 0) {
-	            return false; // Company name is not unique
-	        }
-	        return true; // Company name is unique
+	        boolean exists = rs.next();
+	        CompanyNameIndex.recordExactMatch(exists);
+	        return !exists;
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "SQL error while checking company name uniqueness", e);
 	        return false;
@@ -114,6 +135,10 @@ public class CompanyDAO {
 	        if (pstmt != null) try { pstmt.close(); } catch (SQLException e) { Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, e); }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (isSuccess) {
+	        CompanyNameIndex.removed();
+	        ChangeEventBus.publish("companies", ChangeEvent.Type.DELETED, id);
+	    }
 	    return isSuccess;
 	}
 	
@@ -135,6 +160,8 @@ public class CompanyDAO {
 	public boolean updateCompany(int id, String companyName, Company.CompanySector companySectors, int companySize, String headquartersAddress, String contactName, String email, String phone) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
+	    CompanyNameIndex.add(companyName);
+	    boolean updated = false;
 	    try {
 	        conn = DatabaseUtility.connect();
 	        String sql = "UPDATE companies SET company_name = ?, company_sectors = ::company_sectors, company_size = ?, headquarters_address = ?, contact_name = ?, email = ?, phone = ? WHERE id = ?";
@@ -147,10 +174,7 @@ public class CompanyDAO {
 	        pstmt.setString(6, email);
 	        pstmt.setString(7, phone);
 	        pstmt.setInt(8, id);
-	        int affectedRows = pstmt.executeUpdate();
-	        if (affectedRows > 0) {
-	            return true;
-	        }
+	        updated = pstmt.executeUpdate() > 0;
 	    } catch (SQLException ex) {
 	        Logger.getLogger(CompanyDAO.class.getName()).log(Level.SEVERE, null, ex);
 	    } finally {
@@ -163,6 +187,11 @@ public class CompanyDAO {
 	            }
 	        }
 	    }
-	    return false;
+	    if (updated) {
+	        // the previous name may have changed and stays in the filter
+	        CompanyNameIndex.removed();
+	        ChangeEventBus.publish("companies", ChangeEvent.Type.UPDATED, id);
+	    }
+	    return updated;
 	}
 }
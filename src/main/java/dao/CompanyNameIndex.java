@@ -0,0 +1,316 @@
+package dao;
+
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+import utils.ApplicationConfig;
+import utils.BloomFilter;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.ClusterChangeNotifier;
+import utils.QueryExecutor;
+import utils.ReadConsistency;
+import utils.RowMapperFactory;
+
+/**
+ * Answers "this company name is definitely not taken" from an in-memory
+ * {@link BloomFilter} over the normalized names of all companies, so
+ * {@link CompanyDAO#checkCompanyNameUnique(String)} only queries the database
+ * when the name may exist.
+ *
+ * <p>
+ * Names are normalized (Unicode NFKC, lower case, trimmed, whitespace
+ * collapsed) before they are hashed. Equal names always normalize equally, so
+ * a name absent from the filter is absent from the table; names that differ
+ * only in case or spacing are possible matches, which the exact query then
+ * decides. The filter is built in the background by one streaming pass over
+ * {@code companies} on the primary, started by the application lifecycle
+ * listener; until it is ready every check queries the database.
+ * </p>
+ *
+ * <p>
+ * The DAO adds a name before inserting or renaming a company, so a check can
+ * never miss a committed local write; a failed write only leaves a harmless
+ * extra bit. Bloom filters cannot remove names, so deletes and renames are
+ * counted and the filter is rebuilt once they exceed a quarter of its names,
+ * or once it holds more names than it was sized for. Creates and renames made
+ * by other nodes (see {@link utils.ClusterChangeNotifier}) drop the filter
+ * until a rebuild has read them.
+ * </p>
+ *
+ * <p>
+ * Configured with {@code company.nameFilter.enabled},
+ * {@code company.nameFilter.expectedInsertions} (default 100000) and
+ * {@code company.nameFilter.falsePositiveRate} (default 0.01). The filter
+ * only turns on together with {@code cluster.notify.enabled}: without it,
+ * names created on other nodes would never reach it.
+ * </p>
+ */
+public final class CompanyNameIndex {
+
+	private static final Logger LOGGER = Logger.getLogger(CompanyNameIndex.class.getName());
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("company.nameFilter.enabled", false)
+			&& ClusterChangeNotifier.isEnabled();
+	private static final int EXPECTED_INSERTIONS = ApplicationConfig.getInt("company.nameFilter.expectedInsertions", 100000);
+	private static final double FALSE_POSITIVE_RATE = ApplicationConfig.getDouble("company.nameFilter.falsePositiveRate", 0.01);
+	private static final int MIN_REMOVALS_BEFORE_REBUILD = 1000;
+
+	private static final RowMapperFactory<String> NAME = columns -> rs -> rs.getString(1);
+
+	private static final Object LOCK = new Object();
+	private static volatile BloomFilter filter;
+	private static List<String> pending;
+	private static long generation;
+	private static long removedSinceBuild;
+	private static long lastCount;
+
+	private static final AtomicBoolean REBUILD_REQUESTED = new AtomicBoolean();
+	private static final AtomicBoolean BUILDING = new AtomicBoolean();
+
+	private static final AtomicLong DEFINITELY_ABSENT = new AtomicLong();
+	private static final AtomicLong POSSIBLE_MATCHES = new AtomicLong();
+	private static final AtomicLong FALSE_POSITIVES = new AtomicLong();
+	private static final AtomicLong BUILDS = new AtomicLong();
+	private static final AtomicLong FAILURES = new AtomicLong();
+
+	static {
+		if (ENABLED) {
+			ChangeEventBus.subscribe(CompanyNameIndex::onChange);
+		} else if (ApplicationConfig.getBoolean("company.nameFilter.enabled", false)) {
+			LOGGER.warning("company.nameFilter.enabled ignored: it requires cluster.notify.enabled, or names created on"
+					+ " other nodes would be reported as unique");
+		}
+	}
+
+	private CompanyNameIndex() {
+	}
+
+	/**
+	 * Starts building the filter in the background, when enabled.
+	 */
+	public static void start() {
+		if (ENABLED) {
+			requestRebuild();
+		}
+	}
+
+	/**
+	 * Tells whether no company has the given name, without a query.
+	 *
+	 * @param companyName the name as entered
+	 * @return true if the name is definitely not taken; false if it may be
+	 *         taken or the filter is not ready, and the database must decide
+	 */
+	public static boolean isDefinitelyAbsent(String companyName) {
+		BloomFilter current = filter;
+		if (current == null || companyName == null) {
+			return false;
+		}
+		if (current.mightContain(normalize(companyName))) {
+			POSSIBLE_MATCHES.incrementAndGet();
+			return false;
+		}
+		DEFINITELY_ABSENT.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Records the answer of the exact query made after a possible match.
+	 *
+	 * @param exists whether a company with the name exists
+	 */
+	static void recordExactMatch(boolean exists) {
+		if (!exists) {
+			FALSE_POSITIVES.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds a name that is about to be written.
+	 *
+	 * @param companyName the name as entered
+	 */
+	static void add(String companyName) {
+		if (!ENABLED || companyName == null) {
+			return;
+		}
+		String name = normalize(companyName);
+		BloomFilter current;
+		synchronized (LOCK) {
+			current = filter;
+			if (current != null) {
+				current.put(name);
+			}
+			if (pending != null) {
+				pending.add(name);
+			}
+		}
+		if (needsRebuild(current, 0)) {
+			requestRebuild(); // names added twice count twice, which only rebuilds a little early
+		}
+	}
+
+	/**
+	 * Counts a name that was deleted or renamed and is still in the filter.
+	 */
+	static void removed() {
+		if (!ENABLED) {
+			return;
+		}
+		boolean rebuild;
+		synchronized (LOCK) {
+			removedSinceBuild++;
+			rebuild = needsRebuild(filter, removedSinceBuild);
+		}
+		if (rebuild) {
+			requestRebuild();
+		}
+	}
+
+	/**
+	 * Tells whether a filter holds enough removed names, or more names than
+	 * it was sized for, to be rebuilt.
+	 *
+	 * @param current          the filter, or null if it is not ready
+	 * @param removedSinceBuild the names deleted or renamed since it was built
+	 * @return true if it should be rebuilt
+	 */
+	static boolean needsRebuild(BloomFilter current, long removedSinceBuild) {
+		return current != null && (current.getInsertions() > current.getExpectedInsertions()
+				|| removedSinceBuild > Math.max(MIN_REMOVALS_BEFORE_REBUILD, current.getInsertions() / 4));
+	}
+
+	/**
+	 * Normalizes a company name for the filter.
+	 *
+	 * @param companyName the name as entered
+	 * @return the normalized name
+	 */
+	static String normalize(String companyName) {
+		String name = Normalizer.normalize(companyName, Normalizer.Form.NFKC);
+		return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the state of the filter.
+	 *
+	 * @return whether it is enabled and ready, its size and estimated false
+	 *         positive rate, and the check and build counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("enabled", ENABLED);
+		BloomFilter current = filter;
+		json.put("ready", current != null);
+		if (current != null) {
+			json.put("insertions", current.getInsertions());
+			json.put("expectedInsertions", current.getExpectedInsertions());
+			json.put("sizeBytes", current.getSizeInBytes());
+			json.put("expectedFalsePositiveRate", current.expectedFalsePositiveRate());
+		}
+		synchronized (LOCK) {
+			json.put("removedSinceBuild", removedSinceBuild);
+		}
+		json.put("definitelyAbsent", DEFINITELY_ABSENT.get());
+		json.put("possibleMatches", POSSIBLE_MATCHES.get());
+		json.put("falsePositives", FALSE_POSITIVES.get());
+		json.put("builds", BUILDS.get());
+		json.put("failures", FAILURES.get());
+		return json;
+	}
+
+	private static void onChange(ChangeEvent event) {
+		if (!event.isRemote() || !(event.isAllTables() || "companies".equals(event.getTable()))) {
+			return; // local writes update the filter themselves
+		}
+		if (event.getType() == ChangeEvent.Type.DELETED && !event.isAllTables()) {
+			removed();
+			return;
+		}
+		synchronized (LOCK) {
+			generation++;
+			filter = null;
+		}
+		requestRebuild();
+	}
+
+	private static void requestRebuild() {
+		REBUILD_REQUESTED.set(true);
+		if (BUILDING.compareAndSet(false, true)) {
+			Thread builder = new Thread(CompanyNameIndex::runBuilds, "company-name-filter-build");
+			builder.setDaemon(true);
+			builder.start();
+		}
+	}
+
+	private static void runBuilds() {
+		try {
+			while (REBUILD_REQUESTED.getAndSet(false)) {
+				build();
+			}
+		} finally {
+			BUILDING.set(false);
+		}
+		if (REBUILD_REQUESTED.get()) {
+			requestRebuild(); // requested after the loop ended
+		}
+	}
+
+	private static void build() {
+		long startGeneration;
+		int expected;
+		synchronized (LOCK) {
+			startGeneration = generation;
+			expected = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(EXPECTED_INSERTIONS, 2 * lastCount));
+			pending = new ArrayList<>();
+		}
+		BloomFilter next = new BloomFilter(expected, FALSE_POSITIVE_RATE);
+		long count;
+		// read on the primary, so names written just before are not missed on a lagging replica
+		ReadConsistency.begin(null, true);
+		try {
+			count = QueryExecutor.forEach("SELECT company_name FROM companies", NAME, name -> {
+				if (name != null) {
+					next.put(normalize(name));
+				}
+			});
+		} catch (SQLException | RuntimeException e) {
+			synchronized (LOCK) {
+				pending = null;
+			}
+			FAILURES.incrementAndGet();
+			LOGGER.log(Level.SEVERE, "Error building the company name filter, checks query the database", e);
+			return;
+		} finally {
+			ReadConsistency.end();
+		}
+		synchronized (LOCK) {
+			for (String name : pending) {
+				next.put(name);
+			}
+			pending = null;
+			lastCount = count;
+			if (generation != startGeneration) {
+				// a remote change arrived during the pass; the requested rebuild reads it
+				return;
+			}
+			filter = next;
+			removedSinceBuild = 0;
+		}
+		BUILDS.incrementAndGet();
+		LOGGER.log(Level.INFO, "Company name filter built with {0} names", count);
+		if (count > expected) {
+			requestRebuild();
+		}
+	}
+}
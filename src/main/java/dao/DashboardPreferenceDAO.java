@@ -2,48 +2,53 @@ package dao;
 
 
 import model.*;
+import utils.BatchInserter;
+import utils.BatchResult;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
 
 public class DashboardPreferenceDAO {
 
+	private static final String UPSERT_SQL = "INSERT INTO dashboard_preferences (user_id, preference_type, preference_value) VALUES (?, ?, ?)"
+	        + " ON CONFLICT (user_id, preference_type) DO UPDATE SET preference_value = EXCLUDED.preference_value";
 	
 	
 	/**
 	 * Retrieves all dashboard preferences associated with a specific user.
 	 * Used in sections where user-specific dashboard settings need to be fetched to set up the user interface according to stored preferences.
 	 *
+	 * Changes still held by the write-behind buffer (see {@link DashboardPreferenceWriteBehind}) take precedence over the stored
+	 * values; preferences that only exist in the buffer are returned with an id of 0.
+	 *
 	 * @param userId The unique identifier of the user whose dashboard preferences are to be retrieved.
 	 * @return List<DashboardPreference> A list of DashboardPreference objects containing the preferences of the specified user.
 	 */
 	public List<DashboardPreference> fetchDashboardPreferencesByUserId(int userId) {
-	    List<DashboardPreference> preferences = new ArrayList<>();
-	    Connection conn = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
-	    try {
-	        conn = DatabaseUtility.connect();
-	        String sql = "SELECT * FROM dashboard_preferences WHERE user_id = ?";
-	        pstmt = conn.prepareStatement(sql);
-	        pstmt.setInt(1, userId);
-	        rs = pstmt.executeQuery();
-	        while (rs.next()) {
-	            DashboardPreference preference = new DashboardPreference();
-	            preference.setId(rs.getInt("id"));
-	            preference.setUserId(rs.getInt("user_id"));
-	            preference.setPreferenceType(rs.getString("preference_type"));
-	            preference.setPreferenceValue(rs.getString("preference_value"));
-	            preferences.add(preference);
+	    List<DashboardPreference> preferences = fetchStoredDashboardPreferences(userId);
+	    for (DashboardPreference pending : DashboardPreferenceWriteBehind.getPending(userId)) {
+	        boolean replaced = false;
+	        for (DashboardPreference preference : preferences) {
+	            if (Objects.equals(preference.getPreferenceType(), pending.getPreferenceType())) {
+	                preference.setPreferenceValue(pending.getPreferenceValue());
+	                replaced = true;
+	            }
 	        }
+	        if (!replaced) {
+	            preferences.add(new DashboardPreference(0, userId, pending.getPreferenceType(), pending.getPreferenceValue()));
+	        }
+	    }
+	    return preferences;
+	}
+	
+	private List<DashboardPreference> fetchStoredDashboardPreferences(int userId) {
+	    try {
+	        return QueryExecutor.query("SELECT * FROM dashboard_preferences WHERE user_id = ?", RowMappers.DASHBOARD_PREFERENCE, userId);
 	    } catch (SQLException e) {
 	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error fetching dashboard preferences by user ID", e);
-	    } finally {
-	        if (rs != null) try { rs.close(); } catch (SQLException e) { /* ignored */ }
-	        if (pstmt != null) try { pstmt.close(); } catch (SQLException e) { /* ignored */ }
-	        DatabaseUtility.disconnect(conn);
+	        return new ArrayList<>();
 	    }
-	    return preferences;
 	}
 	
 	/**
@@ -52,6 +57,8 @@ public class DashboardPreferenceDAO {
 	     * @return boolean True if the update was successful, false otherwise.
 	     */
 	    public boolean updateDashboardPreference(DashboardPreference dashboardPreference) {
+	        discardPending(dashboardPreference.getId());
+	        DashboardPreferenceWriteBehind.discard(dashboardPreference.getUserId(), dashboardPreference.getPreferenceType());
 	        Connection conn = null;
 	        PreparedStatement pstmt = null;
 	        boolean updateSuccess = false;
@@ -87,6 +94,7 @@ public class DashboardPreferenceDAO {
 	 * @param dashboardPreference The DashboardPreference object to be created and stored in the database, including user_id, preference_type, and preference_value.
 	 */
 	public void createDashboardPreference(DashboardPreference dashboardPreference) {
+	    DashboardPreferenceWriteBehind.discard(dashboardPreference.getUserId(), dashboardPreference.getPreferenceType());
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
 	    try {
@@ -112,6 +120,102 @@ public class DashboardPreferenceDAO {
 	}
 	
 	
+	/**
+	 * Creates or replaces the preference of a user for a preference type in one statement, keyed on the unique
+	 * (user_id, preference_type) index, so the UI does not need to read the preference first to choose between
+	 * create and update. The id of the stored row is set on the given object.
+	 *
+	 * @param dashboardPreference The preference to store; its id is ignored.
+	 * @return boolean True if the preference was stored, false otherwise.
+	 */
+	public boolean upsertDashboardPreference(DashboardPreference dashboardPreference) {
+	    DashboardPreferenceWriteBehind.discard(dashboardPreference.getUserId(), dashboardPreference.getPreferenceType());
+	    String sql = UPSERT_SQL + " RETURNING id";
+	    try (Connection conn = DatabaseUtility.connect();
+	            PreparedStatement pstmt = conn.prepareStatement(sql)) {
+	        bindUpsert(pstmt, dashboardPreference);
+	        try (ResultSet rs = pstmt.executeQuery()) {
+	            if (rs.next()) {
+	                dashboardPreference.setId(rs.getInt(1));
+	                return true;
+	            }
+	            return false;
+	        }
+	    } catch (SQLException | RuntimeException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error upserting dashboard preference", e);
+	        return false;
+	    }
+	}
+	
+	
+	/**
+	 * Creates or replaces many preferences with batched upserts, see {@link #upsertDashboardPreference(DashboardPreference)}.
+	 * When the list holds several preferences of the same user and type, the last one wins.
+	 *
+	 * @param dashboardPreferences The preferences to store; the ids of the stored rows are set on them.
+	 * @return BatchResult the id or the failure of every distinct preference, in order of first appearance.
+	 */
+	public BatchResult upsertDashboardPreferences(List<DashboardPreference> dashboardPreferences) {
+	    // one statement must not update the same row twice
+	    Map<List<Object>, DashboardPreference> latest = new LinkedHashMap<>();
+	    for (DashboardPreference preference : dashboardPreferences) {
+	        latest.put(Arrays.asList(preference.getUserId(), preference.getPreferenceType()), preference);
+	    }
+	    List<DashboardPreference> rows = new ArrayList<>(latest.values());
+	    BatchResult result = BatchInserter.insert(UPSERT_SQL, rows, this::bindUpsert);
+	    for (int i = 0; i < rows.size(); i++) {
+	        if (result.getId(i) > 0) {
+	            rows.get(i).setId(result.getId(i));
+	        }
+	    }
+	    if (!result.isSuccessful()) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "Bulk dashboard preference upsert incomplete: " + result);
+	    }
+	    return result;
+	}
+	
+	
+	/**
+	 * Stores a preference change the cheapest configured way: through the write-behind buffer when
+	 * {@code preferences.writeBehind.enabled} is set, otherwise with an immediate upsert. Buffered changes are
+	 * written within {@code preferences.writeBehind.flushIntervalMs} and are not given an id.
+	 *
+	 * @param dashboardPreference The preference to store.
+	 * @return boolean True if the change was buffered or stored, false otherwise.
+	 */
+	public boolean saveDashboardPreference(DashboardPreference dashboardPreference) {
+	    if (DashboardPreferenceWriteBehind.save(dashboardPreference)) {
+	        return true;
+	    }
+	    return upsertDashboardPreference(dashboardPreference);
+	}
+	
+	/**
+	 * Drops the change buffered for the stored preference with the given id, so it cannot land after a direct write
+	 * of that row.
+	 */
+	private void discardPending(int dashboardPreferenceId) {
+	    if (!DashboardPreferenceWriteBehind.isEnabled()) {
+	        return;
+	    }
+	    try {
+	        DashboardPreference stored = QueryExecutor.queryOne("SELECT * FROM dashboard_preferences WHERE id = ?",
+	                RowMappers.DASHBOARD_PREFERENCE, dashboardPreferenceId);
+	        if (stored != null) {
+	            DashboardPreferenceWriteBehind.discard(stored.getUserId(), stored.getPreferenceType());
+	        }
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "Error reading dashboard preference " + dashboardPreferenceId, e);
+	    }
+	}
+	
+	private void bindUpsert(PreparedStatement pstmt, DashboardPreference dashboardPreference) throws SQLException {
+	    pstmt.setInt(1, dashboardPreference.getUserId());
+	    pstmt.setString(2, dashboardPreference.getPreferenceType());
+	    pstmt.setString(3, dashboardPreference.getPreferenceValue());
+	}
+	
+	
 	/**
 	 * Deletes a specific dashboard preference record from the database.
 	 * This method is used when a user decides to remove some of their stored dashboard preferences.
@@ -120,6 +224,7 @@ public class DashboardPreferenceDAO {
 	 * @return boolean indicating success or failure of the operation.
 	 */
 	public boolean deleteDashboardPreference(int dashboardPreferenceId) {
+	    discardPending(dashboardPreferenceId);
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
 	    boolean success = false;
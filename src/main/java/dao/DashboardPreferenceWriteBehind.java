@@ -0,0 +1,206 @@
+package dao;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+import model.DashboardPreference;
+import utils.ApplicationConfig;
+import utils.BatchResult;
+import utils.WriteBehindBuffer;
+
+/**
+ * Write-behind buffer of dashboard preference changes.
+ *
+ * <p>
+ * When {@code preferences.writeBehind.enabled} is set, preference changes are
+ * kept in memory per user and preference type and upserted in batches every
+ * {@code preferences.writeBehind.flushIntervalMs} (default 1000), or once
+ * {@code preferences.writeBehind.maxPending} (default 1000) changes are
+ * pending. Rapid changes to the same preference are coalesced into one
+ * write. A batch that cannot be written at all, e.g. because the database is
+ * down, is retried on the next flush; rows rejected individually are logged
+ * and dropped.
+ * </p>
+ *
+ * <p>
+ * Buffered changes are visible to
+ * {@link DashboardPreferenceDAO#fetchDashboardPreferencesByUserId(int)} of
+ * the same JVM before they are written. They are lost if the JVM dies between
+ * two flushes, which is acceptable for UI preferences only.
+ * </p>
+ *
+ * <p>
+ * The DAO writes that bypass the buffer - create, update, delete and the
+ * immediate upsert - {@link #discard(int, String) discard} the pending change
+ * of the preference first, so an older buffered value can neither override
+ * them nor recreate a deleted row.
+ * </p>
+ */
+public final class DashboardPreferenceWriteBehind {
+
+	private static final Logger LOGGER = Logger.getLogger(DashboardPreferenceWriteBehind.class.getName());
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("preferences.writeBehind.enabled", false);
+
+	private static volatile WriteBehindBuffer<PreferenceKey, DashboardPreference> buffer;
+
+	private DashboardPreferenceWriteBehind() {
+	}
+
+	/**
+	 * @return whether preference changes are buffered
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Buffers a preference change, replacing a pending change of the same user
+	 * and preference type.
+	 *
+	 * @param preference the preference to upsert; its id is not used
+	 * @return false if write-behind is disabled or shut down and the change was
+	 *         not buffered
+	 */
+	public static boolean save(DashboardPreference preference) {
+		if (!ENABLED) {
+			return false;
+		}
+		WriteBehindBuffer<PreferenceKey, DashboardPreference> current = buffer();
+		return current != null && current.put(PreferenceKey.of(preference), copy(preference));
+	}
+
+	/**
+	 * Drops the buffered change of a preference that is about to be written
+	 * directly, see {@link WriteBehindBuffer#remove(Object)}.
+	 *
+	 * @param userId         the user
+	 * @param preferenceType the preference type
+	 * @return true if a change was pending
+	 */
+	public static boolean discard(int userId, String preferenceType) {
+		WriteBehindBuffer<PreferenceKey, DashboardPreference> current = buffer;
+		return current != null && current.remove(new PreferenceKey(userId, preferenceType)) != null;
+	}
+
+	/**
+	 * Returns the buffered changes of a user that are not written yet.
+	 *
+	 * @param userId the user
+	 * @return the pending preferences, at most one per preference type
+	 */
+	public static List<DashboardPreference> getPending(int userId) {
+		WriteBehindBuffer<PreferenceKey, DashboardPreference> current = buffer;
+		if (current == null) {
+			return Collections.emptyList();
+		}
+		return current.getPending(key -> key.userId == userId);
+	}
+
+	/**
+	 * Writes the buffered changes now.
+	 *
+	 * @return true if nothing was pending or all changes were written
+	 */
+	public static boolean flush() {
+		WriteBehindBuffer<PreferenceKey, DashboardPreference> current = buffer;
+		return current == null || current.flush();
+	}
+
+	/**
+	 * Returns the counters of the buffer.
+	 *
+	 * @return the counters, or {@code enabled: false}
+	 */
+	public static JSONObject toJson() {
+		WriteBehindBuffer<PreferenceKey, DashboardPreference> current = buffer;
+		JSONObject json = current == null ? new JSONObject() : current.toJson();
+		json.put("enabled", ENABLED);
+		return json;
+	}
+
+	/**
+	 * Flushes the buffered changes and stops the flush thread. Must run before
+	 * the connection pool is shut down.
+	 */
+	public static synchronized void shutdown() {
+		WriteBehindBuffer<PreferenceKey, DashboardPreference> current = buffer;
+		buffer = null;
+		if (current != null) {
+			current.close();
+		}
+	}
+
+	private static WriteBehindBuffer<PreferenceKey, DashboardPreference> buffer() {
+		WriteBehindBuffer<PreferenceKey, DashboardPreference> current = buffer;
+		if (current == null) {
+			synchronized (DashboardPreferenceWriteBehind.class) {
+				current = buffer;
+				if (current == null) {
+					current = new WriteBehindBuffer<>("dashboard-preferences",
+							ApplicationConfig.getLong("preferences.writeBehind.flushIntervalMs", 1000),
+							ApplicationConfig.getInt("preferences.writeBehind.maxPending", 1000),
+							DashboardPreferenceWriteBehind::write);
+					buffer = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private static boolean write(List<DashboardPreference> preferences) {
+		BatchResult result = new DashboardPreferenceDAO().upsertDashboardPreferences(preferences);
+		if (result.getInsertedCount() == 0) {
+			return false; // nothing written, retry the whole batch
+		}
+		if (!result.isSuccessful()) {
+			LOGGER.log(Level.WARNING, "Dropped buffered dashboard preferences: " + result);
+		}
+		return true;
+	}
+
+	private static DashboardPreference copy(DashboardPreference preference) {
+		return new DashboardPreference(0, preference.getUserId(), preference.getPreferenceType(),
+				preference.getPreferenceValue());
+	}
+
+	/**
+	 * The unique key of {@code dashboard_preferences}.
+	 */
+	private static final class PreferenceKey {
+
+		private final int userId;
+		private final String preferenceType;
+
+		private PreferenceKey(int userId, String preferenceType) {
+			this.userId = userId;
+			this.preferenceType = preferenceType;
+		}
+
+		private static PreferenceKey of(DashboardPreference preference) {
+			return new PreferenceKey(preference.getUserId(), preference.getPreferenceType());
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof PreferenceKey)) {
+				return false;
+			}
+			PreferenceKey key = (PreferenceKey) other;
+			return userId == key.userId && Objects.equals(preferenceType, key.preferenceType);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * userId + Objects.hashCode(preferenceType);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package dao;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import org.json.JSONObject;
+
+import model.Action;
+import model.ManufacturingFacility;
+import model.ObjectRelationship;
+import model.ObjectType;
+import model.UseCase;
+import utils.ApplicationConfig;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.TinyLfuCache;
+import utils.UnitOfWork;
+
+/**
+ * Caches the rows returned by the by-id lookups of the DAOs in a
+ * {@link TinyLfuCache}, one cache per entity.
+ *
+ * <p>
+ * Each cache is invalidated by the {@link ChangeEvent}s its table publishes:
+ * an update or delete of a row drops that row, an update or delete of unknown
+ * rows and a resync of {@link utils.ClusterChangeNotifier} drop the whole
+ * cache, and so does a delete of an object type for the relationships, which
+ * it may cascade to. Entries expire {@code cache.entity.ttlMs} (default 60000) after they were loaded,
+ * which also bounds how stale a row read from a lagging replica can be. The
+ * caches hold private copies, so callers may modify what they get.
+ * </p>
+ *
+ * <p>
+ * Ontology lookups are served by the {@link OntologyCache} snapshot when it is
+ * enabled; these caches then only serve the reads made while it cannot be
+ * loaded. Reads inside a {@link UnitOfWork} bypass the cache. Each entity is
+ * switched with {@code cache.entity.<name>.enabled} and sized with
+ * {@code cache.entity.<name>.maximumSize}, defaulting to
+ * {@code cache.entity.maximumSize} (10000).
+ * </p>
+ *
+ * @param <T> the entity type
+ */
+public final class EntityCache<T> {
+
+	private static final int DEFAULT_MAXIMUM_SIZE = ApplicationConfig.getInt("cache.entity.maximumSize", 10000);
+	private static final long TTL_MS = ApplicationConfig.getLong("cache.entity.ttlMs", 60000);
+
+	private static final List<EntityCache<?>> CACHES = new CopyOnWriteArrayList<>();
+
+	/** Object types by id, invalidated by {@code object_types} changes. */
+	public static final EntityCache<ObjectType> OBJECT_TYPES = new EntityCache<>("objectType", "object_types", OntologySnapshot::copy);
+
+	/** Actions by id, invalidated by {@code actions} changes. */
+	public static final EntityCache<Action> ACTIONS = new EntityCache<>("action", "actions", OntologySnapshot::copy);
+
+	/** Use cases by id, invalidated by {@code use_cases} changes. */
+	public static final EntityCache<UseCase> USE_CASES = new EntityCache<>("useCase", "use_cases", EntityCache::copy);
+
+	/** Object relationships by id, invalidated by {@code object_relationships} changes. */
+	public static final EntityCache<ObjectRelationship> OBJECT_RELATIONSHIPS = new EntityCache<>("objectRelationship",
+			"object_relationships", OntologySnapshot::copy);
+
+	static {
+		ChangeEventBus.subscribe(EntityCache::onChange);
+	}
+
+	private final String name;
+	private final String table;
+	private final UnaryOperator<T> copier;
+	private final boolean enabled;
+	private final TinyLfuCache<Integer, T> cache;
+
+	private EntityCache(String name, String table, UnaryOperator<T> copier) {
+		this.name = name;
+		this.table = table;
+		this.copier = copier;
+		this.enabled = ApplicationConfig.getBoolean("cache.entity." + name + ".enabled", true);
+		this.cache = new TinyLfuCache<>(ApplicationConfig.getInt("cache.entity." + name + ".maximumSize", DEFAULT_MAXIMUM_SIZE), TTL_MS);
+		CACHES.add(this);
+	}
+
+	/**
+	 * Returns the entity with the given id, loading it on a miss.
+	 *
+	 * @param id     the id
+	 * @param loader reads the entity from the database; returns null when it
+	 *               does not exist or cannot be read, which is not cached
+	 * @return a copy of the entity, or null
+	 */
+	public T get(int id, IntFunction<T> loader) {
+		if (!enabled || UnitOfWork.isActive()) {
+			return loader.apply(id);
+		}
+		return copier.apply(cache.get(id, key -> loader.apply(key)));
+	}
+
+	/**
+	 * Drops the entity with the given id.
+	 *
+	 * @param id the id
+	 */
+	public void invalidate(int id) {
+		cache.invalidate(id);
+	}
+
+	/**
+	 * Drops all entities.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Returns the state of every entity cache.
+	 *
+	 * @return per entity, whether it is enabled and its counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("ttlMs", TTL_MS);
+		for (EntityCache<?> entityCache : CACHES) {
+			JSONObject stats = entityCache.cache.toJson();
+			stats.put("enabled", entityCache.enabled);
+			json.put(entityCache.name, stats);
+		}
+		return json;
+	}
+
+	private static void onChange(ChangeEvent event) {
+		if ("object_types".equals(event.getTable()) && event.getType() == ChangeEvent.Type.DELETED) {
+			OBJECT_RELATIONSHIPS.invalidateAll();
+		}
+		for (EntityCache<?> entityCache : CACHES) {
+			if (event.isAllTables()) {
+				entityCache.invalidateAll();
+			} else if (!entityCache.table.equals(event.getTable()) || event.getType() == ChangeEvent.Type.CREATED) {
+				continue; // misses are not cached, so new rows cannot be stale
+			} else if (event.isWholeTable()) {
+				entityCache.invalidateAll();
+			} else {
+				entityCache.invalidate(event.getId());
+			}
+		}
+	}
+
+	private static UseCase copy(UseCase useCase) {
+		if (useCase == null) {
+			return null;
+		}
+		UseCase copy = new UseCase();
+		copy.setId(useCase.getId());
+		copy.setUseCaseDescription(useCase.getUseCaseDescription());
+		copy.setFacilityType(useCase.getFacilityType());
+		copy.setComplianceStatus(useCase.getComplianceStatus());
+		copy.setStatus(useCase.getStatus());
+		if (useCase.getFacility() != null) {
+			ManufacturingFacility facility = new ManufacturingFacility();
+			facility.setId(useCase.getFacility().getId());
+			copy.setFacility(facility);
+		}
+		return copy;
+	}
+}
@@ -11,7 +11,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import utils.DatabaseUtility;import java.sql.Date;
+import utils.DatabaseUtility;
+import utils.QueryExecutor;
+import java.sql.Date;
 import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -70,46 +72,13 @@ public class FacilityDocumentDAO {
 	 * @return A list of FacilityDocument objects.
 	 */
 	public List<FacilityDocument> fetchFacilityDocuments(int facilityId) {
-	    List<FacilityDocument> documents = new ArrayList<>();
 	    String query = "SELECT id, document_type, document_path, issue_date, expiry_date, document_name FROM facility_documents WHERE fk_facility_id = ?";
-	    Connection connection = null;
-	    PreparedStatement preparedStatement = null;
-	    ResultSet resultSet = null;
 	    try {
-	        connection = DatabaseUtility.connect();
-	        preparedStatement = connection.prepareStatement(query);
-	        preparedStatement.setInt(1, facilityId);
-	        resultSet = preparedStatement.executeQuery();
-	        while (resultSet.next()) {
-	            FacilityDocument document = new FacilityDocument();
-	            document.setId(resultSet.getInt("id"));
-	            document.setDocumentType(FacilityDocument.DocumentType.valueOf(resultSet.getString("document_type")));
-	            document.setDocumentPath(resultSet.getString("document_path"));
-	            document.setIssueDate(resultSet.getDate("issue_date"));
-	            document.setExpiryDate(resultSet.getDate("expiry_date"));
-	            document.setDocumentName(resultSet.getString("document_name"));
-	            documents.add(document);
-	        }
+	        return QueryExecutor.query(query, RowMappers.FACILITY_DOCUMENT, facilityId);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching facility documents", e);
-	    } finally {
-	        DatabaseUtility.disconnect(connection);
-	        if (preparedStatement != null) {
-	            try {
-	                preparedStatement.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error closing prepared statement", e);
-	            }
-	        }
-	        if (resultSet != null) {
-	            try {
-	                resultSet.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error closing result set", e);
-	            }
-	        }
+	        return new ArrayList<>();
 	    }
-	    return documents;
 	}
 	
 	/**
@@ -0,0 +1,198 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+
+import model.ObjectAttribute;
+import utils.FilterExpression;
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Literal;
+import utils.FilterExpression.Operator;
+import utils.FilterParser;
+
+/**
+ * Compiles {@code ObjectFilter.filterCriteria} into a {@link FilterPlan}: parses
+ * it with {@link FilterParser} and checks every comparison against the
+ * {@link ObjectAttribute}s of the filter's object type.
+ *
+ * <p>
+ * Attribute names match exactly, or ignoring case when that is unambiguous.
+ * Literals are converted to the attribute's data type: INTEGER takes whole
+ * numbers, FLOAT any number, VARCHAR, TEXT and ENUM strings, DATE strings
+ * like {@code '2024-05-31'} and DATETIME strings like
+ * {@code '2024-05-31T08:00:00'} (or a date, meaning its start). LIKE applies to
+ * VARCHAR and TEXT only, and ENUM values can only be tested for equality.
+ * All problems of an expression are reported together in one
+ * {@link IllegalArgumentException}.
+ * </p>
+ */
+public final class FilterCompiler {
+
+	private FilterCompiler() {
+	}
+
+	/**
+	 * Compiles a filter expression.
+	 *
+	 * @param criteria     the expression
+	 * @param objectTypeId the object type the filter belongs to
+	 * @param attributes   the attributes of that object type
+	 * @return the compiled plan
+	 * @throws IllegalArgumentException if the expression is not valid or does
+	 *                                  not fit the attributes
+	 */
+	public static FilterPlan compile(String criteria, int objectTypeId, List<ObjectAttribute> attributes) {
+		FilterExpression expression = FilterParser.parse(criteria);
+		IdentityHashMap<Comparison, FilterPlan.Predicate> predicates = new IdentityHashMap<>();
+		List<ObjectAttribute> referenced = new ArrayList<>();
+		List<String> errors = new ArrayList<>();
+		expression.accept(new FilterExpression.Visitor<Void>() {
+
+			@Override
+			public Void visitAnd(FilterExpression.And and) {
+				and.getOperands().forEach(operand -> operand.accept(this));
+				return null;
+			}
+
+			@Override
+			public Void visitOr(FilterExpression.Or or) {
+				or.getOperands().forEach(operand -> operand.accept(this));
+				return null;
+			}
+
+			@Override
+			public Void visitNot(FilterExpression.Not not) {
+				return not.getOperand().accept(this);
+			}
+
+			@Override
+			public Void visitComparison(Comparison comparison) {
+				FilterPlan.Predicate predicate = bind(comparison, attributes, errors);
+				if (predicate != null) {
+					predicates.put(comparison, predicate);
+					if (!referenced.contains(predicate.getAttribute())) {
+						referenced.add(predicate.getAttribute());
+					}
+				}
+				return null;
+			}
+		});
+		if (!errors.isEmpty()) {
+			throw new IllegalArgumentException("Invalid filter for object type " + objectTypeId + ": " + String.join("; ", errors));
+		}
+		return new FilterPlan(objectTypeId, criteria, expression, predicates, referenced);
+	}
+
+	private static FilterPlan.Predicate bind(Comparison comparison, List<ObjectAttribute> attributes, List<String> errors) {
+		ObjectAttribute attribute = resolve(comparison.getAttribute(), attributes, errors);
+		if (attribute == null) {
+			return null;
+		}
+		ObjectAttribute.DataTypes type = attribute.getDataType();
+		Operator operator = comparison.getOperator();
+		String name = attribute.getAttributeName();
+		if ((operator == Operator.LIKE || operator == Operator.NOT_LIKE)
+				&& type != ObjectAttribute.DataTypes.VARCHAR && type != ObjectAttribute.DataTypes.TEXT) {
+			errors.add(operator.getSymbol() + " needs a text attribute, '" + name + "' is " + type);
+			return null;
+		}
+		if (operator.isOrdering() && type == ObjectAttribute.DataTypes.ENUM) {
+			errors.add(operator.getSymbol() + " cannot order the ENUM attribute '" + name + "'");
+			return null;
+		}
+		List<Object> values = new ArrayList<>();
+		for (Literal literal : comparison.getValues()) {
+			Object value = convert(literal, attribute, errors);
+			if (value == null) {
+				return null;
+			}
+			values.add(value);
+		}
+		return new FilterPlan.Predicate(attribute, operator, values);
+	}
+
+	private static ObjectAttribute resolve(String name, List<ObjectAttribute> attributes, List<String> errors) {
+		ObjectAttribute match = null;
+		int matches = 0;
+		for (ObjectAttribute attribute : attributes) {
+			if (name.equals(attribute.getAttributeName())) {
+				return attribute;
+			}
+			if (name.equalsIgnoreCase(attribute.getAttributeName())) {
+				match = attribute;
+				matches++;
+			}
+		}
+		if (matches == 1) {
+			return match;
+		}
+		errors.add(matches == 0 ? "unknown attribute '" + name + "'" : "attribute '" + name + "' is ambiguous, write it in the exact case");
+		return null;
+	}
+
+	private static Object convert(Literal literal, ObjectAttribute attribute, List<String> errors) {
+		ObjectAttribute.DataTypes type = attribute.getDataType();
+		String text = literal.getText();
+		if (type == null) {
+			errors.add("'" + attribute.getAttributeName() + "' has no data type");
+			return null;
+		}
+		String problem;
+		switch (type) {
+		case INTEGER:
+			if (literal.getKind() == Literal.Kind.NUMBER) {
+				try {
+					return new BigDecimal(text).longValueExact();
+				} catch (ArithmeticException e) {
+					// not a whole number in range
+				}
+			}
+			problem = "expects a whole number";
+			break;
+		case FLOAT:
+			if (literal.getKind() == Literal.Kind.NUMBER) {
+				return new BigDecimal(text);
+			}
+			problem = "expects a number";
+			break;
+		case DATE:
+			if (literal.getKind() == Literal.Kind.STRING) {
+				try {
+					return Date.valueOf(LocalDate.parse(text));
+				} catch (DateTimeParseException e) {
+					// reported below
+				}
+			}
+			problem = "expects a date such as '2024-05-31'";
+			break;
+		case DATETIME:
+			if (literal.getKind() == Literal.Kind.STRING) {
+				try {
+					if (text.length() == 10) {
+						return Timestamp.valueOf(LocalDate.parse(text).atStartOfDay());
+					}
+					return Timestamp.valueOf(LocalDateTime.parse(text.replace(' ', 'T')));
+				} catch (DateTimeParseException e) {
+					// reported below
+				}
+			}
+			problem = "expects a date and time such as '2024-05-31T08:00:00'";
+			break;
+		default:
+			if (literal.getKind() == Literal.Kind.STRING) {
+				return text;
+			}
+			problem = "expects a quoted string";
+		}
+		errors.add("'" + attribute.getAttributeName() + "' (" + type.name().toLowerCase(Locale.ROOT) + ") " + problem + ", not " + literal);
+		return null;
+	}
+}
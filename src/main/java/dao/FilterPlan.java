@@ -0,0 +1,236 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.ObjectAttribute;
+import utils.FilterExpression;
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Operator;
+
+/**
+ * A filter expression compiled by {@link FilterCompiler}: its syntax tree with
+ * every comparison resolved to an attribute of the object type and its values
+ * converted to the Java type of that attribute.
+ *
+ * <p>
+ * {@link #toSql(FilterTarget)} renders the plan as a parameterized
+ * {@code WHERE} condition for a target table; the rendering is remembered per
+ * target. Plans are immutable and shared between threads by the
+ * {@link FilterPlanCache}.
+ * </p>
+ */
+public final class FilterPlan {
+
+	private static final int MAX_REMEMBERED_TARGETS = 16;
+
+	/**
+	 * A comparison with its attribute and typed values.
+	 */
+	public static final class Predicate {
+
+		private final ObjectAttribute attribute;
+		private final Operator operator;
+		private final List<Object> values;
+
+		Predicate(ObjectAttribute attribute, Operator operator, List<Object> values) {
+			this.attribute = attribute;
+			this.operator = operator;
+			this.values = Collections.unmodifiableList(values);
+		}
+
+		public ObjectAttribute getAttribute() {
+			return attribute;
+		}
+
+		public Operator getOperator() {
+			return operator;
+		}
+
+		/**
+		 * @return the values as {@link Long} (INTEGER), {@link java.math.BigDecimal}
+		 *         (FLOAT), {@link String} (VARCHAR, TEXT, ENUM),
+		 *         {@link java.sql.Date} (DATE) or {@link java.sql.Timestamp}
+		 *         (DATETIME)
+		 */
+		public List<Object> getValues() {
+			return values;
+		}
+	}
+
+	/**
+	 * A parameterized SQL condition.
+	 */
+	public static final class Sql {
+
+		private final String where;
+		private final List<Object> parameters;
+
+		Sql(String where, List<Object> parameters) {
+			this.where = where;
+			this.parameters = Collections.unmodifiableList(parameters);
+		}
+
+		/**
+		 * @return the condition, with a {@code ?} per parameter
+		 */
+		public String getWhere() {
+			return where;
+		}
+
+		public List<Object> getParameters() {
+			return parameters;
+		}
+
+		@Override
+		public String toString() {
+			return where + " " + parameters;
+		}
+	}
+
+	private final int objectTypeId;
+	private final String criteria;
+	private final FilterExpression expression;
+	private final Map<Comparison, Predicate> predicates;
+	private final List<ObjectAttribute> attributes;
+	private final Map<FilterTarget, Sql> sqlByTarget = new ConcurrentHashMap<>();
+
+	FilterPlan(int objectTypeId, String criteria, FilterExpression expression, IdentityHashMap<Comparison, Predicate> predicates,
+			List<ObjectAttribute> attributes) {
+		this.objectTypeId = objectTypeId;
+		this.criteria = criteria;
+		this.expression = expression;
+		this.predicates = predicates;
+		this.attributes = Collections.unmodifiableList(attributes);
+	}
+
+	public int getObjectTypeId() {
+		return objectTypeId;
+	}
+
+	/**
+	 * @return the expression as it was written
+	 */
+	public String getCriteria() {
+		return criteria;
+	}
+
+	public FilterExpression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * @param comparison a comparison of {@link #getExpression()}
+	 * @return its attribute and typed values
+	 */
+	public Predicate getPredicate(Comparison comparison) {
+		return predicates.get(comparison);
+	}
+
+	/**
+	 * @return the attributes the filter reads, in the order the criteria first mention them
+	 */
+	public List<ObjectAttribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * Renders the plan as a condition on a target table.
+	 *
+	 * @param target the table holding the objects
+	 * @return the condition and its parameters, restricted to the object type
+	 *         when the target has an object type column
+	 * @throws IllegalArgumentException if an attribute has no column in the
+	 *                                  target
+	 */
+	public Sql toSql(FilterTarget target) {
+		Sql sql = sqlByTarget.get(target);
+		if (sql == null) {
+			sql = render(target);
+			if (sqlByTarget.size() >= MAX_REMEMBERED_TARGETS) {
+				sqlByTarget.clear(); // targets are meant to be shared, not created per call
+			}
+			sqlByTarget.put(target, sql);
+		}
+		return sql;
+	}
+
+	private Sql render(FilterTarget target) {
+		StringBuilder where = new StringBuilder();
+		List<Object> parameters = new ArrayList<>();
+		if (target.getObjectTypeColumn() != null) {
+			where.append(target.getObjectTypeColumn()).append(" = ? AND ");
+			parameters.add(objectTypeId);
+		}
+		expression.accept(new FilterExpression.Visitor<Void>() {
+
+			@Override
+			public Void visitAnd(FilterExpression.And and) {
+				return junction(and.getOperands(), " AND ");
+			}
+
+			@Override
+			public Void visitOr(FilterExpression.Or or) {
+				return junction(or.getOperands(), " OR ");
+			}
+
+			@Override
+			public Void visitNot(FilterExpression.Not not) {
+				where.append("NOT (");
+				not.getOperand().accept(this);
+				where.append(')');
+				return null;
+			}
+
+			@Override
+			public Void visitComparison(Comparison comparison) {
+				Predicate predicate = predicates.get(comparison);
+				Operator operator = predicate.getOperator();
+				where.append(target.columnOf(predicate.getAttribute())).append(' ').append(operator.getSymbol());
+				List<Object> values = predicate.getValues();
+				switch (operator) {
+				case IS_NULL:
+				case IS_NOT_NULL:
+					break;
+				case BETWEEN:
+					where.append(" ? AND ?");
+					break;
+				case IN:
+				case NOT_IN:
+					where.append(" (");
+					for (int i = 0; i < values.size(); i++) {
+						where.append(i == 0 ? "?" : ", ?");
+					}
+					where.append(')');
+					break;
+				default:
+					where.append(" ?");
+				}
+				parameters.addAll(values);
+				return null;
+			}
+
+			private Void junction(List<FilterExpression> operands, String keyword) {
+				where.append('(');
+				for (int i = 0; i < operands.size(); i++) {
+					if (i > 0) {
+						where.append(keyword);
+					}
+					operands.get(i).accept(this);
+				}
+				where.append(')');
+				return null;
+			}
+		});
+		return new Sql(where.toString(), parameters);
+	}
+
+	@Override
+	public String toString() {
+		return "FilterPlan[objectType=" + objectTypeId + ", " + expression + "]";
+	}
+}
@@ -0,0 +1,114 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import model.ObjectFilter;
+import utils.ApplicationConfig;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.QueryExecutor;
+import utils.TinyLfuCache;
+import utils.UncheckedSQLException;
+
+/**
+ * Caches the {@link FilterPlan} of every saved {@link ObjectFilter} by filter
+ * id, so running a saved filter parses and validates its criteria once.
+ *
+ * <p>
+ * A plan depends on the criteria of its filter and on the attributes of the
+ * filter's object type. {@code object_filters} has no version column, so
+ * plans are keyed by filter id and dropped by the changes that would make
+ * them stale: an update or delete of a filter drops its plan, and any change to
+ * {@code object_attributes}, a deleted object type, a change to unknown filter
+ * rows and a resync of {@link utils.ClusterChangeNotifier} drop all plans.
+ * Filters are read from the primary, so a plan is never compiled from
+ * criteria older than the change that dropped it. Plans also expire after
+ * {@code filter.planCache.ttlMs} (default 300000). Invalid criteria are not
+ * cached. Sized with {@code filter.planCache.maximumSize} (default 1000) and
+ * switched with {@code filter.planCache.enabled}.
+ * </p>
+ */
+public final class FilterPlanCache {
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("filter.planCache.enabled", false);
+	private static final TinyLfuCache<Integer, FilterPlan> PLANS = new TinyLfuCache<>(
+			ApplicationConfig.getInt("filter.planCache.maximumSize", 1000), ApplicationConfig.getLong("filter.planCache.ttlMs", 300000));
+
+	static {
+		if (ENABLED) {
+			ChangeEventBus.subscribe(FilterPlanCache::onChange);
+		}
+	}
+
+	private FilterPlanCache() {
+	}
+
+	/**
+	 * Returns the plan of a saved filter, compiling it on a miss.
+	 *
+	 * @param filterId the filter id
+	 * @return the plan, or null when the filter does not exist
+	 * @throws SQLException             if the filter cannot be read
+	 * @throws IllegalArgumentException if its criteria are not valid
+	 */
+	public static FilterPlan get(int filterId) throws SQLException {
+		if (!ENABLED) {
+			return compile(filterId);
+		}
+		try {
+			return PLANS.get(filterId, id -> {
+				try {
+					return compile(id);
+				} catch (SQLException e) {
+					throw new UncheckedSQLException(e);
+				}
+			});
+		} catch (UncheckedSQLException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Drops all plans.
+	 */
+	public static void invalidateAll() {
+		PLANS.invalidateAll();
+	}
+
+	/**
+	 * Returns the state of the cache.
+	 *
+	 * @return whether it is enabled and its counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = PLANS.toJson();
+		json.put("enabled", ENABLED);
+		return json;
+	}
+
+	private static FilterPlan compile(int filterId) throws SQLException {
+		List<ObjectFilter> rows = QueryExecutor.queryPrimary("SELECT * FROM object_filters WHERE id = ?", RowMappers.OBJECT_FILTER, filterId);
+		if (rows.isEmpty()) {
+			return null;
+		}
+		ObjectFilter filter = rows.get(0);
+		int objectTypeId = filter.getFkObjectType().getId();
+		return FilterCompiler.compile(filter.getFilterCriteria(), objectTypeId, new ObjectAttributeDAO().getAttributeByObjectTypeId(objectTypeId));
+	}
+
+	private static void onChange(ChangeEvent event) {
+		if (event.isAllTables() || "object_attributes".equals(event.getTable())
+				|| ("object_types".equals(event.getTable()) && event.getType() == ChangeEvent.Type.DELETED)) {
+			PLANS.invalidateAll();
+		} else if ("object_filters".equals(event.getTable()) && event.getType() != ChangeEvent.Type.CREATED) {
+			if (event.isWholeTable()) {
+				PLANS.invalidateAll();
+			} else {
+				PLANS.invalidate(event.getId());
+			}
+		}
+	}
+}
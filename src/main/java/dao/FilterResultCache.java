@@ -0,0 +1,482 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+import model.ObjectAttribute;
+import utils.ApplicationConfig;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.FilterExpression;
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Operator;
+import utils.QueryExecutor;
+import utils.RoaringBitmap;
+import utils.TinyLfuCache;
+import utils.UncheckedSQLException;
+
+/**
+ * Caches the ids of the objects matching a filter, shared by every filter
+ * with the same criteria on the same target.
+ *
+ * <p>
+ * Entries are keyed by the canonical form of the compiled plan rather than
+ * by filter id or criteria text: attributes are written as their target
+ * columns, values in their typed form ({@code 2.50} and {@code 2.5} are one
+ * value), nested AND and OR are flattened with their operands sorted and
+ * duplicates dropped, IN lists are sorted, and NOT is pushed into the
+ * comparison it negates. Two filters that differ only in spelling, case of
+ * attribute names or operand order therefore share one entry. The ids are
+ * held as a {@link RoaringBitmap}.
+ * </p>
+ *
+ * <p>
+ * Every entry records what it depends on, and change events drop exactly the
+ * entries affected: an event on the target table drops the entries read from
+ * it (matched by table name, so {@code public.objects} follows events on
+ * {@code objects}), an update or delete of an attribute drops the entries reading it, a
+ * deleted object type drops its entries, and an update or delete of a saved
+ * filter drops the entries no other saved filter uses. Changes to the target
+ * table are only seen if the code writing it publishes them on the
+ * {@link ChangeEventBus}, so entries also expire after
+ * {@code filter.resultCache.ttlMs} (default 60000). Ids are read from the
+ * primary so an entry is never older than the change that dropped its
+ * predecessor. Sized with {@code filter.resultCache.maximumSize} (default
+ * 1000) and switched with {@code filter.resultCache.enabled}.
+ * </p>
+ */
+public final class FilterResultCache {
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("filter.resultCache.enabled", false);
+	private static final int MAXIMUM_SIZE = ApplicationConfig.getInt("filter.resultCache.maximumSize", 1000);
+	private static final TinyLfuCache<String, RoaringBitmap> RESULTS = new TinyLfuCache<>(MAXIMUM_SIZE,
+			ApplicationConfig.getLong("filter.resultCache.ttlMs", 60000));
+
+	/**
+	 * What one key depends on. Keys evicted from RESULTS stay tracked until a
+	 * dependency fires or the tracking is reset.
+	 */
+	private static final class Dependencies {
+
+		final String table;
+		final int objectTypeId;
+		final List<Integer> attributeIds = new ArrayList<>();
+		final Set<Integer> filterIds = new HashSet<>();
+
+		Dependencies(String table, int objectTypeId) {
+			this.table = table;
+			this.objectTypeId = objectTypeId;
+		}
+	}
+
+	/**
+	 * Reads the ids matching a query.
+	 */
+	interface Loader {
+
+		RoaringBitmap load(String query, List<Object> parameters) throws SQLException;
+	}
+
+	private static final Object LOCK = new Object();
+	private static final Map<String, Dependencies> DEPENDENCIES = new HashMap<>();
+	private static final Map<String, Set<String>> KEYS_BY_TABLE = new HashMap<>();
+	private static final Map<Integer, Set<String>> KEYS_BY_OBJECT_TYPE = new HashMap<>();
+	private static final Map<Integer, Set<String>> KEYS_BY_ATTRIBUTE = new HashMap<>();
+	private static final Map<Integer, Set<String>> KEYS_BY_FILTER = new HashMap<>();
+
+	private static final AtomicLong dependencyInvalidations = new AtomicLong();
+	private static final AtomicLong dependencyResets = new AtomicLong();
+
+	static {
+		if (ENABLED) {
+			ChangeEventBus.subscribe(FilterResultCache::onChange);
+		}
+	}
+
+	private FilterResultCache() {
+	}
+
+	/**
+	 * Returns the ids of the objects matching a saved filter.
+	 *
+	 * @param filterId the filter id
+	 * @param target   the table holding the objects
+	 * @return the ids, or null when the filter does not exist
+	 * @throws SQLException             if the filter or the objects cannot be
+	 *                                  read
+	 * @throws IllegalArgumentException if the criteria are not valid or do not
+	 *                                  fit the target
+	 */
+	public static RoaringBitmap get(int filterId, FilterTarget target) throws SQLException {
+		FilterPlan plan = FilterPlanCache.get(filterId);
+		if (plan == null) {
+			return null;
+		}
+		return get(plan, target, filterId);
+	}
+
+	/**
+	 * Returns the ids of the objects matching a compiled filter.
+	 *
+	 * @param plan   the filter
+	 * @param target the table holding the objects
+	 * @return the ids
+	 * @throws SQLException             if the objects cannot be read
+	 * @throws IllegalArgumentException if an attribute has no column in the
+	 *                                  target
+	 */
+	public static RoaringBitmap get(FilterPlan plan, FilterTarget target) throws SQLException {
+		return get(plan, target, 0);
+	}
+
+	private static RoaringBitmap get(FilterPlan plan, FilterTarget target, int filterId) throws SQLException {
+		return get(plan, target, filterId, FilterResultCache::load);
+	}
+
+	/**
+	 * @param filterId the saved filter the plan was compiled from, or 0
+	 * @param loader   reads the ids on a miss
+	 */
+	static RoaringBitmap get(FilterPlan plan, FilterTarget target, int filterId, Loader loader) throws SQLException {
+		FilterPlan.Sql sql = plan.toSql(target);
+		String query = "SELECT " + target.getIdColumn() + " FROM " + target.getTable() + " WHERE " + sql.getWhere();
+		if (!ENABLED) {
+			return loader.load(query, sql.getParameters());
+		}
+		String key = keyOf(plan, target);
+		RoaringBitmap ids;
+		try {
+			ids = RESULTS.get(key, k -> {
+				// registered before reading, so a change during the read keeps its result out of the cache
+				register(key, plan, target, filterId);
+				try {
+					return loader.load(query, sql.getParameters());
+				} catch (SQLException e) {
+					throw new UncheckedSQLException(e);
+				}
+			});
+		} catch (UncheckedSQLException e) {
+			throw e.getCause();
+		}
+		if (filterId > 0) {
+			register(key, plan, target, filterId);
+		}
+		return ids.copy();
+	}
+
+	/**
+	 * Returns the canonical form of a compiled filter on a target, which
+	 * identifies its results.
+	 *
+	 * @param plan   the filter
+	 * @param target the table holding the objects
+	 * @return the canonical form
+	 * @throws IllegalArgumentException if an attribute has no column in the
+	 *                                  target
+	 */
+	public static String keyOf(FilterPlan plan, FilterTarget target) {
+		return target.getTable() + "(" + target.getIdColumn()
+				+ (target.getObjectTypeColumn() == null ? "" : ", " + target.getObjectTypeColumn() + " = " + plan.getObjectTypeId()) + "): "
+				+ canonical(plan, plan.getExpression(), target, false);
+	}
+
+	/**
+	 * Drops all entries.
+	 */
+	public static void invalidateAll() {
+		synchronized (LOCK) {
+			clearDependencies();
+		}
+		RESULTS.invalidateAll();
+	}
+
+	/**
+	 * Returns the state of the cache.
+	 *
+	 * @return whether it is enabled, its counters and the tracked dependencies
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = RESULTS.toJson();
+		json.put("enabled", ENABLED);
+		synchronized (LOCK) {
+			json.put("trackedKeys", DEPENDENCIES.size());
+		}
+		json.put("dependencyInvalidations", dependencyInvalidations.get());
+		json.put("dependencyResets", dependencyResets.get());
+		return json;
+	}
+
+	private static RoaringBitmap load(String query, List<Object> parameters) throws SQLException {
+		RoaringBitmap ids = new RoaringBitmap();
+		QueryExecutor.forEachPrimary(query, columns -> rs -> rs.getInt(1), ids::add, parameters.toArray());
+		return ids;
+	}
+
+	private static void register(String key, FilterPlan plan, FilterTarget target, int filterId) {
+		synchronized (LOCK) {
+			Dependencies dependencies = DEPENDENCIES.get(key);
+			if (dependencies == null) {
+				if (DEPENDENCIES.size() >= MAXIMUM_SIZE * 4) {
+					// mostly keys evicted long ago; start over rather than track them forever
+					dependencyResets.incrementAndGet();
+					clearDependencies();
+					RESULTS.invalidateAll();
+				}
+				dependencies = new Dependencies(tableName(target.getTable()), plan.getObjectTypeId());
+				DEPENDENCIES.put(key, dependencies);
+				link(KEYS_BY_TABLE, dependencies.table, key);
+				link(KEYS_BY_OBJECT_TYPE, dependencies.objectTypeId, key);
+				for (ObjectAttribute attribute : plan.getAttributes()) {
+					dependencies.attributeIds.add(attribute.getId());
+					link(KEYS_BY_ATTRIBUTE, attribute.getId(), key);
+				}
+			}
+			if (filterId > 0 && dependencies.filterIds.add(filterId)) {
+				link(KEYS_BY_FILTER, filterId, key);
+			}
+		}
+	}
+
+	private static <D> void link(Map<D, Set<String>> keysByDependency, D dependency, String key) {
+		keysByDependency.computeIfAbsent(dependency, d -> new HashSet<>()).add(key);
+	}
+
+	private static <D> void unlink(Map<D, Set<String>> keysByDependency, D dependency, String key) {
+		Set<String> keys = keysByDependency.get(dependency);
+		if (keys != null && keys.remove(key) && keys.isEmpty()) {
+			keysByDependency.remove(dependency);
+		}
+	}
+
+	private static void untrack(String key) {
+		Dependencies dependencies = DEPENDENCIES.remove(key);
+		if (dependencies == null) {
+			return;
+		}
+		unlink(KEYS_BY_TABLE, dependencies.table, key);
+		unlink(KEYS_BY_OBJECT_TYPE, dependencies.objectTypeId, key);
+		for (Integer attributeId : dependencies.attributeIds) {
+			unlink(KEYS_BY_ATTRIBUTE, attributeId, key);
+		}
+		for (Integer filterId : dependencies.filterIds) {
+			unlink(KEYS_BY_FILTER, filterId, key);
+		}
+	}
+
+	private static void clearDependencies() {
+		DEPENDENCIES.clear();
+		KEYS_BY_TABLE.clear();
+		KEYS_BY_OBJECT_TYPE.clear();
+		KEYS_BY_ATTRIBUTE.clear();
+		KEYS_BY_FILTER.clear();
+	}
+
+	private static void onChange(ChangeEvent event) {
+		if (event.isAllTables()) {
+			invalidateAll();
+			return;
+		}
+		String table = event.getTable();
+		boolean wholeTable = event.isWholeTable();
+		Set<String> keys = new HashSet<>();
+		synchronized (LOCK) {
+			addAll(keys, KEYS_BY_TABLE, tableName(table));
+			if ("object_attributes".equals(table) && event.getType() != ChangeEvent.Type.CREATED) {
+				if (wholeTable) {
+					KEYS_BY_ATTRIBUTE.values().forEach(keys::addAll);
+				} else {
+					addAll(keys, KEYS_BY_ATTRIBUTE, event.getId());
+				}
+			} else if ("object_types".equals(table) && event.getType() == ChangeEvent.Type.DELETED) {
+				if (wholeTable) {
+					KEYS_BY_OBJECT_TYPE.values().forEach(keys::addAll);
+				} else {
+					addAll(keys, KEYS_BY_OBJECT_TYPE, event.getId());
+				}
+			} else if ("object_filters".equals(table) && event.getType() != ChangeEvent.Type.CREATED) {
+				// the results stay valid for the other filters with the same canonical form
+				List<Integer> filterIds = new ArrayList<>(wholeTable ? KEYS_BY_FILTER.keySet() : Collections.singleton(event.getId()));
+				for (Integer filterId : filterIds) {
+					Set<String> filterKeys = KEYS_BY_FILTER.remove(filterId);
+					if (filterKeys == null) {
+						continue;
+					}
+					for (String key : filterKeys) {
+						Set<Integer> users = DEPENDENCIES.get(key).filterIds;
+						users.remove(filterId);
+						if (users.isEmpty()) {
+							keys.add(key);
+						}
+					}
+				}
+			}
+			keys.forEach(FilterResultCache::untrack);
+		}
+		if (!keys.isEmpty()) {
+			dependencyInvalidations.addAndGet(keys.size());
+			keys.forEach(RESULTS::invalidate);
+		}
+	}
+
+	/**
+	 * Returns a table name as change events name it: without schema, in lower
+	 * case. Tables of the same name in different schemas are not told apart.
+	 */
+	static String tableName(String table) {
+		return table.substring(table.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+	}
+
+	private static <D> void addAll(Set<String> keys, Map<D, Set<String>> keysByDependency, D dependency) {
+		Set<String> dependent = keysByDependency.get(dependency);
+		if (dependent != null) {
+			keys.addAll(dependent);
+		}
+	}
+
+	private static String canonical(FilterPlan plan, FilterExpression expression, FilterTarget target, boolean negated) {
+		return expression.accept(new FilterExpression.Visitor<String>() {
+
+			@Override
+			public String visitAnd(FilterExpression.And and) {
+				// NOT (a AND b) is NOT a OR NOT b
+				return junction(and.getOperands(), negated ? "OR" : "AND");
+			}
+
+			@Override
+			public String visitOr(FilterExpression.Or or) {
+				return junction(or.getOperands(), negated ? "AND" : "OR");
+			}
+
+			@Override
+			public String visitNot(FilterExpression.Not not) {
+				return canonical(plan, not.getOperand(), target, !negated);
+			}
+
+			@Override
+			public String visitComparison(Comparison comparison) {
+				FilterPlan.Predicate predicate = plan.getPredicate(comparison);
+				Operator operator = predicate.getOperator();
+				TreeSet<String> values = new TreeSet<>();
+				for (Object value : predicate.getValues()) {
+					values.add(literal(value));
+				}
+				if (values.size() == 1 && (operator == Operator.IN || operator == Operator.NOT_IN)) {
+					operator = operator == Operator.IN ? Operator.EQ : Operator.NE;
+				}
+				String column = target.columnOf(predicate.getAttribute());
+				if (operator == Operator.BETWEEN) {
+					String between = column + " BETWEEN " + literal(predicate.getValues().get(0)) + " AND " + literal(predicate.getValues().get(1));
+					return negated ? "NOT (" + between + ")" : between;
+				}
+				if (negated) {
+					operator = negate(operator);
+				}
+				switch (operator) {
+				case IS_NULL:
+				case IS_NOT_NULL:
+					return column + " " + operator.getSymbol();
+				case IN:
+				case NOT_IN:
+					return column + " " + operator.getSymbol() + " (" + String.join(", ", values) + ")";
+				default:
+					return column + " " + operator.getSymbol() + " " + values.first();
+				}
+			}
+
+			private String junction(List<FilterExpression> operands, String keyword) {
+				TreeSet<String> parts = new TreeSet<>();
+				for (FilterExpression operand : operands) {
+					collect(operand, negated, keyword, parts);
+				}
+				return parts.size() == 1 ? parts.first() : "(" + String.join(" " + keyword + " ", parts) + ")";
+			}
+
+			/**
+			 * Adds the canonical operands of a junction, looking through
+			 * nested junctions of the same kind.
+			 */
+			private void collect(FilterExpression operand, boolean operandNegated, String keyword, TreeSet<String> parts) {
+				if (operand instanceof FilterExpression.Not) {
+					collect(((FilterExpression.Not) operand).getOperand(), !operandNegated, keyword, parts);
+					return;
+				}
+				String kind = null;
+				if (operand instanceof FilterExpression.And) {
+					kind = operandNegated ? "OR" : "AND";
+				} else if (operand instanceof FilterExpression.Or) {
+					kind = operandNegated ? "AND" : "OR";
+				}
+				if (keyword.equals(kind)) {
+					for (FilterExpression inner : ((FilterExpression.Junction) operand).getOperands()) {
+						collect(inner, operandNegated, keyword, parts);
+					}
+				} else {
+					parts.add(canonical(plan, operand, target, operandNegated));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the operator that is true exactly where the given one is false;
+	 * both are unknown on NULL, so NOT can be pushed into the comparison.
+	 */
+	private static Operator negate(Operator operator) {
+		switch (operator) {
+		case EQ:
+			return Operator.NE;
+		case NE:
+			return Operator.EQ;
+		case LT:
+			return Operator.GE;
+		case LE:
+			return Operator.GT;
+		case GT:
+			return Operator.LE;
+		case GE:
+			return Operator.LT;
+		case IN:
+			return Operator.NOT_IN;
+		case NOT_IN:
+			return Operator.IN;
+		case LIKE:
+			return Operator.NOT_LIKE;
+		case NOT_LIKE:
+			return Operator.LIKE;
+		case IS_NULL:
+			return Operator.IS_NOT_NULL;
+		default:
+			return Operator.IS_NULL;
+		}
+	}
+
+	private static String literal(Object value) {
+		if (value instanceof BigDecimal) {
+			BigDecimal number = ((BigDecimal) value).stripTrailingZeros();
+			return number.signum() == 0 ? "0" : number.toPlainString();
+		}
+		if (value instanceof String) {
+			return "'" + ((String) value).replace("'", "''") + "'";
+		}
+		if (value instanceof Date) {
+			return "DATE '" + value + "'";
+		}
+		if (value instanceof Long) {
+			return value.toString();
+		}
+		return "TIMESTAMP '" + value + "'";
+	}
+}
@@ -0,0 +1,138 @@
+package dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import model.ObjectAttribute;
+
+/**
+ * The table a saved {@link model.ObjectFilter} is run against, and the column
+ * holding each attribute.
+ *
+ * <p>
+ * The ontology describes object types and their attributes but does not store
+ * the objects themselves, so the caller names the table (or view) holding the
+ * objects. An attribute maps to the column of the same name unless another
+ * column is registered with {@link #column(String, String)}. With
+ * {@link #objectTypeColumn(String)} the table may hold objects of several
+ * types, and queries are restricted to the type of the filter. The object id
+ * is read from {@code id} unless {@link #idColumn(String)} names another
+ * column; it is only needed to load a {@link ColumnarSnapshot}.
+ * </p>
+ *
+ * <p>
+ * Table and column names must be plain SQL identifiers and are checked when
+ * they are registered; the compiled SQL only contains these names, operators
+ * and {@code ?} placeholders, never a value. Configure a target once and
+ * share it: compiled plans remember the SQL per target instance.
+ * </p>
+ */
+public final class FilterTarget {
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+	private static final Pattern QUALIFIED_IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+	private final String table;
+	private final Map<String, String> columns = new HashMap<>();
+	private String objectTypeColumn;
+	private String idColumn = "id";
+
+	/**
+	 * @param table the table or view holding the objects, optionally
+	 *              schema-qualified
+	 * @throws IllegalArgumentException if the name is not a plain identifier
+	 */
+	public FilterTarget(String table) {
+		if (table == null || !QUALIFIED_IDENTIFIER.matcher(table).matches()) {
+			throw new IllegalArgumentException("Invalid filter target table: " + table);
+		}
+		this.table = table;
+	}
+
+	/**
+	 * Maps an attribute to a column with another name.
+	 *
+	 * @param attributeName the attribute name
+	 * @param column        the column name
+	 * @return this target
+	 * @throws IllegalArgumentException if the column is not a plain identifier
+	 */
+	public FilterTarget column(String attributeName, String column) {
+		columns.put(attributeName, identifier(column));
+		return this;
+	}
+
+	/**
+	 * Restricts queries to the objects of the filter's object type.
+	 *
+	 * @param column the column holding the object type id
+	 * @return this target
+	 * @throws IllegalArgumentException if the column is not a plain identifier
+	 */
+	public FilterTarget objectTypeColumn(String column) {
+		this.objectTypeColumn = identifier(column);
+		return this;
+	}
+
+	/**
+	 * Names the column holding the object id.
+	 *
+	 * @param column the column name
+	 * @return this target
+	 * @throws IllegalArgumentException if the column is not a plain identifier
+	 */
+	public FilterTarget idColumn(String column) {
+		this.idColumn = identifier(column);
+		return this;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * @return the column holding the object type id, or null
+	 */
+	public String getObjectTypeColumn() {
+		return objectTypeColumn;
+	}
+
+	/**
+	 * @return the column holding the object id
+	 */
+	public String getIdColumn() {
+		return idColumn;
+	}
+
+	/**
+	 * Returns the column of an attribute.
+	 *
+	 * @param attribute the attribute
+	 * @return the registered column, or the attribute name
+	 * @throws IllegalArgumentException if no column is registered and the
+	 *                                  attribute name is not a plain identifier
+	 */
+	public String columnOf(ObjectAttribute attribute) {
+		String column = columns.get(attribute.getAttributeName());
+		if (column != null) {
+			return column;
+		}
+		if (!IDENTIFIER.matcher(attribute.getAttributeName()).matches()) {
+			throw new IllegalArgumentException("No column registered for attribute '" + attribute.getAttributeName() + "' of " + table);
+		}
+		return attribute.getAttributeName();
+	}
+
+	private static String identifier(String column) {
+		if (column == null || !IDENTIFIER.matcher(column).matches()) {
+			throw new IllegalArgumentException("Invalid filter target column: " + column);
+		}
+		return column;
+	}
+
+	@Override
+	public String toString() {
+		return "FilterTarget[" + table + "]";
+	}
+}
@@ -0,0 +1,532 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import utils.ApplicationConfig;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.ClusterChangeNotifier;
+import utils.QueryExecutor;
+import utils.RowMapperFactory;
+
+/**
+ * Reverse-dependency index of the ontology: answers which use cases, actions,
+ * filters and related object types depend on an object type, and which use
+ * cases and object types depend on an action, before either is edited or
+ * deleted.
+ *
+ * <p>
+ * Every link table is held as a {@link LinkIndex} over the ids at both ends of
+ * its rows, so a query costs time proportional to the links it returns and
+ * not to the size of the ontology. The tables are loaded on first use by
+ * streaming them from the primary. Afterwards every change published on the
+ * {@link ChangeEventBus} is applied in place: a created or updated link is
+ * reread by id from the primary, a deleted one is removed, a deleted object
+ * type, action or use case removes its links, and a change to a whole link
+ * table reloads that table. Resyncs of {@link utils.ClusterChangeNotifier}
+ * drop the index, and the next query loads it again.
+ * </p>
+ *
+ * <p>
+ * While the index is disabled or cannot be loaded, the same queries are
+ * answered from the tables with one query per link table. Either way the
+ * result shows committed state only. Enabled with
+ * {@code ontology.impact.enabled}, together with
+ * {@code cluster.notify.enabled} only: the index is never refreshed, so it
+ * would miss the changes of other nodes.
+ * </p>
+ */
+public final class ImpactIndex {
+
+	private static final Logger LOGGER = Logger.getLogger(ImpactIndex.class.getName());
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("ontology.impact.enabled", false)
+			&& ClusterChangeNotifier.isEnabled();
+
+	private static final RowMapperFactory<int[]> LINK = columns -> rs -> new int[] { rs.getInt(1), rs.getInt(2), rs.getInt(3) };
+
+	/**
+	 * A link table, indexed from the first id to the second.
+	 */
+	private static final class LinkTable {
+
+		final String name;
+		final String fromColumn;
+		final String toColumn;
+		LinkIndex index;
+
+		LinkTable(String name, String fromColumn, String toColumn) {
+			this.name = name;
+			this.fromColumn = fromColumn;
+			this.toColumn = toColumn;
+		}
+
+		String select() {
+			return "SELECT id, " + fromColumn + ", " + toColumn + " FROM " + name;
+		}
+	}
+
+	private static final LinkTable USE_CASE_OBJECT_TYPES = new LinkTable("use_case_object_types", "fk_object_type_id", "fk_use_case_id");
+	private static final LinkTable ACTION_OBJECT_TYPES = new LinkTable("action_object_type_associations", "fk_object_type_id", "fk_action_id");
+	private static final LinkTable OBJECT_FILTERS = new LinkTable("object_filters", "fk_object_type_id", "id");
+	private static final LinkTable OBJECT_RELATIONSHIPS = new LinkTable("object_relationships", "fk_object_type_id", "fk_related_object_type_id");
+	private static final LinkTable USE_CASE_ACTIONS = new LinkTable("use_case_actions", "fk_action_id", "fk_use_case_id");
+
+	private static final List<LinkTable> TABLES = Collections.unmodifiableList(Arrays.asList(
+			USE_CASE_OBJECT_TYPES, ACTION_OBJECT_TYPES, OBJECT_FILTERS, OBJECT_RELATIONSHIPS, USE_CASE_ACTIONS));
+
+	/** Loads discarded because a change arrived meanwhile before giving up until the next query. */
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+
+	private static final ReadWriteLock LOCK = new ReentrantReadWriteLock();
+	private static volatile boolean loaded;
+	/** Counts the changes that concern the index, so a load can tell whether one raced with it. */
+	private static final AtomicLong CHANGES = new AtomicLong();
+
+	private static final AtomicLong QUERIES = new AtomicLong();
+	private static final AtomicLong FALLBACKS = new AtomicLong();
+	private static final AtomicLong BUILDS = new AtomicLong();
+	private static final AtomicLong UPDATES = new AtomicLong();
+	private static final AtomicLong FAILURES = new AtomicLong();
+
+	static {
+		if (ENABLED) {
+			ChangeEventBus.subscribe(ImpactIndex::onChange);
+		} else if (ApplicationConfig.getBoolean("ontology.impact.enabled", false)) {
+			LOGGER.warning("ontology.impact.enabled ignored: it requires cluster.notify.enabled, or links changed on"
+					+ " other nodes would never reach the index");
+		}
+	}
+
+	/**
+	 * The ids depending on an object type or an action, each sorted
+	 * ascending.
+	 */
+	public static final class Impact {
+
+		private final String subject;
+		private final int id;
+		private final List<Integer> useCaseIds;
+		private final List<Integer> indirectUseCaseIds;
+		private final List<Integer> actionIds;
+		private final List<Integer> objectTypeIds;
+		private final List<Integer> filterIds;
+		private final List<Integer> relationshipIds;
+
+		Impact(String subject, int id, Collection<Integer> useCaseIds, Collection<Integer> indirectUseCaseIds,
+				Collection<Integer> actionIds, Collection<Integer> objectTypeIds, Collection<Integer> filterIds,
+				Collection<Integer> relationshipIds) {
+			this.subject = subject;
+			this.id = id;
+			this.useCaseIds = sorted(useCaseIds);
+			this.indirectUseCaseIds = sorted(indirectUseCaseIds);
+			this.actionIds = sorted(actionIds);
+			this.objectTypeIds = sorted(objectTypeIds);
+			this.filterIds = sorted(filterIds);
+			this.relationshipIds = sorted(relationshipIds);
+		}
+
+		/**
+		 * @return "object_type" or "action"
+		 */
+		public String getSubject() {
+			return subject;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * @return the use cases linked directly: through
+		 *         {@code use_case_object_types} for an object type, through
+		 *         {@code use_case_actions} for an action
+		 */
+		public List<Integer> getUseCaseIds() {
+			return useCaseIds;
+		}
+
+		/**
+		 * @return for an object type, the use cases linked only through one of
+		 *         its actions
+		 */
+		public List<Integer> getIndirectUseCaseIds() {
+			return indirectUseCaseIds;
+		}
+
+		/**
+		 * @return for an object type, the actions associated with it
+		 */
+		public List<Integer> getActionIds() {
+			return actionIds;
+		}
+
+		/**
+		 * @return for an object type, the object types related to it in
+		 *         either direction; for an action, the object types associated
+		 *         with it
+		 */
+		public List<Integer> getObjectTypeIds() {
+			return objectTypeIds;
+		}
+
+		/**
+		 * @return for an object type, its filters
+		 */
+		public List<Integer> getFilterIds() {
+			return filterIds;
+		}
+
+		/**
+		 * @return for an object type, its relationships in either direction
+		 */
+		public List<Integer> getRelationshipIds() {
+			return relationshipIds;
+		}
+
+		/**
+		 * @return the number of dependent rows of all kinds
+		 */
+		public int getTotal() {
+			return useCaseIds.size() + indirectUseCaseIds.size() + actionIds.size() + objectTypeIds.size() + filterIds.size()
+					+ relationshipIds.size();
+		}
+
+		public JSONObject toJson() {
+			JSONObject json = new JSONObject();
+			json.put("subject", subject);
+			json.put("id", id);
+			json.put("useCaseIds", new JSONArray(useCaseIds));
+			json.put("indirectUseCaseIds", new JSONArray(indirectUseCaseIds));
+			json.put("actionIds", new JSONArray(actionIds));
+			json.put("objectTypeIds", new JSONArray(objectTypeIds));
+			json.put("filterIds", new JSONArray(filterIds));
+			json.put("relationshipIds", new JSONArray(relationshipIds));
+			json.put("total", getTotal());
+			return json;
+		}
+
+		private static List<Integer> sorted(Collection<Integer> ids) {
+			List<Integer> list = new ArrayList<>(ids);
+			Collections.sort(list);
+			return Collections.unmodifiableList(list);
+		}
+	}
+
+	/**
+	 * Reads the links of some ids in one link table.
+	 */
+	private interface LinkSource {
+
+		void visit(LinkTable table, boolean byFrom, Collection<Integer> ids, LinkIndex.LinkVisitor visitor) throws SQLException;
+	}
+
+	private static final LinkSource INDEX = (table, byFrom, ids, visitor) -> {
+		for (int id : ids) {
+			if (byFrom) {
+				table.index.forEachFrom(id, visitor);
+			} else {
+				table.index.forEachTo(id, visitor);
+			}
+		}
+	};
+
+	private static final LinkSource DATABASE = (table, byFrom, ids, visitor) -> {
+		if (ids.isEmpty()) {
+			return;
+		}
+		String key = byFrom ? table.fromColumn : table.toColumn;
+		String other = byFrom ? table.toColumn : table.fromColumn;
+		List<int[]> rows = QueryExecutor.query("SELECT id, " + key + ", " + other + " FROM " + table.name + " WHERE " + key + " = ANY(?)",
+				LINK, ids);
+		for (int[] row : rows) {
+			visitor.visit(row[0], row[2]);
+		}
+	};
+
+	private ImpactIndex() {
+	}
+
+	/**
+	 * @return whether the index is enabled
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Finds everything that depends on an object type.
+	 *
+	 * @param objectTypeId the object type
+	 * @return the dependent use cases, actions, filters, relationships and
+	 *         related object types
+	 * @throws SQLException if the index is unavailable and the tables cannot
+	 *                      be read
+	 */
+	public static Impact ofObjectType(int objectTypeId) throws SQLException {
+		QUERIES.incrementAndGet();
+		if (acquire()) {
+			try {
+				return objectTypeImpact(INDEX, objectTypeId);
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		FALLBACKS.incrementAndGet();
+		return objectTypeImpact(DATABASE, objectTypeId);
+	}
+
+	/**
+	 * Finds everything that depends on an action.
+	 *
+	 * @param actionId the action
+	 * @return the dependent use cases and associated object types
+	 * @throws SQLException if the index is unavailable and the tables cannot
+	 *                      be read
+	 */
+	public static Impact ofAction(int actionId) throws SQLException {
+		QUERIES.incrementAndGet();
+		if (acquire()) {
+			try {
+				return actionImpact(INDEX, actionId);
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		FALLBACKS.incrementAndGet();
+		return actionImpact(DATABASE, actionId);
+	}
+
+	/**
+	 * Drops the index; the next query loads it again.
+	 */
+	public static void invalidate() {
+		CHANGES.incrementAndGet();
+		LOCK.writeLock().lock();
+		try {
+			clear();
+		} finally {
+			LOCK.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the state of the index.
+	 *
+	 * @return whether it is enabled and loaded, the links per table, and the
+	 *         query, build, update and failure counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("enabled", ENABLED);
+		json.put("loaded", loaded);
+		if (loaded && LOCK.readLock().tryLock()) {
+			try {
+				if (loaded) {
+					JSONObject links = new JSONObject();
+					for (LinkTable table : TABLES) {
+						links.put(table.name, table.index.size());
+					}
+					json.put("links", links);
+				}
+			} finally {
+				LOCK.readLock().unlock();
+			}
+		}
+		json.put("queries", QUERIES.get());
+		json.put("fallbacks", FALLBACKS.get());
+		json.put("builds", BUILDS.get());
+		json.put("updates", UPDATES.get());
+		json.put("failures", FAILURES.get());
+		return json;
+	}
+
+	private static Impact objectTypeImpact(LinkSource source, int objectTypeId) throws SQLException {
+		List<Integer> self = Collections.singletonList(objectTypeId);
+		TreeSet<Integer> useCases = new TreeSet<>();
+		TreeSet<Integer> actions = new TreeSet<>();
+		TreeSet<Integer> filters = new TreeSet<>();
+		TreeSet<Integer> relationships = new TreeSet<>();
+		TreeSet<Integer> related = new TreeSet<>();
+		source.visit(USE_CASE_OBJECT_TYPES, true, self, (linkId, useCaseId) -> useCases.add(useCaseId));
+		source.visit(ACTION_OBJECT_TYPES, true, self, (linkId, actionId) -> actions.add(actionId));
+		source.visit(OBJECT_FILTERS, true, self, (linkId, filterId) -> filters.add(filterId));
+		LinkIndex.LinkVisitor relationship = (linkId, otherId) -> {
+			relationships.add(linkId);
+			if (otherId != objectTypeId) {
+				related.add(otherId);
+			}
+		};
+		source.visit(OBJECT_RELATIONSHIPS, true, self, relationship);
+		source.visit(OBJECT_RELATIONSHIPS, false, self, relationship);
+		TreeSet<Integer> indirect = new TreeSet<>();
+		source.visit(USE_CASE_ACTIONS, true, actions, (linkId, useCaseId) -> {
+			if (!useCases.contains(useCaseId)) {
+				indirect.add(useCaseId);
+			}
+		});
+		return new Impact("object_type", objectTypeId, useCases, indirect, actions, related, filters, relationships);
+	}
+
+	private static Impact actionImpact(LinkSource source, int actionId) throws SQLException {
+		List<Integer> self = Collections.singletonList(actionId);
+		TreeSet<Integer> useCases = new TreeSet<>();
+		TreeSet<Integer> objectTypes = new TreeSet<>();
+		source.visit(USE_CASE_ACTIONS, true, self, (linkId, useCaseId) -> useCases.add(useCaseId));
+		source.visit(ACTION_OBJECT_TYPES, false, self, (linkId, objectTypeId) -> objectTypes.add(objectTypeId));
+		List<Integer> none = Collections.emptyList();
+		return new Impact("action", actionId, useCases, none, none, objectTypes, none, none);
+	}
+
+	/**
+	 * Takes the read lock on a loaded index, loading it first if needed.
+	 *
+	 * @return false, without the lock, when the index is disabled or cannot
+	 *         be loaded
+	 */
+	private static boolean acquire() {
+		if (!ENABLED) {
+			return false;
+		}
+		if (!loaded) {
+			load();
+		}
+		LOCK.readLock().lock();
+		if (loaded) {
+			return true;
+		}
+		LOCK.readLock().unlock();
+		return false;
+	}
+
+	/**
+	 * Streams the link tables into the index. A change published while they
+	 * are read may be missing from them and was not applied, as there was no
+	 * index yet, so such a load is discarded and repeated; after
+	 * {@link #MAX_LOAD_ATTEMPTS} the index stays unloaded and the next query
+	 * tries again.
+	 */
+	private static void load() {
+		LOCK.writeLock().lock();
+		try {
+			for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS && !loaded; attempt++) {
+				long changes = CHANGES.get();
+				for (LinkTable table : TABLES) {
+					table.index = read(table);
+				}
+				if (CHANGES.get() == changes) {
+					loaded = true;
+					BUILDS.incrementAndGet();
+				} else {
+					clear();
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			FAILURES.incrementAndGet();
+			LOGGER.log(Level.SEVERE, "Error loading the impact index, queries read the tables", e);
+			clear();
+		} finally {
+			LOCK.writeLock().unlock();
+		}
+	}
+
+	private static LinkIndex read(LinkTable table) throws SQLException {
+		LinkIndex index = new LinkIndex(1024);
+		QueryExecutor.forEachPrimary(table.select(), LINK, row -> index.put(row[0], row[1], row[2]));
+		return index;
+	}
+
+	private static void clear() {
+		loaded = false;
+		for (LinkTable table : TABLES) {
+			table.index = null;
+		}
+	}
+
+	private static void onChange(ChangeEvent event) {
+		if (event.isAllTables()) {
+			invalidate();
+			return;
+		}
+		LinkTable changed = null;
+		for (LinkTable table : TABLES) {
+			if (table.name.equals(event.getTable())) {
+				changed = table;
+			}
+		}
+		boolean deleted = event.getType() == ChangeEvent.Type.DELETED;
+		if (changed == null && !(deleted && isOwner(event.getTable()))) {
+			return;
+		}
+		CHANGES.incrementAndGet();
+		if (!loaded) {
+			return; // nothing loaded, the next query loads the current state
+		}
+		LOCK.writeLock().lock();
+		try {
+			if (!loaded) {
+				return;
+			}
+			if (changed == null) {
+				if (event.isWholeTable()) {
+					clear();
+					return;
+				}
+				removeLinksOf(event.getTable(), event.getId());
+			} else if (event.isWholeTable()) {
+				changed.index = read(changed);
+			} else if (deleted) {
+				changed.index.remove(event.getId());
+			} else {
+				List<int[]> rows = QueryExecutor.queryPrimary(changed.select() + " WHERE id = ?", LINK, event.getId());
+				if (rows.isEmpty()) {
+					changed.index.remove(event.getId());
+				} else {
+					int[] row = rows.get(0);
+					changed.index.put(row[0], row[1], row[2]);
+				}
+			}
+			UPDATES.incrementAndGet();
+		} catch (SQLException | RuntimeException e) {
+			FAILURES.incrementAndGet();
+			LOGGER.log(Level.SEVERE, "Error applying " + event + " to the impact index, dropping it", e);
+			clear();
+		} finally {
+			LOCK.writeLock().unlock();
+		}
+	}
+
+	private static boolean isOwner(String table) {
+		return "object_types".equals(table) || "actions".equals(table) || "use_cases".equals(table);
+	}
+
+	private static void removeLinksOf(String table, int id) {
+		if ("object_types".equals(table)) {
+			USE_CASE_OBJECT_TYPES.index.removeFrom(id);
+			ACTION_OBJECT_TYPES.index.removeFrom(id);
+			OBJECT_FILTERS.index.removeFrom(id);
+			OBJECT_RELATIONSHIPS.index.removeFrom(id);
+			OBJECT_RELATIONSHIPS.index.removeTo(id);
+		} else if ("actions".equals(table)) {
+			ACTION_OBJECT_TYPES.index.removeTo(id);
+			USE_CASE_ACTIONS.index.removeFrom(id);
+		} else {
+			USE_CASE_OBJECT_TYPES.index.removeTo(id);
+			USE_CASE_ACTIONS.index.removeTo(id);
+		}
+	}
+}
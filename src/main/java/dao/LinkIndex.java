@@ -0,0 +1,213 @@
+package dao;
+
+import java.util.Arrays;
+
+import utils.IntIntHashMap;
+
+/**
+ * Rows of one link table as (link id, from id, to id) triples, looked up by
+ * either end in time proportional to the number of links of that end.
+ *
+ * <p>
+ * The links live in parallel int arrays; each link is a member of two doubly
+ * linked lists, one through all links with its from id and one through all
+ * links with its to id, whose heads are found in primitive hash maps. Adding,
+ * replacing and removing a link are constant time, so the index can follow
+ * every committed change without rebuilding. Freed slots are reused. Not
+ * thread-safe: {@link ImpactIndex} guards it.
+ * </p>
+ */
+final class LinkIndex {
+
+	/**
+	 * Receives the links of one end.
+	 */
+	interface LinkVisitor {
+
+		/**
+		 * @param linkId  the id of the link row
+		 * @param otherId the id at the other end of the link
+		 */
+		void visit(int linkId, int otherId);
+	}
+
+	private static final int NONE = -1;
+
+	private final IntIntHashMap slotById;
+	private final IntIntHashMap headByFrom;
+	private final IntIntHashMap headByTo;
+
+	private int[] linkIds;
+	private int[] fromIds;
+	private int[] toIds;
+	private int[] nextFrom;
+	private int[] prevFrom;
+	private int[] nextTo;
+	private int[] prevTo;
+	private int used;
+	private int freeHead = NONE;
+
+	LinkIndex(int expectedSize) {
+		int capacity = Math.max(16, expectedSize);
+		slotById = new IntIntHashMap(capacity, NONE);
+		headByFrom = new IntIntHashMap(16, NONE);
+		headByTo = new IntIntHashMap(16, NONE);
+		linkIds = new int[capacity];
+		fromIds = new int[capacity];
+		toIds = new int[capacity];
+		nextFrom = new int[capacity];
+		prevFrom = new int[capacity];
+		nextTo = new int[capacity];
+		prevTo = new int[capacity];
+	}
+
+	/**
+	 * Adds a link, replacing the link with the same id.
+	 */
+	void put(int linkId, int fromId, int toId) {
+		int slot = slotById.get(linkId);
+		if (slot != NONE) {
+			if (fromIds[slot] == fromId && toIds[slot] == toId) {
+				return;
+			}
+			unlink(slot);
+		} else {
+			slot = allocate();
+			slotById.put(linkId, slot);
+		}
+		linkIds[slot] = linkId;
+		fromIds[slot] = fromId;
+		toIds[slot] = toId;
+
+		int head = headByFrom.put(fromId, slot);
+		nextFrom[slot] = head;
+		prevFrom[slot] = NONE;
+		if (head != NONE) {
+			prevFrom[head] = slot;
+		}
+		head = headByTo.put(toId, slot);
+		nextTo[slot] = head;
+		prevTo[slot] = NONE;
+		if (head != NONE) {
+			prevTo[head] = slot;
+		}
+	}
+
+	/**
+	 * @return whether the link existed
+	 */
+	boolean remove(int linkId) {
+		int slot = slotById.remove(linkId);
+		if (slot == NONE) {
+			return false;
+		}
+		unlink(slot);
+		nextFrom[slot] = freeHead;
+		freeHead = slot;
+		return true;
+	}
+
+	/**
+	 * Removes every link with the given from id.
+	 *
+	 * @return the number of links removed
+	 */
+	int removeFrom(int fromId) {
+		int removed = 0;
+		for (int slot = headByFrom.get(fromId); slot != NONE; slot = headByFrom.get(fromId)) {
+			remove(linkIds[slot]);
+			removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes every link with the given to id.
+	 *
+	 * @return the number of links removed
+	 */
+	int removeTo(int toId) {
+		int removed = 0;
+		for (int slot = headByTo.get(toId); slot != NONE; slot = headByTo.get(toId)) {
+			remove(linkIds[slot]);
+			removed++;
+		}
+		return removed;
+	}
+
+	/**
+	 * Visits every link with the given from id, passing its to id.
+	 */
+	void forEachFrom(int fromId, LinkVisitor visitor) {
+		for (int slot = headByFrom.get(fromId); slot != NONE; slot = nextFrom[slot]) {
+			visitor.visit(linkIds[slot], toIds[slot]);
+		}
+	}
+
+	/**
+	 * Visits every link with the given to id, passing its from id.
+	 */
+	void forEachTo(int toId, LinkVisitor visitor) {
+		for (int slot = headByTo.get(toId); slot != NONE; slot = nextTo[slot]) {
+			visitor.visit(linkIds[slot], fromIds[slot]);
+		}
+	}
+
+	/**
+	 * @return the number of links
+	 */
+	int size() {
+		return slotById.size();
+	}
+
+	private void unlink(int slot) {
+		int prev = prevFrom[slot];
+		int next = nextFrom[slot];
+		if (prev == NONE) {
+			if (next == NONE) {
+				headByFrom.remove(fromIds[slot]);
+			} else {
+				headByFrom.put(fromIds[slot], next);
+			}
+		} else {
+			nextFrom[prev] = next;
+		}
+		if (next != NONE) {
+			prevFrom[next] = prev;
+		}
+
+		prev = prevTo[slot];
+		next = nextTo[slot];
+		if (prev == NONE) {
+			if (next == NONE) {
+				headByTo.remove(toIds[slot]);
+			} else {
+				headByTo.put(toIds[slot], next);
+			}
+		} else {
+			nextTo[prev] = next;
+		}
+		if (next != NONE) {
+			prevTo[next] = prev;
+		}
+	}
+
+	private int allocate() {
+		if (freeHead != NONE) {
+			int slot = freeHead;
+			freeHead = nextFrom[slot];
+			return slot;
+		}
+		if (used == linkIds.length) {
+			int capacity = linkIds.length + (linkIds.length >> 1);
+			linkIds = Arrays.copyOf(linkIds, capacity);
+			fromIds = Arrays.copyOf(fromIds, capacity);
+			toIds = Arrays.copyOf(toIds, capacity);
+			nextFrom = Arrays.copyOf(nextFrom, capacity);
+			prevFrom = Arrays.copyOf(prevFrom, capacity);
+			nextTo = Arrays.copyOf(nextTo, capacity);
+			prevTo = Arrays.copyOf(prevTo, capacity);
+		}
+		return used++;
+	}
+}
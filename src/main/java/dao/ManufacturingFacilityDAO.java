@@ -11,7 +11,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import utils.DatabaseUtility;import java.sql.Statement;
+import utils.DatabaseUtility;
+import utils.QueryExecutor;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;import java.sql.Statement;
 import java.sql.Types;
 
 
@@ -106,4 +110,19 @@ public class ManufacturingFacilityDAO {
 	        }
 	    }
 	}
+	
+	/**
+	 * Fetches many manufacturing facilities in one query.
+	 *
+	 * @param ids The identifiers of the manufacturing facilities to fetch.
+	 * @return Map of the manufacturing facilities found, keyed by id; ids without a row are absent. Empty if the query fails.
+	 */
+	public Map<Integer, ManufacturingFacility> fetchFacilitiesByIds(Collection<Integer> ids) {
+	    try {
+	        return QueryExecutor.queryByIds("SELECT * FROM manufacturing_facilities WHERE id = ANY(?)", ids, RowMappers.MANUFACTURING_FACILITY, ManufacturingFacility::getId);
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching manufacturing facilities by ids", e);
+	        return new HashMap<>();
+	    }
+	}
 }
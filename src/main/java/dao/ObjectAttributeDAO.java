@@ -2,7 +2,12 @@ package dao;
 
 
 import model.*;
+import utils.BatchInserter;
+import utils.BatchResult;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
 
@@ -25,9 +30,11 @@ public class ObjectAttributeDAO {
 	public boolean createAttribute(int objectTypeId, String attributeName, ObjectAttribute.DataTypes attributeType, boolean isMandatory, String defaultValue, String description, int attributeLength) {
 	    Connection connection = null;
 	    PreparedStatement preparedStatement = null;
+	    ResultSet rs = null;
+	    int id = 0;
 	    try {
 	        connection = DatabaseUtility.connect();
-	        String sql = "INSERT INTO object_attributes (fk_object_type_id, attribute_name, data_type, is_mandatory, default_value, description, attribute_length) VALUES (?, ?, ?, ?, ?, ?, ?)";
+	        String sql = "INSERT INTO object_attributes (fk_object_type_id, attribute_name, data_type, is_mandatory, default_value, description, attribute_length) VALUES (?, ?, ?, ?, ?, ?, ?) RETURNING id";
 	        preparedStatement = connection.prepareStatement(sql);
 	        preparedStatement.setInt(1, objectTypeId);
 	        preparedStatement.setString(2, attributeName);
@@ -36,16 +43,54 @@ public class ObjectAttributeDAO {
 	        preparedStatement.setString(5, defaultValue);
 	        preparedStatement.setString(6, description);
 	        preparedStatement.setInt(7, attributeLength);
-	        int affectedRows = preparedStatement.executeUpdate();
-	        return affectedRows > 0;
+	        rs = preparedStatement.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
+	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error creating attribute", e);
-	        return false;
 	    } finally {
+	        if (rs != null) try { rs.close(); } catch (SQLException e) { e.printStackTrace(); }
 	        if (preparedStatement != null) try { preparedStatement.close(); } catch (SQLException e) { e.printStackTrace(); }
 	        DatabaseUtility.disconnect(connection);
 	    }
+	    boolean created = id > 0;
+	    if (created) {
+	        ChangeEventBus.publish("object_attributes", ChangeEvent.Type.CREATED, id);
+	    }
+	    return created;
+	}
+	
+	/**
+	 * Creates many attributes with JDBC batching, for example all attributes of a newly defined object type.
+	 * Each attribute needs its ObjectType set. The generated ids are stored in the given objects.
+	 *
+	 * @param attributes The attributes to create.
+	 * @return BatchResult holding the generated id of every created attribute and the failure of every rejected one.
+	 */
+	public BatchResult createAttributes(List<ObjectAttribute> attributes) {
+	    String sql = "INSERT INTO object_attributes (fk_object_type_id, attribute_name, data_type, is_mandatory, default_value, description, attribute_length) VALUES (?, ?, ?, ?, ?, ?, ?)";
+	    BatchResult result = BatchInserter.insert(sql, attributes, (stmt, attribute) -> {
+	        stmt.setInt(1, attribute.getObjectType().getId());
+	        stmt.setString(2, attribute.getAttributeName());
+	        stmt.setString(3, attribute.getDataType().name());
+	        stmt.setBoolean(4, attribute.isMandatory());
+	        stmt.setString(5, attribute.getDefaultValue());
+	        stmt.setString(6, attribute.getDescription());
+	        stmt.setInt(7, attribute.getAttributeLength());
+	    });
+	    for (int i = 0; i < attributes.size(); i++) {
+	        if (result.getId(i) > 0) {
+	            attributes.get(i).setId(result.getId(i));
+	            ChangeEventBus.publish("object_attributes", ChangeEvent.Type.CREATED, result.getId(i));
+	        }
+	    }
+	    if (!result.isSuccessful()) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "Bulk attribute creation incomplete: " + result);
+	    }
+	    return result;
 	}
+
 	
 	/**
 	 * Updates an existing attribute in the database. This method adapts changes such as name, type, mandatory status, and other properties.
@@ -91,6 +136,9 @@ public class ObjectAttributeDAO {
 	        }
 	        DatabaseUtility.disconnect(connection);
 	    }
+	    if (updateSuccess) {
+	        ChangeEventBus.publish("object_attributes", ChangeEvent.Type.UPDATED, attributeId);
+	    }
 	    return updateSuccess;
 	}
 	
@@ -124,6 +172,9 @@ public class ObjectAttributeDAO {
 	        }
 	        DatabaseUtility.disconnect(connection);
 	    }
+	    if (isDeleted) {
+	        ChangeEventBus.publish("object_attributes", ChangeEvent.Type.DELETED, attributeId);
+	    }
 	    return isDeleted;
 	}
 	
@@ -133,46 +184,19 @@ public class ObjectAttributeDAO {
 	 * @return List<ObjectAttribute> A list of ObjectAttribute instances associated with the specified object type.
 	 */
 	public List<ObjectAttribute> getAttributeByObjectTypeId(int objectTypeId) {
-	    List<ObjectAttribute> attributes = new ArrayList<>();
-	    Connection connection = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
-	    try {
-	        connection = DatabaseUtility.connect();
-	        String query = "SELECT * FROM object_attributes WHERE fk_object_type_id = ?";
-	        pstmt = connection.prepareStatement(query);
-	        pstmt.setInt(1, objectTypeId);
-	        rs = pstmt.executeQuery();
-	        while (rs.next()) {
-	            ObjectAttribute attribute = new ObjectAttribute();
-	            attribute.setId(rs.getInt("id"));
-	            attribute.setAttributeName(rs.getString("attribute_name"));
-	            attribute.setDataType(ObjectAttribute.DataTypes.valueOf(rs.getString("data_type")));
-	            attribute.setMandatory(rs.getBoolean("is_mandatory"));
-	            attribute.setDefaultValue(rs.getString("default_value"));
-	            attribute.setDescription(rs.getString("description"));
-	            attribute.setAttributeLength(rs.getInt("attribute_length"));
-	            attributes.add(attribute);
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        List<ObjectAttribute> cached = new ArrayList<>();
+	        for (ObjectAttribute attribute : snapshot.getAttributesByObjectTypeId(objectTypeId)) {
+	            cached.add(OntologySnapshot.copy(attribute));
 	        }
+	        return cached;
+	    }
+	    try {
+	        return QueryExecutor.query("SELECT * FROM object_attributes WHERE fk_object_type_id = ?", RowMappers.OBJECT_ATTRIBUTE, objectTypeId);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	    } finally {
-	        DatabaseUtility.disconnect(connection);
-	        if (pstmt != null) {
-	            try {
-	                pstmt.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	            }
-	        }
-	        if (rs != null) {
-	            try {
-	                rs.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	            }
-	        }
+	        return new ArrayList<>();
 	    }
-	    return attributes;
 	}
 }
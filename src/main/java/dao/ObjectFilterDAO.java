@@ -2,7 +2,12 @@ package dao;
 
 
 import model.*;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
+import utils.RoaringBitmap;
+import utils.RowMapperFactory;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
 
@@ -16,33 +21,12 @@ public class ObjectFilterDAO {
 	 * @throws SQLException If an SQL error occurs during operation.
 	 */
 	public List<ObjectFilter> fetchObjectFilters(int fk_object_type_id) throws SQLException {
-	    List<ObjectFilter> filters = new ArrayList<>();
-	    Connection connection = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
 	    try {
-	        connection = DatabaseUtility.connect();
-	        String sql = "SELECT * FROM object_filters WHERE fk_object_type_id = ?";
-	        pstmt = connection.prepareStatement(sql);
-	        pstmt.setInt(1, fk_object_type_id);
-	        rs = pstmt.executeQuery();
-	        while (rs.next()) {
-	            ObjectFilter filter = new ObjectFilter();
-	            filter.setId(rs.getInt("id"));
-	            filter.setFilterName(rs.getString("filter_name"));
-	            filter.setFilterCriteria(rs.getString("filter_criteria"));
-	            // Assuming ObjectType loading logic is handled elsewhere or ObjectType is lazy loaded.
-	            filters.add(filter);
-	        }
+	        return QueryExecutor.query("SELECT * FROM object_filters WHERE fk_object_type_id = ?", RowMappers.OBJECT_FILTER, fk_object_type_id);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
 	        throw e;
-	    } finally {
-	        if (rs != null) try { rs.close(); } catch (SQLException e) { /* ignored */ }
-	        if (pstmt != null) try { pstmt.close(); } catch (SQLException e) { /* ignored */ }
-	        DatabaseUtility.disconnect(connection);
 	    }
-	    return filters;
 	}
 	
 	/**
@@ -58,23 +42,30 @@ public class ObjectFilterDAO {
 	public boolean createObjectFilter(String filterName, String filterCriteria, int fk_object_type_id) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
-	    boolean success = false;
+	    ResultSet rs = null;
+	    int id = 0;
 	    try {
 	        conn = DatabaseUtility.connect();
-	        String sql = "INSERT INTO object_filters (filter_name, filter_criteria, fk_object_type_id) VALUES (?, ?, ?)";
+	        String sql = "INSERT INTO object_filters (filter_name, filter_criteria, fk_object_type_id) VALUES (?, ?, ?) RETURNING id";
 	        pstmt = conn.prepareStatement(sql);
 	        pstmt.setString(1, filterName);
 	        pstmt.setString(2, filterCriteria);
 	        pstmt.setInt(3, fk_object_type_id);
 	
-	        int affectedRows = pstmt.executeUpdate();
-	        if (affectedRows > 0) {
-	            success = true;
+	        rs = pstmt.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
 	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
 	    } finally {
-	        DatabaseUtility.disconnect(conn);
+	        if (rs != null) {
+	            try {
+	                rs.close();
+	            } catch (SQLException e) {
+	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
+	            }
+	        }
 	        if (pstmt != null) {
 	            try {
 	                pstmt.close();
@@ -82,6 +73,11 @@ public class ObjectFilterDAO {
 	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
 	            }
 	        }
+	        DatabaseUtility.disconnect(conn);
+	    }
+	    boolean success = id > 0;
+	    if (success) {
+	        ChangeEventBus.publish("object_filters", ChangeEvent.Type.CREATED, id);
 	    }
 	    return success;
 	}
@@ -117,6 +113,9 @@ public class ObjectFilterDAO {
 	        if (stmt != null) { try { stmt.close(); } catch (SQLException e) { Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Failed to close statement", e); } }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (updateSuccess) {
+	        ChangeEventBus.publish("object_filters", ChangeEvent.Type.UPDATED, id);
+	    }
 	    return updateSuccess;
 	}
 	
@@ -154,7 +153,134 @@ public class ObjectFilterDAO {
 	            }
 	        }
 	    }
+	    if (result) {
+	        ChangeEventBus.publish("object_filters", ChangeEvent.Type.DELETED, id);
+	    }
 	    return result;
 	}
 	
+	
+	/**
+	 * Checks filter criteria against the attributes of an object type, for validating the filter form before
+	 * createObjectFilter or updateObjectFilter.
+	 *
+	 * @param fk_object_type_id The ID of the ObjectType the filter belongs to.
+	 * @param filterCriteria The criteria in the filter language, e.g. {@code status = 'open' AND weight >= 2.5}.
+	 * @return null if the criteria are valid, otherwise the description of every problem found.
+	 */
+	public String validateFilterCriteria(int fk_object_type_id, String filterCriteria) {
+	    try {
+	        FilterCompiler.compile(filterCriteria, fk_object_type_id, new ObjectAttributeDAO().getAttributeByObjectTypeId(fk_object_type_id));
+	        return null;
+	    } catch (IllegalArgumentException e) {
+	        return e.getMessage();
+	    }
+	}
+	
+	/**
+	 * Returns the compiled plan of a saved filter, from the plan cache when possible.
+	 *
+	 * @param id The unique identifier of the ObjectFilter.
+	 * @return The plan, or null if the filter does not exist, its criteria are not valid or it cannot be read.
+	 */
+	public FilterPlan fetchObjectFilterPlan(int id) {
+	    try {
+	        return FilterPlanCache.get(id);
+	    } catch (IllegalArgumentException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "ObjectFilter " + id + " cannot be compiled: " + e.getMessage());
+	        return null;
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error reading ObjectFilter " + id, e);
+	        return null;
+	    }
+	}
+	
+	/**
+	 * Runs a saved filter as a parameterized query on the table holding the objects of its object type.
+	 * The criteria are compiled once and cached; the values are bound as parameters, never written into the SQL.
+	 *
+	 * @param id The unique identifier of the ObjectFilter.
+	 * @param target The table holding the objects and the columns of the attributes.
+	 * @param factory Maps the matching rows.
+	 * @param <T> The mapped type.
+	 * @return The matching rows; empty if there are none, the filter does not exist or is not valid, or the query fails.
+	 */
+	public <T> List<T> executeObjectFilter(int id, FilterTarget target, RowMapperFactory<T> factory) {
+	    FilterPlan plan = fetchObjectFilterPlan(id);
+	    if (plan == null) {
+	        return new ArrayList<>();
+	    }
+	    try {
+	        FilterPlan.Sql sql = plan.toSql(target);
+	        return QueryExecutor.query("SELECT * FROM " + target.getTable() + " WHERE " + sql.getWhere(), factory, sql.getParameters().toArray());
+	    } catch (IllegalArgumentException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "ObjectFilter " + id + " cannot run on " + target + ": " + e.getMessage());
+	        return new ArrayList<>();
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error running ObjectFilter " + id + " on " + target, e);
+	        return new ArrayList<>();
+	    }
+	}
+	
+	/**
+	 * Loads the objects of an object type into memory, for applying several saved filters without a query each.
+	 *
+	 * @param fk_object_type_id The ID of the ObjectType whose objects are loaded.
+	 * @param target The table holding the objects and the columns of the attributes.
+	 * @return The snapshot, or null if the objects cannot be read or do not fit the attributes.
+	 */
+	public ColumnarSnapshot loadColumnarSnapshot(int fk_object_type_id, FilterTarget target) {
+	    try {
+	        return ColumnarSnapshot.load(target, fk_object_type_id, new ObjectAttributeDAO().getAttributeByObjectTypeId(fk_object_type_id));
+	    } catch (IllegalArgumentException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "Objects of type " + fk_object_type_id + " cannot be loaded from " + target + ": " + e.getMessage());
+	        return null;
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error loading objects of type " + fk_object_type_id + " from " + target, e);
+	        return null;
+	    }
+	}
+	
+	/**
+	 * Applies a saved filter to the objects of a snapshot in memory.
+	 *
+	 * @param id The unique identifier of the ObjectFilter.
+	 * @param snapshot The objects, loaded with loadColumnarSnapshot.
+	 * @return The ids of the matching objects, or null if the filter does not exist, is not valid or does not fit the snapshot.
+	 */
+	public RoaringBitmap selectObjectFilter(int id, ColumnarSnapshot snapshot) {
+	    FilterPlan plan = fetchObjectFilterPlan(id);
+	    if (plan == null) {
+	        return null;
+	    }
+	    try {
+	        return snapshot.select(plan);
+	    } catch (IllegalArgumentException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "ObjectFilter " + id + " cannot be applied to " + snapshot + ": " + e.getMessage());
+	        return null;
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error applying ObjectFilter " + id + " to " + snapshot, e);
+	        return null;
+	    }
+	}
+	
+	/**
+	 * Returns the ids of the objects matching a saved filter, from the result cache when another run of the same
+	 * criteria on the same target is still valid.
+	 *
+	 * @param id The unique identifier of the ObjectFilter.
+	 * @param target The table holding the objects and the columns of the attributes.
+	 * @return The ids of the matching objects, or null if the filter does not exist, is not valid or cannot be run.
+	 */
+	public RoaringBitmap fetchObjectFilterResultIds(int id, FilterTarget target) {
+	    try {
+	        return FilterResultCache.get(id, target);
+	    } catch (IllegalArgumentException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.WARNING, "ObjectFilter " + id + " cannot run on " + target + ": " + e.getMessage());
+	        return null;
+	    } catch (SQLException e) {
+	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error running ObjectFilter " + id + " on " + target, e);
+	        return null;
+	    }
+	}
 }
@@ -2,14 +2,19 @@ package dao;
 
 
 import model.*;
+import utils.BatchInserter;
+import utils.BatchResult;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
+import utils.UnitOfWork;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
 
 public class ObjectRelationshipDAO {
 
 	
-	
 	/**
 	 * Creates a new object relationship in the database.
 	 * @param relationshipName The name describing the relationship.
@@ -17,15 +22,30 @@ public class ObjectRelationshipDAO {
 	 * @param description Detailed information about the relationship's purpose.
 	 * @param objectTypeId ID of the primary object involved in the relationship.
 	 * @param relatedObjectTypeId ID of the secondary object involved in the relationship.
-	 * @return boolean indicating whether the creation was successful.
+	 * @return boolean indicating whether the creation was successful; false without inserting if
+	 *         ontology.closure.rejectCycles is set and the relationship would close a cycle.
 	 */
 	public boolean createObjectRelationship(String relationshipName, ObjectRelationship.RelationshipType relationshipType, String description, int objectTypeId, int relatedObjectTypeId) {
+	    if (!RelationshipCycleGuard.ENABLED) {
+	        return insertObjectRelationship(relationshipName, relationshipType, description, objectTypeId, relatedObjectTypeId);
+	    }
+	    try {
+	        return UnitOfWork.execute(() -> !RelationshipCycleGuard.closesCycle(0, objectTypeId, relatedObjectTypeId)
+	                && insertObjectRelationship(relationshipName, relationshipType, description, objectTypeId, relatedObjectTypeId));
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error creating object relationship", e);
+	        return false;
+	    }
+	}
+	
+	private boolean insertObjectRelationship(String relationshipName, ObjectRelationship.RelationshipType relationshipType, String description, int objectTypeId, int relatedObjectTypeId) {
 	    Connection connection = null;
 	    PreparedStatement pstmt = null;
-	    boolean success = false;
+	    ResultSet rs = null;
+	    int id = 0;
 	    try {
 	        connection = DatabaseUtility.connect();
-	        String sql = "INSERT INTO object_relationships (relationship_name, relationship_type, description, fk_object_type_id, fk_related_object_type_id) VALUES (?, ?, ?, ?, ?)";
+	        String sql = "INSERT INTO object_relationships (relationship_name, relationship_type, description, fk_object_type_id, fk_related_object_type_id) VALUES (?, ?::relationship_type, ?, ?, ?) RETURNING id";
 	        pstmt = connection.prepareStatement(sql);
 	        pstmt.setString(1, relationshipName);
 	        pstmt.setString(2, relationshipType.name());
@@ -33,12 +53,21 @@ public class ObjectRelationshipDAO {
 	        pstmt.setInt(4, objectTypeId);
 	        pstmt.setInt(5, relatedObjectTypeId);
 	
-	        int result = pstmt.executeUpdate();
-	        success = result > 0;
+	        rs = pstmt.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
+	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
 	    } finally {
 	        DatabaseUtility.disconnect(connection);
+	        if (rs != null) {
+	            try {
+	                rs.close();
+	            } catch (SQLException e) {
+	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
+	            }
+	        }
 	        if (pstmt != null) {
 	            try {
 	                pstmt.close();
@@ -47,10 +76,46 @@ public class ObjectRelationshipDAO {
 	            }
 	        }
 	    }
+	    boolean success = id > 0;
+	    if (success) {
+	        ChangeEventBus.publish("object_relationships", ChangeEvent.Type.CREATED, id);
+	    }
 	    return success;
 	}
 	
 	
+	/**
+	 * Creates many object relationships with JDBC batching.
+	 * Each relationship needs its ObjectType and related ObjectType set. The generated ids are stored in the given objects.
+	 * @param relationships The relationships to create.
+	 * @return BatchResult holding the generated id of every created relationship and the failure of every rejected one.
+	 */
+	public BatchResult createObjectRelationships(List<ObjectRelationship> relationships) {
+	    String sql = "INSERT INTO object_relationships (relationship_name, relationship_type, description, fk_object_type_id, fk_related_object_type_id) VALUES (?, ?::relationship_type, ?, ?, ?)";
+	    BatchInserter.StatementBinder<ObjectRelationship> binder = (pstmt, relationship) -> {
+	        pstmt.setString(1, relationship.getRelationshipName());
+	        pstmt.setString(2, relationship.getRelationshipType().name());
+	        pstmt.setString(3, relationship.getDescription());
+	        pstmt.setInt(4, relationship.getObjectType().getId());
+	        pstmt.setInt(5, relationship.getRelatedObjectType().getId());
+	    };
+	    BatchResult result = !RelationshipCycleGuard.ENABLED ? BatchInserter.insert(sql, relationships, binder)
+	            : BatchInserter.insert(sql, relationships, binder, relationship -> RelationshipCycleGuard.closesCycle(0,
+	                    relationship.getObjectType().getId(), relationship.getRelatedObjectType().getId()) ? "it would close a cycle" : null);
+	    for (int i = 0; i < relationships.size(); i++) {
+	        if (result.getId(i) > 0) {
+	            relationships.get(i).setId(result.getId(i));
+	            ChangeEventBus.publish("object_relationships", ChangeEvent.Type.CREATED, result.getId(i));
+	        }
+	    }
+	    if (!result.isSuccessful()) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "Bulk relationship creation incomplete: " + result);
+	    }
+	    return result;
+	}
+
+	
+	
 	/**
 	 * Deletes an existing object relationship from the database by its unique identifier.
 	 * @param relationshipId The unique identifier of the object relationship to be deleted.
@@ -77,6 +142,9 @@ public class ObjectRelationshipDAO {
 	        if (pstmt != null) try { pstmt.close(); } catch (SQLException logOrIgnore) {}
 	        DatabaseUtility.disconnect(connection);
 	    }
+	    if (success) {
+	        ChangeEventBus.publish("object_relationships", ChangeEvent.Type.DELETED, relationshipId);
+	    }
 	    return success;
 	}
 	
@@ -89,11 +157,26 @@ public class ObjectRelationshipDAO {
 	 * @param description Detailed explanation of the relationship's purpose.
 	 * @param objectTypeId The ID of the primary object type involved in the relationship.
 	 * @param relatedObjectTypeId The ID of the secondary object type involved in the relationship.
-	 * @return true if the update is successful, false otherwise.
+	 * @return true if the update is successful, false otherwise; false without updating if
+	 *         ontology.closure.rejectCycles is set and the changed relationship would close a cycle.
 	 */
 	public boolean updateObjectRelationship(int id, String relationshipName, ObjectRelationship.RelationshipType relationshipType, String description, int objectTypeId, int relatedObjectTypeId) {
+	    if (!RelationshipCycleGuard.ENABLED) {
+	        return writeObjectRelationship(id, relationshipName, relationshipType, description, objectTypeId, relatedObjectTypeId);
+	    }
+	    try {
+	        return UnitOfWork.execute(() -> !RelationshipCycleGuard.closesCycle(id, objectTypeId, relatedObjectTypeId)
+	                && writeObjectRelationship(id, relationshipName, relationshipType, description, objectTypeId, relatedObjectTypeId));
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error updating object relationship", e);
+	        return false;
+	    }
+	}
+	
+	private boolean writeObjectRelationship(int id, String relationshipName, ObjectRelationship.RelationshipType relationshipType, String description, int objectTypeId, int relatedObjectTypeId) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
+	    boolean updated = false;
 	    try {
 	        conn = DatabaseUtility.connect();
 	        String sql = "UPDATE object_relationships SET relationship_name = ?, relationship_type = ?::relationship_type, description = ?, fk_object_type_id = ?, fk_related_object_type_id = ? WHERE id = ?;";
@@ -105,14 +188,17 @@ public class ObjectRelationshipDAO {
 	        pstmt.setInt(5, relatedObjectTypeId);
 	        pstmt.setInt(6, id);
 	        int affectedRows = pstmt.executeUpdate();
-	        return affectedRows > 0;
+	        updated = affectedRows > 0;
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	        return false;
 	    } finally {
 	        if (pstmt != null) try { pstmt.close(); } catch (SQLException e) { e.printStackTrace(); }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (updated) {
+	        ChangeEventBus.publish("object_relationships", ChangeEvent.Type.UPDATED, id);
+	    }
+	    return updated;
 	}
 	
 	/**
@@ -122,50 +208,177 @@ public class ObjectRelationshipDAO {
 	 * @return ObjectRelationship if found, otherwise null.
 	 */
 	public ObjectRelationship fetchObjectRelationshipById(int id) {
-	    Connection conn = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
-	    ObjectRelationship relationship = null;
-	    try {
-	        conn = DatabaseUtility.connect();
-	        String sql = "SELECT * FROM object_relationships WHERE id = ?";
-	        pstmt = conn.prepareStatement(sql);
-	        pstmt.setInt(1, id);
-	        rs = pstmt.executeQuery();
-	        if (rs.next()) {
-	            relationship = new ObjectRelationship();
-	            relationship.setId(rs.getInt("id"));
-	            relationship.setRelationshipName(rs.getString("relationship_name"));
-	            relationship.setRelationshipType(ObjectRelationship.RelationshipType.valueOf(rs.getString("relationship_type")));
-	            relationship.setDescription(rs.getString("description"));
-	            // Assuming foreign keys refer to ids of ObjectType
-	            ObjectType objectType = new ObjectType();
-	            objectType.setId(rs.getInt("fk_object_type_id"));
-	            relationship.setObjectType(objectType);
-	
-	            ObjectType relatedObjectType = new ObjectType();
-	            relatedObjectType.setId(rs.getInt("fk_related_object_type_id"));
-	            relationship.setRelatedObjectType(relatedObjectType);
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        ObjectRelationship cached = snapshot.getRelationship(id);
+	        if (cached != null) {
+	            return OntologySnapshot.copy(cached);
 	        }
+	        // not in the snapshot yet, e.g. created on another node; read it from the database
+	    }
+	    return EntityCache.OBJECT_RELATIONSHIPS.get(id, this::loadObjectRelationshipById);
+	}
+	
+	private ObjectRelationship loadObjectRelationshipById(int id) {
+	    try {
+	        return QueryExecutor.queryOne("SELECT * FROM object_relationships WHERE id = ?", RowMappers.OBJECT_RELATIONSHIP, id);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching ObjectRelationship by ID", e);
-	    } finally {
-	        DatabaseUtility.disconnect(conn);
-	        if (pstmt != null) {
-	            try {
-	                pstmt.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error closing PreparedStatement", e);
+	        return null;
+	    }
+	}
+	
+	/**
+	 * Fetches many object relationships in one query, replacing a loop over fetchObjectRelationshipById.
+	 *
+	 * @param ids The identifiers of the object relationships to fetch.
+	 * @return Map of the object relationships found, keyed by id; ids without a row are absent. Empty if the query fails.
+	 */
+	public Map<Integer, ObjectRelationship> fetchObjectRelationshipsByIds(Collection<Integer> ids) {
+	    Map<Integer, ObjectRelationship> found = new LinkedHashMap<>();
+	    Collection<Integer> missing = ids;
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        missing = new ArrayList<>();
+	        for (Integer id : ids) {
+	            ObjectRelationship row = snapshot.getRelationship(id);
+	            if (row != null) {
+	                found.put(id, OntologySnapshot.copy(row));
+	            } else {
+	                missing.add(id);
 	            }
 	        }
-	        if (rs != null) {
-	            try {
-	                rs.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error closing ResultSet", e);
-	            }
+	        if (missing.isEmpty()) {
+	            return found;
+	        }
+	    }
+	    try {
+	        found.putAll(QueryExecutor.queryByIds("SELECT * FROM object_relationships WHERE id = ANY(?)", missing, RowMappers.OBJECT_RELATIONSHIP, ObjectRelationship::getId));
+	        return found;
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching object relationships by ids", e);
+	        return new HashMap<>();
+	    }
+	}
+
+	
+	/**
+	 * Finds the object types connected to an object type through at most 'maxHops' relationships, in either direction.
+	 * Used to answer "what is connected to this object type" without a query per hop.
+	 *
+	 * @param objectTypeId The object type to start from.
+	 * @param maxHops The maximum number of relationships to follow.
+	 * @return Map of the connected object type ids to their distance in hops, nearest first, including the start at 0.
+	 *         Empty if the object type has no relationships or the relationship graph is unavailable.
+	 */
+	public Map<Integer, Integer> fetchConnectedObjectTypeIds(int objectTypeId, int maxHops) {
+	    RelationshipGraph graph = RelationshipGraphCache.current();
+	    if (graph == null) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "Relationship graph unavailable for object type " + objectTypeId);
+	        return new LinkedHashMap<>();
+	    }
+	    return graph.neighborhood(objectTypeId, maxHops, RelationshipGraph.Direction.BOTH, null);
+	}
+	
+	/**
+	 * Finds a chain of relationships with the fewest links between two object types, in either direction.
+	 * Used to answer "how is this object type connected to that one".
+	 *
+	 * @param fromObjectTypeId The object type to start from.
+	 * @param toObjectTypeId The object type to reach.
+	 * @return The relationships along the path in order, empty if both are the same object type, or null if they are
+	 *         not connected or the relationship graph is unavailable.
+	 */
+	public List<ObjectRelationship> fetchRelationshipPath(int fromObjectTypeId, int toObjectTypeId) {
+	    RelationshipGraph graph = RelationshipGraphCache.current();
+	    if (graph == null) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "Relationship graph unavailable for path " + fromObjectTypeId + " -> " + toObjectTypeId);
+	        return null;
+	    }
+	    List<RelationshipGraph.Edge> edges = graph.shortestPath(fromObjectTypeId, toObjectTypeId, RelationshipGraph.Direction.BOTH, null);
+	    if (edges == null) {
+	        return null;
+	    }
+	    List<Integer> ids = new ArrayList<>();
+	    for (RelationshipGraph.Edge edge : edges) {
+	        ids.add(edge.getRelationshipId());
+	    }
+	    Map<Integer, ObjectRelationship> rows = fetchObjectRelationshipsByIds(ids);
+	    List<ObjectRelationship> path = new ArrayList<>();
+	    for (Integer id : ids) {
+	        ObjectRelationship row = rows.get(id);
+	        if (row == null) {
+	            return null; // deleted since the path was found
 	        }
+	        path.add(row);
+	    }
+	    return path;
+	}
+
+	/**
+	 * Finds every object type reachable from an object type by following its relationships, at any depth.
+	 *
+	 * @param objectTypeId The object type to start from.
+	 * @return The ids of the reachable object types; empty if there are none or the relationship graph is unavailable.
+	 */
+	public List<Integer> fetchDescendantObjectTypeIds(int objectTypeId) {
+	    ReachabilityIndex closure = RelationshipGraphCache.closure();
+	    if (closure != null) {
+	        return closure.descendantsOf(objectTypeId);
 	    }
-	    return relationship;
+	    return reachableInGraph(objectTypeId, RelationshipGraph.Direction.OUTGOING);
+	}
+	
+	/**
+	 * Finds every object type from which an object type is reachable by following relationships, at any depth.
+	 *
+	 * @param objectTypeId The object type to reach.
+	 * @return The ids of the object types reaching it; empty if there are none or the relationship graph is unavailable.
+	 */
+	public List<Integer> fetchAncestorObjectTypeIds(int objectTypeId) {
+	    ReachabilityIndex closure = RelationshipGraphCache.closure();
+	    if (closure != null) {
+	        return closure.ancestorsOf(objectTypeId);
+	    }
+	    return reachableInGraph(objectTypeId, RelationshipGraph.Direction.INCOMING);
+	}
+	
+	/**
+	 * Checks whether one object type reaches another by following relationships, at any depth.
+	 *
+	 * @param fromObjectTypeId The object type to start from.
+	 * @param toObjectTypeId The object type to reach.
+	 * @return true if there is a path; false if not or the relationship graph is unavailable.
+	 */
+	public boolean isObjectTypeReachable(int fromObjectTypeId, int toObjectTypeId) {
+	    ReachabilityIndex closure = RelationshipGraphCache.closure();
+	    if (closure != null) {
+	        return closure.isReachable(fromObjectTypeId, toObjectTypeId);
+	    }
+	    return reachableInGraph(fromObjectTypeId, RelationshipGraph.Direction.OUTGOING).contains(toObjectTypeId);
+	}
+	
+	private List<Integer> reachableInGraph(int objectTypeId, RelationshipGraph.Direction direction) {
+	    RelationshipGraph graph = RelationshipGraphCache.current();
+	    if (graph == null) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.WARNING, "Relationship graph unavailable for object type " + objectTypeId);
+	        return new ArrayList<>();
+	    }
+	    Map<Integer, Integer> reachable = graph.neighborhood(objectTypeId, -1, direction, null);
+	    reachable.remove(objectTypeId);
+	    List<Integer> ids = new ArrayList<>(reachable.keySet());
+	    // the start only reaches itself through a cycle
+	    for (RelationshipGraph.Edge edge : graph.edges(objectTypeId, reversed(direction), null)) {
+	        int neighbor = direction == RelationshipGraph.Direction.OUTGOING ? edge.getSourceId() : edge.getTargetId();
+	        if (neighbor == objectTypeId || reachable.containsKey(neighbor)) {
+	            ids.add(objectTypeId);
+	            break;
+	        }
+	    }
+	    return ids;
+	}
+	
+	private static RelationshipGraph.Direction reversed(RelationshipGraph.Direction direction) {
+	    return direction == RelationshipGraph.Direction.OUTGOING ? RelationshipGraph.Direction.INCOMING : RelationshipGraph.Direction.OUTGOING;
 	}
 }
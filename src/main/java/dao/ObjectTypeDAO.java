@@ -11,11 +11,25 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import utils.DatabaseUtility;import java.sql.Timestamp;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.DatabaseUtility;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import utils.KeysetPaginator;
+import utils.Page;
+import utils.QueryExecutor;
 
 
 public class ObjectTypeDAO {
 
+	private static final KeysetPaginator PAGINATOR = new KeysetPaginator("object_types")
+	        .sortColumn("name", false)
+	        .sortColumn("status_options", false)
+	        .sortColumn("created_at", false)
+	        .sortColumn("updated_at", true);
 	
 	/**
 	 * Fetches a paginated list of object types from the database with sorting.
@@ -24,44 +38,39 @@ public class ObjectTypeDAO {
 	 *
 	 * @param limit The maximum number of object types to return.
 	 * @param offset The number of object types to skip for pagination.
-	 * @param sortBy The field to sort the object types by.
+	 * @param sortBy The field to sort the object types by: id, name, status_options, created_at or updated_at.
 	 * @param sortDirection The direction of sorting, either 'asc' or 'desc'.
 	 * @return A list of ObjectType instances representing the object types.
 	 */
 	public List<ObjectType> fetchAllObjectTypes(int limit, int offset, String sortBy, String sortDirection) {
-	    List<ObjectType> objectTypes = new ArrayList<>();
-	    Connection conn = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
 	    try {
-	        conn = DatabaseUtility.connect();
-	        String sql = "SELECT * FROM object_types ORDER BY " + sortBy + " " + sortDirection + " LIMIT ? OFFSET ?";
-	        pstmt = conn.prepareStatement(sql);
-	        pstmt.setInt(1, limit);
-	        pstmt.setInt(2, offset);
-	        rs = pstmt.executeQuery();
-	        while (rs.next()) {
-	            ObjectType objectType = new ObjectType();
-	            objectType.setId(rs.getInt("id"));
-	            objectType.setName(rs.getString("name"));
-	            objectType.setDescription(rs.getString("description"));
-	            objectType.setCreatedAt(rs.getTimestamp("created_at"));
-	            objectType.setUpdatedAt(rs.getTimestamp("updated_at"));
-	            objectType.setStatusOption(ObjectType.StatusOption.valueOf(rs.getString("status_options")));
-	            objectTypes.add(objectType);
-	        }
-	    } catch (SQLException ex) {
+	        String sql = "SELECT * FROM object_types " + PAGINATOR.orderBy(sortBy, sortDirection) + " LIMIT ? OFFSET ?";
+	        return QueryExecutor.query(sql, RowMappers.OBJECT_TYPE, limit, offset);
+	    } catch (SQLException | IllegalArgumentException ex) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, ex);
-	    } finally {
-	        try {
-	            if (rs != null) rs.close();
-	            if (pstmt != null) pstmt.close();
-	            DatabaseUtility.disconnect(conn);
-	        } catch (SQLException ex) {
-	            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, ex);
-	        }
+	        return new ArrayList<>();
+	    }
+	}
+	
+	/**
+	 * Fetches one page of object types using keyset pagination, for the 'Object Types Table' of the 'Object Management Dashboard'.
+	 * Unlike fetchAllObjectTypes the cost of a page does not grow with its depth, provided the indexes in
+	 * sql/keyset_pagination_indexes.sql exist.
+	 *
+	 * @param cursor The cursor returned with the previous page, or null for the first page.
+	 * @param limit The maximum number of object types to return.
+	 * @param sortBy The field to sort the object types by: id, name, status_options, created_at or updated_at.
+	 * @param sortDirection The direction of sorting, either 'asc' or 'desc'.
+	 * @return The page of object types with the cursor of the next page; an empty page if the query fails.
+	 * @throws IllegalArgumentException if sortBy or sortDirection is not supported or the cursor belongs to another sort order.
+	 */
+	public Page<ObjectType> fetchObjectTypesPage(String cursor, int limit, String sortBy, String sortDirection) {
+	    try {
+	        return PAGINATOR.fetch(cursor, limit, sortBy, sortDirection, RowMappers.OBJECT_TYPE);
+	    } catch (SQLException ex) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching object type page", ex);
+	        return new Page<>(new ArrayList<>(), null);
 	    }
-	    return objectTypes;
 	}
 	
 	
@@ -74,48 +83,24 @@ public class ObjectTypeDAO {
 	 * @return ObjectType The object type found, or null if not found.
 	 */
 	public ObjectType fetchObjectTypeById(int id) {
-	    Connection conn = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
-	    ObjectType objectType = null;
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        ObjectType cached = snapshot.getObjectType(id);
+	        if (cached != null) {
+	            return OntologySnapshot.copy(cached);
+	        }
+	        // not in the snapshot yet, e.g. created on another node; read it from the database
+	    }
+	    return EntityCache.OBJECT_TYPES.get(id, this::loadObjectTypeById);
+	}
 	
+	private ObjectType loadObjectTypeById(int id) {
 	    try {
-	        conn = DatabaseUtility.connect();
-	        String sql = "SELECT * FROM object_types WHERE id = ?";
-	        pstmt = conn.prepareStatement(sql);
-	        pstmt.setInt(1, id);
-	        rs = pstmt.executeQuery();
-	
-	        if (rs.next()) {
-	            objectType = new ObjectType();
-	            objectType.setId(rs.getInt("id"));
-	            objectType.setName(rs.getString("name"));
-	            objectType.setDescription(rs.getString("description"));
-	            objectType.setCreatedAt(rs.getTimestamp("created_at"));
-	            objectType.setUpdatedAt(rs.getTimestamp("updated_at"));
-	            objectType.setStatusOption(ObjectType.StatusOption.valueOf(rs.getString("status_options")));
-	        }
+	        return QueryExecutor.queryOne("SELECT * FROM object_types WHERE id = ?", RowMappers.OBJECT_TYPE, id);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching object type by ID", e);
-	    } finally {
-	        DatabaseUtility.disconnect(conn);
-	        if (pstmt != null) {
-	            try {
-	                pstmt.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error closing PreparedStatement", e);
-	            }
-	        }
-	        if (rs != null) {
-	            try {
-	                rs.close();
-	            } catch (SQLException e) {
-	                Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error closing ResultSet", e);
-	            }
-	        }
+	        return null;
 	    }
-	
-	    return objectType;
 	}
 	
 	
@@ -160,6 +145,9 @@ public class ObjectTypeDAO {
 	            }
 	        }
 	    }
+	    if (updateSuccess) {
+	        ChangeEventBus.publish("object_types", ChangeEvent.Type.UPDATED, id);
+	    }
 	    return updateSuccess;
 	}
 	
@@ -172,15 +160,15 @@ public class ObjectTypeDAO {
 	    Connection connection = null;
 	    PreparedStatement statement = null;
 	    String sql = "DELETE FROM object_types WHERE id = ?";
+	    boolean deleted = false;
 	    try {
 	        connection = DatabaseUtility.connect();
 	        statement = connection.prepareStatement(sql);
 	        statement.setInt(1, id);
 	        int rowsAffected = statement.executeUpdate();
-	        return rowsAffected > 0;
+	        deleted = rowsAffected > 0;
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error deleting object type with ID: " + id, e);
-	        return false;
 	    } finally {
 	        if (statement != null) {
 	            try {
@@ -191,5 +179,59 @@ public class ObjectTypeDAO {
 	        }
 	        DatabaseUtility.disconnect(connection);
 	    }
+	    if (deleted) {
+	        ChangeEventBus.publish("object_types", ChangeEvent.Type.DELETED, id);
+	    }
+	    return deleted;
+	}
+	
+	/**
+	 * Fetches many object types in one query, replacing a loop over fetchObjectTypeById.
+	 *
+	 * @param ids The identifiers of the object types to fetch.
+	 * @return Map of the object types found, keyed by id; ids without a row are absent. Empty if the query fails.
+	 */
+	public Map<Integer, ObjectType> fetchObjectTypesByIds(Collection<Integer> ids) {
+	    Map<Integer, ObjectType> found = new LinkedHashMap<>();
+	    Collection<Integer> missing = ids;
+	    OntologySnapshot snapshot = OntologyCache.current();
+	    if (snapshot != null) {
+	        missing = new ArrayList<>();
+	        for (Integer id : ids) {
+	            ObjectType row = snapshot.getObjectType(id);
+	            if (row != null) {
+	                found.put(id, OntologySnapshot.copy(row));
+	            } else {
+	                missing.add(id);
+	            }
+	        }
+	        if (missing.isEmpty()) {
+	            return found;
+	        }
+	    }
+	    try {
+	        found.putAll(QueryExecutor.queryByIds("SELECT * FROM object_types WHERE id = ANY(?)", missing, RowMappers.OBJECT_TYPE, ObjectType::getId));
+	        return found;
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching object types by ids", e);
+	        return new HashMap<>();
+	    }
+	}
+	
+	/**
+	 * Finds everything an edit or delete of an object type would affect: the use cases linked to it directly and through
+	 * its actions, its action associations, filters and relationships, and the object types related to it.
+	 * Used in 'Object Type Editing' to show the blast radius before updateObjectType or deleteObjectTypeById.
+	 *
+	 * @param id The identifier of the object type.
+	 * @return The ids of the dependent rows, or null if they cannot be read.
+	 */
+	public ImpactIndex.Impact fetchObjectTypeImpact(int id) {
+	    try {
+	        return ImpactIndex.ofObjectType(id);
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching the impact of object type with ID: " + id, e);
+	        return null;
+	    }
 	}
 }
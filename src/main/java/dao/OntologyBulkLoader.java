@@ -0,0 +1,440 @@
+package dao;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.DatabaseUtility;
+import utils.UnitOfWork;
+
+/**
+ * Loads a complete ontology with PostgreSQL {@code COPY} instead of row by row
+ * inserts.
+ *
+ * <p>
+ * Each input is CSV with a header line, in the column order below. Foreign
+ * keys are given by name and resolved in the database, so the input needs no
+ * generated ids:
+ * </p>
+ * <ul>
+ * <li>object types: {@code name, description, status_options}</li>
+ * <li>attributes: {@code object_type_name, attribute_name, data_type,
+ * is_mandatory, default_value, description, attribute_length}</li>
+ * <li>relationships: {@code relationship_name, relationship_type, description,
+ * object_type_name, related_object_type_name}</li>
+ * <li>associations: {@code association_name, association_type, is_active,
+ * action_name, object_type_name}</li>
+ * </ul>
+ *
+ * <p>
+ * The inputs are streamed through the driver's {@link CopyManager} into
+ * temporary staging tables, so client memory stays constant whatever the
+ * input size. The staged rows are then moved into {@code object_types},
+ * {@code object_attributes}, {@code object_relationships} and
+ * {@code action_object_type_associations} with one {@code INSERT ... SELECT}
+ * per table. Names resolve to the newest object type or action with that
+ * name, so object types loaded in the same run take precedence. Rows whose
+ * names do not resolve are not stored: the report counts them per table and
+ * lists the first {@value #MAX_REJECTED_ROWS} of each with their row number in
+ * the input and the names that did not resolve, and the load logs a warning.
+ * </p>
+ *
+ * <p>
+ * The load runs in one transaction: either everything is stored or nothing
+ * is. Inside a {@link UnitOfWork} it joins the active transaction. With
+ * {@code ontology.closure.rejectCycles} the relationships are loaded under
+ * the lock of {@link RelationshipCycleGuard}, and the load fails if any
+ * loaded relationship lies on a cycle; the check reads every relationship
+ * into memory.
+ * </p>
+ */
+public class OntologyBulkLoader {
+
+	private static final Logger LOGGER = Logger.getLogger(OntologyBulkLoader.class.getName());
+
+	private static final String COPY_OPTIONS = " FROM STDIN WITH (FORMAT csv, HEADER true)";
+
+	/** Rejected rows listed in the report per table; further rejections are only counted. */
+	static final int MAX_REJECTED_ROWS = 100;
+
+	/**
+	 * Loads the given inputs. Any input may be null to skip that table.
+	 *
+	 * @param objectTypes   CSV of object types
+	 * @param attributes    CSV of object attributes
+	 * @param relationships CSV of object relationships
+	 * @param associations  CSV of action-object type associations
+	 * @return row counts and throughput per table
+	 * @throws SQLException if no connection is available or the load fails; the
+	 *                      transaction is rolled back
+	 * @throws IOException  if an input cannot be read
+	 */
+	public LoadReport load(Reader objectTypes, Reader attributes, Reader relationships, Reader associations)
+			throws SQLException, IOException {
+		boolean joined = UnitOfWork.isActive();
+		Connection conn = DatabaseUtility.connect();
+		if (conn == null) {
+			throw new SQLException("No database connection available");
+		}
+		LoadReport report = new LoadReport();
+		try {
+			if (!joined) {
+				conn.setAutoCommit(false);
+			}
+			CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+			try (Statement stmt = conn.createStatement()) {
+				if (objectTypes != null) {
+					loadObjectTypes(stmt, copyManager, objectTypes, report);
+				}
+				stmt.execute("CREATE TEMP TABLE bulk_object_type_ids ON COMMIT DROP AS"
+						+ " SELECT DISTINCT ON (name) name, id FROM object_types ORDER BY name, id DESC");
+				stmt.execute("CREATE INDEX ON bulk_object_type_ids (name)");
+				stmt.execute("ANALYZE bulk_object_type_ids");
+				if (attributes != null) {
+					loadAttributes(stmt, copyManager, attributes, report);
+				}
+				if (relationships != null) {
+					loadRelationships(stmt, copyManager, relationships, report);
+				}
+				if (associations != null) {
+					loadAssociations(stmt, copyManager, associations, report);
+				}
+			}
+			if (!joined) {
+				conn.commit();
+			}
+		} catch (SQLException | IOException | RuntimeException e) {
+			if (joined) {
+				UnitOfWork.setRollbackOnly();
+			} else {
+				try {
+					conn.rollback();
+				} catch (SQLException rollbackError) {
+					LOGGER.log(Level.WARNING, "Error rolling back ontology load", rollbackError);
+				}
+			}
+			throw e;
+		} finally {
+			if (!joined) {
+				try {
+					conn.setAutoCommit(true);
+				} catch (SQLException e) {
+					LOGGER.log(Level.WARNING, "Error restoring auto-commit", e);
+				}
+			}
+			DatabaseUtility.disconnect(conn);
+		}
+		report.finish();
+		LOGGER.log(Level.INFO, "Ontology load finished: {0}", report);
+		if (report.getSkippedRows() > 0) {
+			LOGGER.log(Level.WARNING, "Ontology load skipped {0} rows with unresolved names: {1}",
+					new Object[] { report.getSkippedRows(), report.getRejectedRows() });
+		}
+		publishLoaded(objectTypes, "object_types");
+		publishLoaded(attributes, "object_attributes");
+		publishLoaded(relationships, "object_relationships");
+		publishLoaded(associations, "action_object_type_associations");
+		return report;
+	}
+
+	private static void publishLoaded(Reader input, String table) {
+		if (input != null) {
+			ChangeEventBus.publish(table, ChangeEvent.Type.CREATED, 0);
+		}
+	}
+
+	private void loadObjectTypes(Statement stmt, CopyManager copyManager, Reader input, LoadReport report)
+			throws SQLException, IOException {
+		long start = System.nanoTime();
+		stmt.execute("CREATE TEMP TABLE bulk_object_types (name text, description text, status_options text) ON COMMIT DROP");
+		long copied = copyManager.copyIn("COPY bulk_object_types (name, description, status_options)" + COPY_OPTIONS, input);
+		int inserted = stmt.executeUpdate("INSERT INTO object_types (name, description, status_options, created_at, updated_at)"
+				+ " SELECT name, description, status_options::status_options, now(), now() FROM bulk_object_types");
+		report.add("object_types", copied, inserted, System.nanoTime() - start, Collections.emptyList());
+	}
+
+	private void loadAttributes(Statement stmt, CopyManager copyManager, Reader input, LoadReport report)
+			throws SQLException, IOException {
+		long start = System.nanoTime();
+		stmt.execute("CREATE TEMP TABLE bulk_object_attributes (row_number bigserial, object_type_name text, attribute_name text, data_type text,"
+				+ " is_mandatory boolean, default_value text, description text, attribute_length integer) ON COMMIT DROP");
+		long copied = copyManager.copyIn("COPY bulk_object_attributes (object_type_name, attribute_name, data_type,"
+				+ " is_mandatory, default_value, description, attribute_length)" + COPY_OPTIONS, input);
+		int inserted = stmt.executeUpdate("INSERT INTO object_attributes (fk_object_type_id, attribute_name, data_type,"
+				+ " is_mandatory, default_value, description, attribute_length)"
+				+ " SELECT t.id, s.attribute_name, s.data_type, s.is_mandatory, s.default_value, s.description, s.attribute_length"
+				+ " FROM bulk_object_attributes s JOIN bulk_object_type_ids t ON t.name = s.object_type_name");
+		List<RejectedRow> rejected = inserted == copied ? Collections.emptyList() : rejectedRows(stmt,
+				"SELECT s.row_number, 'unknown object type ' || quote_nullable(s.object_type_name)"
+				+ " FROM bulk_object_attributes s LEFT JOIN bulk_object_type_ids t ON t.name = s.object_type_name"
+				+ " WHERE t.id IS NULL");
+		report.add("object_attributes", copied, inserted, System.nanoTime() - start, rejected);
+	}
+
+	private void loadRelationships(Statement stmt, CopyManager copyManager, Reader input, LoadReport report)
+			throws SQLException, IOException {
+		long start = System.nanoTime();
+		stmt.execute("CREATE TEMP TABLE bulk_object_relationships (row_number bigserial, relationship_name text, relationship_type text,"
+				+ " description text, object_type_name text, related_object_type_name text) ON COMMIT DROP");
+		long copied = copyManager.copyIn("COPY bulk_object_relationships (relationship_name, relationship_type, description,"
+				+ " object_type_name, related_object_type_name)" + COPY_OPTIONS, input);
+		int lastId = 0;
+		if (RelationshipCycleGuard.ENABLED) {
+			RelationshipCycleGuard.lock(stmt.getConnection());
+			try (ResultSet rs = stmt.executeQuery("SELECT coalesce(max(id), 0) FROM object_relationships")) {
+				rs.next();
+				lastId = rs.getInt(1);
+			}
+		}
+		int inserted = stmt.executeUpdate("INSERT INTO object_relationships (relationship_name, relationship_type, description,"
+				+ " fk_object_type_id, fk_related_object_type_id)"
+				+ " SELECT s.relationship_name, s.relationship_type::relationship_type, s.description, t.id, r.id"
+				+ " FROM bulk_object_relationships s"
+				+ " JOIN bulk_object_type_ids t ON t.name = s.object_type_name"
+				+ " JOIN bulk_object_type_ids r ON r.name = s.related_object_type_name");
+		List<RejectedRow> rejected = inserted == copied ? Collections.emptyList() : rejectedRows(stmt,
+				"SELECT s.row_number, concat_ws(', ',"
+				+ " CASE WHEN t.id IS NULL THEN 'unknown object type ' || quote_nullable(s.object_type_name) END,"
+				+ " CASE WHEN r.id IS NULL THEN 'unknown related object type ' || quote_nullable(s.related_object_type_name) END)"
+				+ " FROM bulk_object_relationships s"
+				+ " LEFT JOIN bulk_object_type_ids t ON t.name = s.object_type_name"
+				+ " LEFT JOIN bulk_object_type_ids r ON r.name = s.related_object_type_name"
+				+ " WHERE t.id IS NULL OR r.id IS NULL");
+		if (RelationshipCycleGuard.ENABLED) {
+			List<RelationshipGraph.Edge> cyclic = RelationshipCycleGuard.newEdgesOnCycles(stmt.getConnection(), lastId);
+			if (!cyclic.isEmpty()) {
+				throw new SQLException(cyclic.size() + " loaded relationships would close a cycle, first between object types "
+						+ cyclic.get(0).getSourceId() + " and " + cyclic.get(0).getTargetId());
+			}
+		}
+		report.add("object_relationships", copied, inserted, System.nanoTime() - start, rejected);
+	}
+
+	private void loadAssociations(Statement stmt, CopyManager copyManager, Reader input, LoadReport report)
+			throws SQLException, IOException {
+		long start = System.nanoTime();
+		stmt.execute("CREATE TEMP TABLE bulk_action_object_type_associations (row_number bigserial, association_name text, association_type text,"
+				+ " is_active boolean, action_name text, object_type_name text) ON COMMIT DROP");
+		long copied = copyManager.copyIn("COPY bulk_action_object_type_associations (association_name, association_type,"
+				+ " is_active, action_name, object_type_name)" + COPY_OPTIONS, input);
+		int inserted = stmt.executeUpdate("INSERT INTO action_object_type_associations (association_name, association_type,"
+				+ " is_active, fk_action_id, fk_object_type_id)"
+				+ " SELECT s.association_name, s.association_type, s.is_active, a.id, t.id"
+				+ " FROM bulk_action_object_type_associations s"
+				+ " JOIN (SELECT DISTINCT ON (action_name) action_name, id FROM actions ORDER BY action_name, id DESC) a"
+				+ " ON a.action_name = s.action_name"
+				+ " JOIN bulk_object_type_ids t ON t.name = s.object_type_name");
+		List<RejectedRow> rejected = inserted == copied ? Collections.emptyList() : rejectedRows(stmt,
+				"SELECT s.row_number, concat_ws(', ',"
+				+ " CASE WHEN NOT EXISTS (SELECT 1 FROM actions a WHERE a.action_name = s.action_name)"
+				+ " THEN 'unknown action ' || quote_nullable(s.action_name) END,"
+				+ " CASE WHEN t.id IS NULL THEN 'unknown object type ' || quote_nullable(s.object_type_name) END)"
+				+ " FROM bulk_action_object_type_associations s"
+				+ " LEFT JOIN bulk_object_type_ids t ON t.name = s.object_type_name"
+				+ " WHERE t.id IS NULL OR NOT EXISTS (SELECT 1 FROM actions a WHERE a.action_name = s.action_name)");
+		report.add("action_object_type_associations", copied, inserted, System.nanoTime() - start, rejected);
+	}
+
+	/**
+	 * Lists the first staged rows that were not stored.
+	 *
+	 * @param sql selects the row number and the reason of every unresolved row
+	 */
+	private static List<RejectedRow> rejectedRows(Statement stmt, String sql) throws SQLException {
+		List<RejectedRow> rejected = new ArrayList<>();
+		try (ResultSet rs = stmt.executeQuery(sql + " ORDER BY s.row_number LIMIT " + MAX_REJECTED_ROWS)) {
+			while (rs.next()) {
+				rejected.add(new RejectedRow(rs.getLong(1), rs.getString(2)));
+			}
+		}
+		return rejected;
+	}
+
+	/**
+	 * Row counts and throughput of a load.
+	 */
+	public static class LoadReport {
+
+		private final long startNanos = System.nanoTime();
+		private final Map<String, TableLoad> tables = new LinkedHashMap<>();
+		private long elapsedNanos;
+
+		void add(String table, long copied, long inserted, long nanos, List<RejectedRow> rejected) {
+			tables.put(table, new TableLoad(copied, inserted, nanos, rejected));
+		}
+
+		void finish() {
+			elapsedNanos = System.nanoTime() - startNanos;
+		}
+
+		/**
+		 * @return the loaded tables in load order
+		 */
+		public Map<String, TableLoad> getTables() {
+			return tables;
+		}
+
+		/**
+		 * @return rows stored in all tables
+		 */
+		public long getInsertedRows() {
+			long total = 0;
+			for (TableLoad table : tables.values()) {
+				total += table.getInsertedRows();
+			}
+			return total;
+		}
+
+		/**
+		 * @return input rows skipped because a name did not resolve
+		 */
+		public long getSkippedRows() {
+			long total = 0;
+			for (TableLoad table : tables.values()) {
+				total += table.getSkippedRows();
+			}
+			return total;
+		}
+
+		/**
+		 * @return the listed rejected rows of every table that has any
+		 */
+		public Map<String, List<RejectedRow>> getRejectedRows() {
+			Map<String, List<RejectedRow>> rejected = new LinkedHashMap<>();
+			for (Map.Entry<String, TableLoad> table : tables.entrySet()) {
+				if (!table.getValue().getRejectedRows().isEmpty()) {
+					rejected.put(table.getKey(), table.getValue().getRejectedRows());
+				}
+			}
+			return rejected;
+		}
+
+		/**
+		 * @return wall-clock time of the whole load in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return elapsedNanos / 1000000;
+		}
+
+		/**
+		 * @return stored rows per second over the whole load
+		 */
+		public double getRowsPerSecond() {
+			return elapsedNanos == 0 ? 0 : getInsertedRows() * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d rows in %d ms (%.0f rows/s), %d skipped, per table %s",
+					getInsertedRows(), getElapsedMillis(), getRowsPerSecond(), getSkippedRows(), tables);
+		}
+	}
+
+	/**
+	 * Counts of one table.
+	 */
+	public static class TableLoad {
+
+		private final long copiedRows;
+		private final long insertedRows;
+		private final long nanos;
+		private final List<RejectedRow> rejectedRows;
+
+		TableLoad(long copiedRows, long insertedRows, long nanos, List<RejectedRow> rejectedRows) {
+			this.copiedRows = copiedRows;
+			this.insertedRows = insertedRows;
+			this.nanos = nanos;
+			this.rejectedRows = Collections.unmodifiableList(rejectedRows);
+		}
+
+		/**
+		 * @return rows read from the input
+		 */
+		public long getCopiedRows() {
+			return copiedRows;
+		}
+
+		/**
+		 * @return rows stored in the table
+		 */
+		public long getInsertedRows() {
+			return insertedRows;
+		}
+
+		/**
+		 * @return input rows whose names did not resolve
+		 */
+		public long getSkippedRows() {
+			return copiedRows - insertedRows;
+		}
+
+		/**
+		 * @return the first {@value OntologyBulkLoader#MAX_REJECTED_ROWS}
+		 *         skipped rows in input order
+		 */
+		public List<RejectedRow> getRejectedRows() {
+			return rejectedRows;
+		}
+
+		/**
+		 * @return stored rows per second for this table
+		 */
+		public double getRowsPerSecond() {
+			return nanos == 0 ? 0 : insertedRows * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("{copied=%d, inserted=%d, %.0f rows/s}", copiedRows, insertedRows, getRowsPerSecond());
+		}
+	}
+
+	/**
+	 * An input row that was not stored.
+	 */
+	public static class RejectedRow {
+
+		private final long rowNumber;
+		private final String reason;
+
+		RejectedRow(long rowNumber, String reason) {
+			this.rowNumber = rowNumber;
+			this.reason = reason;
+		}
+
+		/**
+		 * @return the 1-based position of the row in the input, not counting
+		 *         the header
+		 */
+		public long getRowNumber() {
+			return rowNumber;
+		}
+
+		/**
+		 * @return the names that did not resolve
+		 */
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return "row " + rowNumber + ": " + reason;
+		}
+	}
+}
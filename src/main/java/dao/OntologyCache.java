@@ -0,0 +1,273 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+import utils.ApplicationConfig;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.ClusterChangeNotifier;
+import utils.QueryExecutor;
+import utils.RowMapperFactory;
+import utils.UnitOfWork;
+
+/**
+ * Serves the ontology lookups of the DAOs from an in-memory
+ * {@link OntologySnapshot} instead of the database.
+ *
+ * <p>
+ * The current snapshot sits behind an {@link AtomicReference}: readers take it
+ * without locking, writers build a new snapshot and swap it in. The snapshot
+ * is loaded on first use. Afterwards every committed change published on the
+ * {@link ChangeEventBus} reloads only the changed row from the primary and
+ * patches a copy of the snapshot; changes whose rows are unknown reload the
+ * table, and deletes of object types or actions, which may cascade, rebuild
+ * the whole snapshot. Patches and rebuilds are serialized, so they are
+ * applied in commit order.
+ * </p>
+ *
+ * <p>
+ * Changes made by other application nodes arrive through the event bus when
+ * {@link utils.ClusterChangeNotifier} is enabled; a notification that changes
+ * may have been missed drops the snapshot. As a safety net, every
+ * {@code ontology.cache.refreshIntervalMs} (default 300000, 0 for never) the
+ * first reader rebuilds the snapshot while the others keep using the
+ * previous one; with several nodes and no notifier that interval bounds how
+ * stale a read can be. Reads inside a {@link UnitOfWork} bypass the cache so they
+ * see the uncommitted changes of the unit of work. When the snapshot cannot
+ * be loaded the DAOs fall back to the database.
+ * </p>
+ *
+ * <p>
+ * Enabled with {@code ontology.cache.enabled}.
+ * </p>
+ */
+public final class OntologyCache {
+
+	private static final Logger LOGGER = Logger.getLogger(OntologyCache.class.getName());
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("ontology.cache.enabled", false);
+	private static final long REFRESH_INTERVAL_MS = ApplicationConfig.getLong("ontology.cache.refreshIntervalMs", 300000);
+
+	private static final AtomicReference<OntologySnapshot> SNAPSHOT = new AtomicReference<>();
+	private static final Object WRITE_LOCK = new Object();
+	private static final Object LOAD_LOCK = new Object();
+	/** Counts changes and invalidations, so a load can tell whether one raced with it. */
+	private static final AtomicLong CHANGES = new AtomicLong();
+	private static final AtomicBoolean REFRESHING = new AtomicBoolean();
+
+	private static final AtomicLong BUILDS = new AtomicLong();
+	private static final AtomicLong PATCHES = new AtomicLong();
+	private static final AtomicLong FAILURES = new AtomicLong();
+
+	static {
+		if (ENABLED) {
+			ChangeEventBus.subscribe(OntologyCache::onChange);
+			if (!ClusterChangeNotifier.isEnabled()) {
+				LOGGER.warning("ontology.cache.enabled without cluster.notify.enabled: changes made by other nodes"
+						+ " are only seen after ontology.cache.refreshIntervalMs");
+			}
+		}
+	}
+
+	private OntologyCache() {
+	}
+
+	/**
+	 * @return whether DAO lookups are served from the cache
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Returns the snapshot to read from, loading it on first use.
+	 *
+	 * @return the current snapshot, or null when the cache is disabled, a unit
+	 *         of work is active on this thread or the snapshot cannot be
+	 *         loaded; callers then read from the database
+	 */
+	public static OntologySnapshot current() {
+		if (!ENABLED || UnitOfWork.isActive()) {
+			return null;
+		}
+		OntologySnapshot snapshot = SNAPSHOT.get();
+		if (snapshot == null) {
+			return load();
+		}
+		if (REFRESH_INTERVAL_MS > 0 && System.currentTimeMillis() - snapshot.getBuiltAt() > REFRESH_INTERVAL_MS
+				&& REFRESHING.compareAndSet(false, true)) {
+			try {
+				refresh();
+			} finally {
+				REFRESHING.set(false);
+			}
+			OntologySnapshot refreshed = SNAPSHOT.get();
+			return refreshed != null ? refreshed : snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Reloads the snapshot from the database. On failure the previous snapshot
+	 * is kept.
+	 *
+	 * @return true if the snapshot was reloaded
+	 */
+	public static boolean refresh() {
+		synchronized (WRITE_LOCK) {
+			try {
+				SNAPSHOT.set(build());
+				return true;
+			} catch (SQLException | RuntimeException e) {
+				FAILURES.incrementAndGet();
+				LOGGER.log(Level.SEVERE, "Error reloading the ontology snapshot", e);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Drops the snapshot; the next read loads a new one.
+	 */
+	public static void invalidate() {
+		CHANGES.incrementAndGet();
+		synchronized (WRITE_LOCK) {
+			SNAPSHOT.set(null);
+		}
+	}
+
+	/**
+	 * Returns the state of the cache.
+	 *
+	 * @return whether it is enabled and loaded, its version and size, and the
+	 *         build, patch and failure counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("enabled", ENABLED);
+		OntologySnapshot snapshot = SNAPSHOT.get();
+		json.put("loaded", snapshot != null);
+		if (snapshot != null) {
+			json.put("version", snapshot.getVersion());
+			json.put("builtAt", snapshot.getBuiltAt());
+			json.put("sizes", snapshot.getSizes());
+		}
+		json.put("builds", BUILDS.get());
+		json.put("patches", PATCHES.get());
+		json.put("failures", FAILURES.get());
+		return json;
+	}
+
+	/**
+	 * Builds the first snapshot outside the write lock, so changes committed
+	 * meanwhile are not blocked; it is installed only if none arrived during
+	 * the build, since those may be missing from it and were not patched in.
+	 * Otherwise it is returned to this caller alone and the next read loads
+	 * again.
+	 */
+	private static OntologySnapshot load() {
+		synchronized (LOAD_LOCK) {
+			OntologySnapshot snapshot = SNAPSHOT.get();
+			if (snapshot != null) {
+				return snapshot;
+			}
+			long changes = CHANGES.get();
+			try {
+				snapshot = build();
+			} catch (SQLException | RuntimeException e) {
+				FAILURES.incrementAndGet();
+				LOGGER.log(Level.SEVERE, "Error loading the ontology snapshot, reading from the database", e);
+				return null;
+			}
+			synchronized (WRITE_LOCK) {
+				if (CHANGES.get() == changes && SNAPSHOT.get() == null) {
+					SNAPSHOT.set(snapshot);
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	private static OntologySnapshot build() throws SQLException {
+		OntologySnapshot snapshot = OntologySnapshot.build(
+				QueryExecutor.queryPrimary("SELECT * FROM object_types", RowMappers.OBJECT_TYPE),
+				QueryExecutor.queryPrimary("SELECT * FROM object_attributes", RowMappers.OBJECT_ATTRIBUTE),
+				QueryExecutor.queryPrimary("SELECT * FROM object_relationships", RowMappers.OBJECT_RELATIONSHIP),
+				QueryExecutor.queryPrimary("SELECT * FROM actions", RowMappers.ACTION),
+				QueryExecutor.queryPrimary("SELECT * FROM actions_input_types", RowMappers.ACTIONS_INPUT_TYPE));
+		BUILDS.incrementAndGet();
+		return snapshot;
+	}
+
+	private static void onChange(ChangeEvent event) {
+		CHANGES.incrementAndGet();
+		if (event.isAllTables()) {
+			invalidate();
+			return;
+		}
+		synchronized (WRITE_LOCK) {
+			OntologySnapshot snapshot = SNAPSHOT.get();
+			if (snapshot == null) {
+				return; // nothing cached, the next read loads the current state
+			}
+			try {
+				OntologySnapshot patched = apply(snapshot, event);
+				if (patched != snapshot) {
+					SNAPSHOT.set(patched);
+					PATCHES.incrementAndGet();
+				}
+			} catch (SQLException | RuntimeException e) {
+				FAILURES.incrementAndGet();
+				LOGGER.log(Level.SEVERE, "Error applying " + event + " to the ontology snapshot, dropping it", e);
+				SNAPSHOT.set(null);
+			}
+		}
+	}
+
+	private static OntologySnapshot apply(OntologySnapshot snapshot, ChangeEvent event) throws SQLException {
+		int id = event.getId();
+		boolean deleted = event.getType() == ChangeEvent.Type.DELETED;
+		switch (event.getTable()) {
+		case "object_types":
+			if (event.isWholeTable() || deleted) {
+				return build();
+			}
+			return snapshot.withObjectType(id, row("object_types", id, RowMappers.OBJECT_TYPE));
+		case "object_attributes":
+			if (event.isWholeTable()) {
+				return snapshot.withAttributes(QueryExecutor.queryPrimary("SELECT * FROM object_attributes", RowMappers.OBJECT_ATTRIBUTE));
+			}
+			return snapshot.withAttribute(id, deleted ? null : row("object_attributes", id, RowMappers.OBJECT_ATTRIBUTE));
+		case "object_relationships":
+			if (event.isWholeTable()) {
+				return snapshot.withRelationships(QueryExecutor.queryPrimary("SELECT * FROM object_relationships", RowMappers.OBJECT_RELATIONSHIP));
+			}
+			return snapshot.withRelationship(id, deleted ? null : row("object_relationships", id, RowMappers.OBJECT_RELATIONSHIP));
+		case "actions":
+			if (event.isWholeTable() || deleted) {
+				return build();
+			}
+			return snapshot.withAction(id, row("actions", id, RowMappers.ACTION));
+		case "actions_input_types":
+			if (event.isWholeTable()) {
+				return snapshot.withInputTypes(QueryExecutor.queryPrimary("SELECT * FROM actions_input_types", RowMappers.ACTIONS_INPUT_TYPE));
+			}
+			return snapshot.withInputType(id, deleted ? null : row("actions_input_types", id, RowMappers.ACTIONS_INPUT_TYPE));
+		default:
+			return snapshot;
+		}
+	}
+
+	private static <T> T row(String table, int id, RowMapperFactory<T> factory) throws SQLException {
+		List<T> rows = QueryExecutor.queryPrimary("SELECT * FROM " + table + " WHERE id = ?", factory, id);
+		return rows.isEmpty() ? null : rows.get(0);
+	}
+}
@@ -0,0 +1,387 @@
+package dao;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import model.Action;
+import model.ActionsInputType;
+import model.ObjectAttribute;
+import model.ObjectRelationship;
+import model.ObjectType;
+
+/**
+ * Immutable, indexed copy of the ontology tables: object types, attributes,
+ * relationships, actions and action input types.
+ *
+ * <p>
+ * A snapshot is never modified once built; the {@code with*} methods return a
+ * new snapshot that shares every index not touched by the change, so a patch
+ * costs a copy of one index rather than a reload of the whole ontology.
+ * Readers can therefore use a snapshot without locking while
+ * {@link OntologyCache} swaps in newer ones.
+ * </p>
+ *
+ * <p>
+ * The model objects held by a snapshot are shared by all readers and must not
+ * be modified; use the {@code copy} methods before handing them out.
+ * References to other entities are stubs holding only their id, as returned
+ * by the DAOs.
+ * </p>
+ */
+public final class OntologySnapshot {
+
+	private final long version;
+	private final long builtAt;
+	private final Index<ObjectType> objectTypes;
+	private final Index<ObjectAttribute> attributes;
+	private final Index<ObjectRelationship> relationships;
+	private final Index<Action> actions;
+	private final Index<ActionsInputType> inputTypes;
+
+	private OntologySnapshot(long version, long builtAt, Index<ObjectType> objectTypes, Index<ObjectAttribute> attributes,
+			Index<ObjectRelationship> relationships, Index<Action> actions, Index<ActionsInputType> inputTypes) {
+		this.version = version;
+		this.builtAt = builtAt;
+		this.objectTypes = objectTypes;
+		this.attributes = attributes;
+		this.relationships = relationships;
+		this.actions = actions;
+		this.inputTypes = inputTypes;
+	}
+
+	/**
+	 * Builds a snapshot from the full content of the tables.
+	 *
+	 * @param objectTypes   all object types
+	 * @param attributes    all attributes, with their object type reference
+	 * @param relationships all relationships
+	 * @param actions       all actions
+	 * @param inputTypes    all action input types, with their action reference
+	 * @return the snapshot, version 1
+	 */
+	static OntologySnapshot build(List<ObjectType> objectTypes, List<ObjectAttribute> attributes,
+			List<ObjectRelationship> relationships, List<Action> actions, List<ActionsInputType> inputTypes) {
+		return new OntologySnapshot(1, System.currentTimeMillis(), objectTypeIndex(objectTypes), attributeIndex(attributes),
+				relationshipIndex(relationships), actionIndex(actions), inputTypeIndex(inputTypes));
+	}
+
+	/**
+	 * @return the number of changes applied since the snapshot was built
+	 *         from scratch, plus one
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return when the tables were last read in full, in epoch milliseconds
+	 */
+	public long getBuiltAt() {
+		return builtAt;
+	}
+
+	public ObjectType getObjectType(int id) {
+		return objectTypes.get(id);
+	}
+
+	public Collection<ObjectType> getObjectTypes() {
+		return objectTypes.all();
+	}
+
+	public ObjectAttribute getAttribute(int id) {
+		return attributes.get(id);
+	}
+
+	public List<ObjectAttribute> getAttributesByObjectTypeId(int objectTypeId) {
+		return attributes.group(objectTypeId);
+	}
+
+	public ObjectRelationship getRelationship(int id) {
+		return relationships.get(id);
+	}
+
+	public Collection<ObjectRelationship> getRelationships() {
+		return relationships.all();
+	}
+
+	/**
+	 * @param objectTypeId the object type
+	 * @return the relationships whose {@code fk_object_type_id} is the object
+	 *         type, by id
+	 */
+	public List<ObjectRelationship> getRelationshipsByObjectTypeId(int objectTypeId) {
+		return relationships.group(objectTypeId);
+	}
+
+	public Action getAction(int id) {
+		return actions.get(id);
+	}
+
+	public Collection<Action> getActions() {
+		return actions.all();
+	}
+
+	public List<ActionsInputType> getInputTypesByActionId(int actionId) {
+		return inputTypes.group(actionId);
+	}
+
+	/**
+	 * @return the number of rows per table
+	 */
+	public Map<String, Integer> getSizes() {
+		Map<String, Integer> sizes = new HashMap<>();
+		sizes.put("object_types", objectTypes.size());
+		sizes.put("object_attributes", attributes.size());
+		sizes.put("object_relationships", relationships.size());
+		sizes.put("actions", actions.size());
+		sizes.put("actions_input_types", inputTypes.size());
+		return sizes;
+	}
+
+	OntologySnapshot withObjectType(int id, ObjectType row) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes.with(id, row), attributes, relationships, actions, inputTypes);
+	}
+
+	OntologySnapshot withAttribute(int id, ObjectAttribute row) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes, attributes.with(id, row), relationships, actions, inputTypes);
+	}
+
+	OntologySnapshot withAttributes(List<ObjectAttribute> rows) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes, attributeIndex(rows), relationships, actions, inputTypes);
+	}
+
+	OntologySnapshot withRelationship(int id, ObjectRelationship row) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes, attributes, relationships.with(id, row), actions, inputTypes);
+	}
+
+	OntologySnapshot withRelationships(List<ObjectRelationship> rows) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes, attributes, relationshipIndex(rows), actions, inputTypes);
+	}
+
+	OntologySnapshot withAction(int id, Action row) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes, attributes, relationships, actions.with(id, row), inputTypes);
+	}
+
+	OntologySnapshot withInputType(int id, ActionsInputType row) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes, attributes, relationships, actions, inputTypes.with(id, row));
+	}
+
+	OntologySnapshot withInputTypes(List<ActionsInputType> rows) {
+		return new OntologySnapshot(version + 1, builtAt, objectTypes, attributes, relationships, actions, inputTypeIndex(rows));
+	}
+
+	static ObjectType copy(ObjectType objectType) {
+		if (objectType == null) {
+			return null;
+		}
+		return new ObjectType(objectType.getId(), objectType.getName(), objectType.getDescription(),
+				copy(objectType.getCreatedAt()), copy(objectType.getUpdatedAt()), objectType.getStatusOption());
+	}
+
+	static ObjectAttribute copy(ObjectAttribute attribute) {
+		if (attribute == null) {
+			return null;
+		}
+		ObjectAttribute copy = new ObjectAttribute();
+		copy.setId(attribute.getId());
+		copy.setAttributeName(attribute.getAttributeName());
+		copy.setDataType(attribute.getDataType());
+		copy.setMandatory(attribute.isMandatory());
+		copy.setDefaultValue(attribute.getDefaultValue());
+		copy.setDescription(attribute.getDescription());
+		copy.setAttributeLength(attribute.getAttributeLength());
+		copy.setObjectType(stub(attribute.getObjectType()));
+		return copy;
+	}
+
+	static ObjectRelationship copy(ObjectRelationship relationship) {
+		if (relationship == null) {
+			return null;
+		}
+		ObjectRelationship copy = new ObjectRelationship();
+		copy.setId(relationship.getId());
+		copy.setRelationshipName(relationship.getRelationshipName());
+		copy.setRelationshipType(relationship.getRelationshipType());
+		copy.setDescription(relationship.getDescription());
+		copy.setObjectType(stub(relationship.getObjectType()));
+		copy.setRelatedObjectType(stub(relationship.getRelatedObjectType()));
+		return copy;
+	}
+
+	static Action copy(Action action) {
+		if (action == null) {
+			return null;
+		}
+		Action copy = new Action();
+		copy.setId(action.getId());
+		copy.setActionName(action.getActionName());
+		copy.setActionPurpose(action.getActionPurpose());
+		copy.setIsActive(action.getIsActive());
+		return copy;
+	}
+
+	static ActionsInputType copy(ActionsInputType inputType) {
+		if (inputType == null) {
+			return null;
+		}
+		ActionsInputType copy = new ActionsInputType();
+		copy.setId(inputType.getId());
+		copy.setInputDataType(inputType.getInputDataType());
+		if (inputType.getAction() != null) {
+			Action action = new Action();
+			action.setId(inputType.getAction().getId());
+			copy.setAction(action);
+		}
+		return copy;
+	}
+
+	private static ObjectType stub(ObjectType objectType) {
+		if (objectType == null) {
+			return null;
+		}
+		ObjectType stub = new ObjectType();
+		stub.setId(objectType.getId());
+		return stub;
+	}
+
+	private static Timestamp copy(Timestamp timestamp) {
+		return timestamp == null ? null : (Timestamp) timestamp.clone();
+	}
+
+	private static Index<ObjectType> objectTypeIndex(List<ObjectType> rows) {
+		return Index.build(rows, ObjectType::getId, null);
+	}
+
+	private static Index<ObjectAttribute> attributeIndex(List<ObjectAttribute> rows) {
+		return Index.build(rows, ObjectAttribute::getId, attribute -> referenceId(attribute.getObjectType()));
+	}
+
+	private static Index<ObjectRelationship> relationshipIndex(List<ObjectRelationship> rows) {
+		return Index.build(rows, ObjectRelationship::getId, relationship -> referenceId(relationship.getObjectType()));
+	}
+
+	private static Index<Action> actionIndex(List<Action> rows) {
+		return Index.build(rows, Action::getId, null);
+	}
+
+	private static Index<ActionsInputType> inputTypeIndex(List<ActionsInputType> rows) {
+		return Index.build(rows, ActionsInputType::getId,
+				inputType -> inputType.getAction() == null ? 0 : inputType.getAction().getId());
+	}
+
+	private static int referenceId(ObjectType objectType) {
+		return objectType == null ? 0 : objectType.getId();
+	}
+
+	/**
+	 * Rows of one table by id and, optionally, grouped by a foreign key. All
+	 * maps and lists are unmodifiable.
+	 */
+	private static final class Index<T> {
+
+		private final Map<Integer, T> byId;
+		private final Map<Integer, List<T>> byGroup;
+		private final ToIntFunction<T> idOf;
+		private final ToIntFunction<T> groupOf;
+
+		private Index(Map<Integer, T> byId, Map<Integer, List<T>> byGroup, ToIntFunction<T> idOf, ToIntFunction<T> groupOf) {
+			this.byId = byId;
+			this.byGroup = byGroup;
+			this.idOf = idOf;
+			this.groupOf = groupOf;
+		}
+
+		private static <T> Index<T> build(List<T> rows, ToIntFunction<T> idOf, ToIntFunction<T> groupOf) {
+			Map<Integer, T> byId = new HashMap<>(rows.size() * 2);
+			Map<Integer, List<T>> groups = new HashMap<>();
+			for (T row : rows) {
+				byId.put(idOf.applyAsInt(row), row);
+				if (groupOf != null) {
+					groups.computeIfAbsent(groupOf.applyAsInt(row), key -> new ArrayList<>()).add(row);
+				}
+			}
+			Map<Integer, List<T>> byGroup = new HashMap<>(groups.size() * 2);
+			for (Map.Entry<Integer, List<T>> group : groups.entrySet()) {
+				byGroup.put(group.getKey(), sorted(group.getValue(), idOf));
+			}
+			return new Index<>(Collections.unmodifiableMap(byId), Collections.unmodifiableMap(byGroup), idOf, groupOf);
+		}
+
+		private T get(int id) {
+			return byId.get(id);
+		}
+
+		private Collection<T> all() {
+			return byId.values();
+		}
+
+		private List<T> group(int key) {
+			List<T> group = byGroup.get(key);
+			return group == null ? Collections.<T>emptyList() : group;
+		}
+
+		private int size() {
+			return byId.size();
+		}
+
+		/**
+		 * Returns a copy with the row of the id replaced, or removed when
+		 * {@code row} is null. Only the groups of the old and the new row are
+		 * rebuilt.
+		 */
+		private Index<T> with(int id, T row) {
+			T old = byId.get(id);
+			if (old == null && row == null) {
+				return this;
+			}
+			Map<Integer, T> newById = new HashMap<>(byId);
+			if (row == null) {
+				newById.remove(id);
+			} else {
+				newById.put(id, row);
+			}
+			Map<Integer, List<T>> newByGroup = byGroup;
+			if (groupOf != null) {
+				newByGroup = new HashMap<>(byGroup);
+				if (old != null) {
+					regroup(newByGroup, groupOf.applyAsInt(old), id, null);
+				}
+				if (row != null) {
+					regroup(newByGroup, groupOf.applyAsInt(row), id, row);
+				}
+				newByGroup = Collections.unmodifiableMap(newByGroup);
+			}
+			return new Index<>(Collections.unmodifiableMap(newById), newByGroup, idOf, groupOf);
+		}
+
+		private void regroup(Map<Integer, List<T>> groups, int key, int id, T row) {
+			List<T> current = groups.getOrDefault(key, Collections.<T>emptyList());
+			List<T> members = new ArrayList<>(current.size() + 1);
+			for (T member : current) {
+				if (idOf.applyAsInt(member) != id) {
+					members.add(member);
+				}
+			}
+			if (row != null) {
+				members.add(row);
+			}
+			if (members.isEmpty()) {
+				groups.remove(key);
+			} else {
+				groups.put(key, sorted(members, idOf));
+			}
+		}
+
+		private static <T> List<T> sorted(List<T> rows, ToIntFunction<T> idOf) {
+			rows.sort(Comparator.comparingInt(idOf));
+			return Collections.unmodifiableList(rows);
+		}
+	}
+}
@@ -0,0 +1,448 @@
+package dao;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONObject;
+
+/**
+ * Transitive closure of the object relationships: for every object type, the
+ * set of object types it reaches by following relationships from
+ * {@code fk_object_type_id} to {@code fk_related_object_type_id}, and the set
+ * of object types reaching it. Reachability checks are a bit test.
+ *
+ * <p>
+ * Object type ids are mapped to dense indexes and both sets are kept as
+ * {@link BitSet}s. Adding a relationship {@code u -> v} that {@code u} does
+ * not already reach ORs {@code v} and its descendants into {@code u} and its
+ * ancestors, and the reverse into the ancestor sets. Removing the last
+ * relationship between two object types recomputes, sinks first, only the
+ * descendants of {@code u} and of its ancestors, the only sets that can
+ * shrink. While the relationships contain a cycle, removals recompute the
+ * whole closure through the strongly connected components instead.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link RelationshipGraph} the index is updated in place; a
+ * read-write lock keeps readers from seeing a half-applied change.
+ * </p>
+ */
+public final class ReachabilityIndex {
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<Integer, Integer> indexById = new HashMap<>();
+	private final List<Integer> ids = new ArrayList<>();
+	private final List<Map<Integer, Integer>> out = new ArrayList<>();
+	private final List<Map<Integer, Integer>> in = new ArrayList<>();
+	private final List<BitSet> descendants = new ArrayList<>();
+	private final List<BitSet> ancestors = new ArrayList<>();
+	private final Map<Integer, int[]> edges = new HashMap<>();
+	private boolean cyclic;
+
+	/**
+	 * Builds the closure of the relationships of a graph.
+	 *
+	 * @param graph the graph
+	 * @return the index
+	 */
+	static ReachabilityIndex of(RelationshipGraph graph) {
+		ReachabilityIndex index = new ReachabilityIndex();
+		graph.forEachEdge(edge -> index.link(edge.getRelationshipId(), edge.getSourceId(), edge.getTargetId()));
+		index.recomputeAll();
+		return index;
+	}
+
+	/**
+	 * Tells whether an object type reaches another through one or more
+	 * relationships.
+	 *
+	 * @param fromObjectTypeId the object type to start from
+	 * @param toObjectTypeId   the object type to reach
+	 * @return true if there is a path; an object type reaches itself only
+	 *         through a cycle
+	 */
+	public boolean isReachable(int fromObjectTypeId, int toObjectTypeId) {
+		lock.readLock().lock();
+		try {
+			Integer from = indexById.get(fromObjectTypeId);
+			Integer to = indexById.get(toObjectTypeId);
+			return from != null && to != null && descendants.get(from).get(to);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Tells whether a relationship {@code from -> to} would close a cycle.
+	 *
+	 * @param fromObjectTypeId the object type of the relationship
+	 * @param toObjectTypeId   the related object type
+	 * @return true if {@code to} already reaches {@code from}, or both are the
+	 *         same
+	 */
+	public boolean wouldCreateCycle(int fromObjectTypeId, int toObjectTypeId) {
+		return fromObjectTypeId == toObjectTypeId || isReachable(toObjectTypeId, fromObjectTypeId);
+	}
+
+	/**
+	 * @param objectTypeId the object type id
+	 * @return the ids of the object types it reaches, in index order
+	 */
+	public List<Integer> descendantsOf(int objectTypeId) {
+		return members(objectTypeId, descendants);
+	}
+
+	/**
+	 * @param objectTypeId the object type id
+	 * @return the ids of the object types reaching it, in index order
+	 */
+	public List<Integer> ancestorsOf(int objectTypeId) {
+		return members(objectTypeId, ancestors);
+	}
+
+	/**
+	 * @return whether the relationships contain a cycle; cleared only when the
+	 *         whole closure is recomputed
+	 */
+	public boolean hasCycles() {
+		lock.readLock().lock();
+		try {
+			return cyclic;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of object types with relationships
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return ids.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the size of the index.
+	 *
+	 * @return the object type, relationship and reachable pair counts, and
+	 *         whether there are cycles
+	 */
+	public JSONObject toJson() {
+		lock.readLock().lock();
+		try {
+			long pairs = 0;
+			for (BitSet set : descendants) {
+				pairs += set.cardinality();
+			}
+			JSONObject json = new JSONObject();
+			json.put("objectTypes", ids.size());
+			json.put("relationships", edges.size());
+			json.put("reachablePairs", pairs);
+			json.put("cyclic", cyclic);
+			return json;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a relationship, or moves it when the id is already known.
+	 *
+	 * @param relationshipId      the relationship id
+	 * @param objectTypeId        the object type of the relationship
+	 * @param relatedObjectTypeId the related object type
+	 */
+	void add(int relationshipId, int objectTypeId, int relatedObjectTypeId) {
+		lock.writeLock().lock();
+		try {
+			unlinkAndRepair(relationshipId);
+			int u = link(relationshipId, objectTypeId, relatedObjectTypeId);
+			int v = indexById.get(relatedObjectTypeId);
+			if (u == v || descendants.get(v).get(u)) {
+				cyclic = true;
+			}
+			if (descendants.get(u).get(v)) {
+				return; // already reachable, nothing changes
+			}
+			BitSet reached = (BitSet) descendants.get(v).clone();
+			reached.set(v);
+			BitSet reaching = (BitSet) ancestors.get(u).clone();
+			reaching.set(u);
+			for (int x = reaching.nextSetBit(0); x >= 0; x = reaching.nextSetBit(x + 1)) {
+				descendants.get(x).or(reached);
+			}
+			for (int y = reached.nextSetBit(0); y >= 0; y = reached.nextSetBit(y + 1)) {
+				ancestors.get(y).or(reaching);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a relationship.
+	 *
+	 * @param relationshipId the relationship id
+	 */
+	void remove(int relationshipId) {
+		lock.writeLock().lock();
+		try {
+			unlinkAndRepair(relationshipId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes every relationship of an object type, for deletes that cascade.
+	 *
+	 * @param objectTypeId the object type id
+	 */
+	void removeObjectType(int objectTypeId) {
+		lock.writeLock().lock();
+		try {
+			Integer node = indexById.get(objectTypeId);
+			if (node == null) {
+				return;
+			}
+			List<Integer> incident = new ArrayList<>();
+			for (Map.Entry<Integer, int[]> entry : edges.entrySet()) {
+				if (entry.getValue()[0] == node || entry.getValue()[1] == node) {
+					incident.add(entry.getKey());
+				}
+			}
+			for (Integer relationshipId : incident) {
+				unlinkAndRepair(relationshipId);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private List<Integer> members(int objectTypeId, List<BitSet> sets) {
+		lock.readLock().lock();
+		try {
+			Integer node = indexById.get(objectTypeId);
+			if (node == null) {
+				return Collections.emptyList();
+			}
+			BitSet set = sets.get(node);
+			List<Integer> result = new ArrayList<>(set.cardinality());
+			for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+				result.add(ids.get(i));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private int node(int objectTypeId) {
+		Integer node = indexById.get(objectTypeId);
+		if (node != null) {
+			return node;
+		}
+		int index = ids.size();
+		indexById.put(objectTypeId, index);
+		ids.add(objectTypeId);
+		out.add(new HashMap<>());
+		in.add(new HashMap<>());
+		descendants.add(new BitSet());
+		ancestors.add(new BitSet());
+		return index;
+	}
+
+	private int link(int relationshipId, int objectTypeId, int relatedObjectTypeId) {
+		int u = node(objectTypeId);
+		int v = node(relatedObjectTypeId);
+		edges.put(relationshipId, new int[] { u, v });
+		out.get(u).merge(v, 1, Integer::sum);
+		in.get(v).merge(u, 1, Integer::sum);
+		return u;
+	}
+
+	private void unlinkAndRepair(int relationshipId) {
+		int[] edge = edges.remove(relationshipId);
+		if (edge == null) {
+			return;
+		}
+		int u = edge[0];
+		int v = edge[1];
+		boolean last = decrement(out.get(u), v);
+		decrement(in.get(v), u);
+		if (!last) {
+			return; // another relationship still links the two object types
+		}
+		if (cyclic) {
+			recomputeAll();
+			return;
+		}
+		BitSet affected = (BitSet) ancestors.get(u).clone();
+		affected.set(u);
+		for (int x : sinksFirst(affected)) {
+			BitSet next = new BitSet();
+			for (Integer y : out.get(x).keySet()) {
+				next.set(y);
+				next.or(descendants.get(y));
+			}
+			BitSet lost = (BitSet) descendants.get(x).clone();
+			lost.andNot(next);
+			for (int y = lost.nextSetBit(0); y >= 0; y = lost.nextSetBit(y + 1)) {
+				ancestors.get(y).clear(x);
+			}
+			descendants.set(x, next);
+		}
+	}
+
+	private static boolean decrement(Map<Integer, Integer> counts, int key) {
+		Integer count = counts.get(key);
+		if (count == null || count <= 1) {
+			counts.remove(key);
+			return true;
+		}
+		counts.put(key, count - 1);
+		return false;
+	}
+
+	/**
+	 * Orders the nodes so that each comes after every node of the set it
+	 * points to (depth-first post-order), for an acyclic graph.
+	 */
+	private List<Integer> sinksFirst(BitSet nodes) {
+		List<Integer> order = new ArrayList<>(nodes.cardinality());
+		BitSet seen = new BitSet();
+		Deque<Integer> path = new ArrayDeque<>();
+		Deque<Iterator<Integer>> pending = new ArrayDeque<>();
+		for (int s = nodes.nextSetBit(0); s >= 0; s = nodes.nextSetBit(s + 1)) {
+			if (seen.get(s)) {
+				continue;
+			}
+			seen.set(s);
+			path.push(s);
+			pending.push(out.get(s).keySet().iterator());
+			while (!path.isEmpty()) {
+				Iterator<Integer> next = pending.peek();
+				if (next.hasNext()) {
+					int w = next.next();
+					if (nodes.get(w) && !seen.get(w)) {
+						seen.set(w);
+						path.push(w);
+						pending.push(out.get(w).keySet().iterator());
+					}
+				} else {
+					pending.pop();
+					order.add(path.pop());
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Recomputes every set from the strongly connected components (Kosaraju):
+	 * the components come out in topological order, so walking them backwards
+	 * computes each from components already done.
+	 */
+	private void recomputeAll() {
+		int n = ids.size();
+		List<Integer> finished = new ArrayList<>(n);
+		BitSet seen = new BitSet(n);
+		Deque<Integer> path = new ArrayDeque<>();
+		Deque<Iterator<Integer>> pending = new ArrayDeque<>();
+		for (int s = 0; s < n; s++) {
+			if (seen.get(s)) {
+				continue;
+			}
+			seen.set(s);
+			path.push(s);
+			pending.push(out.get(s).keySet().iterator());
+			while (!path.isEmpty()) {
+				Iterator<Integer> next = pending.peek();
+				if (next.hasNext()) {
+					int w = next.next();
+					if (!seen.get(w)) {
+						seen.set(w);
+						path.push(w);
+						pending.push(out.get(w).keySet().iterator());
+					}
+				} else {
+					pending.pop();
+					finished.add(path.pop());
+				}
+			}
+		}
+		int[] component = new int[n];
+		Arrays.fill(component, -1);
+		List<BitSet> members = new ArrayList<>();
+		Deque<Integer> stack = new ArrayDeque<>();
+		for (int i = n - 1; i >= 0; i--) {
+			int s = finished.get(i);
+			if (component[s] >= 0) {
+				continue;
+			}
+			int c = members.size();
+			BitSet bits = new BitSet();
+			component[s] = c;
+			stack.push(s);
+			while (!stack.isEmpty()) {
+				int x = stack.pop();
+				bits.set(x);
+				for (Integer y : in.get(x).keySet()) {
+					if (component[y] < 0) {
+						component[y] = c;
+						stack.push(y);
+					}
+				}
+			}
+			members.add(bits);
+		}
+		cyclic = false;
+		BitSet[] reach = new BitSet[members.size()];
+		for (int c = members.size() - 1; c >= 0; c--) {
+			BitSet bits = members.get(c);
+			BitSet r = new BitSet();
+			boolean loop = bits.cardinality() > 1;
+			for (int x = bits.nextSetBit(0); x >= 0; x = bits.nextSetBit(x + 1)) {
+				for (Integer y : out.get(x).keySet()) {
+					int d = component[y];
+					if (d == c) {
+						loop = true;
+					} else {
+						r.or(reach[d]);
+						r.or(members.get(d));
+					}
+				}
+			}
+			if (loop) {
+				r.or(bits);
+				cyclic = true;
+			}
+			reach[c] = r;
+		}
+		for (int x = 0; x < n; x++) {
+			descendants.set(x, (BitSet) reach[component[x]].clone());
+			ancestors.set(x, new BitSet());
+		}
+		for (int x = 0; x < n; x++) {
+			BitSet set = descendants.get(x);
+			for (int y = set.nextSetBit(0); y >= 0; y = set.nextSetBit(y + 1)) {
+				ancestors.get(y).set(x);
+			}
+		}
+	}
+}
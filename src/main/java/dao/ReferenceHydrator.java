@@ -0,0 +1,117 @@
+package dao;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import model.Action;
+import model.ActionObjectTypeAssociation;
+import model.ActionsInputType;
+import model.ManufacturingFacility;
+import model.ObjectRelationship;
+import model.ObjectType;
+import model.UseCase;
+
+/**
+ * Replaces the reference stubs returned by the DAOs - model objects holding
+ * only an id - with fully loaded objects.
+ *
+ * <p>
+ * Each method collects the referenced ids of the whole list and loads them
+ * with one {@code fetch*ByIds} query per entity type, instead of one
+ * {@code fetch*ById} call per row. Objects referring to the same id share one
+ * instance afterwards. References whose row no longer exists are left as
+ * stubs.
+ * </p>
+ */
+public class ReferenceHydrator {
+
+	private final ActionDAO actionDAO = new ActionDAO();
+	private final ObjectTypeDAO objectTypeDAO = new ObjectTypeDAO();
+	private final ManufacturingFacilityDAO facilityDAO = new ManufacturingFacilityDAO();
+
+	/**
+	 * Loads the action and the object type of every association.
+	 *
+	 * @param associations the associations to complete
+	 */
+	public void hydrateAssociations(List<ActionObjectTypeAssociation> associations) {
+		hydrate(associations, ActionObjectTypeAssociation::getFkAction, ActionObjectTypeAssociation::setFkAction,
+				Action::getId, actionDAO::fetchActionsByIds);
+		hydrate(associations, ActionObjectTypeAssociation::getFkObjectType, ActionObjectTypeAssociation::setFkObjectType,
+				ObjectType::getId, objectTypeDAO::fetchObjectTypesByIds);
+	}
+
+	/**
+	 * Loads both object types of every relationship, with one query for all of
+	 * them.
+	 *
+	 * @param relationships the relationships to complete
+	 */
+	public void hydrateRelationships(List<ObjectRelationship> relationships) {
+		Set<Integer> ids = new LinkedHashSet<>();
+		collectIds(relationships, ObjectRelationship::getObjectType, ObjectType::getId, ids);
+		collectIds(relationships, ObjectRelationship::getRelatedObjectType, ObjectType::getId, ids);
+		Map<Integer, ObjectType> objectTypes = objectTypeDAO.fetchObjectTypesByIds(ids);
+		replace(relationships, ObjectRelationship::getObjectType, ObjectRelationship::setObjectType, ObjectType::getId, objectTypes);
+		replace(relationships, ObjectRelationship::getRelatedObjectType, ObjectRelationship::setRelatedObjectType,
+				ObjectType::getId, objectTypes);
+	}
+
+	/**
+	 * Loads the action of every input type.
+	 *
+	 * @param inputTypes the input types to complete
+	 */
+	public void hydrateActionsInputTypes(List<ActionsInputType> inputTypes) {
+		hydrate(inputTypes, ActionsInputType::getAction, ActionsInputType::setAction, Action::getId,
+				actionDAO::fetchActionsByIds);
+	}
+
+	/**
+	 * Loads the facility of every use case.
+	 *
+	 * @param useCases the use cases to complete
+	 */
+	public void hydrateUseCaseFacilities(List<UseCase> useCases) {
+		hydrate(useCases, UseCase::getFacility, UseCase::setFacility, ManufacturingFacility::getId,
+				facilityDAO::fetchFacilitiesByIds);
+	}
+
+	private static <S, R> void hydrate(List<S> items, Function<S, R> getter, BiConsumer<S, R> setter, ToIntFunction<R> idOf,
+			Function<Collection<Integer>, Map<Integer, R>> loader) {
+		Set<Integer> ids = new LinkedHashSet<>();
+		collectIds(items, getter, idOf, ids);
+		if (ids.isEmpty()) {
+			return;
+		}
+		replace(items, getter, setter, idOf, loader.apply(ids));
+	}
+
+	private static <S, R> void collectIds(List<S> items, Function<S, R> getter, ToIntFunction<R> idOf, Set<Integer> ids) {
+		for (S item : items) {
+			R reference = getter.apply(item);
+			if (reference != null) {
+				ids.add(idOf.applyAsInt(reference));
+			}
+		}
+	}
+
+	private static <S, R> void replace(List<S> items, Function<S, R> getter, BiConsumer<S, R> setter, ToIntFunction<R> idOf,
+			Map<Integer, R> loaded) {
+		for (S item : items) {
+			R reference = getter.apply(item);
+			if (reference != null) {
+				R full = loaded.get(idOf.applyAsInt(reference));
+				if (full != null) {
+					setter.accept(item, full);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package dao;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import model.Action;
+import model.ManufacturingFacility;
+import model.ObjectRelationship;
+import model.ObjectType;
+import model.UseCase;
+import model.UseCaseAction;
+import model.UseCaseObjectType;
+import utils.DataLoader;
+import utils.DataLoaderRegistry;
+
+/**
+ * Request-scoped {@link DataLoader}s of the model entities, backed by the
+ * {@code fetch*ByIds} DAO methods, and helpers that fill the reference stubs
+ * of the model graph through them.
+ *
+ * <p>
+ * The {@code resolve*} methods only request the reference; it is set once the
+ * request's loaders are dispatched:
+ * </p>
+ *
+ * <pre>{@code
+ * for (UseCaseAction useCaseAction : useCaseActions) {
+ * 	ReferenceLoaders.resolveAction(useCaseAction);
+ * 	ReferenceLoaders.resolveUseCase(useCaseAction);
+ * }
+ * DataLoaderRegistry.current().dispatchAll(); // one query for actions, one for use cases
+ * }</pre>
+ *
+ * <p>
+ * Within a request bound by {@code servlet.DataLoaderFilter} every entity is
+ * loaded at most once, however many places refer to it. Loading a use case
+ * facility requested while the use cases themselves were resolved happens in
+ * the same {@code dispatchAll()} call. Outside a request, bind a registry
+ * with {@link DataLoaderRegistry#begin()} first; without one the loaders
+ * throw {@link IllegalStateException}.
+ * </p>
+ */
+public final class ReferenceLoaders {
+
+	private ReferenceLoaders() {
+	}
+
+	public static DataLoader<Integer, Action> actions() {
+		return DataLoaderRegistry.current().getLoader("actions",
+				() -> new DataLoader<>(new ActionDAO()::fetchActionsByIds));
+	}
+
+	public static DataLoader<Integer, ObjectType> objectTypes() {
+		return DataLoaderRegistry.current().getLoader("objectTypes",
+				() -> new DataLoader<>(new ObjectTypeDAO()::fetchObjectTypesByIds));
+	}
+
+	public static DataLoader<Integer, UseCase> useCases() {
+		return DataLoaderRegistry.current().getLoader("useCases",
+				() -> new DataLoader<>(new UseCaseDAO()::fetchUseCasesByIds));
+	}
+
+	public static DataLoader<Integer, ManufacturingFacility> facilities() {
+		return DataLoaderRegistry.current().getLoader("facilities",
+				() -> new DataLoader<>(new ManufacturingFacilityDAO()::fetchFacilitiesByIds));
+	}
+
+	/**
+	 * Requests the facility of a use case.
+	 *
+	 * @param useCase the use case holding a facility stub
+	 * @return completes when the facility is set
+	 */
+	public static CompletableFuture<Void> resolveFacility(UseCase useCase) {
+		ManufacturingFacility stub = useCase.getFacility();
+		return stub == null ? done() : resolve(facilities(), stub.getId(), useCase, UseCase::setFacility);
+	}
+
+	/**
+	 * Requests the action of a use case action.
+	 *
+	 * @param useCaseAction the use case action holding an action stub
+	 * @return completes when the action is set
+	 */
+	public static CompletableFuture<Void> resolveAction(UseCaseAction useCaseAction) {
+		Action stub = useCaseAction.getAction();
+		return stub == null ? done() : resolve(actions(), stub.getId(), useCaseAction, UseCaseAction::setAction);
+	}
+
+	/**
+	 * Requests the use case of a use case action.
+	 *
+	 * @param useCaseAction the use case action holding a use case stub
+	 * @return completes when the use case is set
+	 */
+	public static CompletableFuture<Void> resolveUseCase(UseCaseAction useCaseAction) {
+		UseCase stub = useCaseAction.getUseCase();
+		return stub == null ? done() : resolve(useCases(), stub.getId(), useCaseAction, UseCaseAction::setUseCase);
+	}
+
+	/**
+	 * Requests the object type of a use case object type.
+	 *
+	 * @param useCaseObjectType the use case object type holding an object type
+	 *                          stub
+	 * @return completes when the object type is set
+	 */
+	public static CompletableFuture<Void> resolveObjectType(UseCaseObjectType useCaseObjectType) {
+		ObjectType stub = useCaseObjectType.getObjectType();
+		return stub == null ? done()
+				: resolve(objectTypes(), stub.getId(), useCaseObjectType, UseCaseObjectType::setObjectType);
+	}
+
+	/**
+	 * Requests both object types of a relationship.
+	 *
+	 * @param relationship the relationship holding object type stubs
+	 * @return completes when both object types are set
+	 */
+	public static CompletableFuture<Void> resolveObjectTypes(ObjectRelationship relationship) {
+		CompletableFuture<Void> objectType = relationship.getObjectType() == null ? done()
+				: resolve(objectTypes(), relationship.getObjectType().getId(), relationship, ObjectRelationship::setObjectType);
+		CompletableFuture<Void> relatedObjectType = relationship.getRelatedObjectType() == null ? done()
+				: resolve(objectTypes(), relationship.getRelatedObjectType().getId(), relationship,
+						ObjectRelationship::setRelatedObjectType);
+		return CompletableFuture.allOf(objectType, relatedObjectType);
+	}
+
+	private static <S, V> CompletableFuture<Void> resolve(DataLoader<Integer, V> loader, int id, S owner,
+			BiConsumer<S, V> setter) {
+		return loader.load(id).thenAccept(value -> {
+			// a missing row leaves the stub in place
+			if (value != null) {
+				setter.accept(owner, value);
+			}
+		});
+	}
+
+	private static CompletableFuture<Void> done() {
+		return CompletableFuture.completedFuture(null);
+	}
+}
@@ -0,0 +1,145 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import utils.ApplicationConfig;
+import utils.ColumnIndex;
+import utils.RowMapper;
+import utils.UnitOfWork;
+
+/**
+ * Rejects object relationships that would close a cycle, when
+ * {@code ontology.closure.rejectCycles} is set.
+ *
+ * <p>
+ * Every write that adds or changes relationships first takes a
+ * transaction-level PostgreSQL advisory lock, so the checks and writes of
+ * all application nodes run one at a time, and then decides against the
+ * database in the same transaction: single rows with a recursive query from
+ * the related object type, bulk loads with the strongly connected components
+ * of the whole relationship graph. The cached {@link ReachabilityIndex} is
+ * not consulted, since it may lag behind the writes of other nodes or be
+ * unavailable. Relationships written while the setting was off are not
+ * checked again.
+ * </p>
+ */
+final class RelationshipCycleGuard {
+
+	private static final Logger LOGGER = Logger.getLogger(RelationshipCycleGuard.class.getName());
+
+	static final boolean ENABLED = ApplicationConfig.getBoolean("ontology.closure.rejectCycles", false);
+
+	/** Key of the advisory lock serializing relationship writes; arbitrary but fixed. */
+	private static final long LOCK_KEY = 0x6f6e746f5f72656cL;
+
+	private static final String REACHES_SQL = "WITH RECURSIVE reachable(object_type_id) AS ("
+			+ " SELECT ?::integer"
+			+ " UNION"
+			+ " SELECT r.fk_related_object_type_id FROM object_relationships r"
+			+ " JOIN reachable ON r.fk_object_type_id = reachable.object_type_id WHERE r.id <> ?)"
+			+ " SELECT EXISTS (SELECT 1 FROM reachable WHERE object_type_id = ?)";
+
+	private RelationshipCycleGuard() {
+	}
+
+	/**
+	 * Takes the lock for the rest of the transaction of the connection.
+	 *
+	 * @param conn a connection inside a transaction
+	 * @throws SQLException if the lock cannot be taken
+	 */
+	static void lock(Connection conn) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+			stmt.setLong(1, LOCK_KEY);
+			stmt.execute();
+		}
+	}
+
+	/**
+	 * Locks, then tells whether a relationship from objectTypeId to
+	 * relatedObjectTypeId would close a cycle. Must run inside a
+	 * {@link UnitOfWork} that then writes the relationship.
+	 *
+	 * @param relationshipId      the relationship being changed, or 0 for a new one;
+	 *                            paths through it do not count
+	 * @param objectTypeId        the object type of the relationship
+	 * @param relatedObjectTypeId the related object type
+	 * @return true if the relationship must be rejected
+	 * @throws SQLException if the lock or the query fails
+	 */
+	static boolean closesCycle(int relationshipId, int objectTypeId, int relatedObjectTypeId) throws SQLException {
+		Connection conn = UnitOfWork.currentConnection();
+		if (conn == null) {
+			throw new IllegalStateException("Cycle checks must run inside a unit of work");
+		}
+		return closesCycle(conn, relationshipId, objectTypeId, relatedObjectTypeId);
+	}
+
+	/**
+	 * Locks, then tells whether a relationship would close a cycle, on the
+	 * connection of a transaction that then writes the relationship.
+	 *
+	 * @param conn                the connection of the transaction
+	 * @param relationshipId      the relationship being changed, or 0 for a new one
+	 * @param objectTypeId        the object type of the relationship
+	 * @param relatedObjectTypeId the related object type
+	 * @return true if the relationship must be rejected
+	 * @throws SQLException if the lock or the query fails
+	 */
+	static boolean closesCycle(Connection conn, int relationshipId, int objectTypeId, int relatedObjectTypeId)
+			throws SQLException {
+		lock(conn);
+		boolean cycle;
+		try (PreparedStatement stmt = conn.prepareStatement(REACHES_SQL)) {
+			stmt.setInt(1, relatedObjectTypeId);
+			stmt.setInt(2, relationshipId);
+			stmt.setInt(3, objectTypeId);
+			try (ResultSet rs = stmt.executeQuery()) {
+				cycle = rs.next() && rs.getBoolean(1);
+			}
+		}
+		if (cycle) {
+			LOGGER.log(Level.WARNING, "Rejected relationship {0} -> {1}: it would close a cycle",
+					new Object[] { objectTypeId, relatedObjectTypeId });
+		}
+		return cycle;
+	}
+
+	/**
+	 * Lists the relationships with an id above afterId that lie on a cycle,
+	 * reading every relationship on the connection. Call after
+	 * {@link #lock(Connection)} and the insert, in the same transaction.
+	 *
+	 * @param conn    the connection of the transaction
+	 * @param afterId the highest relationship id before the insert
+	 * @return the new relationships on a cycle, empty if there are none
+	 * @throws SQLException if the relationships cannot be read
+	 */
+	static List<RelationshipGraph.Edge> newEdgesOnCycles(Connection conn, int afterId) throws SQLException {
+		RelationshipGraph.Builder builder = new RelationshipGraph.Builder();
+		try (PreparedStatement stmt = conn.prepareStatement(
+				"SELECT id, fk_object_type_id, fk_related_object_type_id, relationship_type FROM object_relationships");
+				ResultSet rs = stmt.executeQuery()) {
+			if (rs.next()) {
+				RowMapper<RelationshipGraph.Edge> mapper = RowMappers.RELATIONSHIP_EDGE.create(ColumnIndex.of(rs));
+				do {
+					builder.add(mapper.mapRow(rs));
+				} while (rs.next());
+			}
+		}
+		List<RelationshipGraph.Edge> cyclic = new ArrayList<>();
+		for (RelationshipGraph.Edge edge : builder.build().edgesOnCycles()) {
+			if (edge.getRelationshipId() > afterId) {
+				cyclic.add(edge);
+			}
+		}
+		return cyclic;
+	}
+}
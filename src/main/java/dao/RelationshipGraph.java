@@ -0,0 +1,773 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import org.json.JSONObject;
+
+import model.ObjectRelationship.RelationshipType;
+
+/**
+ * Immutable graph of the object types connected by {@code object_relationships},
+ * answering traversal queries without the database.
+ *
+ * <p>
+ * Edges are stored as compressed sparse rows of primitive ints: object type
+ * ids are mapped to dense node indexes, and the outgoing and the incoming
+ * edges of node {@code i} are the slices {@code [offsets[i], offsets[i + 1])}
+ * of parallel neighbor, relationship id and type arrays. Changes are kept in a
+ * small overlay of added and hidden relationships on top of these arrays; once
+ * the overlay grows past 1/32 of the edges, the next change compacts
+ * everything into new arrays. Each change returns a new graph, so readers
+ * never see a half-applied change.
+ * </p>
+ *
+ * <p>
+ * Traversals reuse pooled scratch arrays stamped with a traversal number,
+ * so a query costs time in proportion to the part of the graph it visits, not
+ * to the size of the graph. Queries take a {@link Direction} and a set of
+ * relationship types to follow; null or empty follows every type.
+ * </p>
+ */
+public final class RelationshipGraph {
+
+	/**
+	 * Which edges of a node a traversal follows.
+	 */
+	public enum Direction {
+		/** From an object type to its related object types. */
+		OUTGOING,
+		/** From an object type to the object types related to it. */
+		INCOMING,
+		/** Both, ignoring the direction of the relationships. */
+		BOTH
+	}
+
+	private static final RelationshipType[] TYPES = RelationshipType.values();
+	private static final int UNTYPED = TYPES.length;
+	private static final int ALL_TYPES = -1;
+	private static final int MIN_OVERLAY_BEFORE_COMPACTION = 1024;
+
+	/** Idle traversal workspaces; at most one per processor is kept, extra ones are left to the garbage collector. */
+	private static final BlockingQueue<Workspace> WORKSPACES = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+	private final int[] nodeIds;
+	private final int[] outOffsets;
+	private final int[] outNeighbors;
+	private final int[] outRelationships;
+	private final byte[] outTypes;
+	private final int[] inOffsets;
+	private final int[] inNeighbors;
+	private final int[] inRelationships;
+	private final byte[] inTypes;
+
+	private final Map<Integer, Edge> added;
+	private final Set<Integer> hidden;
+	private final Map<Integer, List<Edge>> addedOut;
+	private final Map<Integer, List<Edge>> addedIn;
+	private final Map<Integer, Integer> extraIndexes;
+	private final int[] extraIds;
+
+	private RelationshipGraph(int[] nodeIds, int[] outOffsets, int[] outNeighbors, int[] outRelationships, byte[] outTypes,
+			int[] inOffsets, int[] inNeighbors, int[] inRelationships, byte[] inTypes, Map<Integer, Edge> added,
+			Set<Integer> hidden) {
+		this.nodeIds = nodeIds;
+		this.outOffsets = outOffsets;
+		this.outNeighbors = outNeighbors;
+		this.outRelationships = outRelationships;
+		this.outTypes = outTypes;
+		this.inOffsets = inOffsets;
+		this.inNeighbors = inNeighbors;
+		this.inRelationships = inRelationships;
+		this.inTypes = inTypes;
+		this.added = added;
+		this.hidden = hidden;
+		this.addedOut = new HashMap<>();
+		this.addedIn = new HashMap<>();
+		this.extraIndexes = new HashMap<>();
+		List<Integer> extras = new ArrayList<>();
+		for (Edge edge : added.values()) {
+			addedOut.computeIfAbsent(edge.sourceId, k -> new ArrayList<>()).add(edge);
+			addedIn.computeIfAbsent(edge.targetId, k -> new ArrayList<>()).add(edge);
+			for (int id : new int[] { edge.sourceId, edge.targetId }) {
+				if (Arrays.binarySearch(nodeIds, id) < 0 && !extraIndexes.containsKey(id)) {
+					extraIndexes.put(id, nodeIds.length + extras.size());
+					extras.add(id);
+				}
+			}
+		}
+		this.extraIds = extras.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Builds a graph from relationships.
+	 *
+	 * @param edges the relationships
+	 * @return the graph
+	 */
+	public static RelationshipGraph of(Collection<Edge> edges) {
+		Builder builder = new Builder();
+		for (Edge edge : edges) {
+			builder.add(edge);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns a graph with the relationship added, or replaced when one with
+	 * the same id exists.
+	 *
+	 * @param edge the relationship
+	 * @return the new graph
+	 */
+	public RelationshipGraph withEdge(Edge edge) {
+		Map<Integer, Edge> nextAdded = new HashMap<>(added);
+		Set<Integer> nextHidden = new HashSet<>(hidden);
+		nextAdded.put(edge.relationshipId, edge);
+		nextHidden.add(edge.relationshipId);
+		return withOverlay(nextAdded, nextHidden);
+	}
+
+	/**
+	 * Returns a graph without the relationships.
+	 *
+	 * @param relationshipIds the ids of the relationships
+	 * @return the new graph
+	 */
+	public RelationshipGraph withoutEdges(Collection<Integer> relationshipIds) {
+		if (relationshipIds.isEmpty()) {
+			return this;
+		}
+		Map<Integer, Edge> nextAdded = new HashMap<>(added);
+		Set<Integer> nextHidden = new HashSet<>(hidden);
+		for (Integer id : relationshipIds) {
+			nextAdded.remove(id);
+			nextHidden.add(id);
+		}
+		return withOverlay(nextAdded, nextHidden);
+	}
+
+	/**
+	 * Returns a graph without the object type and its relationships.
+	 *
+	 * @param objectTypeId the object type id
+	 * @return the new graph
+	 */
+	public RelationshipGraph withoutObjectType(int objectTypeId) {
+		List<Integer> ids = new ArrayList<>();
+		for (Edge edge : edges(objectTypeId, Direction.BOTH, null)) {
+			ids.add(edge.relationshipId);
+		}
+		return withoutEdges(ids);
+	}
+
+	/**
+	 * Returns the relationships of an object type.
+	 *
+	 * @param objectTypeId the object type id
+	 * @param direction    which relationships to return
+	 * @param types        the relationship types to return, null or empty for all
+	 * @return the relationships, empty for an unknown object type
+	 */
+	public List<Edge> edges(int objectTypeId, Direction direction, Set<RelationshipType> types) {
+		int node = indexOf(objectTypeId);
+		if (node < 0) {
+			return Collections.emptyList();
+		}
+		List<Edge> edges = new ArrayList<>();
+		forEachEdge(node, direction, mask(types), (neighbor, relationshipId, type, outgoing) -> {
+			int neighborId = idOf(neighbor);
+			edges.add(outgoing ? new Edge(relationshipId, objectTypeId, neighborId, typeOf(type))
+					: new Edge(relationshipId, neighborId, objectTypeId, typeOf(type)));
+			return true;
+		});
+		return edges;
+	}
+
+	/**
+	 * Returns the object types reachable within a number of hops, in
+	 * breadth-first order.
+	 *
+	 * @param objectTypeId the object type to start from
+	 * @param maxHops      the maximum number of relationships to follow, or a
+	 *                     negative number for no limit
+	 * @param direction    which relationships to follow
+	 * @param types        the relationship types to follow, null or empty for all
+	 * @return the reachable object type ids with their distance in hops,
+	 *         including the start at distance 0; empty for an unknown object
+	 *         type
+	 */
+	public Map<Integer, Integer> neighborhood(int objectTypeId, int maxHops, Direction direction, Set<RelationshipType> types) {
+		Map<Integer, Integer> distances = new LinkedHashMap<>();
+		int start = indexOf(objectTypeId);
+		if (start < 0) {
+			return distances;
+		}
+		int typeMask = mask(types);
+		Workspace ws = acquireWorkspace(nodeCount());
+		try {
+			ws.visit(start, 0, -1, -1, 0);
+			int head = 0;
+			int tail = 0;
+			ws.queue[tail++] = start;
+			distances.put(objectTypeId, 0);
+			while (head < tail) {
+				int node = ws.queue[head++];
+				int distance = ws.distance[node];
+				if (maxHops >= 0 && distance >= maxHops) {
+					continue;
+				}
+				int[] cursor = { tail };
+				forEachEdge(node, direction, typeMask, (neighbor, relationshipId, type, outgoing) -> {
+					if (!ws.isVisited(neighbor)) {
+						ws.visit(neighbor, distance + 1, node, relationshipId, 0);
+						ws.queue[cursor[0]++] = neighbor;
+						distances.put(idOf(neighbor), distance + 1);
+					}
+					return true;
+				});
+				tail = cursor[0];
+			}
+			return distances;
+		} finally {
+			WORKSPACES.offer(ws);
+		}
+	}
+
+	/**
+	 * Returns the object types reachable from a start in depth-first order.
+	 *
+	 * @param objectTypeId the object type to start from
+	 * @param direction    which relationships to follow
+	 * @param types        the relationship types to follow, null or empty for all
+	 * @return the reachable object type ids, starting with the start; empty for
+	 *         an unknown object type
+	 */
+	public List<Integer> depthFirst(int objectTypeId, Direction direction, Set<RelationshipType> types) {
+		List<Integer> order = new ArrayList<>();
+		int start = indexOf(objectTypeId);
+		if (start < 0) {
+			return order;
+		}
+		int typeMask = mask(types);
+		Workspace ws = acquireWorkspace(nodeCount());
+		try {
+			int[] stack = ws.queue;
+			int[] top = { 0 };
+			stack[top[0]++] = start;
+			List<Integer> children = new ArrayList<>();
+			while (top[0] > 0) {
+				int node = stack[--top[0]];
+				if (ws.isVisited(node)) {
+					continue;
+				}
+				ws.visit(node, 0, -1, -1, 0);
+				order.add(idOf(node));
+				children.clear();
+				forEachEdge(node, direction, typeMask, (neighbor, relationshipId, type, outgoing) -> {
+					if (!ws.isVisited(neighbor)) {
+						children.add(neighbor);
+					}
+					return true;
+				});
+				// pushed in reverse, so the first neighbor is visited first
+				for (int i = children.size() - 1; i >= 0; i--) {
+					if (top[0] == stack.length) {
+						stack = Arrays.copyOf(stack, stack.length * 2);
+						ws.queue = stack;
+					}
+					stack[top[0]++] = children.get(i);
+				}
+			}
+			return order;
+		} finally {
+			WORKSPACES.offer(ws);
+		}
+	}
+
+	/**
+	 * Returns a path with the fewest relationships between two object types.
+	 *
+	 * @param fromObjectTypeId the object type to start from
+	 * @param toObjectTypeId   the object type to reach
+	 * @param direction        which relationships to follow
+	 * @param types            the relationship types to follow, null or empty for all
+	 * @return the relationships along the path in order, empty when both are
+	 *         the same object type, or null when there is no path
+	 */
+	public List<Edge> shortestPath(int fromObjectTypeId, int toObjectTypeId, Direction direction, Set<RelationshipType> types) {
+		int start = indexOf(fromObjectTypeId);
+		int target = indexOf(toObjectTypeId);
+		if (start < 0 || target < 0) {
+			return null;
+		}
+		if (start == target) {
+			return new ArrayList<>();
+		}
+		int typeMask = mask(types);
+		Workspace ws = acquireWorkspace(nodeCount());
+		try {
+			ws.visit(start, 0, -1, -1, 0);
+			int head = 0;
+			int tail = 0;
+			ws.queue[tail++] = start;
+			while (head < tail && !ws.isVisited(target)) {
+				int node = ws.queue[head++];
+				int[] cursor = { tail };
+				forEachEdge(node, direction, typeMask, (neighbor, relationshipId, type, outgoing) -> {
+					if (!ws.isVisited(neighbor)) {
+						ws.visit(neighbor, ws.distance[node] + 1, node, relationshipId, (outgoing ? 0 : Workspace.INCOMING) | type);
+						ws.queue[cursor[0]++] = neighbor;
+					}
+					return neighbor != target;
+				});
+				tail = cursor[0];
+			}
+			if (!ws.isVisited(target)) {
+				return null;
+			}
+			List<Edge> path = new ArrayList<>();
+			for (int node = target; node != start; node = ws.parent[node]) {
+				int parent = ws.parent[node];
+				int flags = ws.flags[node];
+				RelationshipType type = typeOf(flags & ~Workspace.INCOMING);
+				path.add((flags & Workspace.INCOMING) == 0 ? new Edge(ws.relationship[node], idOf(parent), idOf(node), type)
+						: new Edge(ws.relationship[node], idOf(node), idOf(parent), type));
+			}
+			Collections.reverse(path);
+			return path;
+		} finally {
+			WORKSPACES.offer(ws);
+		}
+	}
+
+	/**
+	 * @param objectTypeId the object type id
+	 * @return whether the object type has any relationship
+	 */
+	public boolean contains(int objectTypeId) {
+		return indexOf(objectTypeId) >= 0;
+	}
+
+	/**
+	 * Returns the size of the graph.
+	 *
+	 * @return the node and edge counts of the arrays and of the overlay
+	 */
+	public JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("nodes", nodeCount());
+		json.put("compactedEdges", outNeighbors.length);
+		json.put("overlayAdded", added.size());
+		json.put("overlayHidden", hidden.size());
+		return json;
+	}
+
+	/**
+	 * Hands every relationship of the graph to the consumer.
+	 *
+	 * @param consumer receives the relationships
+	 */
+	void forEachEdge(Consumer<Edge> consumer) {
+		for (int node = 0; node < nodeIds.length; node++) {
+			for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+				if (!hidden.contains(outRelationships[e])) {
+					consumer.accept(new Edge(outRelationships[e], nodeIds[node], nodeIds[outNeighbors[e]], typeOf(outTypes[e])));
+				}
+			}
+		}
+		for (Edge edge : added.values()) {
+			consumer.accept(edge);
+		}
+	}
+
+	/**
+	 * @return the number of object types in the graph, counting those whose
+	 *         relationships were all removed since the last compaction
+	 */
+	int objectTypeCount() {
+		return nodeCount();
+	}
+
+	/**
+	 * Returns the relationships that lie on a cycle: those between two object
+	 * types of the same strongly connected component, found with an iterative
+	 * Tarjan walk, including relationships of an object type to itself.
+	 *
+	 * @return the relationships on a cycle, in no particular order
+	 */
+	List<Edge> edgesOnCycles() {
+		int n = nodeCount();
+		List<Edge> all = new ArrayList<>();
+		forEachEdge(all::add);
+		int[] offsets = new int[n + 1];
+		for (Edge edge : all) {
+			offsets[indexOf(edge.sourceId) + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, n);
+		int[] targets = new int[all.size()];
+		for (Edge edge : all) {
+			targets[next[indexOf(edge.sourceId)]++] = indexOf(edge.targetId);
+		}
+
+		int[] order = new int[n];
+		Arrays.fill(order, -1);
+		int[] low = new int[n];
+		int[] component = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] callNode = new int[n];
+		int[] callEdge = new int[n];
+		int visited = 0;
+		int components = 0;
+		int top = 0;
+		for (int root = 0; root < n; root++) {
+			if (order[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			callNode[0] = root;
+			callEdge[0] = offsets[root];
+			order[root] = low[root] = visited++;
+			stack[top++] = root;
+			onStack[root] = true;
+			while (depth >= 0) {
+				int node = callNode[depth];
+				if (callEdge[depth] < offsets[node + 1]) {
+					int neighbor = targets[callEdge[depth]++];
+					if (order[neighbor] < 0) {
+						order[neighbor] = low[neighbor] = visited++;
+						stack[top++] = neighbor;
+						onStack[neighbor] = true;
+						depth++;
+						callNode[depth] = neighbor;
+						callEdge[depth] = offsets[neighbor];
+					} else if (onStack[neighbor]) {
+						low[node] = Math.min(low[node], order[neighbor]);
+					}
+					continue;
+				}
+				if (low[node] == order[node]) {
+					int member;
+					do {
+						member = stack[--top];
+						onStack[member] = false;
+						component[member] = components;
+					} while (member != node);
+					components++;
+				}
+				if (--depth >= 0) {
+					int parent = callNode[depth];
+					low[parent] = Math.min(low[parent], low[node]);
+				}
+			}
+		}
+
+		List<Edge> cyclic = new ArrayList<>();
+		for (Edge edge : all) {
+			if (component[indexOf(edge.sourceId)] == component[indexOf(edge.targetId)]) {
+				cyclic.add(edge);
+			}
+		}
+		return cyclic;
+	}
+
+	private RelationshipGraph withOverlay(Map<Integer, Edge> nextAdded, Set<Integer> nextHidden) {
+		RelationshipGraph next = new RelationshipGraph(nodeIds, outOffsets, outNeighbors, outRelationships, outTypes,
+				inOffsets, inNeighbors, inRelationships, inTypes, nextAdded, nextHidden);
+		if (nextAdded.size() + nextHidden.size() > Math.max(MIN_OVERLAY_BEFORE_COMPACTION, outNeighbors.length / 32)) {
+			return next.compact();
+		}
+		return next;
+	}
+
+	private RelationshipGraph compact() {
+		Builder builder = new Builder();
+		forEachEdge(builder::add);
+		return builder.build();
+	}
+
+	private void forEachEdge(int node, Direction direction, int typeMask, EdgeVisitor visitor) {
+		boolean filterHidden = !hidden.isEmpty();
+		if (direction != Direction.INCOMING) {
+			if (node < nodeIds.length) {
+				for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+					if ((typeMask & (1 << outTypes[e])) != 0 && !(filterHidden && hidden.contains(outRelationships[e]))
+							&& !visitor.visit(outNeighbors[e], outRelationships[e], outTypes[e], true)) {
+						return;
+					}
+				}
+			}
+			if (!addedOut.isEmpty() && !visitAdded(addedOut.get(idOf(node)), true, typeMask, visitor)) {
+				return;
+			}
+		}
+		if (direction != Direction.OUTGOING) {
+			if (node < nodeIds.length) {
+				for (int e = inOffsets[node]; e < inOffsets[node + 1]; e++) {
+					if ((typeMask & (1 << inTypes[e])) != 0 && !(filterHidden && hidden.contains(inRelationships[e]))
+							&& !visitor.visit(inNeighbors[e], inRelationships[e], inTypes[e], false)) {
+						return;
+					}
+				}
+			}
+			if (!addedIn.isEmpty()) {
+				visitAdded(addedIn.get(idOf(node)), false, typeMask, visitor);
+			}
+		}
+	}
+
+	private boolean visitAdded(List<Edge> edges, boolean outgoing, int typeMask, EdgeVisitor visitor) {
+		if (edges == null) {
+			return true;
+		}
+		for (Edge edge : edges) {
+			int type = ordinal(edge.type);
+			if ((typeMask & (1 << type)) != 0
+					&& !visitor.visit(indexOf(outgoing ? edge.targetId : edge.sourceId), edge.relationshipId, type, outgoing)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int nodeCount() {
+		return nodeIds.length + extraIds.length;
+	}
+
+	private int indexOf(int objectTypeId) {
+		int index = Arrays.binarySearch(nodeIds, objectTypeId);
+		if (index >= 0) {
+			return index;
+		}
+		Integer extra = extraIndexes.get(objectTypeId);
+		return extra == null ? -1 : extra;
+	}
+
+	private int idOf(int node) {
+		return node < nodeIds.length ? nodeIds[node] : extraIds[node - nodeIds.length];
+	}
+
+	private static int mask(Set<RelationshipType> types) {
+		if (types == null || types.isEmpty()) {
+			return ALL_TYPES;
+		}
+		int mask = 0;
+		for (RelationshipType type : types) {
+			mask |= 1 << type.ordinal();
+		}
+		return mask;
+	}
+
+	private static int ordinal(RelationshipType type) {
+		return type == null ? UNTYPED : type.ordinal();
+	}
+
+	private static RelationshipType typeOf(int ordinal) {
+		return ordinal == UNTYPED ? null : TYPES[ordinal];
+	}
+
+	/**
+	 * Receives the edges of a node; returns false to stop.
+	 */
+	private interface EdgeVisitor {
+		boolean visit(int neighbor, int relationshipId, int type, boolean outgoing);
+	}
+
+	/**
+	 * A relationship between two object types.
+	 */
+	public static final class Edge {
+
+		private final int relationshipId;
+		private final int sourceId;
+		private final int targetId;
+		private final RelationshipType type;
+
+		/**
+		 * @param relationshipId the relationship id
+		 * @param sourceId       the object type the relationship belongs to
+		 * @param targetId       the related object type
+		 * @param type           the relationship type, may be null
+		 */
+		public Edge(int relationshipId, int sourceId, int targetId, RelationshipType type) {
+			this.relationshipId = relationshipId;
+			this.sourceId = sourceId;
+			this.targetId = targetId;
+			this.type = type;
+		}
+
+		public int getRelationshipId() {
+			return relationshipId;
+		}
+
+		public int getSourceId() {
+			return sourceId;
+		}
+
+		public int getTargetId() {
+			return targetId;
+		}
+
+		public RelationshipType getType() {
+			return type;
+		}
+
+		@Override
+		public String toString() {
+			return "Edge{" + relationshipId + ": " + sourceId + " -" + type + "-> " + targetId + "}";
+		}
+	}
+
+	/**
+	 * Collects edges into growable primitive arrays and builds the compressed
+	 * rows.
+	 */
+	static final class Builder {
+
+		private int size;
+		private int[] relationships = new int[1024];
+		private int[] sources = new int[1024];
+		private int[] targets = new int[1024];
+		private byte[] types = new byte[1024];
+
+		void add(Edge edge) {
+			add(edge.relationshipId, edge.sourceId, edge.targetId, ordinal(edge.type));
+		}
+
+		void add(int relationshipId, int sourceId, int targetId, int type) {
+			if (size == relationships.length) {
+				int capacity = size * 2;
+				relationships = Arrays.copyOf(relationships, capacity);
+				sources = Arrays.copyOf(sources, capacity);
+				targets = Arrays.copyOf(targets, capacity);
+				types = Arrays.copyOf(types, capacity);
+			}
+			relationships[size] = relationshipId;
+			sources[size] = sourceId;
+			targets[size] = targetId;
+			types[size] = (byte) type;
+			size++;
+		}
+
+		RelationshipGraph build() {
+			int[] ids = new int[size * 2];
+			System.arraycopy(sources, 0, ids, 0, size);
+			System.arraycopy(targets, 0, ids, size, size);
+			Arrays.sort(ids);
+			int distinct = 0;
+			for (int i = 0; i < ids.length; i++) {
+				if (i == 0 || ids[i] != ids[i - 1]) {
+					ids[distinct++] = ids[i];
+				}
+			}
+			int[] nodeIds = Arrays.copyOf(ids, distinct);
+			int[] from = new int[size];
+			int[] to = new int[size];
+			for (int i = 0; i < size; i++) {
+				from[i] = Arrays.binarySearch(nodeIds, sources[i]);
+				to[i] = Arrays.binarySearch(nodeIds, targets[i]);
+			}
+			int[] outOffsets = offsets(from, distinct);
+			int[] inOffsets = offsets(to, distinct);
+			int[] outNeighbors = new int[size];
+			int[] outRelationships = new int[size];
+			byte[] outTypes = new byte[size];
+			int[] inNeighbors = new int[size];
+			int[] inRelationships = new int[size];
+			byte[] inTypes = new byte[size];
+			int[] outCursor = Arrays.copyOf(outOffsets, distinct);
+			int[] inCursor = Arrays.copyOf(inOffsets, distinct);
+			for (int i = 0; i < size; i++) {
+				int out = outCursor[from[i]]++;
+				outNeighbors[out] = to[i];
+				outRelationships[out] = relationships[i];
+				outTypes[out] = types[i];
+				int in = inCursor[to[i]]++;
+				inNeighbors[in] = from[i];
+				inRelationships[in] = relationships[i];
+				inTypes[in] = types[i];
+			}
+			return new RelationshipGraph(nodeIds, outOffsets, outNeighbors, outRelationships, outTypes, inOffsets,
+					inNeighbors, inRelationships, inTypes, Collections.emptyMap(), Collections.emptySet());
+		}
+
+		private static int[] offsets(int[] nodes, int nodeCount) {
+			int[] offsets = new int[nodeCount + 1];
+			for (int node : nodes) {
+				offsets[node + 1]++;
+			}
+			for (int i = 0; i < nodeCount; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			return offsets;
+		}
+	}
+
+	private static Workspace acquireWorkspace(int nodeCount) {
+		Workspace ws = WORKSPACES.poll();
+		return (ws != null ? ws : new Workspace()).reset(nodeCount);
+	}
+
+	/**
+	 * Pooled traversal state, used by one traversal at a time. A node counts as visited when its stamp
+	 * equals the current traversal number, so starting a traversal does not
+	 * clear the arrays.
+	 */
+	private static final class Workspace {
+
+		static final int INCOMING = 0x100;
+
+		private int traversal;
+		private int[] stamp = new int[0];
+		private int[] distance = new int[0];
+		private int[] parent = new int[0];
+		private int[] relationship = new int[0];
+		private int[] flags = new int[0];
+		private int[] queue = new int[0];
+
+		Workspace reset(int nodeCount) {
+			// reallocated when the graph grew, or shrank enough that the arrays are mostly dead weight
+			if (stamp.length < nodeCount || stamp.length > 2 * nodeCount + 1024) {
+				stamp = new int[nodeCount];
+				distance = new int[nodeCount];
+				parent = new int[nodeCount];
+				relationship = new int[nodeCount];
+				flags = new int[nodeCount];
+				queue = new int[nodeCount];
+				traversal = 0;
+			}
+			if (++traversal == 0) {
+				Arrays.fill(stamp, 0);
+				traversal = 1;
+			}
+			return this;
+		}
+
+		boolean isVisited(int node) {
+			return stamp[node] == traversal;
+		}
+
+		void visit(int node, int nodeDistance, int parentNode, int relationshipId, int edgeFlags) {
+			stamp[node] = traversal;
+			distance[node] = nodeDistance;
+			parent[node] = parentNode;
+			relationship[node] = relationshipId;
+			flags[node] = edgeFlags;
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+import utils.ApplicationConfig;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.ClusterChangeNotifier;
+import utils.QueryExecutor;
+
+/**
+ * Holds the current {@link RelationshipGraph} and keeps it up to date with the
+ * committed relationship changes.
+ *
+ * <p>
+ * The graph is loaded on first use by streaming {@code object_relationships}
+ * from the primary into the compressed arrays, without materializing the
+ * rows. Afterwards every change published on the {@link ChangeEventBus} is
+ * applied incrementally: a created or updated relationship is reread from
+ * the primary and added to the overlay of the graph, a deleted one is hidden,
+ * and a deleted object type hides all of its relationships. Changes whose
+ * rows are unknown and resyncs of {@link utils.ClusterChangeNotifier} drop the
+ * graph, and the next read loads it again. Changes are serialized, so they
+ * are applied in commit order; readers take the current graph without
+ * locking.
+ * </p>
+ *
+ * <p>
+ * The {@link ReachabilityIndex} over the same relationships is built from the
+ * graph on first use and updated with it, as long as it covers at most
+ * {@code ontology.closure.maxObjectTypes} (default 20000) object types; its
+ * bit sets grow with the square of that number.
+ * </p>
+ *
+ * <p>
+ * Both show committed state only: changes made inside a
+ * {@link utils.UnitOfWork} appear once it commits. Enabled with
+ * {@code ontology.graph.enabled} and {@code ontology.closure.enabled}, which
+ * only turn on together with {@code cluster.notify.enabled}: neither is
+ * refreshed, so without it changes made by other nodes would never reach
+ * them.
+ * </p>
+ */
+public final class RelationshipGraphCache {
+
+	private static final Logger LOGGER = Logger.getLogger(RelationshipGraphCache.class.getName());
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("ontology.graph.enabled", false)
+			&& ClusterChangeNotifier.isEnabled();
+	private static final boolean CLOSURE_ENABLED = ENABLED && ApplicationConfig.getBoolean("ontology.closure.enabled", false);
+	private static final int CLOSURE_MAX_OBJECT_TYPES = ApplicationConfig.getInt("ontology.closure.maxObjectTypes", 20000);
+
+	private static final AtomicReference<RelationshipGraph> GRAPH = new AtomicReference<>();
+	private static final AtomicReference<ReachabilityIndex> CLOSURE = new AtomicReference<>();
+	private static final Object WRITE_LOCK = new Object();
+	/** Counts relationship changes and invalidations, so a load can tell whether one raced with it. */
+	private static final AtomicLong CHANGES = new AtomicLong();
+	/** Loads discarded because a change arrived meanwhile before the graph is returned without keeping it. */
+	private static final int MAX_LOAD_ATTEMPTS = 3;
+	private static volatile boolean closureTooLarge;
+
+	private static final AtomicLong BUILDS = new AtomicLong();
+	private static final AtomicLong UPDATES = new AtomicLong();
+	private static final AtomicLong FAILURES = new AtomicLong();
+
+	static {
+		if (ENABLED) {
+			ChangeEventBus.subscribe(RelationshipGraphCache::onChange);
+		} else if (ApplicationConfig.getBoolean("ontology.graph.enabled", false)) {
+			LOGGER.warning("ontology.graph.enabled ignored: it requires cluster.notify.enabled, or relationships changed on"
+					+ " other nodes would never reach the graph and the closure");
+		}
+	}
+
+	private RelationshipGraphCache() {
+	}
+
+	/**
+	 * @return whether the relationship graph is enabled
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Returns the graph, loading it on first use.
+	 *
+	 * @return the current graph, or null when the graph is disabled or cannot
+	 *         be loaded
+	 */
+	public static RelationshipGraph current() {
+		if (!ENABLED) {
+			return null;
+		}
+		RelationshipGraph graph = GRAPH.get();
+		return graph != null ? graph : load();
+	}
+
+	/**
+	 * Returns the transitive closure of the relationships, building it from
+	 * the graph on first use.
+	 *
+	 * @return the current closure, or null when it is disabled, the graph
+	 *         cannot be loaded or it has too many object types
+	 */
+	public static ReachabilityIndex closure() {
+		if (!CLOSURE_ENABLED) {
+			return null;
+		}
+		ReachabilityIndex closure = CLOSURE.get();
+		if (closure != null) {
+			return closure;
+		}
+		synchronized (WRITE_LOCK) {
+			closure = CLOSURE.get();
+			if (closure != null) {
+				return closure;
+			}
+			RelationshipGraph graph = current();
+			if (graph == null || graph != GRAPH.get()) {
+				return null; // not loaded, or raced with changes and not kept
+			}
+			// decided from the graph, without building the closure only to discard it
+			if (graph.objectTypeCount() > CLOSURE_MAX_OBJECT_TYPES) {
+				if (!closureTooLarge) {
+					closureTooLarge = true;
+					LOGGER.log(Level.WARNING, "Relationship closure not built: {0} object types exceed ontology.closure.maxObjectTypes",
+							graph.objectTypeCount());
+				}
+				return null;
+			}
+			closureTooLarge = false;
+			closure = ReachabilityIndex.of(graph);
+			CLOSURE.set(closure);
+			return closure;
+		}
+	}
+
+	/**
+	 * Drops the graph and the closure; the next read loads them again.
+	 */
+	public static void invalidate() {
+		CHANGES.incrementAndGet();
+		synchronized (WRITE_LOCK) {
+			GRAPH.set(null);
+			CLOSURE.set(null);
+		}
+	}
+
+	/**
+	 * Returns the state of the graph.
+	 *
+	 * @return whether it is enabled and loaded, its size, and the build,
+	 *         update and failure counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("enabled", ENABLED);
+		RelationshipGraph graph = GRAPH.get();
+		json.put("loaded", graph != null);
+		if (graph != null) {
+			json.put("size", graph.toJson());
+		}
+		ReachabilityIndex closure = CLOSURE.get();
+		json.put("closureEnabled", CLOSURE_ENABLED);
+		json.put("closureTooLarge", closureTooLarge);
+		if (closure != null) {
+			json.put("closure", closure.toJson());
+		}
+		json.put("builds", BUILDS.get());
+		json.put("updates", UPDATES.get());
+		json.put("failures", FAILURES.get());
+		return json;
+	}
+
+	/**
+	 * Streams the relationships into a new graph. A change published while
+	 * they are read may be missing from it and was not applied, as there was
+	 * no graph yet, so such a graph is not kept and the load is repeated;
+	 * after {@link #MAX_LOAD_ATTEMPTS} the last graph is returned to this
+	 * caller alone and the next read loads again.
+	 */
+	private static RelationshipGraph load() {
+		synchronized (WRITE_LOCK) {
+			RelationshipGraph graph = GRAPH.get();
+			if (graph != null) {
+				return graph;
+			}
+			try {
+				for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+					long changes = CHANGES.get();
+					RelationshipGraph.Builder builder = new RelationshipGraph.Builder();
+					QueryExecutor.forEachPrimary(
+							"SELECT id, fk_object_type_id, fk_related_object_type_id, relationship_type FROM object_relationships",
+							RowMappers.RELATIONSHIP_EDGE, builder::add);
+					graph = builder.build();
+					BUILDS.incrementAndGet();
+					if (CHANGES.get() == changes) {
+						GRAPH.set(graph);
+						return graph;
+					}
+				}
+				return graph;
+			} catch (SQLException | RuntimeException e) {
+				FAILURES.incrementAndGet();
+				LOGGER.log(Level.SEVERE, "Error loading the relationship graph", e);
+				return null;
+			}
+		}
+	}
+
+	private static void onChange(ChangeEvent event) {
+		if (event.isAllTables()) {
+			invalidate();
+			return;
+		}
+		boolean relationships = "object_relationships".equals(event.getTable());
+		boolean objectTypeDeleted = "object_types".equals(event.getTable()) && event.getType() == ChangeEvent.Type.DELETED;
+		if (!relationships && !objectTypeDeleted) {
+			return;
+		}
+		CHANGES.incrementAndGet();
+		if (GRAPH.get() == null) {
+			return; // nothing loaded, the next read loads the current state
+		}
+		synchronized (WRITE_LOCK) {
+			RelationshipGraph graph = GRAPH.get();
+			if (graph == null) {
+				return;
+			}
+			ReachabilityIndex closure = CLOSURE.get();
+			try {
+				RelationshipGraph updated;
+				if (event.isWholeTable()) {
+					updated = null;
+					closure = null;
+				} else if (objectTypeDeleted) {
+					updated = graph.withoutObjectType(event.getId());
+					if (closure != null) {
+						closure.removeObjectType(event.getId());
+					}
+				} else if (event.getType() == ChangeEvent.Type.DELETED) {
+					updated = graph.withoutEdges(Collections.singletonList(event.getId()));
+					if (closure != null) {
+						closure.remove(event.getId());
+					}
+				} else {
+					List<RelationshipGraph.Edge> rows = QueryExecutor.queryPrimary(
+							"SELECT id, fk_object_type_id, fk_related_object_type_id, relationship_type FROM object_relationships WHERE id = ?",
+							RowMappers.RELATIONSHIP_EDGE, event.getId());
+					if (rows.isEmpty()) {
+						updated = graph.withoutEdges(Collections.singletonList(event.getId()));
+						if (closure != null) {
+							closure.remove(event.getId());
+						}
+					} else {
+						RelationshipGraph.Edge edge = rows.get(0);
+						updated = graph.withEdge(edge);
+						if (closure != null) {
+							closure.add(edge.getRelationshipId(), edge.getSourceId(), edge.getTargetId());
+							if (closure.size() > CLOSURE_MAX_OBJECT_TYPES) {
+								closure = null;
+							}
+						}
+					}
+				}
+				GRAPH.set(updated);
+				CLOSURE.set(closure);
+				if (updated != null) {
+					UPDATES.incrementAndGet();
+				}
+			} catch (SQLException | RuntimeException e) {
+				FAILURES.incrementAndGet();
+				LOGGER.log(Level.SEVERE, "Error applying " + event + " to the relationship graph, dropping it", e);
+				GRAPH.set(null);
+				CLOSURE.set(null);
+			}
+		}
+	}
+}
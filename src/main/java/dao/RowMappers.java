@@ -0,0 +1,323 @@
+package dao;
+
+import model.Action;
+import model.ActionObjectTypeAssociation;
+import model.ActionsInputType;
+import model.DashboardPreference;
+import model.FacilityDocument;
+import model.ManufacturingFacility;
+import model.ObjectAttribute;
+import model.ObjectFilter;
+import model.ObjectRelationship;
+import model.ObjectType;
+import model.UseCase;
+import model.UseCaseAction;
+import utils.EnumLookup;
+import utils.RowMapperFactory;
+
+/**
+ * Row mappers of the model classes, for use with {@link utils.QueryExecutor}.
+ *
+ * <p>
+ * Each factory resolves the column indexes once per result set and returns a
+ * mapper that reads the row by index. Enum columns are decoded through
+ * precomputed {@link EnumLookup} tables.
+ * </p>
+ */
+public final class RowMappers {
+
+	private static final EnumLookup<Action.StatusOptions> ACTION_STATUS = EnumLookup.ignoringCase(Action.StatusOptions.class);
+	private static final EnumLookup<ActionsInputType.DataType> INPUT_DATA_TYPE = EnumLookup.of(ActionsInputType.DataType.class);
+	private static final EnumLookup<ObjectAttribute.DataTypes> ATTRIBUTE_DATA_TYPE = EnumLookup.of(ObjectAttribute.DataTypes.class);
+	private static final EnumLookup<FacilityDocument.DocumentType> DOCUMENT_TYPE = EnumLookup.of(FacilityDocument.DocumentType.class);
+	private static final EnumLookup<ManufacturingFacility.FacilityType> FACILITY_TYPE = EnumLookup.of(ManufacturingFacility.FacilityType.class);
+	private static final EnumLookup<ManufacturingFacility.ComplianceStatus> FACILITY_COMPLIANCE_STATUS = EnumLookup.of(ManufacturingFacility.ComplianceStatus.class);
+	private static final EnumLookup<ObjectRelationship.RelationshipType> RELATIONSHIP_TYPE = EnumLookup.of(ObjectRelationship.RelationshipType.class);
+	private static final EnumLookup<ObjectType.StatusOption> OBJECT_TYPE_STATUS = EnumLookup.of(ObjectType.StatusOption.class);
+	private static final EnumLookup<UseCase.FacilityType> USE_CASE_FACILITY_TYPE = EnumLookup.of(UseCase.FacilityType.class);
+	private static final EnumLookup<UseCase.ComplianceStatusOption> USE_CASE_COMPLIANCE_STATUS = EnumLookup.of(UseCase.ComplianceStatusOption.class);
+	private static final EnumLookup<UseCase.StatusOption> USE_CASE_STATUS = EnumLookup.of(UseCase.StatusOption.class);
+
+	/**
+	 * Maps a row of {@code object_types}.
+	 */
+	public static final RowMapperFactory<ObjectType> OBJECT_TYPE = columns -> {
+		int id = columns.indexOf("id");
+		int name = columns.indexOf("name");
+		int description = columns.indexOf("description");
+		int createdAt = columns.indexOf("created_at");
+		int updatedAt = columns.indexOf("updated_at");
+		int statusOptions = columns.indexOf("status_options");
+		return rs -> new ObjectType(rs.getInt(id), rs.getString(name), rs.getString(description),
+				rs.getTimestamp(createdAt), rs.getTimestamp(updatedAt), OBJECT_TYPE_STATUS.lookup(rs.getString(statusOptions)));
+	};
+
+	/**
+	 * Maps a row of {@code use_cases}. The facility is a reference holding
+	 * only its id.
+	 */
+	public static final RowMapperFactory<UseCase> USE_CASE = columns -> {
+		int id = columns.indexOf("id");
+		int description = columns.indexOf("use_case_description");
+		int facilityTypes = columns.indexOf("facility_types");
+		int complianceStatus = columns.indexOf("compliance_status_options");
+		int statusOptions = columns.indexOf("status_options");
+		int facilityId = columns.indexOf("fk_facility_id");
+		return rs -> {
+			UseCase useCase = new UseCase();
+			useCase.setId(rs.getInt(id));
+			useCase.setUseCaseDescription(rs.getString(description));
+			useCase.setFacilityType(USE_CASE_FACILITY_TYPE.lookup(rs.getString(facilityTypes)));
+			useCase.setComplianceStatus(USE_CASE_COMPLIANCE_STATUS.lookup(rs.getString(complianceStatus)));
+			useCase.setStatus(USE_CASE_STATUS.lookup(rs.getString(statusOptions)));
+			ManufacturingFacility facility = new ManufacturingFacility();
+			facility.setId(rs.getInt(facilityId));
+			useCase.setFacility(facility);
+			return useCase;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code actions}. The status is matched regardless of case.
+	 */
+	public static final RowMapperFactory<Action> ACTION = columns -> {
+		int id = columns.indexOf("id");
+		int actionName = columns.indexOf("action_name");
+		int actionPurpose = columns.indexOf("action_purpose");
+		int isActive = columns.indexOf("is_active");
+		return rs -> {
+			Action action = new Action();
+			action.setId(rs.getInt(id));
+			action.setActionName(rs.getString(actionName));
+			action.setActionPurpose(rs.getString(actionPurpose));
+			action.setIsActive(ACTION_STATUS.lookup(rs.getString(isActive)));
+			return action;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code action_object_type_associations}. The action and
+	 * the object type are references holding only their id.
+	 */
+	public static final RowMapperFactory<ActionObjectTypeAssociation> ACTION_OBJECT_TYPE_ASSOCIATION = columns -> {
+		int id = columns.indexOf("id");
+		int associationName = columns.indexOf("association_name");
+		int associationType = columns.indexOf("association_type");
+		int isActive = columns.indexOf("is_active");
+		int actionId = columns.indexOf("fk_action_id");
+		int objectTypeId = columns.indexOf("fk_object_type_id");
+		return rs -> {
+			ActionObjectTypeAssociation association = new ActionObjectTypeAssociation();
+			association.setId(rs.getInt(id));
+			association.setAssociationName(rs.getString(associationName));
+			association.setAssociationType(rs.getString(associationType));
+			association.setIsActive(rs.getBoolean(isActive));
+			Action action = new Action();
+			action.setId(rs.getInt(actionId));
+			association.setFkAction(action);
+			ObjectType objectType = new ObjectType();
+			objectType.setId(rs.getInt(objectTypeId));
+			association.setFkObjectType(objectType);
+			return association;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code object_relationships}. Both object types are
+	 * references holding only their id.
+	 */
+	public static final RowMapperFactory<ObjectRelationship> OBJECT_RELATIONSHIP = columns -> {
+		int id = columns.indexOf("id");
+		int relationshipName = columns.indexOf("relationship_name");
+		int relationshipType = columns.indexOf("relationship_type");
+		int description = columns.indexOf("description");
+		int objectTypeId = columns.indexOf("fk_object_type_id");
+		int relatedObjectTypeId = columns.indexOf("fk_related_object_type_id");
+		return rs -> {
+			ObjectRelationship relationship = new ObjectRelationship();
+			relationship.setId(rs.getInt(id));
+			relationship.setRelationshipName(rs.getString(relationshipName));
+			relationship.setRelationshipType(RELATIONSHIP_TYPE.lookup(rs.getString(relationshipType)));
+			relationship.setDescription(rs.getString(description));
+			ObjectType objectType = new ObjectType();
+			objectType.setId(rs.getInt(objectTypeId));
+			relationship.setObjectType(objectType);
+			ObjectType relatedObjectType = new ObjectType();
+			relatedObjectType.setId(rs.getInt(relatedObjectTypeId));
+			relationship.setRelatedObjectType(relatedObjectType);
+			return relationship;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code object_filters}. The ObjectType holds only its id.
+	 */
+	public static final RowMapperFactory<ObjectFilter> OBJECT_FILTER = columns -> {
+		int id = columns.indexOf("id");
+		int filterName = columns.indexOf("filter_name");
+		int filterCriteria = columns.indexOf("filter_criteria");
+		int objectTypeId = columns.indexOf("fk_object_type_id");
+		return rs -> {
+			ObjectFilter filter = new ObjectFilter();
+			filter.setId(rs.getInt(id));
+			filter.setFilterName(rs.getString(filterName));
+			filter.setFilterCriteria(rs.getString(filterCriteria));
+			ObjectType objectType = new ObjectType();
+			objectType.setId(rs.getInt(objectTypeId));
+			filter.setFkObjectType(objectType);
+			return filter;
+		};
+	};
+
+	/**
+	 * Maps the id, the two object type ids and the type of a row of
+	 * {@code object_relationships} to a graph edge.
+	 */
+	public static final RowMapperFactory<RelationshipGraph.Edge> RELATIONSHIP_EDGE = columns -> {
+		int id = columns.indexOf("id");
+		int relationshipType = columns.indexOf("relationship_type");
+		int objectTypeId = columns.indexOf("fk_object_type_id");
+		int relatedObjectTypeId = columns.indexOf("fk_related_object_type_id");
+		return rs -> new RelationshipGraph.Edge(rs.getInt(id), rs.getInt(objectTypeId), rs.getInt(relatedObjectTypeId),
+				RELATIONSHIP_TYPE.lookup(rs.getString(relationshipType)));
+	};
+
+	/**
+	 * Maps a row of {@code manufacturing_facilities}. The company is not
+	 * loaded.
+	 */
+	public static final RowMapperFactory<ManufacturingFacility> MANUFACTURING_FACILITY = columns -> {
+		int id = columns.indexOf("id");
+		int name = columns.indexOf("name");
+		int location = columns.indexOf("location");
+		int capacity = columns.indexOf("capacity");
+		int facilityType = columns.indexOf("facility_type");
+		int complianceStatus = columns.indexOf("compliance_status");
+		return rs -> {
+			ManufacturingFacility facility = new ManufacturingFacility();
+			facility.setId(rs.getInt(id));
+			facility.setName(rs.getString(name));
+			facility.setLocation(rs.getString(location));
+			facility.setCapacity(rs.getBigDecimal(capacity));
+			facility.setFacilityType(FACILITY_TYPE.lookup(rs.getString(facilityType)));
+			facility.setComplianceStatus(FACILITY_COMPLIANCE_STATUS.lookup(rs.getString(complianceStatus)));
+			return facility;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code object_attributes}. The object type is a reference
+	 * holding only its id.
+	 */
+	public static final RowMapperFactory<ObjectAttribute> OBJECT_ATTRIBUTE = columns -> {
+		int id = columns.indexOf("id");
+		int attributeName = columns.indexOf("attribute_name");
+		int dataType = columns.indexOf("data_type");
+		int isMandatory = columns.indexOf("is_mandatory");
+		int defaultValue = columns.indexOf("default_value");
+		int description = columns.indexOf("description");
+		int attributeLength = columns.indexOf("attribute_length");
+		int objectTypeId = columns.indexOf("fk_object_type_id");
+		return rs -> {
+			ObjectAttribute attribute = new ObjectAttribute();
+			attribute.setId(rs.getInt(id));
+			attribute.setAttributeName(rs.getString(attributeName));
+			attribute.setDataType(ATTRIBUTE_DATA_TYPE.lookup(rs.getString(dataType)));
+			attribute.setMandatory(rs.getBoolean(isMandatory));
+			attribute.setDefaultValue(rs.getString(defaultValue));
+			attribute.setDescription(rs.getString(description));
+			attribute.setAttributeLength(rs.getInt(attributeLength));
+			ObjectType objectType = new ObjectType();
+			objectType.setId(rs.getInt(objectTypeId));
+			attribute.setObjectType(objectType);
+			return attribute;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code actions_input_types}. The action is a reference
+	 * holding only its id.
+	 */
+	public static final RowMapperFactory<ActionsInputType> ACTIONS_INPUT_TYPE = columns -> {
+		int id = columns.indexOf("id");
+		int inputDataType = columns.indexOf("input_data_type");
+		int actionId = columns.indexOf("fk_action_id");
+		return rs -> {
+			ActionsInputType inputType = new ActionsInputType();
+			inputType.setId(rs.getInt(id));
+			inputType.setInputDataType(INPUT_DATA_TYPE.lookup(rs.getString(inputDataType)));
+			Action action = new Action();
+			action.setId(rs.getInt(actionId));
+			inputType.setAction(action);
+			return inputType;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code use_case_actions}. The use case and the action are
+	 * references holding only their id.
+	 */
+	public static final RowMapperFactory<UseCaseAction> USE_CASE_ACTION = columns -> {
+		int id = columns.indexOf("id");
+		int actionDescription = columns.indexOf("action_description");
+		int useCaseId = columns.indexOf("fk_use_case_id");
+		int actionId = columns.indexOf("fk_action_id");
+		return rs -> {
+			UseCaseAction useCaseAction = new UseCaseAction();
+			useCaseAction.setId(rs.getInt(id));
+			useCaseAction.setActionDescription(rs.getString(actionDescription));
+			UseCase useCase = new UseCase();
+			useCase.setId(rs.getInt(useCaseId));
+			useCaseAction.setUseCase(useCase);
+			Action action = new Action();
+			action.setId(rs.getInt(actionId));
+			useCaseAction.setAction(action);
+			return useCaseAction;
+		};
+	};
+
+	/**
+	 * Maps a row of {@code dashboard_preferences}.
+	 */
+	public static final RowMapperFactory<DashboardPreference> DASHBOARD_PREFERENCE = columns -> {
+		int id = columns.indexOf("id");
+		int userId = columns.indexOf("user_id");
+		int preferenceType = columns.indexOf("preference_type");
+		int preferenceValue = columns.indexOf("preference_value");
+		return rs -> new DashboardPreference(rs.getInt(id), rs.getInt(userId), rs.getString(preferenceType),
+				rs.getString(preferenceValue));
+	};
+
+	/**
+	 * Maps a row of {@code facility_documents}. The facility is a reference
+	 * holding only its id, and is left unset when the query does not select
+	 * {@code fk_facility_id}.
+	 */
+	public static final RowMapperFactory<FacilityDocument> FACILITY_DOCUMENT = columns -> {
+		int id = columns.indexOf("id");
+		int documentType = columns.indexOf("document_type");
+		int documentPath = columns.indexOf("document_path");
+		int issueDate = columns.indexOf("issue_date");
+		int expiryDate = columns.indexOf("expiry_date");
+		int documentName = columns.indexOf("document_name");
+		int facilityId = columns.optionalIndexOf("fk_facility_id");
+		return rs -> {
+			FacilityDocument document = new FacilityDocument();
+			document.setId(rs.getInt(id));
+			document.setDocumentType(DOCUMENT_TYPE.lookup(rs.getString(documentType)));
+			document.setDocumentPath(rs.getString(documentPath));
+			document.setIssueDate(rs.getDate(issueDate));
+			document.setExpiryDate(rs.getDate(expiryDate));
+			document.setDocumentName(rs.getString(documentName));
+			if (facilityId != 0) {
+				ManufacturingFacility facility = new ManufacturingFacility();
+				facility.setId(rs.getInt(facilityId));
+				document.setFacility(facility);
+			}
+			return document;
+		};
+	};
+
+	private RowMappers() {
+	}
+}
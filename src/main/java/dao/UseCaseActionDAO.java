@@ -2,7 +2,10 @@ package dao;
 
 
 import model.*;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.QueryExecutor;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;
 
@@ -20,23 +23,31 @@ public class UseCaseActionDAO {
 	public boolean createUseCaseAction(String actionDescription, UseCase useCase, Action action) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
-	    boolean success = false;
+	    ResultSet rs = null;
+	    int id = 0;
 	    try {
 	        conn = DatabaseUtility.connect();
-	        String sql = "INSERT INTO use_case_actions (action_description, fk_use_case_id, fk_action_id) VALUES (?, ?, ?)";
+	        String sql = "INSERT INTO use_case_actions (action_description, fk_use_case_id, fk_action_id) VALUES (?, ?, ?) RETURNING id";
 	        pstmt = conn.prepareStatement(sql);
 	        pstmt.setString(1, actionDescription);
 	        pstmt.setInt(2, useCase.getId());
 	        pstmt.setInt(3, action.getId());
 	
-	        int affectedRows = pstmt.executeUpdate();
-	        if (affectedRows > 0) {
-	            success = true;
+	        rs = pstmt.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
 	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error inserting UseCaseAction", e);
 	    } finally {
 	        DatabaseUtility.disconnect(conn);
+	        if (rs != null) {
+	            try {
+	                rs.close();
+	            } catch (SQLException e) {
+	                Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error closing ResultSet", e);
+	            }
+	        }
 	        if (pstmt != null) {
 	            try {
 	                pstmt.close();
@@ -45,6 +56,10 @@ public class UseCaseActionDAO {
 	            }
 	        }
 	    }
+	    boolean success = id > 0;
+	    if (success) {
+	        ChangeEventBus.publish("use_case_actions", ChangeEvent.Type.CREATED, id);
+	    }
 	    return success;
 	}
 	
@@ -93,38 +108,13 @@ public class UseCaseActionDAO {
 	 * @return A list of UseCaseAction objects associated with the given use case ID.
 	 */
 	public List<UseCaseAction> fetchUseCaseActionByCaseId(int useCaseId) {
-	    Connection conn = null;
-	    PreparedStatement pstmt = null;
-	    ResultSet rs = null;
-	    List<UseCaseAction> actions = new ArrayList<>();
 	    try {
-	        conn = DatabaseUtility.connect();
-	        String sql = "SELECT * FROM use_case_actions WHERE fk_use_case_id = ?";
-	        pstmt = conn.prepareStatement(sql);
-	        pstmt.setInt(1, useCaseId);
-	        rs = pstmt.executeQuery();
-	
-	        while (rs.next()) {
-	            UseCaseAction action = new UseCaseAction();
-	            action.setId(rs.getInt("id"));
-	            action.setActionDescription(rs.getString("action_description"));
-	            // Assuming UseCase and Action are initialized elsewhere and set here accordingly
-	            // action.setUseCase(useCase);
-	            // action.setAction(actionObj);
-	            actions.add(action);
-	        }
+	        // UseCase and Action hold only their id; see ReferenceLoaders to load them
+	        return QueryExecutor.query("SELECT * FROM use_case_actions WHERE fk_use_case_id = ?", RowMappers.USE_CASE_ACTION, useCaseId);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	    } finally {
-	        try {
-	            if (rs != null) rs.close();
-	            if (pstmt != null) pstmt.close();
-	            DatabaseUtility.disconnect(conn);
-	        } catch (SQLException e) {
-	            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	        }
+	        return new ArrayList<>();
 	    }
-	    return actions;
 	}
 	
 	/**
@@ -159,6 +149,9 @@ public class UseCaseActionDAO {
 	        }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (isDeleted) {
+	        ChangeEventBus.publish("use_case_actions", ChangeEvent.Type.DELETED, id);
+	    }
 	    return isDeleted;
 	}
 	
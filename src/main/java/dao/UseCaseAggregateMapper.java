@@ -0,0 +1,181 @@
+package dao;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import model.Action;
+import model.FacilityDocument;
+import model.ManufacturingFacility;
+import model.ObjectType;
+import model.UseCase;
+import model.UseCaseAction;
+import model.UseCaseObjectType;
+import utils.EnumLookup;
+import utils.RowMapper;
+import utils.RowMapperFactory;
+
+/**
+ * Builds a fully hydrated {@link UseCase} graph from one row of
+ * {@link #SQL}: the use case columns plus its facility, the facility
+ * documents, the use case actions with their actions and the use case object
+ * types with their object types, each aggregated into a JSON column by the
+ * database.
+ */
+final class UseCaseAggregateMapper {
+
+	/**
+	 * Loads one use case and everything it refers to in a single statement.
+	 * Takes the use case id as its only parameter.
+	 */
+	static final String SQL = "SELECT uc.*,"
+			+ " (SELECT row_to_json(f) FROM manufacturing_facilities f WHERE f.id = uc.fk_facility_id) AS facility_json,"
+			+ " (SELECT coalesce(json_agg(d ORDER BY d.id), '[]') FROM facility_documents d"
+			+ " WHERE d.fk_facility_id = uc.fk_facility_id) AS documents_json,"
+			+ " (SELECT coalesce(json_agg(json_build_object('row', ua, 'action', a) ORDER BY ua.id), '[]')"
+			+ " FROM use_case_actions ua LEFT JOIN actions a ON a.id = ua.fk_action_id"
+			+ " WHERE ua.fk_use_case_id = uc.id) AS actions_json,"
+			+ " (SELECT coalesce(json_agg(json_build_object('row', uo, 'object_type', ot) ORDER BY uo.id), '[]')"
+			+ " FROM use_case_object_types uo LEFT JOIN object_types ot ON ot.id = uo.fk_object_type_id"
+			+ " WHERE uo.fk_use_case_id = uc.id) AS object_types_json"
+			+ " FROM use_cases uc WHERE uc.id = ?";
+
+	private static final EnumLookup<Action.StatusOptions> ACTION_STATUS = EnumLookup.ignoringCase(Action.StatusOptions.class);
+	private static final EnumLookup<FacilityDocument.DocumentType> DOCUMENT_TYPE = EnumLookup.of(FacilityDocument.DocumentType.class);
+	private static final EnumLookup<ManufacturingFacility.FacilityType> FACILITY_TYPE = EnumLookup.of(ManufacturingFacility.FacilityType.class);
+	private static final EnumLookup<ManufacturingFacility.ComplianceStatus> FACILITY_COMPLIANCE_STATUS = EnumLookup.of(ManufacturingFacility.ComplianceStatus.class);
+	private static final EnumLookup<ObjectType.StatusOption> OBJECT_TYPE_STATUS = EnumLookup.of(ObjectType.StatusOption.class);
+	private static final EnumLookup<UseCaseObjectType.RelevantObjectTypes> RELEVANT_OBJECT_TYPES = EnumLookup.of(UseCaseObjectType.RelevantObjectTypes.class);
+	private static final EnumLookup<UseCaseObjectType.ImpactLevel> IMPACT_LEVEL = EnumLookup.of(UseCaseObjectType.ImpactLevel.class);
+
+	/**
+	 * Maps a row of {@link #SQL}.
+	 */
+	static final RowMapperFactory<UseCase> USE_CASE_AGGREGATE = columns -> {
+		int facilityJson = columns.indexOf("facility_json");
+		int documentsJson = columns.indexOf("documents_json");
+		int actionsJson = columns.indexOf("actions_json");
+		int objectTypesJson = columns.indexOf("object_types_json");
+		RowMapper<UseCase> useCaseMapper = RowMappers.USE_CASE.create(columns);
+		return rs -> {
+			UseCase useCase = useCaseMapper.mapRow(rs);
+			String facility = rs.getString(facilityJson);
+			if (facility != null) {
+				ManufacturingFacility loaded = facility(new JSONObject(facility));
+				loaded.setDocuments(documents(new JSONArray(rs.getString(documentsJson)), loaded));
+				useCase.setFacility(loaded);
+			}
+			useCase.setActions(actions(new JSONArray(rs.getString(actionsJson)), useCase));
+			useCase.setObjectTypes(objectTypes(new JSONArray(rs.getString(objectTypesJson)), useCase));
+			return useCase;
+		};
+	};
+
+	private UseCaseAggregateMapper() {
+	}
+
+	private static ManufacturingFacility facility(JSONObject json) {
+		ManufacturingFacility facility = new ManufacturingFacility();
+		facility.setId(json.getInt("id"));
+		facility.setName(string(json, "name"));
+		facility.setLocation(string(json, "location"));
+		facility.setCapacity(json.optBigDecimal("capacity", null));
+		facility.setFacilityType(FACILITY_TYPE.lookup(string(json, "facility_type")));
+		facility.setComplianceStatus(FACILITY_COMPLIANCE_STATUS.lookup(string(json, "compliance_status")));
+		return facility;
+	}
+
+	private static List<FacilityDocument> documents(JSONArray json, ManufacturingFacility facility) {
+		List<FacilityDocument> documents = new ArrayList<>(json.length());
+		for (int i = 0; i < json.length(); i++) {
+			JSONObject row = json.getJSONObject(i);
+			FacilityDocument document = new FacilityDocument();
+			document.setId(row.getInt("id"));
+			document.setDocumentType(DOCUMENT_TYPE.lookup(string(row, "document_type")));
+			document.setDocumentPath(string(row, "document_path"));
+			document.setIssueDate(date(row, "issue_date"));
+			document.setExpiryDate(date(row, "expiry_date"));
+			document.setDocumentName(string(row, "document_name"));
+			document.setFacility(facility);
+			documents.add(document);
+		}
+		return documents;
+	}
+
+	private static List<UseCaseAction> actions(JSONArray json, UseCase useCase) {
+		List<UseCaseAction> actions = new ArrayList<>(json.length());
+		for (int i = 0; i < json.length(); i++) {
+			JSONObject entry = json.getJSONObject(i);
+			JSONObject row = entry.getJSONObject("row");
+			UseCaseAction useCaseAction = new UseCaseAction();
+			useCaseAction.setId(row.getInt("id"));
+			useCaseAction.setActionDescription(string(row, "action_description"));
+			useCaseAction.setUseCase(useCase);
+			JSONObject actionJson = entry.optJSONObject("action");
+			if (actionJson != null) {
+				Action action = new Action();
+				action.setId(actionJson.getInt("id"));
+				action.setActionName(string(actionJson, "action_name"));
+				action.setActionPurpose(string(actionJson, "action_purpose"));
+				action.setIsActive(ACTION_STATUS.lookup(string(actionJson, "is_active")));
+				useCaseAction.setAction(action);
+			}
+			actions.add(useCaseAction);
+		}
+		return actions;
+	}
+
+	private static List<UseCaseObjectType> objectTypes(JSONArray json, UseCase useCase) {
+		List<UseCaseObjectType> objectTypes = new ArrayList<>(json.length());
+		for (int i = 0; i < json.length(); i++) {
+			JSONObject entry = json.getJSONObject(i);
+			JSONObject row = entry.getJSONObject("row");
+			UseCaseObjectType useCaseObjectType = new UseCaseObjectType();
+			useCaseObjectType.setId(row.getInt("id"));
+			useCaseObjectType.setUseCaseDescription(string(row, "use_case_description"));
+			useCaseObjectType.setRelevantObjectTypes(RELEVANT_OBJECT_TYPES.lookup(string(row, "relevant_object_types")));
+			useCaseObjectType.setAssociatedFunctionality(string(row, "associated_functionality"));
+			useCaseObjectType.setImpactLevel(IMPACT_LEVEL.lookup(string(row, "impact_level")));
+			useCaseObjectType.setCreationDate(date(row, "creation_date"));
+			useCaseObjectType.setLastUpdated(timestamp(row, "last_updated"));
+			useCaseObjectType.setUseCase(useCase);
+			JSONObject objectTypeJson = entry.optJSONObject("object_type");
+			if (objectTypeJson != null) {
+				useCaseObjectType.setObjectType(new ObjectType(objectTypeJson.getInt("id"), string(objectTypeJson, "name"),
+						string(objectTypeJson, "description"), timestamp(objectTypeJson, "created_at"),
+						timestamp(objectTypeJson, "updated_at"), OBJECT_TYPE_STATUS.lookup(string(objectTypeJson, "status_options"))));
+			}
+			objectTypes.add(useCaseObjectType);
+		}
+		return objectTypes;
+	}
+
+	private static String string(JSONObject json, String key) {
+		return json.isNull(key) ? null : json.get(key).toString();
+	}
+
+	private static Date date(JSONObject json, String key) {
+		String value = string(json, key);
+		return value == null ? null : Date.valueOf(value.substring(0, 10));
+	}
+
+	/**
+	 * Parses a timestamp as PostgreSQL writes it to JSON: ISO-8601 with a
+	 * {@code T} separator, with an offset for {@code timestamptz} columns.
+	 */
+	private static Timestamp timestamp(JSONObject json, String key) {
+		String value = string(json, key);
+		if (value == null) {
+			return null;
+		}
+		if (value.length() > 19 && (value.indexOf('+', 19) > 0 || value.indexOf('-', 19) > 0 || value.endsWith("Z"))) {
+			return Timestamp.from(OffsetDateTime.parse(value).toInstant());
+		}
+		return Timestamp.valueOf(value.replace('T', ' '));
+	}
+}
@@ -2,7 +2,13 @@ package dao;
 
 
 import model.*;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;
+import utils.KeysetPaginator;
+import utils.Page;
+import utils.QueryExecutor;
+import utils.UnitOfWork;
 import java.sql.*;
 import java.util.logging.*;import java.util.*;import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -10,6 +16,10 @@ import java.sql.SQLException;
 
 public class UseCaseDAO {
 
+	private static final KeysetPaginator PAGINATOR = new KeysetPaginator("use_cases")
+	        .sortColumn("facility_types", false)
+	        .sortColumn("compliance_status_options", false)
+	        .sortColumn("status_options", false);
 	
 	
 	/**
@@ -21,36 +31,34 @@ public class UseCaseDAO {
 	 * @return The UseCase object retrieved from the database, or null if no such use case is found.
 	 */
 	public UseCase fetchUseCaseById(int id) {
-	    Connection conn = null;
-	    PreparedStatement stmt = null;
-	    ResultSet rs = null;
-	    UseCase useCase = null;
+	    return EntityCache.USE_CASES.get(id, this::loadUseCaseById);
+	}
+	
+	private UseCase loadUseCaseById(int id) {
 	    try {
-	        conn = DatabaseUtility.connect();
-	        String sql = "SELECT * FROM use_cases WHERE id = ?";
-	        stmt = conn.prepareStatement(sql);
-	        stmt.setInt(1, id);
-	        rs = stmt.executeQuery();
-	        if (rs.next()) {
-	            useCase = new UseCase();
-	            useCase.setId(rs.getInt("id"));
-	            useCase.setUseCaseDescription(rs.getString("use_case_description"));
-	            useCase.setFacilityType(UseCase.FacilityType.valueOf(rs.getString("facility_types")));
-	            useCase.setComplianceStatus(UseCase.ComplianceStatusOption.valueOf(rs.getString("compliance_status_options")));
-	            useCase.setStatus(UseCase.StatusOption.valueOf(rs.getString("status_options")));
-	            // Assuming ManufacturingFacility is a class with a suitable constructor or setters
-	            ManufacturingFacility facility = new ManufacturingFacility();
-	            facility.setId(rs.getInt("fk_facility_id"));
-	            useCase.setFacility(facility);
-	        }
+	        return QueryExecutor.queryOne("SELECT * FROM use_cases WHERE id = ?", RowMappers.USE_CASE, id);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	    } finally {
-	        DatabaseUtility.disconnect(conn);
-	        if (stmt != null) { try { stmt.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e); } }
-	        if (rs != null) { try { rs.close(); } catch (SQLException e) { Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e); } }
+	        return null;
+	    }
+	}
+	
+	
+	/**
+	 * Retrieves a use case together with everything needed to open it: its facility with the facility documents,
+	 * its actions with their Action and its object types with their ObjectType. All of it is read with one SQL
+	 * statement that aggregates the related rows as JSON, instead of one round trip per association.
+	 *
+	 * @param id The unique identifier for the use case to be retrieved.
+	 * @return The fully populated UseCase, or null if no such use case is found or the query fails.
+	 */
+	public UseCase fetchUseCaseAggregate(int id) {
+	    try {
+	        return QueryExecutor.queryOne(UseCaseAggregateMapper.SQL, UseCaseAggregateMapper.USE_CASE_AGGREGATE, id);
+	    } catch (SQLException | RuntimeException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching use case aggregate", e);
+	        return null;
 	    }
-	    return useCase;
 	}
 	
 	
@@ -63,42 +71,32 @@ public class UseCaseDAO {
 	 * @return List<UseCase> List of UseCase instances.
 	 */
 	public List<UseCase> fetchAllUseCases(int limit, int offset) {
-	    List<UseCase> useCases = new ArrayList<>();
-	    Connection connection = null;
-	    PreparedStatement preparedStatement = null;
-	    ResultSet resultSet = null;
-	    String query = "SELECT * FROM use_cases LIMIT ? OFFSET ?";
 	    try {
-	        connection = DatabaseUtility.connect();
-	        preparedStatement = connection.prepareStatement(query);
-	        preparedStatement.setInt(1, limit);
-	        preparedStatement.setInt(2, offset);
-	        resultSet = preparedStatement.executeQuery();
-	
-	        while (resultSet.next()) {
-	            UseCase useCase = new UseCase();
-	            useCase.setId(resultSet.getInt("id"));
-	            useCase.setUseCaseDescription(resultSet.getString("use_case_description"));
-	            useCase.setFacilityType(UseCase.FacilityType.valueOf(resultSet.getString("facility_types")));
-	            useCase.setComplianceStatus(UseCase.ComplianceStatusOption.valueOf(resultSet.getString("compliance_status_options")));
-	            useCase.setStatus(UseCase.StatusOption.valueOf(resultSet.getString("status_options")));
-	            // Assume a method to fetch ManufacturingFacility using its ID
-	            // useCase.setFacility(fetchFacilityById(resultSet.getInt("fk_facility_id")));
-	
-	            useCases.add(useCase);
-	        }
+	        return QueryExecutor.query("SELECT * FROM use_cases LIMIT ? OFFSET ?", RowMappers.USE_CASE, limit, offset);
 	    } catch (SQLException e) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	    } finally {
-	        try {
-	            if (resultSet != null) resultSet.close();
-	            if (preparedStatement != null) preparedStatement.close();
-	            DatabaseUtility.disconnect(connection);
-	        } catch (SQLException e) {
-	            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, e);
-	        }
+	        return new ArrayList<>();
+	    }
+	}
+	
+	/**
+	 * Fetches one page of use cases using keyset pagination. Unlike fetchAllUseCases the cost of a page
+	 * does not grow with its depth, provided the indexes in sql/keyset_pagination_indexes.sql exist.
+	 *
+	 * @param cursor The cursor returned with the previous page, or null for the first page.
+	 * @param limit Maximum number of use cases to retrieve.
+	 * @param sortBy The field to sort by: id, facility_types, compliance_status_options or status_options; null for id.
+	 * @param sortDirection The direction of sorting, either 'asc' or 'desc'; null for ascending.
+	 * @return The page of use cases with the cursor of the next page; an empty page if the query fails.
+	 * @throws IllegalArgumentException if sortBy or sortDirection is not supported or the cursor belongs to another sort order.
+	 */
+	public Page<UseCase> fetchUseCasesPage(String cursor, int limit, String sortBy, String sortDirection) {
+	    try {
+	        return PAGINATOR.fetch(cursor, limit, sortBy, sortDirection, RowMappers.USE_CASE);
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching use case page", e);
+	        return new Page<>(new ArrayList<>(), null);
 	    }
-	    return useCases;
 	}
 	
 	/**
@@ -137,6 +135,9 @@ public class UseCaseDAO {
 	        }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (updateSuccess) {
+	        ChangeEventBus.publish("use_cases", ChangeEvent.Type.UPDATED, useCase.getId());
+	    }
 	    return updateSuccess;
 	}
 	
@@ -168,6 +169,9 @@ public class UseCaseDAO {
 	        if (pstmt != null) try { pstmt.close(); } catch (SQLException e) { /* ignored */ }
 	        DatabaseUtility.disconnect(conn);
 	    }
+	    if (success) {
+	        ChangeEventBus.publish("use_cases", ChangeEvent.Type.DELETED, id);
+	    }
 	    return success;
 	}
 	
@@ -211,4 +215,56 @@ public class UseCaseDAO {
 	    }
 	    return success;
 	}
+	
+	
+	/**
+	 * Creates a use case together with its actions and object type associations in a single transaction.
+	 * All inserts run on one connection inside a {@link UnitOfWork} and are committed once, so either the
+	 * whole use case is stored or nothing is.
+	 *
+	 * @param useCase The UseCase object to be inserted into the database.
+	 * @param actions The actions to link to the use case; each needs its Action set.
+	 * @param objectTypes The object type associations to link to the use case; each needs its ObjectType set.
+	 * @return boolean indicating if the use case and all of its associations were stored.
+	 */
+	public boolean createUseCaseWithAssociations(UseCase useCase, List<UseCaseAction> actions, List<UseCaseObjectType> objectTypes) {
+	    UseCaseActionDAO useCaseActionDAO = new UseCaseActionDAO();
+	    UseCaseObjectTypeDAO useCaseObjectTypeDAO = new UseCaseObjectTypeDAO();
+	    try {
+	        return UnitOfWork.execute(() -> {
+	            boolean success = createUseCase(useCase);
+	            for (int i = 0; success && i < actions.size(); i++) {
+	                UseCaseAction action = actions.get(i);
+	                success = useCaseActionDAO.createUseCaseAction(action.getActionDescription(), useCase, action.getAction());
+	            }
+	            for (int i = 0; success && i < objectTypes.size(); i++) {
+	                UseCaseObjectType objectType = objectTypes.get(i);
+	                success = useCaseObjectTypeDAO.createUseCaseObjectType(objectType.getUseCaseDescription(), objectType.getRelevantObjectTypes(),
+	                        objectType.getAssociatedFunctionality(), objectType.getImpactLevel(), objectType.getObjectType(), useCase);
+	            }
+	            if (!success) {
+	                UnitOfWork.setRollbackOnly();
+	            }
+	            return success;
+	        });
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Failed to create use case with associations", e);
+	        return false;
+	    }
+	}
+	
+	/**
+	 * Fetches many use cases in one query, replacing a loop over fetchUseCaseById.
+	 *
+	 * @param ids The identifiers of the use cases to fetch.
+	 * @return Map of the use cases found, keyed by id; ids without a row are absent. Empty if the query fails.
+	 */
+	public Map<Integer, UseCase> fetchUseCasesByIds(Collection<Integer> ids) {
+	    try {
+	        return QueryExecutor.queryByIds("SELECT * FROM use_cases WHERE id = ANY(?)", ids, RowMappers.USE_CASE, UseCase::getId);
+	    } catch (SQLException e) {
+	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, "Error fetching use cases by ids", e);
+	        return new HashMap<>();
+	    }
+	}
 }
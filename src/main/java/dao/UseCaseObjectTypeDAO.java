@@ -11,7 +11,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
 import utils.DatabaseUtility;import java.sql.Date;
+import java.sql.Timestamp;
 
 import model.UseCaseObjectType.RelevantObjectTypes;
 import model.UseCaseObjectType.ImpactLevel;
@@ -34,9 +37,11 @@ public class UseCaseObjectTypeDAO {
 	 public boolean createUseCaseObjectType(String useCaseDescription, UseCaseObjectType.RelevantObjectTypes relevantObjectTypes, String associatedFunctionality, UseCaseObjectType.ImpactLevel impactLevel, ObjectType objectType, UseCase useCase) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
+	    ResultSet rs = null;
+	    int id = 0;
 	    try {
 	        conn = DatabaseUtility.connect();
-	        String sql = "INSERT INTO use_case_object_types (use_case_description, relevant_object_types, associated_functionality, impact_level, creation_date, last_updated, fk_object_type_id, fk_use_case_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+	        String sql = "INSERT INTO use_case_object_types (use_case_description, relevant_object_types, associated_functionality, impact_level, creation_date, last_updated, fk_object_type_id, fk_use_case_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?) RETURNING id";
 	        pstmt = conn.prepareStatement(sql);
 	        pstmt.setString(1, useCaseDescription);
 	        pstmt.setString(2, relevantObjectTypes.name());
@@ -47,13 +52,22 @@ public class UseCaseObjectTypeDAO {
 	        pstmt.setInt(7, objectType.getId());
 	        pstmt.setInt(8, useCase.getId());
 	
-	        int affectedRows = pstmt.executeUpdate();
-	        return affectedRows > 0;
+	        rs = pstmt.executeQuery();
+	        if (rs.next()) {
+	            id = rs.getInt(1);
+	        }
 	    } catch (SQLException e) {
 	        Logger.getLogger(UseCaseObjectTypeDAO.class.getName()).log(Level.SEVERE, null, e);
 	        return false;
 	    } finally {
 	        DatabaseUtility.disconnect(conn);
+	        if (rs != null) {
+	            try {
+	                rs.close();
+	            } catch (SQLException e) {
+	                Logger.getLogger(UseCaseObjectTypeDAO.class.getName()).log(Level.SEVERE, null, e);
+	            }
+	        }
 	        if (pstmt != null) {
 	            try {
 	                pstmt.close();
@@ -62,6 +76,11 @@ public class UseCaseObjectTypeDAO {
 	            }
 	        }
 	    }
+	    boolean success = id > 0;
+	    if (success) {
+	        ChangeEventBus.publish("use_case_object_types", ChangeEvent.Type.CREATED, id);
+	    }
+	    return success;
 	}
 	
 	
@@ -80,6 +99,7 @@ public class UseCaseObjectTypeDAO {
 	public boolean updateUseCaseObjectType(int id, String useCaseDescription, RelevantObjectTypes relevantObjectTypes, String associatedFunctionality, ImpactLevel impactLevel, ObjectType objectType, UseCase useCase) {
 	    Connection conn = null;
 	    PreparedStatement pstmt = null;
+	    boolean updated = false;
 	    try {
 	        conn = DatabaseUtility.connect();
 	        String sql = "UPDATE use_case_object_types SET use_case_description = ?, relevant_object_types = ::relevant_object_types, associated_functionality = ?, impact_level = ::impact_level, fk_object_type_id = ?, fk_use_case_id = ? WHERE id = ?";
@@ -93,10 +113,9 @@ public class UseCaseObjectTypeDAO {
 	        pstmt.setInt(7, id);
 	
 	        int affectedRows = pstmt.executeUpdate();
-	        return affectedRows > 0;
+	        updated = affectedRows > 0;
 	    } catch (SQLException ex) {
 	        Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, ex);
-	        return false;
 	    } finally {
 	        DatabaseUtility.disconnect(conn);
 	        try {
@@ -105,5 +124,9 @@ public class UseCaseObjectTypeDAO {
 	            Logger.getLogger(this.getClass().getName()).log(Level.SEVERE, null, ex);
 	        }
 	    }
+	    if (updated) {
+	        ChangeEventBus.publish("use_case_object_types", ChangeEvent.Type.UPDATED, id);
+	    }
+	    return updated;
 	}
 }
@@ -1,6 +1,8 @@
 package model;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -43,6 +45,11 @@ public class ManufacturingFacility {
      */
     private Company company;
 
+    /**
+     * Documents of the facility. Only filled by aggregate loads; empty otherwise.
+     */
+    private List<FacilityDocument> documents = new ArrayList<>();
+
     // Constructors, getters, setters, and toString() method
 
     public ManufacturingFacility() {
@@ -104,6 +111,14 @@ public class ManufacturingFacility {
         this.company = company;
     }
 
+    public List<FacilityDocument> getDocuments() {
+        return documents;
+    }
+
+    public void setDocuments(List<FacilityDocument> documents) {
+        this.documents = documents;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
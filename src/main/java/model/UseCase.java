@@ -1,5 +1,7 @@
 package model;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 public class UseCase {
@@ -50,6 +52,18 @@ public class UseCase {
      */
     private ManufacturingFacility facility;
 
+    /**
+     * Actions linked to the use case. Only filled by aggregate loads such as
+     * UseCaseDAO.fetchUseCaseAggregate; empty otherwise.
+     */
+    private List<UseCaseAction> actions = new ArrayList<>();
+
+    /**
+     * Object types linked to the use case. Only filled by aggregate loads;
+     * empty otherwise.
+     */
+    private List<UseCaseObjectType> objectTypes = new ArrayList<>();
+
     // Enum for FacilityType
     public enum FacilityType {
         RESEARCH_AND_DEVELOPMENT, PRODUCTION, WAREHOUSE, QUALITY_CONTROL, PACKAGING
@@ -114,6 +128,22 @@ public class UseCase {
         this.facility = facility;
     }
 
+    public List<UseCaseAction> getActions() {
+        return actions;
+    }
+
+    public void setActions(List<UseCaseAction> actions) {
+        this.actions = actions;
+    }
+
+    public List<UseCaseObjectType> getObjectTypes() {
+        return objectTypes;
+    }
+
+    public void setObjectTypes(List<UseCaseObjectType> objectTypes) {
+        this.objectTypes = objectTypes;
+    }
+
     // toString
     @Override
     public String toString() {
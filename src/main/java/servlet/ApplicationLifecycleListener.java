@@ -0,0 +1,35 @@
+package servlet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import dao.CompanyNameIndex;
+import dao.DashboardPreferenceWriteBehind;
+import utils.AsyncExecutor;
+import utils.ClusterChangeNotifier;
+import utils.DatabaseUtility;
+
+/**
+ * Starts the cross-node change listener and the company name filter build,
+ * and releases application-wide resources when the web application is
+ * stopped or redeployed, so that pooled connections and background threads do
+ * not outlive the deployment. Buffered writes are flushed before the pools
+ * close.
+ */
+public class ApplicationLifecycleListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+		// Other resources are created lazily on first use.
+		ClusterChangeNotifier.start();
+		CompanyNameIndex.start();
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		ClusterChangeNotifier.stop();
+		DashboardPreferenceWriteBehind.shutdown();
+		AsyncExecutor.shutdown();
+		DatabaseUtility.shutdown();
+	}
+}
@@ -0,0 +1,41 @@
+package servlet;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import utils.DataLoaderRegistry;
+
+/**
+ * Gives every request its own {@link DataLoaderRegistry}, so references
+ * loaded while rendering the request are batched and cached for exactly that
+ * request.
+ */
+public class DataLoaderFilter implements Filter {
+
+	@Override
+	public void init(FilterConfig filterConfig) {
+		// No configuration needed.
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		DataLoaderRegistry.begin();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			DataLoaderRegistry.end();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		// Nothing to release.
+	}
+}
@@ -0,0 +1,92 @@
+package servlet;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import dao.ActionApplicabilityMatrix;
+import dao.CompanyNameIndex;
+import dao.DashboardPreferenceWriteBehind;
+import dao.EntityCache;
+import dao.FilterPlanCache;
+import dao.FilterResultCache;
+import dao.ImpactIndex;
+import dao.OntologyCache;
+import dao.RelationshipGraphCache;
+import utils.ApplicationConfig;
+import utils.AsyncExecutor;
+import utils.ClusterChangeNotifier;
+import utils.DatabaseUtility;
+import utils.PoolMetrics;
+
+/**
+ * Serves the connection pool telemetry and the state of the internal caches
+ * as JSON, so pool sizing can be based on observed acquire waits, hold times
+ * and saturation. The sections:
+ *
+ * <ul>
+ * <li>{@code primary}, {@code replicas}: the connection pools</li>
+ * <li>{@code async}: the async DAO executor</li>
+ * <li>{@code preferenceWriteBehind}: the dashboard preference write-behind buffer</li>
+ * <li>{@code ontologyCache}: the ontology cache</li>
+ * <li>{@code clusterNotify}: the cross-node change notifications</li>
+ * <li>{@code entityCache}: the entity caches</li>
+ * <li>{@code companyNameFilter}: the company name filter</li>
+ * <li>{@code relationshipGraph}: the relationship graph</li>
+ * <li>{@code impactIndex}: the change impact index</li>
+ * <li>{@code actionApplicability}: the action applicability matrices</li>
+ * <li>{@code filterPlanCache}: the filter plan cache</li>
+ * <li>{@code filterResultCache}: the filter result cache</li>
+ * </ul>
+ *
+ * <p>
+ * The output includes leak stack traces, thread names and the state of every
+ * internal cache, so the endpoint answers 404 unless
+ * {@code pool.metrics.endpoint.enabled=true}, and web.xml restricts it to
+ * the {@code admin} role.
+ * </p>
+ */
+public class PoolMetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("pool.metrics.endpoint.enabled", false);
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!ENABLED) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		PoolMetrics metrics = DatabaseUtility.getPoolMetrics();
+		JSONObject json = new JSONObject();
+		if (metrics != null) {
+			json.put("primary", metrics.toJson());
+		}
+		JSONArray replicas = new JSONArray();
+		for (PoolMetrics replica : DatabaseUtility.getReplicaPoolMetrics()) {
+			replicas.put(replica.toJson());
+		}
+		json.put("replicas", replicas);
+		json.put("async", AsyncExecutor.toJson());
+		json.put("preferenceWriteBehind", DashboardPreferenceWriteBehind.toJson());
+		json.put("ontologyCache", OntologyCache.toJson());
+		json.put("clusterNotify", ClusterChangeNotifier.toJson());
+		json.put("entityCache", EntityCache.toJson());
+		json.put("companyNameFilter", CompanyNameIndex.toJson());
+		json.put("relationshipGraph", RelationshipGraphCache.toJson());
+		json.put("impactIndex", ImpactIndex.toJson());
+		json.put("actionApplicability", ActionApplicabilityMatrix.toJson());
+		json.put("filterPlanCache", FilterPlanCache.toJson());
+		json.put("filterResultCache", FilterResultCache.toJson());
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		response.getWriter().write(json.toString(2));
+	}
+}
@@ -0,0 +1,50 @@
+package servlet;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import utils.ReadConsistency;
+
+/**
+ * Binds a read-your-writes scope to every request. The HTTP session id is used
+ * as the consistency key, so after a user writes, their following requests
+ * keep reading from the primary until the replicas have had time to catch up.
+ */
+public class ReadConsistencyFilter implements Filter {
+
+	@Override
+	public void init(FilterConfig filterConfig) {
+		// No configuration needed.
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		String key = null;
+		if (request instanceof HttpServletRequest) {
+			HttpSession session = ((HttpServletRequest) request).getSession(false);
+			if (session != null) {
+				key = session.getId();
+			}
+		}
+		ReadConsistency.begin(key);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			ReadConsistency.end();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		// Nothing to release.
+	}
+}
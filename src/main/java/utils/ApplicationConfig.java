@@ -0,0 +1,143 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@code ApplicationConfig} class gives read access to the settings stored
+ * in the {@code application.properties} file on the classpath.
+ *
+ * <p>
+ * The file is loaded once, the first time any setting is requested. Every
+ * accessor takes a default value which is returned when the key is missing or
+ * cannot be parsed, so a minimal properties file holding only the database
+ * credentials is always enough to start the application.
+ * </p>
+ */
+public final class ApplicationConfig {
+
+	private static final Logger LOGGER = Logger.getLogger(ApplicationConfig.class.getName());
+	private static final Properties PROPERTIES = load();
+
+	private ApplicationConfig() {
+	}
+
+	private static Properties load() {
+		Properties prop = new Properties();
+		try (InputStream input = ApplicationConfig.class.getClassLoader()
+				.getResourceAsStream("application.properties")) {
+			if (input == null) {
+				LOGGER.log(Level.SEVERE, "Unable to find application.properties");
+			} else {
+				prop.load(input);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Error reading application.properties", e);
+		}
+		return prop;
+	}
+
+	/**
+	 * Returns a copy of all loaded properties.
+	 *
+	 * @return the properties read from {@code application.properties}
+	 */
+	public static Properties getProperties() {
+		Properties copy = new Properties();
+		copy.putAll(PROPERTIES);
+		return copy;
+	}
+
+	/**
+	 * Returns the trimmed value of a setting.
+	 *
+	 * @param key          the property key
+	 * @param defaultValue the value returned when the key is not set
+	 * @return the configured value or {@code defaultValue}
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value = PROPERTIES.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	/**
+	 * Returns an integer setting.
+	 *
+	 * @param key          the property key
+	 * @param defaultValue the value returned when the key is not set or invalid
+	 * @return the configured value or {@code defaultValue}
+	 */
+	public static int getInt(String key, int defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			LOGGER.log(Level.WARNING, "Invalid integer for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Returns a long setting.
+	 *
+	 * @param key          the property key
+	 * @param defaultValue the value returned when the key is not set or invalid
+	 * @return the configured value or {@code defaultValue}
+	 */
+	public static long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			LOGGER.log(Level.WARNING, "Invalid number for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Returns a decimal setting.
+	 *
+	 * @param key          the property key
+	 * @param defaultValue the value returned when the key is not set or invalid
+	 * @return the configured value or {@code defaultValue}
+	 */
+	public static double getDouble(String key, double defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			LOGGER.log(Level.WARNING, "Invalid number for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Returns a boolean setting.
+	 *
+	 * @param key          the property key
+	 * @param defaultValue the value returned when the key is not set
+	 * @return the configured value or {@code defaultValue}
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,194 @@
+package utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+/**
+ * Runs blocking database calls on a bounded worker pool and hands back
+ * {@link CompletableFuture}s, so independent fetches can run in parallel.
+ *
+ * <p>
+ * The pool is sized to the connection pool ({@code async.threads}, default
+ * {@code pool.maxSize}): more workers would only queue on
+ * {@code getConnection}. Work waiting for a worker is held in a bounded queue
+ * ({@code async.queueCapacity}, default 200). When the queue is full the call
+ * is rejected immediately and the returned future fails with a
+ * {@link RejectedExecutionException}, which pushes back on the caller instead
+ * of letting requests pile up behind a saturated database.
+ * </p>
+ *
+ * <p>
+ * Every call has a deadline ({@code async.defaultTimeoutMs}, default 10000,
+ * or the value passed by the caller). When it passes the future fails with a
+ * {@link TimeoutException}; a call still waiting in the queue is dropped and
+ * a running call is interrupted. A query already sent to the server runs to
+ * completion in the background.
+ * </p>
+ *
+ * <p>
+ * The read-your-writes scope of the submitting thread (see
+ * {@link ReadConsistency}) is carried over to the worker. A
+ * {@link UnitOfWork} is not: async calls always run on their own connection.
+ * </p>
+ */
+public final class AsyncExecutor {
+
+	private static final Logger LOGGER = Logger.getLogger(AsyncExecutor.class.getName());
+
+	private static final long DEFAULT_TIMEOUT_MS = ApplicationConfig.getLong("async.defaultTimeoutMs", 10000);
+
+	private static final AtomicLong REJECTED = new AtomicLong();
+	private static final AtomicLong TIMED_OUT = new AtomicLong();
+
+	private static volatile ThreadPoolExecutor executor;
+
+	private AsyncExecutor() {
+	}
+
+	/**
+	 * Runs the call asynchronously with the default deadline.
+	 *
+	 * @param call the blocking call
+	 * @param <T>  the result type
+	 * @return a future completed with the result of the call
+	 */
+	public static <T> CompletableFuture<T> supply(Supplier<T> call) {
+		return supply(call, DEFAULT_TIMEOUT_MS);
+	}
+
+	/**
+	 * Runs the call asynchronously.
+	 *
+	 * @param call      the blocking call
+	 * @param timeoutMs deadline of the call in milliseconds, 0 for none
+	 * @param <T>       the result type
+	 * @return a future completed with the result of the call, or failed with a
+	 *         {@link RejectedExecutionException} when the queue is full or a
+	 *         {@link TimeoutException} when the deadline passed
+	 */
+	public static <T> CompletableFuture<T> supply(Supplier<T> call, long timeoutMs) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		String consistencyKey = ReadConsistency.currentKey();
+		boolean wrote = ReadConsistency.hasWritten();
+		Future<?> task;
+		try {
+			task = executor().submit(() -> {
+				if (future.isDone()) {
+					return; // deadline passed while queued
+				}
+				ReadConsistency.begin(consistencyKey, wrote);
+				try {
+					future.complete(call.get());
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				} finally {
+					ReadConsistency.end();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			REJECTED.incrementAndGet();
+			future.completeExceptionally(e);
+			return future;
+		}
+		if (timeoutMs > 0) {
+			future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((result, error) -> {
+				if (error instanceof TimeoutException) {
+					TIMED_OUT.incrementAndGet();
+					task.cancel(true);
+				}
+			});
+		}
+		return future;
+	}
+
+	/**
+	 * Returns the current state of the worker pool.
+	 *
+	 * @return threads, active workers, queue depth and the rejected and timed
+	 *         out call counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		ThreadPoolExecutor current = executor;
+		json.put("threads", current == null ? 0 : current.getPoolSize());
+		json.put("active", current == null ? 0 : current.getActiveCount());
+		json.put("queued", current == null ? 0 : current.getQueue().size());
+		json.put("completed", current == null ? 0 : current.getCompletedTaskCount());
+		json.put("rejected", REJECTED.get());
+		json.put("timedOut", TIMED_OUT.get());
+		return json;
+	}
+
+	/**
+	 * Stops the worker pool. Queued calls are dropped and running calls are
+	 * interrupted.
+	 */
+	public static synchronized void shutdown() {
+		ThreadPoolExecutor current = executor;
+		executor = null;
+		if (current == null) {
+			return;
+		}
+		current.shutdownNow();
+		try {
+			if (!current.awaitTermination(5, TimeUnit.SECONDS)) {
+				LOGGER.warning("Async DAO workers did not stop within 5 seconds");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static ThreadPoolExecutor executor() {
+		ThreadPoolExecutor current = executor;
+		if (current == null) {
+			synchronized (AsyncExecutor.class) {
+				current = executor;
+				if (current == null) {
+					current = createExecutor();
+					executor = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private static ThreadPoolExecutor createExecutor() {
+		int threads = ApplicationConfig.getInt("async.threads", PoolConfig.fromApplicationConfig().getMaxSize());
+		int queueCapacity = ApplicationConfig.getInt("async.queueCapacity", 200);
+		ThreadPoolExecutor created = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+		created.allowCoreThreadTimeOut(true);
+		LOGGER.log(Level.INFO, "Started async DAO executor with {0} threads and a queue of {1}",
+				new Object[] { threads, queueCapacity });
+		return created;
+	}
+
+	/**
+	 * Names the workers and keeps them from blocking JVM shutdown.
+	 */
+	private static final class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "dao-async-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Savepoint;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inserts many rows with JDBC batching and reports the generated id or the
+ * failure of every row.
+ *
+ * <p>
+ * Rows are sent in chunks of {@code batch.chunkSize} (default 500). With
+ * {@code database.driver.reWriteBatchedInserts=true} the driver turns each
+ * chunk into multi-row INSERT statements, so a chunk costs one round trip.
+ * Every chunk is committed on its own. When a chunk fails it is rolled back
+ * to a savepoint and retried row by row, so one bad row only rejects itself.
+ * </p>
+ *
+ * <p>
+ * Inside a {@link UnitOfWork} the rows are inserted on the bound connection
+ * and nothing is committed here. A failing chunk then aborts the transaction:
+ * the unit of work is marked rollback-only and all rows are reported as
+ * failed.
+ * </p>
+ *
+ * <p>
+ * Rows that must be checked against the rows stored before them, such as
+ * relationships that must not close a cycle, are inserted one at a time in
+ * a single transaction with {@link #insert(String, List, StatementBinder, RowCheck)}.
+ * </p>
+ */
+public final class BatchInserter {
+
+	private static final Logger LOGGER = Logger.getLogger(BatchInserter.class.getName());
+
+	private static final int CHUNK_SIZE = Math.max(1, ApplicationConfig.getInt("batch.chunkSize", 500));
+	private static final String[] GENERATED_COLUMNS = { "id" };
+
+	private BatchInserter() {
+	}
+
+	/**
+	 * Binds the values of one row to the INSERT statement.
+	 *
+	 * @param <T> the row type
+	 */
+	@FunctionalInterface
+	public interface StatementBinder<T> {
+
+		void bind(PreparedStatement stmt, T row) throws SQLException;
+	}
+
+	/**
+	 * Decides whether a row may be stored.
+	 *
+	 * @param <T> the row type
+	 */
+	@FunctionalInterface
+	public interface RowCheck<T> {
+
+		/**
+		 * @param row the row about to be inserted
+		 * @return null to insert the row, otherwise why it is rejected
+		 * @throws SQLException if the check cannot be made; the whole insert
+		 *                      is then rolled back
+		 */
+		String reject(T row) throws SQLException;
+	}
+
+	/**
+	 * Inserts the rows.
+	 *
+	 * @param sql    INSERT statement of a table with a generated {@code id}
+	 * @param rows   the rows to insert
+	 * @param binder binds one row to the statement
+	 * @param <T>    the row type
+	 * @return the ids and failures of the rows
+	 */
+	public static <T> BatchResult insert(String sql, List<T> rows, StatementBinder<T> binder) {
+		BatchResult result = new BatchResult(rows.size());
+		if (rows.isEmpty()) {
+			return result;
+		}
+		Connection unitConnection = UnitOfWork.currentConnection();
+		if (unitConnection != null) {
+			insertInUnitOfWork(unitConnection, sql, rows, binder, result);
+		} else {
+			insertStandalone(sql, rows, binder, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks and inserts the rows one at a time in one transaction, joining
+	 * the active {@link UnitOfWork} if there is one. Each check runs on the
+	 * connection of the transaction, so it sees the rows inserted before it.
+	 * A rejected row is reported as failed with its reason; a failing check or
+	 * insert rolls back all rows.
+	 *
+	 * @param sql    INSERT statement of a table with a generated {@code id}
+	 * @param rows   the rows to insert
+	 * @param binder binds one row to the statement
+	 * @param check  decides whether a row may be inserted
+	 * @param <T>    the row type
+	 * @return the ids and failures of the rows
+	 */
+	public static <T> BatchResult insert(String sql, List<T> rows, StatementBinder<T> binder, RowCheck<T> check) {
+		BatchResult result = new BatchResult(rows.size());
+		if (rows.isEmpty()) {
+			return result;
+		}
+		try {
+			UnitOfWork.execute(() -> {
+				try (PreparedStatement stmt = UnitOfWork.currentConnection().prepareStatement(sql, GENERATED_COLUMNS)) {
+					for (int i = 0; i < rows.size(); i++) {
+						String reason = check.reject(rows.get(i));
+						if (reason != null) {
+							result.failed(i, new SQLIntegrityConstraintViolationException(reason));
+							continue;
+						}
+						binder.bind(stmt, rows.get(i));
+						stmt.executeUpdate();
+						readGeneratedKeys(stmt, i, i + 1, result);
+					}
+				} catch (SQLException | RuntimeException e) {
+					UnitOfWork.setRollbackOnly();
+					throw e;
+				}
+				return null;
+			});
+		} catch (SQLException | RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "Checked bulk insert rolled back", e);
+			failRemaining(result, 0, rows.size(), e);
+		}
+		return result;
+	}
+
+	private static <T> void insertStandalone(String sql, List<T> rows, StatementBinder<T> binder, BatchResult result) {
+		Connection conn;
+		try {
+			conn = QueryExecutor.writeConnection();
+		} catch (SQLException e) {
+			failRemaining(result, 0, rows.size(), e);
+			return;
+		}
+		int from = 0;
+		try {
+			conn.setAutoCommit(false);
+			try (PreparedStatement stmt = conn.prepareStatement(sql, GENERATED_COLUMNS)) {
+				for (; from < rows.size(); from += CHUNK_SIZE) {
+					int to = Math.min(rows.size(), from + CHUNK_SIZE);
+					insertChunk(conn, stmt, rows, binder, from, to, result);
+					conn.commit();
+				}
+			}
+		} catch (SQLException e) {
+			LOGGER.log(Level.SEVERE, "Bulk insert aborted", e);
+			failRemaining(result, from, rows.size(), e);
+			try {
+				conn.rollback();
+			} catch (SQLException rollbackError) {
+				LOGGER.log(Level.WARNING, "Error rolling back bulk insert", rollbackError);
+			}
+		} finally {
+			try {
+				conn.setAutoCommit(true);
+			} catch (SQLException e) {
+				LOGGER.log(Level.WARNING, "Error restoring auto-commit", e);
+			}
+			DatabaseUtility.disconnect(conn);
+		}
+	}
+
+	private static <T> void insertChunk(Connection conn, PreparedStatement stmt, List<T> rows, StatementBinder<T> binder,
+			int from, int to, BatchResult result) throws SQLException {
+		Savepoint savepoint = conn.setSavepoint();
+		try {
+			for (int i = from; i < to; i++) {
+				binder.bind(stmt, rows.get(i));
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			readGeneratedKeys(stmt, from, to, result);
+			conn.releaseSavepoint(savepoint);
+			return;
+		} catch (SQLException | RuntimeException e) {
+			LOGGER.log(Level.FINE, "Batch of rows " + from + " to " + (to - 1) + " failed, retrying row by row", e);
+			stmt.clearBatch();
+			conn.rollback(savepoint);
+		}
+		for (int i = from; i < to; i++) {
+			Savepoint rowSavepoint = conn.setSavepoint();
+			try {
+				binder.bind(stmt, rows.get(i));
+				stmt.executeUpdate();
+				readGeneratedKeys(stmt, i, i + 1, result);
+				conn.releaseSavepoint(rowSavepoint);
+			} catch (SQLException | RuntimeException e) {
+				conn.rollback(rowSavepoint);
+				result.failed(i, e);
+			}
+		}
+	}
+
+	private static <T> void insertInUnitOfWork(Connection conn, String sql, List<T> rows, StatementBinder<T> binder,
+			BatchResult result) {
+		try (PreparedStatement stmt = conn.prepareStatement(sql, GENERATED_COLUMNS)) {
+			for (int from = 0; from < rows.size(); from += CHUNK_SIZE) {
+				int to = Math.min(rows.size(), from + CHUNK_SIZE);
+				for (int i = from; i < to; i++) {
+					binder.bind(stmt, rows.get(i));
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				readGeneratedKeys(stmt, from, to, result);
+			}
+		} catch (SQLException | RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "Bulk insert failed inside a unit of work", e);
+			if (UnitOfWork.isActive()) {
+				UnitOfWork.setRollbackOnly();
+			}
+			failRemaining(result, 0, rows.size(), e);
+		}
+	}
+
+	private static void readGeneratedKeys(PreparedStatement stmt, int from, int to, BatchResult result) throws SQLException {
+		try (ResultSet keys = stmt.getGeneratedKeys()) {
+			for (int i = from; i < to && keys.next(); i++) {
+				result.succeeded(i, keys.getInt(1));
+			}
+		}
+	}
+
+	private static void failRemaining(BatchResult result, int from, int to, Exception cause) {
+		for (int i = from; i < to; i++) {
+			result.failed(i, cause);
+		}
+	}
+}
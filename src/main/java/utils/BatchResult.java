@@ -0,0 +1,131 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk insert: the generated id of every stored row and the
+ * reason every other row was rejected.
+ */
+public class BatchResult {
+
+	private final int[] ids;
+	private final boolean[] rejected;
+	private final List<RowFailure> failures = new ArrayList<>();
+
+	/**
+	 * Creates an empty result.
+	 *
+	 * @param rowCount the number of rows submitted
+	 */
+	public BatchResult(int rowCount) {
+		this.ids = new int[rowCount];
+		this.rejected = new boolean[rowCount];
+	}
+
+	void succeeded(int index, int id) {
+		ids[index] = id;
+	}
+
+	void failed(int index, Exception cause) {
+		ids[index] = 0;
+		if (!rejected[index]) {
+			rejected[index] = true;
+			failures.add(new RowFailure(index, cause));
+		}
+	}
+
+	/**
+	 * Returns the generated id of a row.
+	 *
+	 * @param index position of the row in the submitted list
+	 * @return the id, or 0 when the row was not stored
+	 */
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Returns the generated ids in submission order, 0 for rows that were not
+	 * stored.
+	 *
+	 * @return a copy of the ids
+	 */
+	public int[] getIds() {
+		return ids.clone();
+	}
+
+	/**
+	 * Returns the rejected rows.
+	 *
+	 * @return the failures ordered by row index
+	 */
+	public List<RowFailure> getFailures() {
+		List<RowFailure> sorted = new ArrayList<>(failures);
+		sorted.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+		return Collections.unmodifiableList(sorted);
+	}
+
+	/**
+	 * Returns the number of stored rows.
+	 *
+	 * @return submitted rows minus failed rows
+	 */
+	public int getInsertedCount() {
+		return ids.length - failures.size();
+	}
+
+	/**
+	 * Tells whether all rows were stored.
+	 *
+	 * @return true when no row failed
+	 */
+	public boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResult{" +
+				"rows=" + ids.length +
+				", inserted=" + getInsertedCount() +
+				", failed=" + failures.size() +
+				'}';
+	}
+
+	/**
+	 * A row that could not be stored.
+	 */
+	public static class RowFailure {
+
+		private final int index;
+		private final Exception cause;
+
+		RowFailure(int index, Exception cause) {
+			this.index = index;
+			this.cause = cause;
+		}
+
+		/**
+		 * @return position of the row in the submitted list
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return the exception that rejected the row
+		 */
+		public Exception getCause() {
+			return cause;
+		}
+
+		/**
+		 * @return the message of the exception
+		 */
+		public String getMessage() {
+			return cause.getMessage();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bloom filter over strings: answers "definitely not added" or "possibly
+ * added" from a fixed-size bit array.
+ *
+ * <p>
+ * The filter is sized for an expected number of strings and a false positive
+ * rate; adding more strings than expected raises the rate. Strings cannot be
+ * removed, so a filter over a changing set has to be rebuilt to shed removed
+ * strings. The bit positions are derived from the two halves of one 128-bit
+ * MurmurHash3 of the UTF-8 bytes (double hashing). Thread-safe: bits are only
+ * ever set, under the filter's lock.
+ * </p>
+ */
+public final class BloomFilter {
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final long[] bits;
+	private final long bitSize;
+	private final int hashCount;
+	private final int expectedInsertions;
+	private long insertions;
+
+	/**
+	 * @param expectedInsertions the number of strings the filter is sized for
+	 * @param falsePositiveRate  the wanted false positive rate at that size,
+	 *                           between 0 and 1 exclusive
+	 */
+	public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+		}
+		int n = Math.max(1, expectedInsertions);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		m = Math.max(64, Math.min(m, (long) Integer.MAX_VALUE * 64));
+		this.bits = new long[(int) ((m + 63) / 64)];
+		this.bitSize = bits.length * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+		this.expectedInsertions = n;
+	}
+
+	/**
+	 * Adds a string.
+	 *
+	 * @param value the string
+	 * @return true if a bit changed, so the string was definitely not added
+	 *         before
+	 */
+	public synchronized boolean put(String value) {
+		long[] hash = hash(value);
+		boolean changed = false;
+		long combined = hash[0];
+		for (int i = 0; i < hashCount; i++) {
+			long index = (combined & Long.MAX_VALUE) % bitSize;
+			long mask = 1L << index;
+			int word = (int) (index >>> 6);
+			if ((bits[word] & mask) == 0) {
+				bits[word] |= mask;
+				changed = true;
+			}
+			combined += hash[1];
+		}
+		insertions++;
+		return changed;
+	}
+
+	/**
+	 * Tells whether the string may have been added.
+	 *
+	 * @param value the string
+	 * @return false if it was definitely not added
+	 */
+	public synchronized boolean mightContain(String value) {
+		long[] hash = hash(value);
+		long combined = hash[0];
+		for (int i = 0; i < hashCount; i++) {
+			long index = (combined & Long.MAX_VALUE) % bitSize;
+			if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+				return false;
+			}
+			combined += hash[1];
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of calls to {@link #put(String)}, counting a string
+	 *         added twice twice
+	 */
+	public synchronized long getInsertions() {
+		return insertions;
+	}
+
+	/**
+	 * @return the number of strings the filter was sized for
+	 */
+	public int getExpectedInsertions() {
+		return expectedInsertions;
+	}
+
+	/**
+	 * @return the size of the bit array in bytes
+	 */
+	public long getSizeInBytes() {
+		return bits.length * 8L;
+	}
+
+	/**
+	 * Estimates the current false positive rate from the share of set bits.
+	 *
+	 * @return the probability that a string not added is reported as possibly
+	 *         added
+	 */
+	public synchronized double expectedFalsePositiveRate() {
+		long set = 0;
+		for (long word : bits) {
+			set += Long.bitCount(word);
+		}
+		return Math.pow((double) set / bitSize, hashCount);
+	}
+
+	private static long[] hash(String value) {
+		byte[] data = value.getBytes(StandardCharsets.UTF_8);
+		long h1 = 0;
+		long h2 = 0;
+		int blocks = data.length / 16;
+		for (int i = 0; i < blocks; i++) {
+			long k1 = getLong(data, i * 16);
+			long k2 = getLong(data, i * 16 + 8);
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27) + h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31) + h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+		long k1 = 0;
+		long k2 = 0;
+		int tail = blocks * 16;
+		for (int i = data.length - 1; i >= tail; i--) {
+			long b = data[i] & 0xffL;
+			if (i - tail >= 8) {
+				k2 |= b << ((i - tail - 8) * 8);
+			} else {
+				k1 |= b << ((i - tail) * 8);
+			}
+		}
+		h1 ^= mixK1(k1);
+		h2 ^= mixK2(k2);
+		h1 ^= data.length;
+		h2 ^= data.length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[] { h1, h2 };
+	}
+
+	private static long getLong(byte[] data, int offset) {
+		long value = 0;
+		for (int i = 7; i >= 0; i--) {
+			value = (value << 8) | (data[offset + i] & 0xffL);
+		}
+		return value;
+	}
+
+	private static long mixK1(long k1) {
+		return Long.rotateLeft(k1 * C1, 31) * C2;
+	}
+
+	private static long mixK2(long k2) {
+		return Long.rotateLeft(k2 * C2, 33) * C1;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb93fe53a87ddL;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -0,0 +1,87 @@
+package utils;
+
+import java.beans.PropertyVetoException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+/**
+ * {@link ConnectionPool} backed by a C3P0 {@code ComboPooledDataSource}.
+ *
+ * <p>
+ * This is the pool the application used before the pool became pluggable. It
+ * is kept so the two implementations can be compared under load and as a
+ * fallback ({@code pool.implementation=c3p0}).
+ * </p>
+ */
+public class C3p0ConnectionPool implements ConnectionPool {
+
+	private final String name;
+	private final ComboPooledDataSource dataSource;
+
+	/**
+	 * Creates and configures the C3P0 data source.
+	 *
+	 * @param config the pool configuration
+	 */
+	public C3p0ConnectionPool(PoolConfig config) {
+		this.name = config.getPoolName();
+		this.dataSource = new ComboPooledDataSource();
+		try {
+			dataSource.setDriverClass("org.postgresql.Driver"); // JDBC Driver
+		} catch (PropertyVetoException e) {
+			throw new IllegalStateException("PostgreSQL driver not available", e);
+		}
+		dataSource.setJdbcUrl(config.getJdbcUrl());
+		// c3p0 keeps user and password in the same Properties, so set them afterwards
+		Properties driverProperties = new Properties();
+		driverProperties.putAll(config.getDriverProperties());
+		dataSource.setProperties(driverProperties);
+		dataSource.setUser(config.getUsername());
+		dataSource.setPassword(config.getPassword());
+
+		dataSource.setMinPoolSize(config.getMinIdle());
+		dataSource.setInitialPoolSize(config.getMinIdle());
+		dataSource.setAcquireIncrement(Math.max(1, config.getMinIdle()));
+		dataSource.setMaxPoolSize(config.getMaxSize());
+		dataSource.setMaxStatements(config.getStatementCacheSize());
+		dataSource.setCheckoutTimeout((int) Math.min(Integer.MAX_VALUE, config.getConnectionTimeoutMs()));
+		dataSource.setMaxIdleTimeExcessConnections((int) (config.getIdleTimeoutMs() / 1000));
+		dataSource.setMaxConnectionAge((int) (config.getMaxLifetimeMs() / 1000));
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return dataSource.getConnection();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getTotalConnections() {
+		try {
+			return dataSource.getNumConnectionsDefaultUser();
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public int getIdleConnections() {
+		try {
+			return dataSource.getNumIdleConnectionsDefaultUser();
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void close() {
+		dataSource.close();
+	}
+}
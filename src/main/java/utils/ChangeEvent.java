@@ -0,0 +1,100 @@
+package utils;
+
+/**
+ * Notification that rows of a table were created, updated or deleted.
+ *
+ * <p>
+ * Events identify the row by id. An id of 0 means that the changed rows are
+ * not known, e.g. after a bulk load, and listeners should treat the whole
+ * table as changed. An event for {@link #ALL_TABLES} means that changes may
+ * have been missed and listeners should drop everything they cached.
+ * </p>
+ *
+ * <p>
+ * Events received from another application node are marked remote; they must
+ * not be forwarded again.
+ * </p>
+ */
+public final class ChangeEvent {
+
+	/**
+	 * Table name of the event that invalidates all cached data.
+	 */
+	public static final String ALL_TABLES = "*";
+
+	/**
+	 * The kind of change.
+	 */
+	public enum Type {
+		CREATED, UPDATED, DELETED
+	}
+
+	private final String table;
+	private final Type type;
+	private final int id;
+	private final boolean remote;
+
+	/**
+	 * Creates an event for a change made by this node.
+	 *
+	 * @param table the table name
+	 * @param type  the kind of change
+	 * @param id    the id of the changed row, 0 when unknown
+	 */
+	public ChangeEvent(String table, Type type, int id) {
+		this(table, type, id, false);
+	}
+
+	/**
+	 * @param table  the table name
+	 * @param type   the kind of change
+	 * @param id     the id of the changed row, 0 when unknown
+	 * @param remote whether the change was made by another node
+	 */
+	public ChangeEvent(String table, Type type, int id, boolean remote) {
+		this.table = table;
+		this.type = type;
+		this.id = id;
+		this.remote = remote;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public boolean isRemote() {
+		return remote;
+	}
+
+	/**
+	 * @return true when the changed rows are not known
+	 */
+	public boolean isWholeTable() {
+		return id == 0;
+	}
+
+	/**
+	 * @return true when all cached data must be dropped
+	 */
+	public boolean isAllTables() {
+		return ALL_TABLES.equals(table);
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeEvent{" +
+				"table='" + table + '\'' +
+				", type=" + type +
+				", id=" + id +
+				", remote=" + remote +
+				'}';
+	}
+}
@@ -0,0 +1,86 @@
+package utils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers {@link ChangeEvent}s published by the DAO write methods to
+ * in-process listeners such as caches.
+ *
+ * <p>
+ * Events are delivered synchronously on the publishing thread, and only once
+ * the change is committed: inside a {@link UnitOfWork} delivery is deferred
+ * until the commit and dropped on rollback. Listeners therefore always see
+ * the new state when they read the database, and must be quick; a failing
+ * listener is logged and does not affect the others or the write.
+ * </p>
+ */
+public final class ChangeEventBus {
+
+	private static final Logger LOGGER = Logger.getLogger(ChangeEventBus.class.getName());
+
+	private static final List<Consumer<ChangeEvent>> LISTENERS = new CopyOnWriteArrayList<>();
+
+	private ChangeEventBus() {
+	}
+
+	/**
+	 * Registers a listener.
+	 *
+	 * @param listener receives every committed change
+	 */
+	public static void subscribe(Consumer<ChangeEvent> listener) {
+		LISTENERS.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener the listener passed to {@link #subscribe(Consumer)}
+	 */
+	public static void unsubscribe(Consumer<ChangeEvent> listener) {
+		LISTENERS.remove(listener);
+	}
+
+	/**
+	 * Publishes a change once it is committed.
+	 *
+	 * @param table the table name
+	 * @param type  the kind of change
+	 * @param id    the id of the changed row, 0 when unknown
+	 */
+	public static void publish(String table, ChangeEvent.Type type, int id) {
+		publish(new ChangeEvent(table, type, id));
+	}
+
+	/**
+	 * Publishes a change once it is committed.
+	 *
+	 * @param event the change
+	 */
+	public static void publish(ChangeEvent event) {
+		if (LISTENERS.isEmpty()) {
+			return;
+		}
+		UnitOfWork.afterCommit(() -> deliver(event));
+	}
+
+	/**
+	 * Delivers a change to the listeners now, without waiting for a commit.
+	 * Used for changes that were committed elsewhere, e.g. by another node.
+	 *
+	 * @param event the change
+	 */
+	public static void deliver(ChangeEvent event) {
+		for (Consumer<ChangeEvent> listener : LISTENERS) {
+			try {
+				listener.accept(event);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.SEVERE, "Change listener failed for " + event, e);
+			}
+		}
+	}
+}
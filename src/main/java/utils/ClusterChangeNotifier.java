@@ -0,0 +1,418 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Forwards {@link ChangeEvent}s between application nodes through PostgreSQL
+ * {@code LISTEN}/{@code NOTIFY}, so in-process caches of every node follow the
+ * writes made on the others.
+ *
+ * <p>
+ * Every committed local change is queued and sent with {@code pg_notify} on
+ * the channel {@code cluster.notify.channel} (default {@code ontology_changes}),
+ * tagged with the id of this node and a per-node sequence number. A single
+ * thread numbers and sends the queued changes over one dedicated connection,
+ * so the notifications commit, and reach the other nodes, in sequence order.
+ * When more than {@code cluster.notify.sendQueueSize} (default 10000) changes
+ * are waiting, new ones are dropped and a sequence number is skipped. Each node listens
+ * on a dedicated connection opened directly through the driver, outside the
+ * pool, so pool housekeeping never closes it, and delivers the changes of
+ * other nodes to its own {@link ChangeEventBus} listeners as remote events.
+ * </p>
+ *
+ * <p>
+ * Notifications are not stored by PostgreSQL: those sent while a node is not
+ * listening are lost. A node therefore publishes an {@link ChangeEvent#ALL_TABLES}
+ * event, telling its caches to drop everything, whenever it (re)connects and
+ * whenever the sequence of another node skips a number (a failed send or a
+ * dropped notification). A broken listening connection is reopened with
+ * exponential backoff up to {@code cluster.notify.maxReconnectDelayMs}
+ * (default 30000).
+ * </p>
+ *
+ * <p>
+ * Enabled with {@code cluster.notify.enabled}; started and stopped by the
+ * application lifecycle listener. To try it locally, start two JVMs against
+ * the same database and watch the {@code clusterNotify} counters of the pool
+ * metrics servlet.
+ * </p>
+ */
+public final class ClusterChangeNotifier {
+
+	private static final Logger LOGGER = Logger.getLogger(ClusterChangeNotifier.class.getName());
+
+	private static final boolean ENABLED = ApplicationConfig.getBoolean("cluster.notify.enabled", false);
+	private static final String CHANNEL = ApplicationConfig.getString("cluster.notify.channel", "ontology_changes");
+	private static final int POLL_TIMEOUT_MS = ApplicationConfig.getInt("cluster.notify.pollTimeoutMs", 1000);
+	private static final long MAX_RECONNECT_DELAY_MS = ApplicationConfig.getLong("cluster.notify.maxReconnectDelayMs", 30000);
+	private static final int SEND_QUEUE_SIZE = ApplicationConfig.getInt("cluster.notify.sendQueueSize", 10000);
+	private static final long KEEPALIVE_INTERVAL_MS = 30000;
+	private static final long INITIAL_RECONNECT_DELAY_MS = 500;
+	private static final int MAX_TRACKED_NODES = 1000;
+
+	private static final String NODE_ID = UUID.randomUUID().toString();
+	private static final Driver DRIVER = new org.postgresql.Driver();
+
+	private static final AtomicLong SENT = new AtomicLong();
+	private static final AtomicLong SEND_FAILURES = new AtomicLong();
+	private static final AtomicLong RECEIVED = new AtomicLong();
+	private static final AtomicLong GAPS = new AtomicLong();
+	private static final AtomicLong RESYNCS = new AtomicLong();
+	private static final AtomicLong RECONNECTS = new AtomicLong();
+
+	private static final Consumer<ChangeEvent> FORWARDER = ClusterChangeNotifier::send;
+
+	private static ListenerThread listener;
+	private static SenderThread sender;
+
+	private ClusterChangeNotifier() {
+	}
+
+	/**
+	 * @return whether {@code cluster.notify.enabled} is set
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Starts forwarding and listening, when enabled.
+	 */
+	public static synchronized void start() {
+		if (!ENABLED || listener != null) {
+			return;
+		}
+		if (!CHANNEL.matches("[a-z_][a-z0-9_]*")) {
+			LOGGER.severe("Invalid cluster.notify.channel, cross-node notifications disabled: " + CHANNEL);
+			return;
+		}
+		PoolConfig config = PoolConfig.fromApplicationConfig();
+		sender = new SenderThread(config);
+		sender.start();
+		ChangeEventBus.subscribe(FORWARDER);
+		listener = new ListenerThread(config);
+		listener.start();
+		LOGGER.log(Level.INFO, "Cross-node change notifications started on channel {0} as node {1}",
+				new Object[] { CHANNEL, NODE_ID });
+	}
+
+	/**
+	 * Stops forwarding and closes the listening connection.
+	 */
+	public static synchronized void stop() {
+		ChangeEventBus.unsubscribe(FORWARDER);
+		ListenerThread currentListener = listener;
+		SenderThread currentSender = sender;
+		listener = null;
+		sender = null;
+		if (currentListener != null) {
+			currentListener.running = false;
+		}
+		if (currentSender != null) {
+			currentSender.running = false;
+		}
+		try {
+			if (currentListener != null) {
+				currentListener.join(POLL_TIMEOUT_MS + 5000L);
+			}
+			if (currentSender != null) {
+				currentSender.join(POLL_TIMEOUT_MS + 5000L);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the state of the notifier.
+	 *
+	 * @return the node id, whether the listener is connected, and the send,
+	 *         receive, gap, resync and reconnect counters
+	 */
+	public static JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("enabled", ENABLED);
+		json.put("node", NODE_ID);
+		ListenerThread current = listener;
+		json.put("connected", current != null && current.connected);
+		SenderThread currentSender = sender;
+		json.put("queued", currentSender != null ? currentSender.queue.size() : 0);
+		json.put("sent", SENT.get());
+		json.put("sendFailures", SEND_FAILURES.get());
+		json.put("received", RECEIVED.get());
+		json.put("gaps", GAPS.get());
+		json.put("resyncs", RESYNCS.get());
+		json.put("reconnects", RECONNECTS.get());
+		return json;
+	}
+
+	private static void send(ChangeEvent event) {
+		if (event.isRemote()) {
+			return;
+		}
+		SenderThread current = sender;
+		if (current == null) {
+			return;
+		}
+		if (!current.queue.offer(event)) {
+			// the skipped sequence number makes the other nodes resync
+			current.overflowed.set(true);
+			SEND_FAILURES.incrementAndGet();
+		}
+	}
+
+	private static Connection open(PoolConfig config) throws SQLException {
+		Properties properties = new Properties();
+		properties.putAll(config.getDriverProperties());
+		properties.setProperty("user", config.getUsername());
+		if (config.getPassword() != null) {
+			properties.setProperty("password", config.getPassword());
+		}
+		Connection conn = DRIVER.connect(config.getJdbcUrl(), properties);
+		if (conn == null) {
+			throw new SQLException("Not a PostgreSQL URL: " + config.getJdbcUrl());
+		}
+		return conn;
+	}
+
+	private static void resync(String reason) {
+		RESYNCS.incrementAndGet();
+		LOGGER.log(Level.INFO, "Dropping cached data: {0}", reason);
+		ChangeEventBus.deliver(new ChangeEvent(ChangeEvent.ALL_TABLES, ChangeEvent.Type.UPDATED, 0, true));
+	}
+
+	/**
+	 * Numbers the queued changes and sends them over its own connection, one
+	 * at a time, so sequence order is commit order.
+	 */
+	private static final class SenderThread extends Thread {
+
+		private final PoolConfig config;
+		private final BlockingQueue<ChangeEvent> queue = new LinkedBlockingQueue<>(SEND_QUEUE_SIZE);
+		private final AtomicBoolean overflowed = new AtomicBoolean();
+		private long sequence;
+		private volatile boolean running = true;
+
+		private SenderThread(PoolConfig config) {
+			super("cluster-change-sender");
+			setDaemon(true);
+			this.config = config;
+		}
+
+		@Override
+		public void run() {
+			long delay = INITIAL_RECONNECT_DELAY_MS;
+			Connection conn = null;
+			PreparedStatement stmt = null;
+			try {
+				while (running) {
+					ChangeEvent event;
+					try {
+						event = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					if (event == null) {
+						continue;
+					}
+					if (overflowed.getAndSet(false)) {
+						sequence++;
+					}
+					// numbered before sending, so a failed send shows up as a gap on the other nodes
+					sequence++;
+					JSONObject payload = new JSONObject();
+					payload.put("node", NODE_ID);
+					payload.put("seq", sequence);
+					payload.put("table", event.getTable());
+					payload.put("type", event.getType().name());
+					payload.put("id", event.getId());
+					try {
+						if (conn == null) {
+							conn = open(config);
+							stmt = conn.prepareStatement("SELECT pg_notify(?, ?)");
+						}
+						stmt.setString(1, CHANNEL);
+						stmt.setString(2, payload.toString());
+						stmt.execute();
+						SENT.incrementAndGet();
+						delay = INITIAL_RECONNECT_DELAY_MS;
+					} catch (SQLException | RuntimeException e) {
+						SEND_FAILURES.incrementAndGet();
+						LOGGER.log(Level.WARNING, "Error sending change notification for " + event, e);
+						closeQuietly(conn);
+						conn = null;
+						stmt = null;
+						sleepQuietly(delay);
+						delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+					}
+				}
+			} finally {
+				closeQuietly(conn);
+			}
+		}
+
+		private void closeQuietly(Connection conn) {
+			if (conn == null) {
+				return;
+			}
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				LOGGER.log(Level.FINE, "Error closing the change sender connection", e);
+			}
+		}
+
+		private void sleepQuietly(long millis) {
+			long until = System.currentTimeMillis() + millis;
+			while (running && System.currentTimeMillis() < until) {
+				try {
+					Thread.sleep(Math.min(200, Math.max(1, until - System.currentTimeMillis())));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Holds the listening connection and delivers the notifications of other
+	 * nodes.
+	 */
+	private static final class ListenerThread extends Thread {
+
+		private final PoolConfig config;
+		private final Map<String, Long> lastSequenceByNode = new HashMap<>();
+		private volatile boolean running = true;
+		private volatile boolean connected;
+
+		private ListenerThread(PoolConfig config) {
+			super("cluster-change-listener");
+			setDaemon(true);
+			this.config = config;
+		}
+
+		@Override
+		public void run() {
+			long delay = INITIAL_RECONNECT_DELAY_MS;
+			boolean first = true;
+			while (running) {
+				try (Connection conn = open(config)) {
+					try (Statement stmt = conn.createStatement()) {
+						stmt.execute("LISTEN " + CHANNEL);
+					}
+					connected = true;
+					if (!first) {
+						RECONNECTS.incrementAndGet();
+					}
+					// anything sent before LISTEN took effect was missed
+					lastSequenceByNode.clear();
+					resync(first ? "change listener started" : "change listener reconnected");
+					first = false;
+					delay = INITIAL_RECONNECT_DELAY_MS;
+					listen(conn);
+				} catch (SQLException | RuntimeException e) {
+					if (running) {
+						LOGGER.log(Level.WARNING, "Change listener connection lost, reconnecting in " + delay + " ms", e);
+					}
+				} finally {
+					connected = false;
+				}
+				if (running) {
+					sleepQuietly(delay);
+					delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+				}
+			}
+		}
+
+		private void listen(Connection conn) throws SQLException {
+			PGConnection pgConnection = conn.unwrap(PGConnection.class);
+			long lastActivity = System.currentTimeMillis();
+			while (running) {
+				PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+				long now = System.currentTimeMillis();
+				if (notifications != null && notifications.length > 0) {
+					lastActivity = now;
+					for (PGNotification notification : notifications) {
+						handle(notification.getParameter());
+					}
+				} else if (now - lastActivity > KEEPALIVE_INTERVAL_MS) {
+					// a silently dropped connection would otherwise block forever
+					if (!conn.isValid(5)) {
+						throw new SQLException("Change listener connection is no longer valid");
+					}
+					lastActivity = now;
+				}
+			}
+		}
+
+		private void handle(String payload) {
+			ChangeEvent event;
+			String node;
+			long sequence;
+			try {
+				JSONObject json = new JSONObject(payload);
+				node = json.getString("node");
+				if (NODE_ID.equals(node)) {
+					return;
+				}
+				sequence = json.getLong("seq");
+				event = new ChangeEvent(json.getString("table"), ChangeEvent.Type.valueOf(json.getString("type")),
+						json.getInt("id"), true);
+			} catch (JSONException | IllegalArgumentException e) {
+				LOGGER.log(Level.WARNING, "Malformed change notification: " + payload, e);
+				resync("malformed change notification");
+				return;
+			}
+			RECEIVED.incrementAndGet();
+			Long last = lastSequenceByNode.get(node);
+			if (last != null && sequence <= last) {
+				return; // duplicate
+			}
+			if (lastSequenceByNode.size() >= MAX_TRACKED_NODES && last == null) {
+				lastSequenceByNode.clear();
+			}
+			lastSequenceByNode.put(node, sequence);
+			if (last != null && sequence != last + 1) {
+				GAPS.incrementAndGet();
+				resync("missed " + (sequence - last - 1) + " notifications of node " + node);
+				return;
+			}
+			ChangeEventBus.deliver(event);
+		}
+
+		private void sleepQuietly(long millis) {
+			long until = System.currentTimeMillis() + millis;
+			while (running && System.currentTimeMillis() < until) {
+				try {
+					Thread.sleep(Math.min(200, Math.max(1, until - System.currentTimeMillis())));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+}
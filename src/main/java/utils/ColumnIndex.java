@@ -0,0 +1,66 @@
+package utils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column label to index table of a result set, built once from its metadata.
+ * Labels are matched case-insensitively, as {@link ResultSet#findColumn} does.
+ */
+public final class ColumnIndex {
+
+	private final Map<String, Integer> indexByLabel;
+
+	private ColumnIndex(Map<String, Integer> indexByLabel) {
+		this.indexByLabel = indexByLabel;
+	}
+
+	/**
+	 * Reads the column labels of the result set.
+	 *
+	 * @param rs the result set
+	 * @return the column index
+	 * @throws SQLException if the metadata cannot be read
+	 */
+	public static ColumnIndex of(ResultSet rs) throws SQLException {
+		ResultSetMetaData metaData = rs.getMetaData();
+		int count = metaData.getColumnCount();
+		Map<String, Integer> indexByLabel = new HashMap<>(count * 2);
+		for (int i = count; i >= 1; i--) {
+			// iterate backwards so the first of duplicate labels wins, as with findColumn
+			indexByLabel.put(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+		}
+		return new ColumnIndex(indexByLabel);
+	}
+
+	/**
+	 * Returns the index of a required column.
+	 *
+	 * @param label the column label
+	 * @return the 1-based column index
+	 * @throws SQLException if the result set has no such column
+	 */
+	public int indexOf(String label) throws SQLException {
+		Integer index = indexByLabel.get(label.toLowerCase(Locale.ROOT));
+		if (index == null) {
+			throw new SQLException("Column not found in result set: " + label);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of an optional column.
+	 *
+	 * @param label the column label
+	 * @return the 1-based column index, or 0 when the result set has no such
+	 *         column
+	 */
+	public int optionalIndexOf(String label) {
+		Integer index = indexByLabel.get(label.toLowerCase(Locale.ROOT));
+		return index == null ? 0 : index;
+	}
+}
@@ -0,0 +1,456 @@
+package utils;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link ConnectionPool} whose checkout path does not take any lock.
+ *
+ * <p>
+ * Every physical connection is wrapped in a {@link PoolEntry} carrying an
+ * atomic state ({@code NOT_IN_USE}, {@code IN_USE}, {@code REMOVED}). A
+ * connection is claimed by a compare-and-set of that state, which makes the
+ * borrow path wait-free when a connection is available:
+ * </p>
+ * <ol>
+ * <li>the borrowing thread first scans the connections it returned itself
+ * (kept in a thread-local list), which usually succeeds for request threads
+ * that run several DAO calls in a row;</li>
+ * <li>it then scans the shared list of all connections;</li>
+ * <li>if none is free and the pool is below {@code maxSize} it opens a new
+ * connection;</li>
+ * <li>otherwise it waits on a {@link SynchronousQueue}. A thread returning a
+ * connection while others are waiting hands it over directly through that
+ * queue instead of publishing it to the shared list.</li>
+ * </ol>
+ *
+ * <p>
+ * Borrowed connections are dynamic proxies. Closing the proxy closes any
+ * statements the caller left open, rolls back an unfinished transaction,
+ * restores the auto-commit and read-only flags and returns the physical
+ * connection to the pool. A background housekeeping task retires idle
+ * connections above {@code minIdle}, connections older than
+ * {@code maxLifetimeMs}, and refills the pool to {@code minIdle}.
+ * </p>
+ */
+public class ConcurrentBagConnectionPool implements ConnectionPool {
+
+	private static final Logger LOGGER = Logger.getLogger(ConcurrentBagConnectionPool.class.getName());
+
+	private static final int STATE_NOT_IN_USE = 0;
+	private static final int STATE_IN_USE = 1;
+	private static final int STATE_REMOVED = -1;
+
+	private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+	private static final long VALIDATION_IDLE_THRESHOLD_MS = 500;
+	private static final long WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final PoolConfig config;
+	private final Driver driver = new org.postgresql.Driver();
+	private final Properties driverProperties = new Properties();
+
+	private final CopyOnWriteArrayList<PoolEntry> sharedList = new CopyOnWriteArrayList<>();
+	private final ThreadLocal<List<WeakReference<PoolEntry>>> threadList = ThreadLocal.withInitial(ArrayList::new);
+	private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<>(true);
+	private final AtomicInteger waiters = new AtomicInteger();
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed;
+
+	/**
+	 * Creates the pool, opens {@code minIdle} connections and starts the
+	 * housekeeping task.
+	 *
+	 * @param config the pool configuration
+	 */
+	public ConcurrentBagConnectionPool(PoolConfig config) {
+		this.config = config;
+		driverProperties.putAll(config.getDriverProperties());
+		if (config.getUsername() != null) {
+			driverProperties.setProperty("user", config.getUsername());
+		}
+		if (config.getPassword() != null) {
+			driverProperties.setProperty("password", config.getPassword());
+		}
+		driverProperties.setProperty("preparedStatementCacheQueries", String.valueOf(config.getStatementCacheSize()));
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "pool-" + config.getPoolName() + "-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		fillToMinIdle();
+		housekeeper.scheduleWithFixedDelay(this::housekeep, config.getHousekeepingIntervalMs(),
+				config.getHousekeepingIntervalMs(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool " + getName() + " is closed");
+		}
+		PoolEntry entry = borrow(TimeUnit.MILLISECONDS.toNanos(config.getConnectionTimeoutMs()));
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new PooledConnectionHandler(entry));
+	}
+
+	@Override
+	public String getName() {
+		return config.getPoolName();
+	}
+
+	@Override
+	public int getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		int idle = 0;
+		for (PoolEntry entry : sharedList) {
+			if (entry.state.get() == STATE_NOT_IN_USE) {
+				idle++;
+			}
+		}
+		return idle;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+		for (PoolEntry entry : sharedList) {
+			if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_REMOVED)) {
+				remove(entry);
+			}
+		}
+	}
+
+	private PoolEntry borrow(long timeoutNanos) throws SQLException {
+		// Fast path: connections previously returned by this thread
+		List<WeakReference<PoolEntry>> local = threadList.get();
+		for (int i = local.size() - 1; i >= 0; i--) {
+			PoolEntry entry = local.remove(i).get();
+			if (entry != null && entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE) && ensureUsable(entry)) {
+				return entry;
+			}
+		}
+
+		waiters.incrementAndGet();
+		try {
+			long deadline = System.nanoTime() + timeoutNanos;
+			for (;;) {
+				for (PoolEntry entry : sharedList) {
+					if (entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE) && ensureUsable(entry)) {
+						return entry;
+					}
+				}
+
+				PoolEntry created = tryCreateEntry(STATE_IN_USE);
+				if (created != null) {
+					return created;
+				}
+
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw new SQLTimeoutException("Connection pool " + getName() + " timed out after "
+							+ config.getConnectionTimeoutMs() + " ms (" + (totalConnections.get() - getIdleConnections())
+							+ " of " + totalConnections.get() + " connections in use)");
+				}
+				PoolEntry handedOff = handoffQueue.poll(Math.min(remaining, WAIT_SLICE_NANOS), TimeUnit.NANOSECONDS);
+				if (handedOff != null && handedOff.state.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)
+						&& ensureUsable(handedOff)) {
+					return handedOff;
+				}
+				if (closed) {
+					throw new SQLException("Connection pool " + getName() + " is closed");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Checks a freshly claimed entry. Connections past their lifetime and
+	 * connections that sat idle and fail a liveness check are removed.
+	 */
+	private boolean ensureUsable(PoolEntry entry) {
+		long now = System.currentTimeMillis();
+		if (now - entry.createdAt > config.getMaxLifetimeMs()) {
+			remove(entry);
+			return false;
+		}
+		if (now - entry.lastAccessed > VALIDATION_IDLE_THRESHOLD_MS) {
+			try {
+				if (!entry.connection.isValid(config.getValidationTimeoutSeconds())) {
+					remove(entry);
+					return false;
+				}
+			} catch (SQLException e) {
+				LOGGER.log(Level.WARNING, "Error validating pooled connection", e);
+				remove(entry);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Opens a new physical connection if the pool is below its maximum size.
+	 *
+	 * @return the new entry in the requested state, or null when the pool is
+	 *         full
+	 */
+	private PoolEntry tryCreateEntry(int initialState) throws SQLException {
+		for (;;) {
+			int total = totalConnections.get();
+			if (total >= config.getMaxSize()) {
+				return null;
+			}
+			if (totalConnections.compareAndSet(total, total + 1)) {
+				break;
+			}
+		}
+		try {
+			Connection connection = driver.connect(config.getJdbcUrl(), driverProperties);
+			if (connection == null) {
+				throw new SQLException("Unsupported JDBC URL: " + config.getJdbcUrl());
+			}
+			PoolEntry entry = new PoolEntry(connection, initialState);
+			sharedList.add(entry);
+			return entry;
+		} catch (SQLException | RuntimeException e) {
+			totalConnections.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives a connection back to the pool, handing it straight to a waiting
+	 * thread when there is one.
+	 */
+	private void requite(PoolEntry entry) {
+		if (closed || entry.evict || System.currentTimeMillis() - entry.createdAt > config.getMaxLifetimeMs()) {
+			remove(entry);
+			return;
+		}
+		entry.lastAccessed = System.currentTimeMillis();
+		entry.state.set(STATE_NOT_IN_USE);
+
+		for (int i = 0; waiters.get() > 0; i++) {
+			if (entry.state.get() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+				return;
+			} else if ((i & 0xff) == 0xff) {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+			} else {
+				Thread.yield();
+			}
+		}
+
+		List<WeakReference<PoolEntry>> local = threadList.get();
+		if (local.size() < MAX_THREAD_LOCAL_ENTRIES) {
+			local.add(new WeakReference<>(entry));
+		}
+	}
+
+	private void remove(PoolEntry entry) {
+		entry.state.set(STATE_REMOVED);
+		if (sharedList.remove(entry)) {
+			totalConnections.decrementAndGet();
+		}
+		try {
+			entry.connection.close();
+		} catch (SQLException e) {
+			LOGGER.log(Level.FINE, "Error closing retired connection", e);
+		}
+	}
+
+	private void housekeep() {
+		try {
+			long now = System.currentTimeMillis();
+			Iterator<PoolEntry> iterator = sharedList.iterator();
+			while (iterator.hasNext()) {
+				PoolEntry entry = iterator.next();
+				boolean expired = now - entry.createdAt > config.getMaxLifetimeMs();
+				boolean idleTooLong = now - entry.lastAccessed > config.getIdleTimeoutMs()
+						&& totalConnections.get() > config.getMinIdle();
+				if ((expired || idleTooLong) && entry.state.compareAndSet(STATE_NOT_IN_USE, STATE_REMOVED)) {
+					remove(entry);
+				}
+			}
+			fillToMinIdle();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Connection pool housekeeping failed", e);
+		}
+	}
+
+	private void fillToMinIdle() {
+		while (!closed && totalConnections.get() < config.getMinIdle()) {
+			try {
+				PoolEntry entry = tryCreateEntry(STATE_NOT_IN_USE);
+				if (entry == null) {
+					return;
+				}
+				if (waiters.get() > 0) {
+					handoffQueue.offer(entry);
+				}
+			} catch (SQLException e) {
+				LOGGER.log(Level.SEVERE, "Error opening connection for pool " + getName(), e);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A physical connection together with its pool bookkeeping.
+	 */
+	private static final class PoolEntry {
+
+		private final Connection connection;
+		private final long createdAt;
+		private final AtomicInteger state;
+		private volatile long lastAccessed;
+		private volatile boolean evict;
+
+		private PoolEntry(Connection connection, int initialState) {
+			this.connection = connection;
+			this.createdAt = System.currentTimeMillis();
+			this.lastAccessed = createdAt;
+			this.state = new AtomicInteger(initialState);
+		}
+	}
+
+	/**
+	 * Invocation handler of the connection proxies handed to callers.
+	 */
+	private final class PooledConnectionHandler implements InvocationHandler {
+
+		private final PoolEntry entry;
+		private final List<Statement> openStatements = new ArrayList<>();
+		private boolean closed;
+		private boolean readOnlyChanged;
+		private Integer originalIsolation;
+
+		private PooledConnectionHandler(PoolEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			switch (name) {
+			case "close":
+				close();
+				return null;
+			case "isClosed":
+				return closed;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "PooledConnection[" + entry.connection + "]";
+			default:
+				break;
+			}
+			if (closed) {
+				if ("isValid".equals(name)) {
+					return false;
+				}
+				throw new SQLException("Connection is closed");
+			}
+			if ("setReadOnly".equals(name)) {
+				readOnlyChanged = true;
+			} else if ("setTransactionIsolation".equals(name) && originalIsolation == null) {
+				originalIsolation = entry.connection.getTransactionIsolation();
+			}
+
+			Object result;
+			try {
+				result = method.invoke(entry.connection, args);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException) {
+					String sqlState = ((SQLException) cause).getSQLState();
+					if (sqlState != null && sqlState.startsWith("08")) {
+						entry.evict = true;
+					}
+				}
+				throw cause;
+			}
+			if (result instanceof Statement) {
+				trackStatement((Statement) result);
+			}
+			return result;
+		}
+
+		private void trackStatement(Statement statement) throws SQLException {
+			if (openStatements.size() >= 32) {
+				Iterator<Statement> iterator = openStatements.iterator();
+				while (iterator.hasNext()) {
+					if (iterator.next().isClosed()) {
+						iterator.remove();
+					}
+				}
+			}
+			openStatements.add(statement);
+		}
+
+		private void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (Statement statement : openStatements) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					LOGGER.log(Level.FINE, "Error closing abandoned statement", e);
+				}
+			}
+			openStatements.clear();
+			try {
+				Connection connection = entry.connection;
+				if (!connection.getAutoCommit()) {
+					connection.rollback();
+					connection.setAutoCommit(true);
+				}
+				if (readOnlyChanged) {
+					connection.setReadOnly(false);
+				}
+				if (originalIsolation != null) {
+					connection.setTransactionIsolation(originalIsolation);
+				}
+			} catch (SQLException e) {
+				LOGGER.log(Level.WARNING, "Error resetting pooled connection, evicting it", e);
+				entry.evict = true;
+			}
+			requite(entry);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A pool of database connections sitting behind {@link DatabaseUtility}.
+ *
+ * <p>
+ * Connections handed out by a pool must be returned by calling
+ * {@link Connection#close()}, which gives the physical connection back to the
+ * pool instead of closing it. Implementations are selected with the
+ * {@code pool.implementation} property, see {@link PoolConfig}.
+ * </p>
+ */
+public interface ConnectionPool extends AutoCloseable {
+
+	/**
+	 * Borrows a connection, waiting at most the configured connection timeout
+	 * for one to become available.
+	 *
+	 * @return a connection which must be closed by the caller
+	 * @throws SQLException if no connection could be obtained in time or the
+	 *                      database is unreachable
+	 */
+	Connection getConnection() throws SQLException;
+
+	/**
+	 * Returns the name of this pool, used in log messages.
+	 *
+	 * @return the pool name
+	 */
+	String getName();
+
+	/**
+	 * Returns the number of physical connections currently open.
+	 *
+	 * @return open connections, borrowed or idle
+	 */
+	int getTotalConnections();
+
+	/**
+	 * Returns the number of open connections not currently borrowed.
+	 *
+	 * @return idle connections
+	 */
+	int getIdleConnections();
+
+	/**
+	 * Closes all physical connections and stops background work. Connections
+	 * still borrowed are closed when they are returned.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * Creates the pool implementation selected by the given configuration.
+	 *
+	 * @param config the pool configuration
+	 * @return a started pool
+	 */
+	static ConnectionPool create(PoolConfig config) {
+		config.validate();
+		if (PoolConfig.IMPLEMENTATION_BAG.equalsIgnoreCase(config.getImplementation())) {
+			return new ConcurrentBagConnectionPool(config);
+		}
+		return new C3p0ConnectionPool(config);
+	}
+}
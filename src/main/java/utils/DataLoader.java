@@ -0,0 +1,182 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Collects the keys requested with {@link #load(Object)} and resolves them
+ * together with one batch call when {@link #dispatch()} runs.
+ *
+ * <p>
+ * Every key is loaded at most once per loader: later requests for the same key
+ * get the same future, and so the same instance (identity map). Loaders are
+ * meant to live for one request, see {@link DataLoaderRegistry}; they are not
+ * thread-safe.
+ * </p>
+ *
+ * <pre>{@code
+ * DataLoader<Integer, Action> actions = new DataLoader<>(actionDAO::fetchActionsByIds);
+ * for (UseCaseAction useCaseAction : useCaseActions) {
+ * 	actions.load(useCaseAction.getAction().getId()).thenAccept(useCaseAction::setAction);
+ * }
+ * actions.dispatch(); // one query for all actions
+ * }</pre>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class DataLoader<K, V> {
+
+	private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+	private final Function<Set<K>, Map<K, V>> batchLoader;
+	private final int maxBatchSize;
+	private final Map<K, CompletableFuture<V>> futures = new HashMap<>();
+	private final Set<K> pending = new LinkedHashSet<>();
+	private int batchCount;
+
+	/**
+	 * Creates a loader.
+	 *
+	 * @param batchLoader loads many keys at once; keys missing from the returned
+	 *                    map resolve to null
+	 */
+	public DataLoader(Function<Set<K>, Map<K, V>> batchLoader) {
+		this(batchLoader, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates a loader with a limit on the keys per batch call.
+	 *
+	 * @param batchLoader  loads many keys at once
+	 * @param maxBatchSize the maximum number of keys per batch call
+	 */
+	public DataLoader(Function<Set<K>, Map<K, V>> batchLoader, int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		this.batchLoader = batchLoader;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Requests a key. The returned future completes on the next
+	 * {@link #dispatch()}, or right away when the key was loaded before.
+	 *
+	 * @param key the key
+	 * @return the future value, completed with null when the key does not exist
+	 */
+	public CompletableFuture<V> load(K key) {
+		CompletableFuture<V> future = futures.get(key);
+		if (future == null) {
+			future = new CompletableFuture<>();
+			futures.put(key, future);
+			pending.add(key);
+		}
+		return future;
+	}
+
+	/**
+	 * Requests several keys.
+	 *
+	 * @param keys the keys
+	 * @return the future values in key order
+	 */
+	public CompletableFuture<List<V>> loadMany(Iterable<K> keys) {
+		List<CompletableFuture<V>> requested = new ArrayList<>();
+		for (K key : keys) {
+			requested.add(load(key));
+		}
+		return CompletableFuture.allOf(requested.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			List<V> values = new ArrayList<>(requested.size());
+			for (CompletableFuture<V> future : requested) {
+				values.add(future.join());
+			}
+			return values;
+		});
+	}
+
+	/**
+	 * Adds an already loaded value, so requests for its key need no query.
+	 *
+	 * @param key   the key
+	 * @param value the value
+	 */
+	public void prime(K key, V value) {
+		if (!futures.containsKey(key)) {
+			futures.put(key, CompletableFuture.completedFuture(value));
+		}
+	}
+
+	/**
+	 * Forgets a key, for example after the entity changed.
+	 *
+	 * @param key the key
+	 */
+	public void clear(K key) {
+		futures.remove(key);
+		pending.remove(key);
+	}
+
+	/**
+	 * Tells whether keys are waiting for {@link #dispatch()}.
+	 *
+	 * @return true when requested keys are not loaded yet
+	 */
+	public boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Loads all requested keys with as few batch calls as
+	 * {@code maxBatchSize} allows and completes their futures. If the batch
+	 * call fails, the futures of its keys fail with that exception.
+	 *
+	 * @return the number of keys loaded
+	 */
+	public int dispatch() {
+		if (pending.isEmpty()) {
+			return 0;
+		}
+		List<K> keys = new ArrayList<>(pending);
+		pending.clear();
+		for (int from = 0; from < keys.size(); from += maxBatchSize) {
+			Set<K> batch = new LinkedHashSet<>(keys.subList(from, Math.min(keys.size(), from + maxBatchSize)));
+			batchCount++;
+			Map<K, V> values;
+			try {
+				values = batchLoader.apply(batch);
+			} catch (RuntimeException e) {
+				for (K key : batch) {
+					CompletableFuture<V> future = futures.remove(key);
+					if (future != null) {
+						future.completeExceptionally(e);
+					}
+				}
+				continue;
+			}
+			for (K key : batch) {
+				CompletableFuture<V> future = futures.get(key);
+				if (future != null) {
+					future.complete(values.get(key));
+				}
+			}
+		}
+		return keys.size();
+	}
+
+	/**
+	 * Returns the number of batch calls made so far.
+	 *
+	 * @return the batch call count
+	 */
+	public int getBatchCount() {
+		return batchCount;
+	}
+}
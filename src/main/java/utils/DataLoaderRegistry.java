@@ -0,0 +1,95 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Holds the {@link DataLoader}s of one request, so that all code rendering
+ * the request shares their identity maps and batches.
+ *
+ * <p>
+ * A registry is bound to the request thread by {@link #begin()} and
+ * {@link #end()}, usually from a servlet filter. Code that requested
+ * references calls {@link #dispatchAll()} before it reads them; this
+ * dispatches every loader, repeating while completing one batch requested
+ * further keys, so a graph is resolved with one query per entity type and
+ * level. Outside a bound scope {@link #current()} fails: a registry nobody
+ * dispatches would leave every requested future incomplete. Background
+ * threads and listeners bind their own scope with {@link #begin()} and
+ * {@link #end()}.
+ * </p>
+ */
+public class DataLoaderRegistry {
+
+	private static final ThreadLocal<DataLoaderRegistry> CURRENT = new ThreadLocal<>();
+
+	private final Map<String, DataLoader<?, ?>> loaders = new LinkedHashMap<>();
+
+	/**
+	 * Binds a new registry to the current thread.
+	 *
+	 * @return the registry
+	 */
+	public static DataLoaderRegistry begin() {
+		DataLoaderRegistry registry = new DataLoaderRegistry();
+		CURRENT.set(registry);
+		return registry;
+	}
+
+	/**
+	 * Removes the registry bound by {@link #begin()}.
+	 */
+	public static void end() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Returns the registry of the current request.
+	 *
+	 * @return the bound registry
+	 * @throws IllegalStateException if no registry is bound to the current
+	 *                               thread
+	 */
+	public static DataLoaderRegistry current() {
+		DataLoaderRegistry registry = CURRENT.get();
+		if (registry == null) {
+			throw new IllegalStateException("No DataLoaderRegistry bound to this thread; call DataLoaderRegistry.begin() first");
+		}
+		return registry;
+	}
+
+	/**
+	 * Returns the loader registered under the name, creating it on first use.
+	 *
+	 * @param name    the loader name, usually the entity name
+	 * @param factory creates the loader
+	 * @param <K>     the key type
+	 * @param <V>     the value type
+	 * @return the loader
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> DataLoader<K, V> getLoader(String name, Supplier<DataLoader<K, V>> factory) {
+		return (DataLoader<K, V>) loaders.computeIfAbsent(name, ignored -> factory.get());
+	}
+
+	/**
+	 * Dispatches all loaders until none has pending keys.
+	 *
+	 * @return the number of keys loaded
+	 */
+	public int dispatchAll() {
+		int loaded = 0;
+		boolean pending = true;
+		while (pending) {
+			pending = false;
+			for (DataLoader<?, ?> loader : loaders.values().toArray(new DataLoader<?, ?>[0])) {
+				loaded += loader.dispatch();
+			}
+			for (DataLoader<?, ?> loader : loaders.values()) {
+				pending |= loader.hasPending();
+			}
+		}
+		return loaded;
+	}
+}
@@ -1,22 +1,21 @@
 package utils;
 
-import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.mchange.v2.c3p0.ComboPooledDataSource;
-
 /**
  * The {@code DatabaseUtility} class is designed to manage database connections
- * efficiently through a connection pooling mechanism provided by the C3P0
- * library. This class is responsible for initializing and configuring the
- * connection pool, obtaining connections, and properly releasing database
- * resources.
+ * efficiently through a pluggable {@link ConnectionPool}. This class is
+ * responsible for initializing the configured connection pool, obtaining
+ * connections, and properly releasing database resources.
  * 
  * <p>
  * Connection pooling is a critical feature for applications that require high
@@ -28,21 +27,27 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
  *
  * <p>
  * The configuration parameters for the database connection and the pool are
- * read from the {@code application.properties} file. This allows for easy
- * adjustments to settings such as database URL, username, password, and various
- * pooling parameters like minimum and maximum pool sizes.
+ * read from the {@code application.properties} file (see {@link PoolConfig}).
+ * This allows for easy adjustments to settings such as database URL, username,
+ * password, the pool implementation and pooling parameters like minimum and
+ * maximum pool sizes and timeouts. The default implementation is the C3P0
+ * pool; {@code pool.implementation=bag} selects the lock-free
+ * {@link ConcurrentBagConnectionPool}.
  * </p>
  *
  * <p>
  * The class provides utility methods to:
  * </p>
  * <ul>
- * <li>Establish a connection to the database ({@code connect})</li>
+ * <li>Establish a connection to the primary database ({@code connect})</li>
+ * <li>Establish a connection for a read-only operation, served by a read
+ * replica when one is configured ({@code connectForRead})</li>
  * <li>Disconnect a single connection ({@code disconnect(Connection)})</li>
  * <li>Disconnect all associated resources like connections, prepared
  * statements, and result sets
  * ({@code disconnect(Connection, PreparedStatement, ResultSet)}) to ensure
  * resources are freed and do not leak.</li>
+ * <li>Close the pool when the application stops ({@code shutdown})</li>
  * </ul>
  *
  * <p>
@@ -60,69 +65,171 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
  *
  * <p>
  * This class uses the Singleton design pattern to manage the single instance of
- * the {@code ComboPooledDataSource} ensuring that only one pool exists
- * throughout the application's lifecycle.
+ * the {@code ConnectionPool} ensuring that only one pool exists throughout the
+ * application's lifecycle.
  * </p>
  */
 public class DatabaseUtility {
 
 	private static final Logger LOGGER = Logger.getLogger(DatabaseUtility.class.getName());
-	private static ComboPooledDataSource dataSource;
+	private static ConnectionPool pool;
+	private static PoolMetrics metrics;
+	private static final List<ConnectionPool> replicaPools = new ArrayList<>();
+	private static final List<PoolMetrics> replicaMetrics = new ArrayList<>();
+	private static final AtomicInteger replicaCursor = new AtomicInteger();
 
 	static {
 		try {
-			if (dataSource == null) {
-				// Initialize the ComboPooledDataSource
-				dataSource = new ComboPooledDataSource();
-				Properties prop = new Properties();
-				InputStream input = DatabaseUtility.class.getClassLoader()
-						.getResourceAsStream("application.properties");
-
-				if (input == null) {
-					LOGGER.log(Level.SEVERE, "Unable to find application.properties");
-				}
-
-				prop.load(input);
-				String jdbcURL = prop.getProperty("database.url");
-				String jdbcUsername = prop.getProperty("database.username");
-				String jdbcPassword = prop.getProperty("database.password");
-
-				dataSource.setDriverClass("org.postgresql.Driver"); // JDBC Driver
-				dataSource.setJdbcUrl(jdbcURL);
-				dataSource.setUser(jdbcUsername);
-				dataSource.setPassword(jdbcPassword);
-
-				// Configure C3P0 connection pool properties
-				dataSource.setMinPoolSize(5);
-				dataSource.setInitialPoolSize(5); // Set it to 5 or a higher value
-
-				dataSource.setAcquireIncrement(5);
-				dataSource.setMaxPoolSize(20);
-				dataSource.setMaxStatements(100);
+			if (pool == null) {
+				PoolConfig config = PoolConfig.fromApplicationConfig();
+				pool = ConnectionPool.create(config);
+				metrics = new PoolMetrics(pool);
+				metrics.registerMBean();
+				LOGGER.log(Level.INFO, "Initialized connection pool " + config);
 			}
-
 		} catch (Exception e) {
-			LOGGER.log(Level.SEVERE, "Error initializing C3P0 DataSource", e);
+			LOGGER.log(Level.SEVERE, "Error initializing connection pool", e);
+		}
+
+		for (PoolConfig replicaConfig : PoolConfig.replicasFromApplicationConfig()) {
+			try {
+				ConnectionPool replicaPool = ConnectionPool.create(replicaConfig);
+				PoolMetrics poolMetrics = new PoolMetrics(replicaPool);
+				poolMetrics.registerMBean();
+				replicaPools.add(replicaPool);
+				replicaMetrics.add(poolMetrics);
+				LOGGER.log(Level.INFO, "Initialized read replica pool " + replicaConfig);
+			} catch (Exception e) {
+				LOGGER.log(Level.SEVERE, "Error initializing read replica pool " + replicaConfig.getPoolName(), e);
+			}
 		}
 	}
 
 	/**
-	 * Establishes and returns a connection to the database using the configured
-	 * data source.
+	 * Establishes and returns a connection to the primary database using the
+	 * configured connection pool. Use this method for every operation that
+	 * writes; the write is recorded in {@link ReadConsistency} so that later
+	 * reads of the same request or session are not served by a lagging replica.
+	 * Inside a {@link UnitOfWork} the connection bound to the unit of work is
+	 * returned instead.
+	 * 
+	 * <p>
+	 * The wait for the connection and the time it is held until closed are
+	 * recorded in the pool's {@link PoolMetrics}, under the calling DAO method
+	 * when per-caller statistics are enabled.
+	 * </p>
 	 * 
 	 * @return a Connection object or null if a connection cannot be established
-	 * @throws SQLException if a database access error occurs
 	 */
 	public static Connection connect() {
+		Connection bound = UnitOfWork.currentConnection();
+		if (bound != null) {
+			return bound;
+		}
+		ReadConsistency.recordWrite();
+		return acquire(pool, metrics);
+	}
+
+	/**
+	 * Returns a connection for a read-only operation. Reads are spread
+	 * round-robin over the read replicas configured in
+	 * {@code database.replica.urls}; they go to the primary when no replica is
+	 * configured, when the current request or session wrote recently (see
+	 * {@link ReadConsistency}), or when the chosen replica cannot provide a
+	 * connection. Inside a {@link UnitOfWork} the connection bound to the unit of
+	 * work is returned, so reads see the unit of work's own changes.
+	 * 
+	 * @return a Connection object or null if a connection cannot be established
+	 */
+	public static Connection connectForRead() {
+		Connection bound = UnitOfWork.currentConnection();
+		if (bound != null) {
+			return bound;
+		}
+		int replicas = replicaPools.size();
+		if (replicas > 0 && !ReadConsistency.requiresPrimary()) {
+			int index = Math.floorMod(replicaCursor.getAndIncrement(), replicas);
+			Connection connection = acquire(replicaPools.get(index), replicaMetrics.get(index));
+			if (connection != null) {
+				return connection;
+			}
+			LOGGER.log(Level.WARNING, "Falling back to the primary for read by " + PoolMetrics.resolveCaller());
+		}
+		return acquire(pool, metrics);
+	}
+
+	/**
+	 * Returns a connection to the primary for a read that must not be served
+	 * by a lagging replica, such as reloading a cache after a write. Unlike
+	 * {@link #connect()} the read is not recorded as a write. Inside a
+	 * {@link UnitOfWork} the connection bound to the unit of work is returned.
+	 *
+	 * @return a Connection object or null if a connection cannot be established
+	 */
+	public static Connection connectToPrimaryForRead() {
+		Connection bound = UnitOfWork.currentConnection();
+		if (bound != null) {
+			return bound;
+		}
+		return acquire(pool, metrics);
+	}
+
+	/**
+	 * Borrows a connection and reports it to the metrics. The caller is only
+	 * resolved, with a stack walk, when the metrics keep it.
+	 */
+	private static Connection acquire(ConnectionPool source, PoolMetrics sourceMetrics) {
+		String caller = sourceMetrics.isCallerTracked() ? PoolMetrics.resolveCaller() : null;
+		long start = System.nanoTime();
+		sourceMetrics.acquireStarted();
 		try {
-			return dataSource.getConnection();
+			Connection connection = source.getConnection();
+			return sourceMetrics.acquired(connection, caller, System.nanoTime() - start);
 		} catch (SQLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			sourceMetrics.acquireFailed();
+			LOGGER.log(Level.SEVERE, "Unable to obtain a database connection from pool " + source.getName()
+					+ " for " + (caller != null ? caller : PoolMetrics.resolveCaller()), e);
 		}
 		return null;
 	}
 
+	/**
+	 * Returns the telemetry of the primary connection pool.
+	 *
+	 * @return the pool metrics
+	 */
+	public static PoolMetrics getPoolMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the telemetry of the read replica pools.
+	 *
+	 * @return one entry per configured replica
+	 */
+	public static List<PoolMetrics> getReplicaPoolMetrics() {
+		return Collections.unmodifiableList(replicaMetrics);
+	}
+
+	/**
+	 * Closes the connection pools and all of their idle connections. Called when
+	 * the web application is stopped.
+	 */
+	public static void shutdown() {
+		for (PoolMetrics replica : replicaMetrics) {
+			replica.close();
+		}
+		for (ConnectionPool replica : replicaPools) {
+			replica.close();
+		}
+		if (metrics != null) {
+			metrics.close();
+		}
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
 	/**
 	 * Closes the database connection if it is not null.
 	 * 
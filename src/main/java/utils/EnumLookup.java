@@ -0,0 +1,75 @@
+package utils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Precomputed table from the database representation of an enum to its
+ * constant, built once per enum type.
+ *
+ * <p>
+ * Unlike {@code Enum.valueOf} a miss does not build an exception message per
+ * call, and the table can be made case-insensitive for columns whose values
+ * do not match the constant names exactly.
+ * </p>
+ *
+ * @param <E> the enum type
+ */
+public final class EnumLookup<E extends Enum<E>> {
+
+	private final Class<E> type;
+	private final Map<String, E> constants;
+	private final boolean ignoreCase;
+
+	private EnumLookup(Class<E> type, boolean ignoreCase) {
+		this.type = type;
+		this.ignoreCase = ignoreCase;
+		E[] values = type.getEnumConstants();
+		this.constants = new HashMap<>(values.length * 2);
+		for (E value : values) {
+			constants.put(ignoreCase ? value.name().toLowerCase(Locale.ROOT) : value.name(), value);
+		}
+	}
+
+	/**
+	 * Creates a table matching the constant names exactly.
+	 *
+	 * @param type the enum type
+	 * @param <E>  the enum type
+	 * @return the lookup table
+	 */
+	public static <E extends Enum<E>> EnumLookup<E> of(Class<E> type) {
+		return new EnumLookup<>(type, false);
+	}
+
+	/**
+	 * Creates a table matching the constant names regardless of case.
+	 *
+	 * @param type the enum type
+	 * @param <E>  the enum type
+	 * @return the lookup table
+	 */
+	public static <E extends Enum<E>> EnumLookup<E> ignoringCase(Class<E> type) {
+		return new EnumLookup<>(type, true);
+	}
+
+	/**
+	 * Returns the constant for a column value.
+	 *
+	 * @param value the column value, may be null
+	 * @return the constant, or null when the value is null
+	 * @throws IllegalArgumentException if no constant matches, as
+	 *                                  {@code Enum.valueOf} does
+	 */
+	public E lookup(String value) {
+		if (value == null) {
+			return null;
+		}
+		E constant = constants.get(ignoreCase ? value.toLowerCase(Locale.ROOT) : value);
+		if (constant == null) {
+			throw new IllegalArgumentException("No enum constant " + type.getName() + "." + value);
+		}
+		return constant;
+	}
+}
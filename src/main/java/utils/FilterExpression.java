@@ -0,0 +1,349 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Syntax tree of a filter expression, as read by {@link FilterParser}.
+ *
+ * <p>
+ * A filter is a boolean combination ({@link And}, {@link Or}, {@link Not}) of
+ * {@link Comparison}s of one attribute with literal values, for example
+ * {@code status = 'open' AND (weight >= 2.5 OR name LIKE 'pump%')}. The tree
+ * is immutable and untyped: literals keep their source text, and whether an
+ * attribute exists and a literal fits its type is decided by the compiler
+ * that resolves the attributes. {@link #toString()} prints the expression in
+ * the filter language, fully parenthesized, so it parses back to an equal
+ * tree.
+ * </p>
+ */
+public abstract class FilterExpression {
+
+	/**
+	 * Comparison operators, with the number of literal values they take (-1
+	 * for a list of at least one).
+	 */
+	public enum Operator {
+		EQ("=", 1), NE("<>", 1), LT("<", 1), LE("<=", 1), GT(">", 1), GE(">=", 1), IN("IN", -1), NOT_IN("NOT IN", -1),
+		BETWEEN("BETWEEN", 2), LIKE("LIKE", 1), NOT_LIKE("NOT LIKE", 1), IS_NULL("IS NULL", 0), IS_NOT_NULL("IS NOT NULL", 0);
+
+		private final String symbol;
+		private final int arity;
+
+		Operator(String symbol, int arity) {
+			this.symbol = symbol;
+			this.arity = arity;
+		}
+
+		/**
+		 * @return the operator as written in the filter language and in SQL
+		 */
+		public String getSymbol() {
+			return symbol;
+		}
+
+		/**
+		 * @return the number of values, -1 for a list
+		 */
+		public int getArity() {
+			return arity;
+		}
+
+		/**
+		 * @return whether the operator orders values
+		 */
+		public boolean isOrdering() {
+			return this == LT || this == LE || this == GT || this == GE || this == BETWEEN;
+		}
+	}
+
+	/**
+	 * Receives the nodes of a tree by kind.
+	 *
+	 * @param <R> the result type
+	 */
+	public interface Visitor<R> {
+
+		R visitAnd(And and);
+
+		R visitOr(Or or);
+
+		R visitNot(Not not);
+
+		R visitComparison(Comparison comparison);
+	}
+
+	FilterExpression() {
+	}
+
+	/**
+	 * Passes this node to the method of the visitor for its kind.
+	 *
+	 * @param visitor the visitor
+	 * @param <R>     the result type
+	 * @return the result of the visitor
+	 */
+	public abstract <R> R accept(Visitor<R> visitor);
+
+	/**
+	 * A number or string literal.
+	 */
+	public static final class Literal {
+
+		/**
+		 * The kind of a literal.
+		 */
+		public enum Kind {
+			NUMBER, STRING
+		}
+
+		private final Kind kind;
+		private final String text;
+
+		/**
+		 * @param kind the kind
+		 * @param text the number as written, or the string without quotes
+		 */
+		public Literal(Kind kind, String text) {
+			this.kind = kind;
+			this.text = text;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return the number as written, or the string without quotes
+		 */
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Literal)) {
+				return false;
+			}
+			Literal other = (Literal) o;
+			return kind == other.kind && text.equals(other.text);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * kind.hashCode() + text.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return kind == Kind.STRING ? "'" + text.replace("'", "''") + "'" : text;
+		}
+	}
+
+	/**
+	 * Base of {@link And} and {@link Or}.
+	 */
+	public abstract static class Junction extends FilterExpression {
+
+		private final List<FilterExpression> operands;
+
+		Junction(List<FilterExpression> operands) {
+			if (operands.size() < 2) {
+				throw new IllegalArgumentException("A junction needs at least two operands");
+			}
+			this.operands = Collections.unmodifiableList(new ArrayList<>(operands));
+		}
+
+		/**
+		 * @return the operands, at least two
+		 */
+		public List<FilterExpression> getOperands() {
+			return operands;
+		}
+
+		abstract String keyword();
+
+		@Override
+		public boolean equals(Object o) {
+			return o != null && o.getClass() == getClass() && operands.equals(((Junction) o).operands);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * getClass().hashCode() + operands.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder("(");
+			for (int i = 0; i < operands.size(); i++) {
+				if (i > 0) {
+					text.append(' ').append(keyword()).append(' ');
+				}
+				text.append(operands.get(i));
+			}
+			return text.append(')').toString();
+		}
+	}
+
+	/**
+	 * True when all operands are true.
+	 */
+	public static final class And extends Junction {
+
+		public And(List<FilterExpression> operands) {
+			super(operands);
+		}
+
+		@Override
+		public <R> R accept(Visitor<R> visitor) {
+			return visitor.visitAnd(this);
+		}
+
+		@Override
+		String keyword() {
+			return "AND";
+		}
+	}
+
+	/**
+	 * True when any operand is true.
+	 */
+	public static final class Or extends Junction {
+
+		public Or(List<FilterExpression> operands) {
+			super(operands);
+		}
+
+		@Override
+		public <R> R accept(Visitor<R> visitor) {
+			return visitor.visitOr(this);
+		}
+
+		@Override
+		String keyword() {
+			return "OR";
+		}
+	}
+
+	/**
+	 * True when the operand is false.
+	 */
+	public static final class Not extends FilterExpression {
+
+		private final FilterExpression operand;
+
+		public Not(FilterExpression operand) {
+			this.operand = operand;
+		}
+
+		public FilterExpression getOperand() {
+			return operand;
+		}
+
+		@Override
+		public <R> R accept(Visitor<R> visitor) {
+			return visitor.visitNot(this);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Not && operand.equals(((Not) o).operand);
+		}
+
+		@Override
+		public int hashCode() {
+			return 17 + operand.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + operand;
+		}
+	}
+
+	/**
+	 * Compares one attribute with literal values.
+	 */
+	public static final class Comparison extends FilterExpression {
+
+		private final String attribute;
+		private final Operator operator;
+		private final List<Literal> values;
+
+		/**
+		 * @param attribute the attribute name
+		 * @param operator  the operator
+		 * @param values    as many values as the operator takes
+		 */
+		public Comparison(String attribute, Operator operator, List<Literal> values) {
+			int arity = operator.getArity();
+			if (arity >= 0 ? values.size() != arity : values.isEmpty()) {
+				throw new IllegalArgumentException(operator.getSymbol() + " takes " + (arity >= 0 ? arity : "at least one")
+						+ " value(s), not " + values.size());
+			}
+			this.attribute = attribute;
+			this.operator = operator;
+			this.values = Collections.unmodifiableList(new ArrayList<>(values));
+		}
+
+		public String getAttribute() {
+			return attribute;
+		}
+
+		public Operator getOperator() {
+			return operator;
+		}
+
+		public List<Literal> getValues() {
+			return values;
+		}
+
+		@Override
+		public <R> R accept(Visitor<R> visitor) {
+			return visitor.visitComparison(this);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Comparison)) {
+				return false;
+			}
+			Comparison other = (Comparison) o;
+			return attribute.equals(other.attribute) && operator == other.operator && values.equals(other.values);
+		}
+
+		@Override
+		public int hashCode() {
+			return (attribute.hashCode() * 31 + operator.hashCode()) * 31 + values.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder(FilterParser.quoteIdentifier(attribute)).append(' ').append(operator.getSymbol());
+			switch (operator) {
+			case IS_NULL:
+			case IS_NOT_NULL:
+				break;
+			case BETWEEN:
+				text.append(' ').append(values.get(0)).append(" AND ").append(values.get(1));
+				break;
+			case IN:
+			case NOT_IN:
+				text.append(" (");
+				for (int i = 0; i < values.size(); i++) {
+					if (i > 0) {
+						text.append(", ");
+					}
+					text.append(values.get(i));
+				}
+				text.append(')');
+				break;
+			default:
+				text.append(' ').append(values.get(0));
+			}
+			return text.toString();
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Literal;
+import utils.FilterExpression.Operator;
+
+/**
+ * Reads filter expressions into a {@link FilterExpression} tree.
+ *
+ * <p>
+ * The grammar, with keywords in any case:
+ * </p>
+ *
+ * <pre>
+ * expression  := term ( OR term )*
+ * term        := factor ( AND factor )*
+ * factor      := NOT factor | '(' expression ')' | comparison
+ * comparison  := attribute ( ( '=' | '!=' | '&lt;&gt;' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=' ) literal
+ *                          | [ NOT ] IN '(' literal ( ',' literal )* ')'
+ *                          | BETWEEN literal AND literal
+ *                          | [ NOT ] LIKE string
+ *                          | IS [ NOT ] NULL )
+ * attribute   := name | '"' name with "" for " '"'
+ * literal     := number | string
+ * string      := '\'' text with '' for ' '\''
+ * </pre>
+ *
+ * <p>
+ * Names start with a letter or underscore and continue with letters, digits
+ * and underscores; other attribute names, and names equal to a keyword, are
+ * written in double quotes. Errors are reported as
+ * {@link IllegalArgumentException}s naming the position (counted from 1).
+ * Expressions are limited to {@value #MAX_LENGTH} characters and a nesting
+ * depth of {@value #MAX_DEPTH}.
+ * </p>
+ */
+public final class FilterParser {
+
+	/** The longest expression accepted. */
+	public static final int MAX_LENGTH = 10000;
+
+	/** The deepest nesting of parentheses and NOT accepted. */
+	public static final int MAX_DEPTH = 64;
+
+	private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+	private static final List<String> KEYWORDS = Arrays.asList("AND", "OR", "NOT", "IN", "BETWEEN", "LIKE", "IS", "NULL");
+
+	private enum TokenType {
+		NAME, QUOTED_NAME, NUMBER, STRING, OPERATOR, LEFT, RIGHT, COMMA, END
+	}
+
+	private static final class Token {
+
+		final TokenType type;
+		final String text;
+		final int position;
+
+		Token(TokenType type, String text, int position) {
+			this.type = type;
+			this.text = text;
+			this.position = position;
+		}
+
+		boolean isKeyword(String keyword) {
+			return type == TokenType.NAME && text.equalsIgnoreCase(keyword);
+		}
+
+		String describe() {
+			return type == TokenType.END ? "end of input" : "'" + text + "'";
+		}
+	}
+
+	private final String input;
+	private final List<Token> tokens;
+	private int next;
+	private int depth;
+
+	private FilterParser(String input) {
+		this.input = input;
+		this.tokens = tokenize(input);
+	}
+
+	/**
+	 * Parses a filter expression.
+	 *
+	 * @param expression the expression
+	 * @return the syntax tree
+	 * @throws IllegalArgumentException if the expression is empty, too long or
+	 *                                  not valid
+	 */
+	public static FilterExpression parse(String expression) {
+		if (expression == null || expression.trim().isEmpty()) {
+			throw new IllegalArgumentException("Filter expression is empty");
+		}
+		if (expression.length() > MAX_LENGTH) {
+			throw new IllegalArgumentException("Filter expression is longer than " + MAX_LENGTH + " characters");
+		}
+		FilterParser parser = new FilterParser(expression);
+		FilterExpression tree = parser.expression();
+		Token end = parser.peek();
+		if (end.type != TokenType.END) {
+			throw parser.error(end, "Expected AND, OR or end of input but found " + end.describe());
+		}
+		return tree;
+	}
+
+	/**
+	 * Writes an attribute name as the parser reads it, quoting it if needed.
+	 *
+	 * @param name the attribute name
+	 * @return the name, in double quotes unless it is a plain name
+	 */
+	public static String quoteIdentifier(String name) {
+		if (NAME.matcher(name).matches() && !KEYWORDS.contains(name.toUpperCase(Locale.ROOT))) {
+			return name;
+		}
+		return "\"" + name.replace("\"", "\"\"") + "\"";
+	}
+
+	private FilterExpression expression() {
+		List<FilterExpression> operands = new ArrayList<>();
+		operands.add(term());
+		while (peek().isKeyword("OR")) {
+			next++;
+			operands.add(term());
+		}
+		return operands.size() == 1 ? operands.get(0) : new FilterExpression.Or(operands);
+	}
+
+	private FilterExpression term() {
+		List<FilterExpression> operands = new ArrayList<>();
+		operands.add(factor());
+		while (peek().isKeyword("AND")) {
+			next++;
+			operands.add(factor());
+		}
+		return operands.size() == 1 ? operands.get(0) : new FilterExpression.And(operands);
+	}
+
+	private FilterExpression factor() {
+		Token token = peek();
+		if (++depth > MAX_DEPTH) {
+			throw error(token, "Filter expression is nested deeper than " + MAX_DEPTH + " levels");
+		}
+		try {
+			if (token.isKeyword("NOT")) {
+				next++;
+				return new FilterExpression.Not(factor());
+			}
+			if (token.type == TokenType.LEFT) {
+				next++;
+				FilterExpression inner = expression();
+				expect(TokenType.RIGHT, "')'");
+				return inner;
+			}
+			return comparison();
+		} finally {
+			depth--;
+		}
+	}
+
+	private FilterExpression comparison() {
+		Token name = take();
+		if (name.type == TokenType.QUOTED_NAME) {
+			if (name.text.isEmpty()) {
+				throw error(name, "Attribute name is empty");
+			}
+		} else if (name.type != TokenType.NAME || KEYWORDS.contains(name.text.toUpperCase(Locale.ROOT))) {
+			throw error(name, "Expected an attribute name but found " + name.describe());
+		}
+		String attribute = name.text;
+		Token token = take();
+		List<Literal> values = new ArrayList<>();
+		if (token.type == TokenType.OPERATOR) {
+			values.add(literal());
+			return new Comparison(attribute, comparisonOperator(token.text), values);
+		}
+		boolean negated = token.isKeyword("NOT");
+		if (negated) {
+			token = take();
+		}
+		if (token.isKeyword("IN")) {
+			expect(TokenType.LEFT, "'(' after IN");
+			values.add(literal());
+			while (peek().type == TokenType.COMMA) {
+				next++;
+				values.add(literal());
+			}
+			expect(TokenType.RIGHT, "')' or ','");
+			return new Comparison(attribute, negated ? Operator.NOT_IN : Operator.IN, values);
+		}
+		if (token.isKeyword("LIKE")) {
+			Literal pattern = literal();
+			if (pattern.getKind() != Literal.Kind.STRING) {
+				throw error(tokens.get(next - 1), "LIKE needs a string pattern");
+			}
+			values.add(pattern);
+			return new Comparison(attribute, negated ? Operator.NOT_LIKE : Operator.LIKE, values);
+		}
+		if (!negated && token.isKeyword("BETWEEN")) {
+			values.add(literal());
+			Token and = take();
+			if (!and.isKeyword("AND")) {
+				throw error(and, "Expected AND in BETWEEN but found " + and.describe());
+			}
+			values.add(literal());
+			return new Comparison(attribute, Operator.BETWEEN, values);
+		}
+		if (!negated && token.isKeyword("IS")) {
+			boolean not = peek().isKeyword("NOT");
+			if (not) {
+				next++;
+			}
+			Token nullToken = take();
+			if (!nullToken.isKeyword("NULL")) {
+				throw error(nullToken, "Expected NULL but found " + nullToken.describe());
+			}
+			return new Comparison(attribute, not ? Operator.IS_NOT_NULL : Operator.IS_NULL, values);
+		}
+		throw error(token, negated ? "Expected IN or LIKE after NOT but found " + token.describe()
+				: "Expected a comparison after '" + attribute + "' but found " + token.describe());
+	}
+
+	private static Operator comparisonOperator(String symbol) {
+		switch (symbol) {
+		case "=":
+			return Operator.EQ;
+		case "!=":
+		case "<>":
+			return Operator.NE;
+		case "<":
+			return Operator.LT;
+		case "<=":
+			return Operator.LE;
+		case ">":
+			return Operator.GT;
+		default:
+			return Operator.GE;
+		}
+	}
+
+	private Literal literal() {
+		Token token = take();
+		if (token.type == TokenType.NUMBER) {
+			return new Literal(Literal.Kind.NUMBER, token.text);
+		}
+		if (token.type == TokenType.STRING) {
+			return new Literal(Literal.Kind.STRING, token.text);
+		}
+		throw error(token, "Expected a number or string but found " + token.describe());
+	}
+
+	private Token peek() {
+		return tokens.get(next);
+	}
+
+	private Token take() {
+		Token token = tokens.get(next);
+		if (token.type != TokenType.END) {
+			next++;
+		}
+		return token;
+	}
+
+	private void expect(TokenType type, String what) {
+		Token token = take();
+		if (token.type != type) {
+			throw error(token, "Expected " + what + " but found " + token.describe());
+		}
+	}
+
+	private IllegalArgumentException error(Token token, String message) {
+		return error(token.position, message);
+	}
+
+	private IllegalArgumentException error(int position, String message) {
+		return new IllegalArgumentException(message + " at position " + (position + 1) + " of filter: " + input);
+	}
+
+	private List<Token> tokenize(String text) {
+		List<Token> result = new ArrayList<>();
+		int i = 0;
+		int length = text.length();
+		while (i < length) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '(') {
+				result.add(new Token(TokenType.LEFT, "(", i++));
+			} else if (c == ')') {
+				result.add(new Token(TokenType.RIGHT, ")", i++));
+			} else if (c == ',') {
+				result.add(new Token(TokenType.COMMA, ",", i++));
+			} else if (c == '\'' || c == '"') {
+				int start = i;
+				StringBuilder value = new StringBuilder();
+				i++;
+				while (true) {
+					if (i == length) {
+						throw error(start, c == '\'' ? "Unterminated string" : "Unterminated quoted name");
+					}
+					char d = text.charAt(i);
+					if (d == c) {
+						if (i + 1 < length && text.charAt(i + 1) == c) {
+							value.append(c);
+							i += 2;
+							continue;
+						}
+						i++;
+						break;
+					}
+					value.append(d);
+					i++;
+				}
+				result.add(new Token(c == '\'' ? TokenType.STRING : TokenType.QUOTED_NAME, value.toString(), start));
+			} else if (c == '=' || c == '<' || c == '>' || c == '!') {
+				int start = i++;
+				if (i < length && (text.charAt(i) == '=' || (c == '<' && text.charAt(i) == '>'))) {
+					i++;
+				}
+				String symbol = text.substring(start, i);
+				if ("!".equals(symbol)) {
+					throw error(start, "Expected '!=' but found '!'");
+				}
+				result.add(new Token(TokenType.OPERATOR, symbol, start));
+			} else if (Character.isDigit(c) || ((c == '-' || c == '+' || c == '.') && i + 1 < length
+					&& (Character.isDigit(text.charAt(i + 1)) || text.charAt(i + 1) == '.'))) {
+				int start = i++;
+				while (i < length && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+					i++;
+				}
+				if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+					i++;
+					if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+						i++;
+					}
+					while (i < length && Character.isDigit(text.charAt(i))) {
+						i++;
+					}
+				}
+				String number = text.substring(start, i);
+				try {
+					new BigDecimal(number);
+				} catch (NumberFormatException e) {
+					throw error(start, "Invalid number '" + number + "'");
+				}
+				result.add(new Token(TokenType.NUMBER, number, start));
+			} else if (Character.isLetter(c) || c == '_') {
+				int start = i++;
+				while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+					i++;
+				}
+				result.add(new Token(TokenType.NAME, text.substring(start, i), start));
+			} else {
+				throw error(i, "Unexpected character '" + c + "'");
+			}
+		}
+		result.add(new Token(TokenType.END, "", length));
+		return result;
+	}
+}
@@ -0,0 +1,105 @@
+package utils;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often keys were seen
+ * recently, the popularity filter of {@link TinyLfuCache}.
+ *
+ * <p>
+ * Every key increments one counter in each of four rows; its frequency is the
+ * smallest of the four, which overestimates only on hash collisions. There
+ * are sixteen counters per expected key (one {@code long} each). Once ten
+ * times as many increments as expected keys were counted, all counters are
+ * halved, so the estimate follows changes in popularity; with fewer counters
+ * they would saturate before that and the halving would never come. Not
+ * thread-safe; the cache guards it with its own lock.
+ * </p>
+ */
+public final class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int MAX_COUNT = 15;
+
+	private final long[] table;
+	private final int counterMask;
+	private final int sampleSize;
+	private int additions;
+
+	/**
+	 * @param expectedKeys the number of keys to track, usually the maximum
+	 *                     size of the cache
+	 */
+	public FrequencySketch(int expectedKeys) {
+		int keys = Math.max(16, expectedKeys);
+		int slots = Integer.highestOneBit(keys - 1) << 1;
+		if (slots < 0 || slots > (1 << 26)) {
+			slots = 1 << 26;
+		}
+		this.table = new long[slots];
+		this.counterMask = slots * 16 - 1;
+		this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * keys);
+	}
+
+	/**
+	 * Records an occurrence of the key.
+	 *
+	 * @param key the key
+	 */
+	public void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int row = 0; row < SEEDS.length; row++) {
+			added |= incrementAt(counterIndex(hash, row));
+		}
+		if (added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Returns the estimated recent frequency of the key.
+	 *
+	 * @param key the key
+	 * @return the estimate, 0 to 15
+	 */
+	public int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < SEEDS.length; row++) {
+			frequency = Math.min(frequency, countAt(counterIndex(hash, row)));
+		}
+		return frequency;
+	}
+
+	private int counterIndex(int hash, int row) {
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h += h >>> 32;
+		return (int) h & counterMask;
+	}
+
+	private boolean incrementAt(int counter) {
+		int slot = counter >>> 4;
+		int shift = (counter & 15) << 2;
+		if (((table[slot] >>> shift) & 0xfL) == MAX_COUNT) {
+			return false;
+		}
+		table[slot] += 1L << shift;
+		return true;
+	}
+
+	private int countAt(int counter) {
+		return (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xfL);
+	}
+
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions /= 2;
+	}
+
+	private static int spread(int hash) {
+		int h = hash * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
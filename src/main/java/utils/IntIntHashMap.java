@@ -0,0 +1,195 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from int keys to int values without boxing, for indexes with
+ * millions of entries.
+ *
+ * <p>
+ * Open addressing with linear probing in two parallel arrays, kept at most
+ * half full; removal shifts the following entries back instead of leaving
+ * tombstones, so lookups never slow down after many removals. The key
+ * {@link Integer#MIN_VALUE} marks free slots and cannot be stored. Not
+ * thread-safe.
+ * </p>
+ */
+public final class IntIntHashMap {
+
+	private static final int FREE = Integer.MIN_VALUE;
+
+	private final int missingValue;
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	/**
+	 * @param expectedSize the number of entries to size the map for
+	 * @param missingValue the value returned for absent keys
+	 */
+	public IntIntHashMap(int expectedSize, int missingValue) {
+		this.missingValue = missingValue;
+		int capacity = Integer.highestOneBit(Math.max(8, expectedSize) * 2 - 1) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * @param key the key
+	 * @return the value of the key, or the missing value
+	 */
+	public int get(int key) {
+		if (key == FREE) {
+			return missingValue;
+		}
+		int slot = hash(key) & mask;
+		while (true) {
+			int k = keys[slot];
+			if (k == key) {
+				return values[slot];
+			}
+			if (k == FREE) {
+				return missingValue;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @return whether the key has a value
+	 */
+	public boolean containsKey(int key) {
+		if (key == FREE) {
+			return false;
+		}
+		int slot = hash(key) & mask;
+		while (true) {
+			int k = keys[slot];
+			if (k == key) {
+				return true;
+			}
+			if (k == FREE) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Sets the value of a key.
+	 *
+	 * @param key   the key, not {@link Integer#MIN_VALUE}
+	 * @param value the value
+	 * @return the previous value, or the missing value
+	 */
+	public int put(int key, int value) {
+		if (key == FREE) {
+			throw new IllegalArgumentException("Integer.MIN_VALUE cannot be a key");
+		}
+		int slot = hash(key) & mask;
+		while (true) {
+			int k = keys[slot];
+			if (k == key) {
+				int previous = values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			if (k == FREE) {
+				keys[slot] = key;
+				values[slot] = value;
+				if (++size > keys.length / 2) {
+					rehash(keys.length << 1);
+				}
+				return missingValue;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Removes a key.
+	 *
+	 * @param key the key
+	 * @return the removed value, or the missing value
+	 */
+	public int remove(int key) {
+		int slot = hash(key) & mask;
+		while (true) {
+			int k = keys[slot];
+			if (k == FREE) {
+				return missingValue;
+			}
+			if (k == key) {
+				int previous = values[slot];
+				shiftBack(slot);
+				size--;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all keys.
+	 */
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		size = 0;
+	}
+
+	private void shiftBack(int free) {
+		int slot = free;
+		while (true) {
+			slot = (slot + 1) & mask;
+			int k = keys[slot];
+			if (k == FREE) {
+				keys[free] = FREE;
+				return;
+			}
+			int home = hash(k) & mask;
+			// move the entry back unless its home lies cyclically in (free, slot]
+			if (free <= slot ? (home <= free || home > slot) : (home <= free && home > slot)) {
+				keys[free] = k;
+				values[free] = values[slot];
+				free = slot;
+			}
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			int k = oldKeys[i];
+			if (k != FREE) {
+				int slot = hash(k) & mask;
+				while (keys[slot] != FREE) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = k;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,195 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyset ("seek") pagination over one table with an integer {@code id}
+ * primary key.
+ *
+ * <p>
+ * Instead of skipping {@code OFFSET} rows, every page starts right after the
+ * sort value and id of the last row of the previous page, so with an index on
+ * {@code (sortColumn, id)} the database reads only the rows of the page, how
+ * deep the page is does not matter. The position travels between requests as
+ * an opaque {@link PageCursor} token.
+ * </p>
+ *
+ * <p>
+ * Only the sort columns registered with {@link #sortColumn(String, boolean)}
+ * are accepted, which also keeps {@code sortBy} out of reach of SQL
+ * injection. Sort values are carried as text and bound with an unspecified
+ * type, so the server converts them to the column type (text, timestamp or
+ * enum). Nullable columns keep PostgreSQL's default null placement: last when
+ * ascending, first when descending.
+ * </p>
+ */
+public class KeysetPaginator {
+
+	private static final String ID = "id";
+
+	private final String table;
+	private final Map<String, Boolean> sortColumns = new LinkedHashMap<>();
+
+	/**
+	 * Creates a paginator for the table. {@code id} is always a valid sort
+	 * column.
+	 *
+	 * @param table the table name
+	 */
+	public KeysetPaginator(String table) {
+		this.table = table;
+		sortColumns.put(ID, false);
+	}
+
+	/**
+	 * Allows sorting by a column.
+	 *
+	 * @param column   the column name
+	 * @param nullable whether the column may hold NULL
+	 * @return this paginator
+	 */
+	public KeysetPaginator sortColumn(String column, boolean nullable) {
+		sortColumns.put(column, nullable);
+		return this;
+	}
+
+	/**
+	 * Builds a validated {@code ORDER BY} clause, for listings that still page
+	 * by offset.
+	 *
+	 * @param sortBy        the sort column, null for {@code id}
+	 * @param sortDirection {@code asc} or {@code desc}, null for ascending
+	 * @return the clause, ending with the id tie-breaker
+	 * @throws IllegalArgumentException for an unknown column or direction
+	 */
+	public String orderBy(String sortBy, String sortDirection) {
+		String column = column(sortBy);
+		String direction = isDescending(sortDirection) ? "DESC" : "ASC";
+		if (ID.equals(column)) {
+			return "ORDER BY id " + direction;
+		}
+		return "ORDER BY " + column + " " + direction + ", id " + direction;
+	}
+
+	/**
+	 * Fetches one page.
+	 *
+	 * @param cursor        the token of the previous page, null for the first
+	 *                      page
+	 * @param limit         the maximum number of rows
+	 * @param sortBy        the sort column, null for {@code id}
+	 * @param sortDirection {@code asc} or {@code desc}, null for ascending
+	 * @param factory       maps the rows
+	 * @param <T>           the item type
+	 * @return the page and the cursor of the next one
+	 * @throws SQLException             if the query fails
+	 * @throws IllegalArgumentException for an unknown column or direction, or a
+	 *                                  cursor of another sort order
+	 */
+	public <T> Page<T> fetch(String cursor, int limit, String sortBy, String sortDirection, RowMapperFactory<T> factory)
+			throws SQLException {
+		String column = column(sortBy);
+		boolean descending = isDescending(sortDirection);
+		PageCursor after = cursor == null || cursor.isEmpty() ? null : PageCursor.decode(cursor, column, descending);
+		boolean byId = ID.equals(column);
+		boolean nullable = sortColumns.get(column);
+
+		StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table);
+		List<Object> params = new ArrayList<>();
+		if (after != null) {
+			sql.append(" WHERE ");
+			appendSeekCondition(sql, params, column, byId, nullable, descending, after);
+		}
+		sql.append(' ').append(orderBy(column, descending ? "desc" : "asc")).append(" LIMIT ?");
+		params.add(limit + 1);
+
+		try (Connection conn = QueryExecutor.readConnection();
+				PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+			for (int i = 0; i < params.size(); i++) {
+				Object param = params.get(i);
+				if (param instanceof String) {
+					stmt.setObject(i + 1, param, Types.OTHER);
+				} else {
+					stmt.setObject(i + 1, param);
+				}
+			}
+			try (ResultSet rs = stmt.executeQuery()) {
+				List<T> items = new ArrayList<>();
+				String nextCursor = null;
+				if (rs.next()) {
+					ColumnIndex columns = ColumnIndex.of(rs);
+					RowMapper<T> mapper = factory.create(columns);
+					int idIndex = columns.indexOf(ID);
+					int sortIndex = columns.indexOf(column);
+					String lastValue = null;
+					int lastId = 0;
+					do {
+						if (items.size() == limit) {
+							nextCursor = new PageCursor(column, descending, lastValue, lastId).encode();
+							break;
+						}
+						items.add(mapper.mapRow(rs));
+						lastId = rs.getInt(idIndex);
+						lastValue = byId ? null : rs.getString(sortIndex);
+					} while (rs.next());
+				}
+				return new Page<>(items, nextCursor);
+			}
+		}
+	}
+
+	private static void appendSeekCondition(StringBuilder sql, List<Object> params, String column, boolean byId,
+			boolean nullable, boolean descending, PageCursor after) {
+		String op = descending ? "<" : ">";
+		if (byId) {
+			sql.append("id ").append(op).append(" ?");
+			params.add(after.getId());
+		} else if (!nullable) {
+			sql.append('(').append(column).append(", id) ").append(op).append(" (?, ?)");
+			params.add(after.getSortValue());
+			params.add(after.getId());
+		} else if (after.getSortValue() == null) {
+			// nulls sort last ascending and first descending
+			if (descending) {
+				sql.append('(').append(column).append(" IS NOT NULL OR (").append(column).append(" IS NULL AND id < ?))");
+			} else {
+				sql.append('(').append(column).append(" IS NULL AND id > ?)");
+			}
+			params.add(after.getId());
+		} else {
+			sql.append("((").append(column).append(", id) ").append(op).append(" (?, ?)");
+			if (!descending) {
+				sql.append(" OR ").append(column).append(" IS NULL");
+			}
+			sql.append(')');
+			params.add(after.getSortValue());
+			params.add(after.getId());
+		}
+	}
+
+	private String column(String sortBy) {
+		String column = sortBy == null || sortBy.isEmpty() ? ID : sortBy;
+		if (!sortColumns.containsKey(column)) {
+			throw new IllegalArgumentException("Cannot sort " + table + " by " + sortBy);
+		}
+		return column;
+	}
+
+	private static boolean isDescending(String sortDirection) {
+		if (sortDirection == null || sortDirection.equalsIgnoreCase("asc")) {
+			return false;
+		}
+		if (sortDirection.equalsIgnoreCase("desc")) {
+			return true;
+		}
+		throw new IllegalArgumentException("Sort direction must be asc or desc: " + sortDirection);
+	}
+}
@@ -0,0 +1,135 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * A concurrent latency histogram with log-linear buckets, in the spirit of
+ * HdrHistogram.
+ *
+ * <p>
+ * Values are recorded in microseconds. Values below 64 get one bucket each;
+ * above that every power of two is split into 32 equal sub-buckets, so any
+ * reported percentile is within about 3% of the true value while the whole
+ * histogram stays a fixed array of under two thousand counters. Recording is a
+ * single atomic increment and never blocks.
+ * </p>
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR_BUCKETS = 64;
+	private static final int SUB_BUCKETS = 32;
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int FIRST_EXPONENT = 6;
+	private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Records one observation.
+	 *
+	 * @param nanos the observed duration in nanoseconds
+	 */
+	public void recordNanos(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucketIndex(micros));
+		totalCount.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	/**
+	 * Returns the number of recorded observations.
+	 *
+	 * @return the observation count
+	 */
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	/**
+	 * Returns the mean of all observations in microseconds.
+	 *
+	 * @return the mean, or 0 when nothing was recorded
+	 */
+	public double getMeanMicros() {
+		long count = totalCount.sum();
+		return count == 0 ? 0 : (double) totalMicros.sum() / count;
+	}
+
+	/**
+	 * Returns the largest observation in microseconds.
+	 *
+	 * @return the maximum
+	 */
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * Returns the value below which the given fraction of observations fall.
+	 *
+	 * @param percentile a percentile between 0 and 100
+	 * @return the percentile value in microseconds, or 0 when nothing was
+	 *         recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long count = totalCount.sum();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(bucketValue(i), getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	/**
+	 * Summarises the histogram as JSON.
+	 *
+	 * @return count, mean, common percentiles and maximum in microseconds
+	 */
+	public JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("count", getCount());
+		json.put("meanMicros", Math.round(getMeanMicros()));
+		json.put("p50Micros", getPercentileMicros(50));
+		json.put("p90Micros", getPercentileMicros(90));
+		json.put("p99Micros", getPercentileMicros(99));
+		json.put("p999Micros", getPercentileMicros(99.9));
+		json.put("maxMicros", getMaxMicros());
+		return json;
+	}
+
+	private static int bucketIndex(long micros) {
+		if (micros < LINEAR_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) ((micros >>> shift) - SUB_BUCKETS);
+		return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long bucketValue(int index) {
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+		int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+		int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+		return lower + ((1L << shift) >> 1);
+	}
+}
@@ -0,0 +1,44 @@
+package utils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing.
+ *
+ * @param <T> the item type
+ */
+public class Page<T> {
+
+	private final List<T> items;
+	private final String nextCursor;
+
+	/**
+	 * Creates a page.
+	 *
+	 * @param items      the items of the page
+	 * @param nextCursor the cursor of the following page, or null on the last
+	 *                   page
+	 */
+	public Page(List<T> items, String nextCursor) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextCursor = nextCursor;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * Returns the opaque token to pass back to fetch the following page.
+	 *
+	 * @return the cursor, or null when this is the last page
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public boolean hasMore() {
+		return nextCursor != null;
+	}
+}
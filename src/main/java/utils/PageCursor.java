@@ -0,0 +1,86 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a keyset-paginated listing: the sort column, the direction and
+ * the sort value and id of the last row returned.
+ *
+ * <p>
+ * Cursors are handed to clients as opaque URL-safe tokens. A token only
+ * continues the listing it came from: decoding it for another sort column or
+ * direction fails.
+ * </p>
+ */
+public final class PageCursor {
+
+	private static final String VERSION = "1";
+	private static final char SEPARATOR = '\n';
+
+	private final String sortBy;
+	private final boolean descending;
+	private final String sortValue;
+	private final int id;
+
+	PageCursor(String sortBy, boolean descending, String sortValue, int id) {
+		this.sortBy = sortBy;
+		this.descending = descending;
+		this.sortValue = sortValue;
+		this.id = id;
+	}
+
+	/**
+	 * Decodes a token.
+	 *
+	 * @param token      the token from {@link Page#getNextCursor()}
+	 * @param sortBy     the sort column of the current request
+	 * @param descending the direction of the current request
+	 * @return the cursor
+	 * @throws IllegalArgumentException if the token is malformed or belongs to
+	 *                                  another sort order
+	 */
+	static PageCursor decode(String token, String sortBy, boolean descending) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Malformed page cursor", e);
+		}
+		// version, sortBy, direction, id, null flag, value (may contain the separator)
+		String[] parts = decoded.split(String.valueOf(SEPARATOR), 6);
+		if (parts.length != 6 || !VERSION.equals(parts[0])) {
+			throw new IllegalArgumentException("Malformed page cursor");
+		}
+		if (!parts[1].equals(sortBy) || !parts[2].equals(descending ? "d" : "a")) {
+			throw new IllegalArgumentException("Page cursor belongs to another sort order");
+		}
+		int id;
+		try {
+			id = Integer.parseInt(parts[3]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed page cursor", e);
+		}
+		String value = "1".equals(parts[4]) ? null : parts[5];
+		return new PageCursor(sortBy, descending, value, id);
+	}
+
+	/**
+	 * Encodes the cursor as a URL-safe token.
+	 *
+	 * @return the token
+	 */
+	String encode() {
+		String raw = VERSION + SEPARATOR + sortBy + SEPARATOR + (descending ? "d" : "a") + SEPARATOR + id + SEPARATOR
+				+ (sortValue == null ? "1" : "0") + SEPARATOR + (sortValue == null ? "" : sortValue);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	String getSortValue() {
+		return sortValue;
+	}
+
+	int getId() {
+		return id;
+	}
+}
@@ -0,0 +1,278 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Holds the sizing, timeout and connection settings of a
+ * {@link ConnectionPool}.
+ *
+ * <p>
+ * Values are normally read from {@code application.properties} through
+ * {@link #fromApplicationConfig()}. The recognised keys are:
+ * </p>
+ * <ul>
+ * <li>{@code database.url}, {@code database.username},
+ * {@code database.password} - connection credentials</li>
+ * <li>{@code pool.implementation} - {@code c3p0} (default) or {@code bag}</li>
+ * <li>{@code pool.minIdle} - connections kept open while idle (default 5)</li>
+ * <li>{@code pool.maxSize} - upper bound of open connections (default 20)</li>
+ * <li>{@code pool.connectionTimeoutMs} - how long {@code getConnection} waits
+ * for a free connection (default 30000)</li>
+ * <li>{@code pool.idleTimeoutMs} - idle time after which connections above
+ * {@code minIdle} are closed (default 600000)</li>
+ * <li>{@code pool.maxLifetimeMs} - age after which a connection is retired
+ * (default 1800000)</li>
+ * <li>{@code pool.validationTimeoutSeconds} - timeout of the liveness check
+ * run on connections that sat idle (default 5)</li>
+ * <li>{@code pool.housekeepingIntervalMs} - period of the idle/lifetime sweep
+ * (default 30000)</li>
+ * <li>{@code pool.statementCacheSize} - prepared statements cached per pool
+ * (c3p0) or per connection (driver side, default 100)</li>
+ * <li>{@code database.driver.*} - passed to the PostgreSQL driver as
+ * connection properties with the prefix removed, for example
+ * {@code database.driver.reWriteBatchedInserts=true}</li>
+ * </ul>
+ *
+ * <p>
+ * Read replicas are listed in {@code database.replica.urls} (comma
+ * separated). They use {@code database.replica.username} and
+ * {@code database.replica.password} when set, the primary credentials
+ * otherwise, and inherit the primary pool settings except where
+ * {@code replica.pool.minIdle} or {@code replica.pool.maxSize} override them.
+ * </p>
+ */
+public class PoolConfig {
+
+	public static final String IMPLEMENTATION_BAG = "bag";
+	public static final String IMPLEMENTATION_C3P0 = "c3p0";
+
+	private static final String DRIVER_PROPERTY_PREFIX = "database.driver.";
+
+	private String poolName = "primary";
+	private String implementation = IMPLEMENTATION_C3P0;
+	private String jdbcUrl;
+	private String username;
+	private String password;
+	private int minIdle = 5;
+	private int maxSize = 20;
+	private long connectionTimeoutMs = 30000;
+	private long idleTimeoutMs = 600000;
+	private long maxLifetimeMs = 1800000;
+	private int validationTimeoutSeconds = 5;
+	private long housekeepingIntervalMs = 30000;
+	private int statementCacheSize = 100;
+	private Properties driverProperties = new Properties();
+
+	/**
+	 * Builds the configuration of the primary pool from
+	 * {@code application.properties}.
+	 *
+	 * @return the pool configuration
+	 */
+	public static PoolConfig fromApplicationConfig() {
+		PoolConfig config = new PoolConfig();
+		config.setJdbcUrl(ApplicationConfig.getString("database.url", null));
+		config.setUsername(ApplicationConfig.getString("database.username", null));
+		config.setPassword(ApplicationConfig.getString("database.password", null));
+		config.setImplementation(ApplicationConfig.getString("pool.implementation", IMPLEMENTATION_C3P0));
+		config.setMinIdle(ApplicationConfig.getInt("pool.minIdle", config.getMinIdle()));
+		config.setMaxSize(ApplicationConfig.getInt("pool.maxSize", config.getMaxSize()));
+		config.setConnectionTimeoutMs(ApplicationConfig.getLong("pool.connectionTimeoutMs", config.getConnectionTimeoutMs()));
+		config.setIdleTimeoutMs(ApplicationConfig.getLong("pool.idleTimeoutMs", config.getIdleTimeoutMs()));
+		config.setMaxLifetimeMs(ApplicationConfig.getLong("pool.maxLifetimeMs", config.getMaxLifetimeMs()));
+		config.setValidationTimeoutSeconds(ApplicationConfig.getInt("pool.validationTimeoutSeconds", config.getValidationTimeoutSeconds()));
+		config.setHousekeepingIntervalMs(ApplicationConfig.getLong("pool.housekeepingIntervalMs", config.getHousekeepingIntervalMs()));
+		config.setStatementCacheSize(ApplicationConfig.getInt("pool.statementCacheSize", config.getStatementCacheSize()));
+		Properties all = ApplicationConfig.getProperties();
+		for (String key : all.stringPropertyNames()) {
+			if (key.startsWith(DRIVER_PROPERTY_PREFIX)) {
+				config.getDriverProperties().setProperty(key.substring(DRIVER_PROPERTY_PREFIX.length()), all.getProperty(key).trim());
+			}
+		}
+		return config;
+	}
+
+	/**
+	 * Builds one configuration per read replica listed in
+	 * {@code database.replica.urls}.
+	 *
+	 * @return the replica pool configurations, empty when no replica is
+	 *         configured
+	 */
+	public static List<PoolConfig> replicasFromApplicationConfig() {
+		List<PoolConfig> replicas = new ArrayList<>();
+		String urls = ApplicationConfig.getString("database.replica.urls", null);
+		if (urls == null) {
+			return replicas;
+		}
+		PoolConfig primary = fromApplicationConfig();
+		for (String url : urls.split(",")) {
+			if (url.trim().isEmpty()) {
+				continue;
+			}
+			PoolConfig replica = fromApplicationConfig();
+			replica.setPoolName("replica-" + (replicas.size() + 1));
+			replica.setJdbcUrl(url.trim());
+			replica.setUsername(ApplicationConfig.getString("database.replica.username", primary.getUsername()));
+			replica.setPassword(ApplicationConfig.getString("database.replica.password", primary.getPassword()));
+			replica.setMinIdle(ApplicationConfig.getInt("replica.pool.minIdle", primary.getMinIdle()));
+			replica.setMaxSize(ApplicationConfig.getInt("replica.pool.maxSize", primary.getMaxSize()));
+			replicas.add(replica);
+		}
+		return replicas;
+	}
+
+	/**
+	 * Checks that the settings describe a usable pool.
+	 *
+	 * @throws IllegalArgumentException if a setting is out of range
+	 */
+	public void validate() {
+		if (jdbcUrl == null) {
+			throw new IllegalArgumentException("database.url is not configured for pool " + poolName);
+		}
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("pool.maxSize must be at least 1");
+		}
+		if (minIdle < 0 || minIdle > maxSize) {
+			throw new IllegalArgumentException("pool.minIdle must be between 0 and pool.maxSize");
+		}
+		if (connectionTimeoutMs < 0) {
+			throw new IllegalArgumentException("pool.connectionTimeoutMs must not be negative");
+		}
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public void setPoolName(String poolName) {
+		this.poolName = poolName;
+	}
+
+	public String getImplementation() {
+		return implementation;
+	}
+
+	public void setImplementation(String implementation) {
+		this.implementation = implementation;
+	}
+
+	public String getJdbcUrl() {
+		return jdbcUrl;
+	}
+
+	public void setJdbcUrl(String jdbcUrl) {
+		this.jdbcUrl = jdbcUrl;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public long getConnectionTimeoutMs() {
+		return connectionTimeoutMs;
+	}
+
+	public void setConnectionTimeoutMs(long connectionTimeoutMs) {
+		this.connectionTimeoutMs = connectionTimeoutMs;
+	}
+
+	public long getIdleTimeoutMs() {
+		return idleTimeoutMs;
+	}
+
+	public void setIdleTimeoutMs(long idleTimeoutMs) {
+		this.idleTimeoutMs = idleTimeoutMs;
+	}
+
+	public long getMaxLifetimeMs() {
+		return maxLifetimeMs;
+	}
+
+	public void setMaxLifetimeMs(long maxLifetimeMs) {
+		this.maxLifetimeMs = maxLifetimeMs;
+	}
+
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	public long getHousekeepingIntervalMs() {
+		return housekeepingIntervalMs;
+	}
+
+	public void setHousekeepingIntervalMs(long housekeepingIntervalMs) {
+		this.housekeepingIntervalMs = housekeepingIntervalMs;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * Returns the extra connection properties passed to the JDBC driver. The
+	 * returned object is live; changes apply to pools created afterwards.
+	 *
+	 * @return the driver properties
+	 */
+	public Properties getDriverProperties() {
+		return driverProperties;
+	}
+
+	public void setDriverProperties(Properties driverProperties) {
+		this.driverProperties = driverProperties;
+	}
+
+	@Override
+	public String toString() {
+		return "PoolConfig{" +
+				"poolName='" + poolName + '\'' +
+				", implementation='" + implementation + '\'' +
+				", jdbcUrl='" + jdbcUrl + '\'' +
+				", minIdle=" + minIdle +
+				", maxSize=" + maxSize +
+				", connectionTimeoutMs=" + connectionTimeoutMs +
+				", idleTimeoutMs=" + idleTimeoutMs +
+				", maxLifetimeMs=" + maxLifetimeMs +
+				'}';
+	}
+}
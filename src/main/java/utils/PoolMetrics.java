@@ -0,0 +1,420 @@
+package utils;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Collects telemetry for one {@link ConnectionPool}.
+ *
+ * <p>
+ * {@link DatabaseUtility#connect()} reports every acquisition here. The
+ * returned connection is wrapped so that closing it records how long it was
+ * held. The following data is kept:
+ * </p>
+ * <ul>
+ * <li>gauges of total, active and idle connections and of threads waiting for
+ * one;</li>
+ * <li>{@link LatencyHistogram}s of acquire wait and hold time, overall and,
+ * with {@code pool.metrics.perCaller=true}, per calling DAO method (e.g.
+ * {@code ObjectTypeDAO.fetchObjectTypeById}), which walks the stack on every
+ * acquisition;</li>
+ * <li>leak detection: when {@code pool.leakDetectionThresholdMs} is greater
+ * than zero, the stack of every borrower is captured and a connection held for
+ * longer than the threshold is logged with that stack.</li>
+ * </ul>
+ *
+ * <p>
+ * The metrics are published as an MXBean and rendered as JSON by
+ * {@code servlet.PoolMetricsServlet}.
+ * </p>
+ */
+public class PoolMetrics implements PoolMetricsMXBean {
+
+	private static final Logger LOGGER = Logger.getLogger(PoolMetrics.class.getName());
+	private static final int MAX_REPORTED_LEAKS = 20;
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+	private final ConnectionPool pool;
+	private final long leakThresholdMs;
+	private final boolean perCaller;
+
+	private final LatencyHistogram acquireWait = new LatencyHistogram();
+	private final LatencyHistogram holdTime = new LatencyHistogram();
+	private final Map<String, LatencyHistogram> acquireWaitByCaller = new ConcurrentHashMap<>();
+	private final Map<String, LatencyHistogram> holdTimeByCaller = new ConcurrentHashMap<>();
+
+	private final AtomicInteger pending = new AtomicInteger();
+	private final LongAdder acquireFailures = new LongAdder();
+	private final LongAdder leaksDetected = new LongAdder();
+	private final AtomicLong borrowSequence = new AtomicLong();
+	private final Map<Long, Borrow> activeBorrows = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedDeque<JSONObject> reportedLeaks = new ConcurrentLinkedDeque<>();
+	private final ScheduledExecutorService leakDetector;
+	private ObjectName objectName;
+
+	/**
+	 * Creates the metrics for a pool. Settings are read from
+	 * {@code pool.leakDetectionThresholdMs} and {@code pool.metrics.perCaller}.
+	 *
+	 * @param pool the pool being observed
+	 */
+	public PoolMetrics(ConnectionPool pool) {
+		this.pool = pool;
+		this.leakThresholdMs = ApplicationConfig.getLong("pool.leakDetectionThresholdMs", 0);
+		this.perCaller = ApplicationConfig.getBoolean("pool.metrics.perCaller", false);
+		if (leakThresholdMs > 0) {
+			long period = Math.max(1000, Math.min(leakThresholdMs / 2, 10000));
+			leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "pool-" + pool.getName() + "-leak-detector");
+				thread.setDaemon(true);
+				return thread;
+			});
+			leakDetector.scheduleWithFixedDelay(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			leakDetector = null;
+		}
+	}
+
+	/**
+	 * Returns the DAO method (or, failing that, the first application frame)
+	 * that is asking for a connection.
+	 *
+	 * @return a label such as {@code ActionDAO.fetchActionById}
+	 */
+	public static String resolveCaller() {
+		Optional<StackWalker.StackFrame> frame = STACK_WALKER.walk(frames -> frames
+				.filter(f -> f.getClassName().startsWith("dao."))
+				.findFirst());
+		if (!frame.isPresent()) {
+			frame = STACK_WALKER.walk(frames -> frames
+					.filter(f -> !isInfrastructure(f.getClassName()))
+					.findFirst());
+		}
+		if (!frame.isPresent()) {
+			return "unknown";
+		}
+		String className = frame.get().getClassName();
+		return className.substring(className.lastIndexOf('.') + 1) + "." + frame.get().getMethodName();
+	}
+
+	/**
+	 * Tells whether acquisitions need the caller: for per-caller statistics
+	 * or leak reports. Otherwise {@link #resolveCaller()} can be skipped.
+	 *
+	 * @return true if {@code pool.metrics.perCaller} is set or leak detection
+	 *         is on
+	 */
+	public boolean isCallerTracked() {
+		return perCaller || leakThresholdMs > 0;
+	}
+
+	private static boolean isInfrastructure(String className) {
+		return className.startsWith("utils.") || className.startsWith("java.") || className.startsWith("javax.")
+				|| className.startsWith("jdk.") || className.startsWith("sun.") || className.startsWith("com.sun.");
+	}
+
+	/**
+	 * Marks the start of an acquisition; the calling thread counts as pending
+	 * until {@link #acquired} or {@link #acquireFailed} is called.
+	 */
+	public void acquireStarted() {
+		pending.incrementAndGet();
+	}
+
+	/**
+	 * Records a successful acquisition and wraps the connection so its hold time
+	 * is measured.
+	 *
+	 * @param connection the connection handed out by the pool
+	 * @param caller     the label returned by {@link #resolveCaller()}, or null
+	 *                   when {@link #isCallerTracked()} is false
+	 * @param waitNanos  how long the caller waited for the connection
+	 * @return the wrapped connection to give to the caller
+	 */
+	public Connection acquired(Connection connection, String caller, long waitNanos) {
+		pending.decrementAndGet();
+		acquireWait.recordNanos(waitNanos);
+		if (perCaller) {
+			acquireWaitByCaller.computeIfAbsent(caller, k -> new LatencyHistogram()).recordNanos(waitNanos);
+		}
+		long id = borrowSequence.incrementAndGet();
+		Throwable stack = leakThresholdMs > 0 ? new Throwable("Connection borrowed by " + caller) : null;
+		Borrow borrow = new Borrow(caller, Thread.currentThread().getName(), stack);
+		activeBorrows.put(id, borrow);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new TrackedConnectionHandler(connection, id, borrow));
+	}
+
+	/**
+	 * Records a failed acquisition.
+	 */
+	public void acquireFailed() {
+		pending.decrementAndGet();
+		acquireFailures.increment();
+	}
+
+	private void released(long id, Borrow borrow) {
+		activeBorrows.remove(id);
+		long heldNanos = System.nanoTime() - borrow.startNanos;
+		holdTime.recordNanos(heldNanos);
+		if (perCaller) {
+			holdTimeByCaller.computeIfAbsent(borrow.caller, k -> new LatencyHistogram()).recordNanos(heldNanos);
+		}
+		if (borrow.reportedAsLeak) {
+			LOGGER.log(Level.INFO, "Connection previously reported as leaked was returned by " + borrow.caller
+					+ " after " + TimeUnit.NANOSECONDS.toMillis(heldNanos) + " ms");
+		}
+	}
+
+	private void detectLeaks() {
+		long now = System.nanoTime();
+		for (Borrow borrow : activeBorrows.values()) {
+			long heldMs = TimeUnit.NANOSECONDS.toMillis(now - borrow.startNanos);
+			if (!borrow.reportedAsLeak && heldMs > leakThresholdMs) {
+				borrow.reportedAsLeak = true;
+				leaksDetected.increment();
+				LOGGER.log(Level.WARNING, "Connection leak detection triggered: connection held for " + heldMs
+						+ " ms by " + borrow.caller + " on thread " + borrow.threadName, borrow.stack);
+
+				JSONObject leak = new JSONObject();
+				leak.put("caller", borrow.caller);
+				leak.put("thread", borrow.threadName);
+				leak.put("heldMsWhenDetected", heldMs);
+				leak.put("stack", stackTraceOf(borrow.stack));
+				reportedLeaks.addFirst(leak);
+				while (reportedLeaks.size() > MAX_REPORTED_LEAKS) {
+					reportedLeaks.pollLast();
+				}
+			}
+		}
+	}
+
+	private static String stackTraceOf(Throwable throwable) {
+		StringWriter writer = new StringWriter();
+		throwable.printStackTrace(new PrintWriter(writer));
+		return writer.toString();
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName("leucine.ontology:type=ConnectionPool,name=" + ObjectName.quote(pool.getName()));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "Unable to register pool metrics MBean", e);
+		}
+	}
+
+	/**
+	 * Unregisters the MBean and stops leak detection.
+	 */
+	public void close() {
+		if (leakDetector != null) {
+			leakDetector.shutdownNow();
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				LOGGER.log(Level.FINE, "Unable to unregister pool metrics MBean", e);
+			}
+		}
+	}
+
+	/**
+	 * Renders all metrics as JSON.
+	 *
+	 * @return gauges, histograms, per-caller histograms and reported leaks
+	 */
+	public JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("pool", getPoolName());
+		json.put("totalConnections", getTotalConnections());
+		json.put("activeConnections", getActiveConnections());
+		json.put("idleConnections", getIdleConnections());
+		json.put("pendingThreads", getPendingThreads());
+		json.put("acquireCount", getAcquireCount());
+		json.put("acquireFailures", getAcquireFailures());
+		json.put("acquireWait", acquireWait.toJson());
+		json.put("holdTime", holdTime.toJson());
+		JSONObject callers = new JSONObject();
+		for (Map.Entry<String, LatencyHistogram> entry : acquireWaitByCaller.entrySet()) {
+			JSONObject caller = new JSONObject();
+			caller.put("acquireWait", entry.getValue().toJson());
+			LatencyHistogram hold = holdTimeByCaller.get(entry.getKey());
+			if (hold != null) {
+				caller.put("holdTime", hold.toJson());
+			}
+			callers.put(entry.getKey(), caller);
+		}
+		json.put("callers", callers);
+		json.put("leakDetectionThresholdMs", leakThresholdMs);
+		json.put("leaksDetected", getLeaksDetected());
+		json.put("recentLeaks", new JSONArray(reportedLeaks));
+		return json;
+	}
+
+	@Override
+	public String getPoolName() {
+		return pool.getName();
+	}
+
+	@Override
+	public int getTotalConnections() {
+		return pool.getTotalConnections();
+	}
+
+	@Override
+	public int getActiveConnections() {
+		return activeBorrows.size();
+	}
+
+	@Override
+	public int getIdleConnections() {
+		return pool.getIdleConnections();
+	}
+
+	@Override
+	public int getPendingThreads() {
+		return pending.get();
+	}
+
+	@Override
+	public long getAcquireCount() {
+		return acquireWait.getCount();
+	}
+
+	@Override
+	public long getAcquireFailures() {
+		return acquireFailures.sum();
+	}
+
+	@Override
+	public long getAcquireWaitP50Micros() {
+		return acquireWait.getPercentileMicros(50);
+	}
+
+	@Override
+	public long getAcquireWaitP99Micros() {
+		return acquireWait.getPercentileMicros(99);
+	}
+
+	@Override
+	public long getAcquireWaitMaxMicros() {
+		return acquireWait.getMaxMicros();
+	}
+
+	@Override
+	public long getHoldTimeP50Micros() {
+		return holdTime.getPercentileMicros(50);
+	}
+
+	@Override
+	public long getHoldTimeP99Micros() {
+		return holdTime.getPercentileMicros(99);
+	}
+
+	@Override
+	public long getHoldTimeMaxMicros() {
+		return holdTime.getMaxMicros();
+	}
+
+	@Override
+	public long getLeaksDetected() {
+		return leaksDetected.sum();
+	}
+
+	@Override
+	public String dumpJson() {
+		return toJson().toString(2);
+	}
+
+	/**
+	 * An outstanding connection borrow.
+	 */
+	private static final class Borrow {
+
+		private final String caller;
+		private final String threadName;
+		private final Throwable stack;
+		private final long startNanos = System.nanoTime();
+		private volatile boolean reportedAsLeak;
+
+		private Borrow(String caller, String threadName, Throwable stack) {
+			this.caller = caller;
+			this.threadName = threadName;
+			this.stack = stack;
+		}
+	}
+
+	/**
+	 * Wraps a pooled connection to measure how long it is held.
+	 */
+	private final class TrackedConnectionHandler implements InvocationHandler {
+
+		private final Connection delegate;
+		private final long id;
+		private final Borrow borrow;
+		private boolean closed;
+
+		private TrackedConnectionHandler(Connection delegate, long id, Borrow borrow) {
+			this.delegate = delegate;
+			this.id = id;
+			this.borrow = borrow;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					released(id, borrow);
+					delegate.close();
+				}
+				return null;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				break;
+			}
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
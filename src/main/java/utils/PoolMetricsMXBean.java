@@ -0,0 +1,44 @@
+package utils;
+
+/**
+ * JMX view of a connection pool's {@link PoolMetrics}. Registered under
+ * {@code leucine.ontology:type=ConnectionPool,name=<pool name>}.
+ */
+public interface PoolMetricsMXBean {
+
+	String getPoolName();
+
+	int getTotalConnections();
+
+	int getActiveConnections();
+
+	int getIdleConnections();
+
+	int getPendingThreads();
+
+	long getAcquireCount();
+
+	long getAcquireFailures();
+
+	long getAcquireWaitP50Micros();
+
+	long getAcquireWaitP99Micros();
+
+	long getAcquireWaitMaxMicros();
+
+	long getHoldTimeP50Micros();
+
+	long getHoldTimeP99Micros();
+
+	long getHoldTimeMaxMicros();
+
+	long getLeaksDetected();
+
+	/**
+	 * Returns the complete metrics, including the per-caller histograms and the
+	 * borrowing stacks of suspected leaks, as a JSON document.
+	 *
+	 * @return the metrics as JSON text
+	 */
+	String dumpJson();
+}
@@ -0,0 +1,399 @@
+package utils;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs parameterized statements with all JDBC resources closed in
+ * try-with-resources, so DAO methods only supply SQL, parameters and a
+ * {@link RowMapperFactory}.
+ *
+ * <p>
+ * Queries borrow their connection through
+ * {@link DatabaseUtility#connectForRead()} and may be served by a read
+ * replica; {@link #update(String, Object...)} always uses the primary. Inside
+ * a {@link UnitOfWork} both use the bound connection.
+ * </p>
+ *
+ * <p>
+ * Parameters are bound with {@code setObject}, except that {@code null} is
+ * bound as SQL NULL, enum constants as their {@code toString()} value and
+ * collections as SQL arrays (for {@code = ANY(?)}); columns of a PostgreSQL
+ * enum type need an explicit cast in the SQL.
+ * </p>
+ *
+ * <p>
+ * {@link #forEach} and {@link #stream} read large results in constant memory:
+ * they run inside a transaction with a fetch size ({@code query.fetchSize},
+ * default 500), which makes the PostgreSQL driver use a server-side cursor
+ * and fetch the rows in chunks instead of all at once.
+ * </p>
+ *
+ * <p>
+ * Errors are thrown, not logged: callers keep their own error contract.
+ * </p>
+ */
+public final class QueryExecutor {
+
+	private static final Logger LOGGER = Logger.getLogger(QueryExecutor.class.getName());
+
+	private static final int FETCH_SIZE = ApplicationConfig.getInt("query.fetchSize", 500);
+
+	private QueryExecutor() {
+	}
+
+	/**
+	 * Runs a query and maps every row.
+	 *
+	 * @param sql     the SQL with {@code ?} placeholders
+	 * @param factory creates the row mapper
+	 * @param params  the parameter values
+	 * @param <T>     the mapped type
+	 * @return the mapped rows, empty when the query returned none
+	 * @throws SQLException if no connection is available or the query fails
+	 */
+	public static <T> List<T> query(String sql, RowMapperFactory<T> factory, Object... params) throws SQLException {
+		try (Connection conn = readConnection();
+				PreparedStatement stmt = conn.prepareStatement(sql)) {
+			bind(stmt, params);
+			try (ResultSet rs = stmt.executeQuery()) {
+				List<T> rows = new ArrayList<>();
+				if (rs.next()) {
+					RowMapper<T> mapper = factory.create(ColumnIndex.of(rs));
+					do {
+						rows.add(mapper.mapRow(rs));
+					} while (rs.next());
+				}
+				return rows;
+			}
+		}
+	}
+
+	/**
+	 * Runs a query and maps its first row.
+	 *
+	 * @param sql     the SQL with {@code ?} placeholders
+	 * @param factory creates the row mapper
+	 * @param params  the parameter values
+	 * @param <T>     the mapped type
+	 * @return the mapped first row, or null when the query returned none
+	 * @throws SQLException if no connection is available or the query fails
+	 */
+	public static <T> T queryOne(String sql, RowMapperFactory<T> factory, Object... params) throws SQLException {
+		try (Connection conn = readConnection();
+				PreparedStatement stmt = conn.prepareStatement(sql)) {
+			bind(stmt, params);
+			stmt.setMaxRows(1);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (!rs.next()) {
+					return null;
+				}
+				return factory.create(ColumnIndex.of(rs)).mapRow(rs);
+			}
+		}
+	}
+
+	/**
+	 * Runs a query on the primary and maps every row, for reads that must see
+	 * the latest committed state (see
+	 * {@link DatabaseUtility#connectToPrimaryForRead()}).
+	 *
+	 * @param sql     the SQL with {@code ?} placeholders
+	 * @param factory creates the row mapper
+	 * @param params  the parameter values
+	 * @param <T>     the mapped type
+	 * @return the mapped rows, empty when the query returned none
+	 * @throws SQLException if no connection is available or the query fails
+	 */
+	public static <T> List<T> queryPrimary(String sql, RowMapperFactory<T> factory, Object... params) throws SQLException {
+		Connection conn = DatabaseUtility.connectToPrimaryForRead();
+		if (conn == null) {
+			throw new SQLException("No database connection available");
+		}
+		try (Connection closing = conn;
+				PreparedStatement stmt = closing.prepareStatement(sql)) {
+			bind(stmt, params);
+			try (ResultSet rs = stmt.executeQuery()) {
+				List<T> rows = new ArrayList<>();
+				if (rs.next()) {
+					RowMapper<T> mapper = factory.create(ColumnIndex.of(rs));
+					do {
+						rows.add(mapper.mapRow(rs));
+					} while (rs.next());
+				}
+				return rows;
+			}
+		}
+	}
+
+	/**
+	 * Fetches many rows by id in one round trip. The SQL takes the ids as one
+	 * array parameter, typically {@code SELECT * FROM t WHERE id = ANY(?)}.
+	 *
+	 * @param sql     the SQL with a single {@code ?} placeholder for the ids
+	 * @param ids     the ids; duplicates are sent once
+	 * @param factory creates the row mapper
+	 * @param idOf    returns the id of a mapped row
+	 * @param <T>     the mapped type
+	 * @return the rows found, by id; ids without a row are absent
+	 * @throws SQLException if no connection is available or the query fails
+	 */
+	public static <T> Map<Integer, T> queryByIds(String sql, Collection<Integer> ids, RowMapperFactory<T> factory,
+			ToIntFunction<? super T> idOf) throws SQLException {
+		Map<Integer, T> rowsById = new LinkedHashMap<>();
+		if (ids.isEmpty()) {
+			return rowsById;
+		}
+		for (T row : query(sql, factory, new LinkedHashSet<>(ids))) {
+			rowsById.put(idOf.applyAsInt(row), row);
+		}
+		return rowsById;
+	}
+
+	/**
+	 * Runs a query and hands every mapped row to the consumer as it is read.
+	 *
+	 * @param sql      the SQL with {@code ?} placeholders
+	 * @param factory  creates the row mapper
+	 * @param consumer receives the rows
+	 * @param params   the parameter values
+	 * @param <T>      the mapped type
+	 * @return the number of rows
+	 * @throws SQLException if no connection is available or the query fails
+	 */
+	public static <T> long forEach(String sql, RowMapperFactory<T> factory, Consumer<? super T> consumer, Object... params)
+			throws SQLException {
+		try (Stream<T> rows = stream(sql, factory, params)) {
+			long[] count = new long[1];
+			rows.forEach(row -> {
+				consumer.accept(row);
+				count[0]++;
+			});
+			return count[0];
+		} catch (UncheckedSQLException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Runs a query and returns a lazy stream over the mapped rows. The stream
+	 * holds a connection until it is closed, so it must be used in a
+	 * try-with-resources block; it is also closed once fully consumed.
+	 *
+	 * @param sql     the SQL with {@code ?} placeholders
+	 * @param factory creates the row mapper
+	 * @param params  the parameter values
+	 * @param <T>     the mapped type
+	 * @return the stream of rows; reading it throws
+	 *         {@link UncheckedSQLException} if fetching a row fails
+	 * @throws SQLException if no connection is available or the query fails
+	 */
+	public static <T> Stream<T> stream(String sql, RowMapperFactory<T> factory, Object... params) throws SQLException {
+		return stream(readConnection(), sql, factory, params);
+	}
+
+	/**
+	 * Runs a query on the primary and hands every mapped row to the consumer
+	 * as it is read, for loads that must see the latest committed state
+	 * without holding all rows in memory.
+	 *
+	 * @param sql      the SQL with {@code ?} placeholders
+	 * @param factory  creates the row mapper
+	 * @param consumer receives the rows
+	 * @param params   the parameter values
+	 * @param <T>      the mapped type
+	 * @return the number of rows
+	 * @throws SQLException if no connection is available or the query fails
+	 */
+	public static <T> long forEachPrimary(String sql, RowMapperFactory<T> factory, Consumer<? super T> consumer,
+			Object... params) throws SQLException {
+		Connection conn = DatabaseUtility.connectToPrimaryForRead();
+		if (conn == null) {
+			throw new SQLException("No database connection available");
+		}
+		try (Stream<T> rows = stream(conn, sql, factory, params)) {
+			long[] count = new long[1];
+			rows.forEach(row -> {
+				consumer.accept(row);
+				count[0]++;
+			});
+			return count[0];
+		} catch (UncheckedSQLException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static <T> Stream<T> stream(Connection conn, String sql, RowMapperFactory<T> factory, Object... params)
+			throws SQLException {
+		CursorSpliterator<T> spliterator = new CursorSpliterator<>(conn, factory);
+		try {
+			spliterator.open(sql, params);
+		} catch (SQLException | RuntimeException e) {
+			spliterator.close();
+			throw e;
+		}
+		return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+	}
+
+	/**
+	 * Runs an INSERT, UPDATE or DELETE on the primary.
+	 *
+	 * @param sql    the SQL with {@code ?} placeholders
+	 * @param params the parameter values
+	 * @return the number of affected rows
+	 * @throws SQLException if no connection is available or the statement fails
+	 */
+	public static int update(String sql, Object... params) throws SQLException {
+		try (Connection conn = writeConnection();
+				PreparedStatement stmt = conn.prepareStatement(sql)) {
+			bind(stmt, params);
+			return stmt.executeUpdate();
+		}
+	}
+
+	/**
+	 * Binds the parameter values to the statement.
+	 *
+	 * @param stmt   the statement
+	 * @param params the values, in placeholder order
+	 * @throws SQLException if a value cannot be bound
+	 */
+	public static void bind(PreparedStatement stmt, Object... params) throws SQLException {
+		for (int i = 0; i < params.length; i++) {
+			Object param = params[i];
+			if (param == null) {
+				stmt.setNull(i + 1, Types.NULL);
+			} else if (param instanceof Enum) {
+				stmt.setString(i + 1, param.toString());
+			} else if (param instanceof Collection) {
+				stmt.setArray(i + 1, toArray(stmt.getConnection(), (Collection<?>) param));
+			} else {
+				stmt.setObject(i + 1, param);
+			}
+		}
+	}
+
+	private static Array toArray(Connection conn, Collection<?> values) throws SQLException {
+		Object first = values.isEmpty() ? null : values.iterator().next();
+		String type;
+		if (first == null || first instanceof Integer) {
+			type = "integer";
+		} else if (first instanceof Long) {
+			type = "bigint";
+		} else if (first instanceof String) {
+			type = "text";
+		} else {
+			throw new SQLException("Unsupported array element type: " + first.getClass().getName());
+		}
+		return conn.createArrayOf(type, values.toArray());
+	}
+
+	static Connection readConnection() throws SQLException {
+		Connection conn = DatabaseUtility.connectForRead();
+		if (conn == null) {
+			throw new SQLException("No database connection available");
+		}
+		return conn;
+	}
+
+	static Connection writeConnection() throws SQLException {
+		Connection conn = DatabaseUtility.connect();
+		if (conn == null) {
+			throw new SQLException("No database connection available");
+		}
+		return conn;
+	}
+
+	/**
+	 * Reads a result set row by row and releases the statement, the
+	 * transaction and the connection when closed or exhausted.
+	 */
+	private static final class CursorSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+		private final Connection conn;
+		private final RowMapperFactory<T> factory;
+		private boolean restoreAutoCommit;
+		private PreparedStatement stmt;
+		private ResultSet rs;
+		private RowMapper<T> mapper;
+		private boolean closed;
+
+		private CursorSpliterator(Connection conn, RowMapperFactory<T> factory) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.conn = conn;
+			this.factory = factory;
+		}
+
+		private void open(String sql, Object... params) throws SQLException {
+			if (conn.getAutoCommit()) {
+				// the driver only uses a cursor inside a transaction
+				conn.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+			stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(FETCH_SIZE);
+			bind(stmt, params);
+			rs = stmt.executeQuery();
+			mapper = factory.create(ColumnIndex.of(rs));
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (closed) {
+				return false;
+			}
+			try {
+				if (!rs.next()) {
+					close();
+					return false;
+				}
+				action.accept(mapper.mapRow(rs));
+				return true;
+			} catch (SQLException e) {
+				close();
+				throw new UncheckedSQLException(e);
+			}
+		}
+
+		private void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				if (rs != null) {
+					rs.close();
+				}
+				if (stmt != null) {
+					stmt.close();
+				}
+				if (restoreAutoCommit) {
+					conn.commit();
+					conn.setAutoCommit(true);
+				}
+			} catch (SQLException e) {
+				LOGGER.log(Level.WARNING, "Error releasing streamed query", e);
+			} finally {
+				DatabaseUtility.disconnect(conn);
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks recent writes so that reads issued after a write are not routed to a
+ * read replica that may not have caught up yet (read-your-writes).
+ *
+ * <p>
+ * A consistency scope is bound to the current thread for the duration of a
+ * request with {@link #begin(String)} and {@link #end()}; the key is usually
+ * the HTTP session id. Whenever {@link DatabaseUtility#connect()} hands out a
+ * primary connection the write is recorded:
+ * </p>
+ * <ul>
+ * <li>for the rest of the current request all reads go to the primary;</li>
+ * <li>for {@code database.replica.stickinessMs} (default 5000 ms) all reads
+ * of later requests with the same key go to the primary as well.</li>
+ * </ul>
+ */
+public final class ReadConsistency {
+
+	private static final long STICKINESS_MS = ApplicationConfig.getLong("database.replica.stickinessMs", 5000);
+	private static final int SWEEP_THRESHOLD = 10000;
+
+	private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+	private static final Map<String, Long> LAST_WRITE_BY_KEY = new ConcurrentHashMap<>();
+
+	private ReadConsistency() {
+	}
+
+	/**
+	 * Binds a consistency scope to the current thread.
+	 *
+	 * @param key the session key, or null when the caller has no session
+	 */
+	public static void begin(String key) {
+		CURRENT.set(new Scope(key));
+	}
+
+	/**
+	 * Binds a consistency scope to the current thread, carrying over whether the
+	 * originating thread already wrote. Used when work of a request continues on
+	 * another thread.
+	 *
+	 * @param key   the session key, or null when the caller has no session
+	 * @param wrote whether the originating request already wrote
+	 */
+	public static void begin(String key, boolean wrote) {
+		Scope scope = new Scope(key);
+		scope.wrote = wrote;
+		CURRENT.set(scope);
+	}
+
+	/**
+	 * Removes the scope bound by {@link #begin(String)}.
+	 */
+	public static void end() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Returns the session key of the current scope.
+	 *
+	 * @return the key, or null when no scope or no key is bound
+	 */
+	public static String currentKey() {
+		Scope scope = CURRENT.get();
+		return scope == null ? null : scope.key;
+	}
+
+	/**
+	 * Tells whether the current request has written to the primary.
+	 *
+	 * @return true after {@link #recordWrite()} was called in the current scope
+	 */
+	public static boolean hasWritten() {
+		Scope scope = CURRENT.get();
+		return scope != null && scope.wrote;
+	}
+
+	/**
+	 * Records that the current thread is about to write to the primary.
+	 */
+	public static void recordWrite() {
+		Scope scope = CURRENT.get();
+		if (scope == null) {
+			return;
+		}
+		scope.wrote = true;
+		if (scope.key != null) {
+			LAST_WRITE_BY_KEY.put(scope.key, System.currentTimeMillis());
+			if (LAST_WRITE_BY_KEY.size() > SWEEP_THRESHOLD) {
+				sweep();
+			}
+		}
+	}
+
+	/**
+	 * Tells whether reads of the current thread must go to the primary.
+	 *
+	 * @return true when the current request or, within the stickiness window,
+	 *         the current session has written
+	 */
+	public static boolean requiresPrimary() {
+		Scope scope = CURRENT.get();
+		if (scope == null) {
+			return false;
+		}
+		if (scope.wrote) {
+			return true;
+		}
+		if (scope.key == null) {
+			return false;
+		}
+		Long lastWrite = LAST_WRITE_BY_KEY.get(scope.key);
+		return lastWrite != null && System.currentTimeMillis() - lastWrite < STICKINESS_MS;
+	}
+
+	private static void sweep() {
+		long cutoff = System.currentTimeMillis() - STICKINESS_MS;
+		Iterator<Long> iterator = LAST_WRITE_BY_KEY.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() < cutoff) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Per-request state.
+	 */
+	private static final class Scope {
+
+		private final String key;
+		private boolean wrote;
+
+		private Scope(String key) {
+			this.key = key;
+		}
+	}
+}
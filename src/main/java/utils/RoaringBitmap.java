@@ -0,0 +1,541 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of ints in the layout of Roaring bitmaps.
+ *
+ * <p>
+ * The values are split by their upper 16 bits into chunks of 65536. Each
+ * chunk that holds values is one container: a sorted array of the lower 16
+ * bits while it holds at most 4096 values, and a 65536-bit bitmap (8 KB)
+ * once it holds more, so no container takes more than 8 KB and sparse
+ * chunks take two bytes per value. The containers are kept sorted by their
+ * upper bits and found by binary search. Values are compared unsigned. Not
+ * thread-safe.
+ * </p>
+ */
+public final class RoaringBitmap {
+
+	private static final int ARRAY_MAX = 4096;
+
+	private char[] keys;
+	private Container[] containers;
+	private int size;
+
+	public RoaringBitmap() {
+		keys = new char[4];
+		containers = new Container[4];
+	}
+
+	private RoaringBitmap(int capacity) {
+		keys = new char[Math.max(4, capacity)];
+		containers = new Container[keys.length];
+	}
+
+	/**
+	 * @param values the values
+	 * @return a bitmap holding the values
+	 */
+	public static RoaringBitmap of(int... values) {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		for (int value : values) {
+			bitmap.add(value);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param value the value
+	 * @return true if it was not present
+	 */
+	public boolean add(int value) {
+		char high = (char) (value >>> 16);
+		int index = find(high);
+		if (index < 0) {
+			index = -index - 1;
+			insert(index, high, new ArrayContainer());
+		}
+		Container container = containers[index];
+		int before = container.cardinality();
+		containers[index] = container.add((char) value);
+		return containers[index].cardinality() > before;
+	}
+
+	/**
+	 * Removes a value.
+	 *
+	 * @param value the value
+	 * @return true if it was present
+	 */
+	public boolean remove(int value) {
+		int index = find((char) (value >>> 16));
+		if (index < 0) {
+			return false;
+		}
+		Container container = containers[index];
+		int before = container.cardinality();
+		container = container.remove((char) value);
+		if (container.cardinality() == 0) {
+			delete(index);
+		} else {
+			containers[index] = container;
+		}
+		return container.cardinality() < before;
+	}
+
+	/**
+	 * @param value the value
+	 * @return whether the value is present
+	 */
+	public boolean contains(int value) {
+		int index = find((char) (value >>> 16));
+		return index >= 0 && containers[index].contains((char) value);
+	}
+
+	/**
+	 * @return the number of values
+	 */
+	public int getCardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality();
+		}
+		return cardinality;
+	}
+
+	/**
+	 * @return whether no value is present
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Computes the intersection of two bitmaps.
+	 *
+	 * @param a a bitmap
+	 * @param b another bitmap
+	 * @return a new bitmap of the values present in both
+	 */
+	public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+		RoaringBitmap result = new RoaringBitmap(Math.min(a.size, b.size));
+		int i = 0;
+		int j = 0;
+		while (i < a.size && j < b.size) {
+			if (a.keys[i] < b.keys[j]) {
+				i++;
+			} else if (a.keys[i] > b.keys[j]) {
+				j++;
+			} else {
+				Container container = a.containers[i].and(b.containers[j]);
+				if (container.cardinality() > 0) {
+					result.insert(result.size, a.keys[i], container);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the union of two bitmaps.
+	 *
+	 * @param a a bitmap
+	 * @param b another bitmap
+	 * @return a new bitmap of the values present in either
+	 */
+	public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+		RoaringBitmap result = new RoaringBitmap(a.size + b.size);
+		int i = 0;
+		int j = 0;
+		while (i < a.size || j < b.size) {
+			if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+				result.insert(result.size, a.keys[i], a.containers[i].copy());
+				i++;
+			} else if (i == a.size || a.keys[i] > b.keys[j]) {
+				result.insert(result.size, b.keys[j], b.containers[j].copy());
+				j++;
+			} else {
+				result.insert(result.size, a.keys[i], a.containers[i].or(b.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return an independent copy
+	 */
+	public RoaringBitmap copy() {
+		RoaringBitmap copy = new RoaringBitmap(size);
+		for (int i = 0; i < size; i++) {
+			copy.insert(i, keys[i], containers[i].copy());
+		}
+		return copy;
+	}
+
+	/**
+	 * Passes every value to the consumer in ascending unsigned order.
+	 *
+	 * @param consumer receives the values
+	 */
+	public void forEach(IntConsumer consumer) {
+		for (int i = 0; i < size; i++) {
+			containers[i].forEach(keys[i] << 16, consumer);
+		}
+	}
+
+	/**
+	 * @return the values in ascending unsigned order
+	 */
+	public int[] toArray() {
+		int[] values = new int[getCardinality()];
+		int[] position = new int[1];
+		forEach(value -> values[position[0]++] = value);
+		return values;
+	}
+
+	/**
+	 * @return the approximate memory used by the containers in bytes
+	 */
+	public long getSizeInBytes() {
+		long bytes = keys.length * 2L + containers.length * 8L;
+		for (int i = 0; i < size; i++) {
+			bytes += containers[i].sizeInBytes();
+		}
+		return bytes;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof RoaringBitmap)) {
+			return false;
+		}
+		RoaringBitmap other = (RoaringBitmap) o;
+		return Arrays.equals(toArray(), other.toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	private int find(char high) {
+		int low = 0;
+		int top = size - 1;
+		while (low <= top) {
+			int mid = (low + top) >>> 1;
+			char key = keys[mid];
+			if (key < high) {
+				low = mid + 1;
+			} else if (key > high) {
+				top = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private void insert(int index, char high, Container container) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1, size - index);
+		keys[index] = high;
+		containers[index] = container;
+		size++;
+	}
+
+	private void delete(int index) {
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+		size--;
+		containers[size] = null;
+	}
+
+	/**
+	 * The lower 16 bits of the values in one chunk. Mutating methods return
+	 * the container to keep, which changes kind at the array limit.
+	 */
+	private abstract static class Container {
+
+		abstract Container add(char value);
+
+		abstract Container remove(char value);
+
+		abstract boolean contains(char value);
+
+		abstract int cardinality();
+
+		abstract Container and(Container other);
+
+		abstract Container or(Container other);
+
+		abstract Container copy();
+
+		abstract void forEach(int high, IntConsumer consumer);
+
+		abstract int sizeInBytes();
+	}
+
+	private static final class ArrayContainer extends Container {
+
+		private char[] values;
+		private int cardinality;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add(char value) {
+			int index = Arrays.binarySearch(values, 0, cardinality, value);
+			if (index >= 0) {
+				return this;
+			}
+			if (cardinality == ARRAY_MAX) {
+				return toBitmap().add(value);
+			}
+			index = -index - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+			}
+			System.arraycopy(values, index, values, index + 1, cardinality - index);
+			values[index] = value;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		Container remove(char value) {
+			int index = Arrays.binarySearch(values, 0, cardinality, value);
+			if (index >= 0) {
+				System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		Container and(Container other) {
+			char[] result = new char[Math.min(cardinality, other.cardinality())];
+			int n = 0;
+			if (other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				int i = 0;
+				int j = 0;
+				while (i < cardinality && j < array.cardinality) {
+					if (values[i] < array.values[j]) {
+						i++;
+					} else if (values[i] > array.values[j]) {
+						j++;
+					} else {
+						result[n++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			} else {
+				for (int i = 0; i < cardinality; i++) {
+					if (other.contains(values[i])) {
+						result[n++] = values[i];
+					}
+				}
+			}
+			return new ArrayContainer(result, n);
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.or(this);
+			}
+			ArrayContainer array = (ArrayContainer) other;
+			char[] result = new char[cardinality + array.cardinality];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < cardinality || j < array.cardinality) {
+				if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+					result[n++] = values[i++];
+				} else if (i == cardinality || values[i] > array.values[j]) {
+					result[n++] = array.values[j++];
+				} else {
+					result[n++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			ArrayContainer union = new ArrayContainer(result, n);
+			return n > ARRAY_MAX ? union.toBitmap() : union;
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, Math.max(4, cardinality)), cardinality);
+		}
+
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int i = 0; i < cardinality; i++) {
+				consumer.accept(high | values[i]);
+			}
+		}
+
+		@Override
+		int sizeInBytes() {
+			return values.length * 2 + 16;
+		}
+
+		private BitmapContainer toBitmap() {
+			BitmapContainer bitmap = new BitmapContainer();
+			for (int i = 0; i < cardinality; i++) {
+				bitmap.set(values[i]);
+			}
+			return bitmap;
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+
+		private final long[] words;
+		private int cardinality;
+
+		BitmapContainer() {
+			this(new long[1024], 0);
+		}
+
+		private BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		void set(char value) {
+			long before = words[value >>> 6];
+			long after = before | (1L << value);
+			words[value >>> 6] = after;
+			if (after != before) {
+				cardinality++;
+			}
+		}
+
+		@Override
+		Container add(char value) {
+			set(value);
+			return this;
+		}
+
+		@Override
+		Container remove(char value) {
+			long before = words[value >>> 6];
+			long after = before & ~(1L << value);
+			if (after == before) {
+				return this;
+			}
+			words[value >>> 6] = after;
+			cardinality--;
+			return cardinality <= ARRAY_MAX ? toArrayContainer() : this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			BitmapContainer bitmap = (BitmapContainer) other;
+			long[] result = new long[1024];
+			int n = 0;
+			for (int i = 0; i < 1024; i++) {
+				result[i] = words[i] & bitmap.words[i];
+				n += Long.bitCount(result[i]);
+			}
+			BitmapContainer intersection = new BitmapContainer(result, n);
+			return n <= ARRAY_MAX ? intersection.toArrayContainer() : intersection;
+		}
+
+		@Override
+		Container or(Container other) {
+			BitmapContainer union = (BitmapContainer) copy();
+			if (other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				array.forEach(0, value -> union.set((char) value));
+				return union;
+			}
+			BitmapContainer bitmap = (BitmapContainer) other;
+			int n = 0;
+			for (int i = 0; i < 1024; i++) {
+				union.words[i] |= bitmap.words[i];
+				n += Long.bitCount(union.words[i]);
+			}
+			union.cardinality = n;
+			return union;
+		}
+
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int i = 0; i < 1024; i++) {
+				long word = words[i];
+				while (word != 0) {
+					consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+
+		@Override
+		int sizeInBytes() {
+			return 1024 * 8 + 16;
+		}
+
+		private ArrayContainer toArrayContainer() {
+			char[] values = new char[Math.max(4, cardinality)];
+			int[] n = new int[1];
+			forEach(0, value -> values[n[0]++] = (char) value);
+			return new ArrayContainer(values, cardinality);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package utils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a {@link ResultSet} to an object.
+ *
+ * <p>
+ * Implementations read columns by index. The indexes are resolved once per
+ * result set by the {@link RowMapperFactory} that created the mapper, so
+ * mapping a row involves no column name lookup.
+ * </p>
+ *
+ * @param <T> the mapped type
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+	/**
+	 * Maps the current row. Must not move the cursor.
+	 *
+	 * @param rs the result set positioned on a row
+	 * @return the mapped object
+	 * @throws SQLException if a column cannot be read
+	 */
+	T mapRow(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,30 @@
+package utils;
+
+import java.sql.SQLException;
+
+/**
+ * Creates a {@link RowMapper} for one result set, after resolving the column
+ * indexes the mapper needs.
+ *
+ * <pre>{@code
+ * RowMapperFactory<ObjectType> factory = columns -> {
+ * 	int id = columns.indexOf("id");
+ * 	int name = columns.indexOf("name");
+ * 	return rs -> new ObjectType(rs.getInt(id), rs.getString(name), ...);
+ * };
+ * }</pre>
+ *
+ * @param <T> the mapped type
+ */
+@FunctionalInterface
+public interface RowMapperFactory<T> {
+
+	/**
+	 * Resolves the columns and returns the mapper for the result set.
+	 *
+	 * @param columns the columns of the result set
+	 * @return the row mapper
+	 * @throws SQLException if a required column is missing
+	 */
+	RowMapper<T> create(ColumnIndex columns) throws SQLException;
+}
@@ -0,0 +1,352 @@
+package utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.json.JSONObject;
+
+/**
+ * Size- and time-bounded cache with the W-TinyLFU eviction policy.
+ *
+ * <p>
+ * New entries enter a small LRU window (1% of the capacity). Entries leaving
+ * the window compete with the least recently used entry of the main space for
+ * admission: the one that {@link FrequencySketch} has seen more often stays.
+ * The main space is a segmented LRU whose entries move from probation to the
+ * protected segment (80% of the main space) when read again. Bursts of keys
+ * read only once therefore cannot push out the frequently read entries. Every
+ * entry expires {@code ttlMs} after it was written.
+ * </p>
+ *
+ * <p>
+ * Each queue is a doubly linked list through the entries, so moving,
+ * admitting and evicting an entry takes constant time. All operations take
+ * the cache's lock; loads run outside of it. A value
+ * loaded while the key was invalidated is returned but not cached, so a read
+ * that raced with a write cannot put back the old value.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class TinyLfuCache<K, V> {
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final int maximumSize;
+	private final int windowMaximum;
+	private final int protectedMaximum;
+	private final long ttlNanos;
+
+	private final Map<K, Node<K, V>> data = new HashMap<>();
+	private final AccessQueue<K, V> window = new AccessQueue<>();
+	private final AccessQueue<K, V> probation = new AccessQueue<>();
+	private final AccessQueue<K, V> protectedSegment = new AccessQueue<>();
+	private final FrequencySketch sketch;
+
+	private long invalidations;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+
+	/**
+	 * @param maximumSize the maximum number of entries
+	 * @param ttlMs       time after which an entry expires, 0 for never
+	 */
+	public TinyLfuCache(int maximumSize, long ttlMs) {
+		this.maximumSize = Math.max(1, maximumSize);
+		this.windowMaximum = Math.max(1, this.maximumSize / 100);
+		this.protectedMaximum = (int) ((this.maximumSize - windowMaximum) * 0.8);
+		this.ttlNanos = ttlMs <= 0 ? 0 : ttlMs * 1_000_000L;
+		this.sketch = new FrequencySketch(this.maximumSize);
+	}
+
+	/**
+	 * Returns the cached value, loading and caching it on a miss.
+	 *
+	 * @param key    the key
+	 * @param loader loads the value; may return null, which is not cached
+	 * @return the value, or null
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		long generation;
+		synchronized (this) {
+			V value = getIfPresent(key);
+			if (value != null) {
+				return value;
+			}
+			generation = invalidations;
+		}
+		V loaded = loader.apply(key);
+		if (loaded != null) {
+			synchronized (this) {
+				if (generation == invalidations) {
+					put(key, loaded);
+				}
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Returns the cached value.
+	 *
+	 * @param key the key
+	 * @return the value, or null when absent or expired
+	 */
+	public synchronized V getIfPresent(K key) {
+		sketch.increment(key);
+		Node<K, V> node = data.get(key);
+		if (node == null) {
+			misses++;
+			return null;
+		}
+		if (isExpired(node)) {
+			remove(node);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		onAccess(node);
+		return node.value;
+	}
+
+	/**
+	 * Caches a value, replacing the current one.
+	 *
+	 * @param key   the key
+	 * @param value the value
+	 */
+	public synchronized void put(K key, V value) {
+		Node<K, V> node = data.get(key);
+		if (node != null) {
+			node.value = value;
+			node.writtenAt = System.nanoTime();
+			onAccess(node);
+			return;
+		}
+		node = new Node<>(key, value, System.nanoTime());
+		data.put(key, node);
+		window.add(node);
+		evict();
+	}
+
+	/**
+	 * Removes a key. Loads of the key that are still running are not cached.
+	 *
+	 * @param key the key
+	 */
+	public synchronized void invalidate(K key) {
+		invalidations++;
+		Node<K, V> node = data.get(key);
+		if (node != null) {
+			remove(node);
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void invalidateAll() {
+		invalidations++;
+		data.clear();
+		window.clear();
+		probation.clear();
+		protectedSegment.clear();
+	}
+
+	/**
+	 * @return the number of cached entries, including expired ones not yet
+	 *         removed
+	 */
+	public synchronized int size() {
+		return data.size();
+	}
+
+	/**
+	 * Tells which segment holds a key, for tests.
+	 *
+	 * @param key the key
+	 * @return "window", "probation" or "protected", or null when absent
+	 */
+	synchronized String segmentOf(K key) {
+		Node<K, V> node = data.get(key);
+		if (node == null) {
+			return null;
+		}
+		return node.queue == WINDOW ? "window" : node.queue == PROBATION ? "probation" : "protected";
+	}
+
+	/**
+	 * Returns the counters of the cache.
+	 *
+	 * @return size, capacity, hits, misses, hit rate, evictions, expirations
+	 *         and invalidations
+	 */
+	public synchronized JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		json.put("size", data.size());
+		json.put("maximumSize", maximumSize);
+		json.put("hits", hits);
+		json.put("misses", misses);
+		long requests = hits + misses;
+		json.put("hitRate", requests == 0 ? 0.0 : (double) hits / requests);
+		json.put("evictions", evictions);
+		json.put("expirations", expirations);
+		json.put("invalidations", invalidations);
+		return json;
+	}
+
+	private boolean isExpired(Node<K, V> node) {
+		return ttlNanos > 0 && System.nanoTime() - node.writtenAt > ttlNanos;
+	}
+
+	private void onAccess(Node<K, V> node) {
+		switch (node.queue) {
+		case WINDOW:
+			window.moveToEnd(node);
+			break;
+		case PROBATION:
+			probation.remove(node);
+			node.queue = PROTECTED;
+			protectedSegment.add(node);
+			if (protectedSegment.size() > protectedMaximum) {
+				Node<K, V> demoted = protectedSegment.first();
+				protectedSegment.remove(demoted);
+				demoted.queue = PROBATION;
+				probation.add(demoted);
+			}
+			break;
+		default:
+			protectedSegment.moveToEnd(node);
+			break;
+		}
+	}
+
+	private void evict() {
+		while (window.size() > windowMaximum) {
+			Node<K, V> candidate = window.first();
+			window.remove(candidate);
+			candidate.queue = PROBATION;
+			probation.add(candidate);
+		}
+		while (data.size() > maximumSize) {
+			Node<K, V> victim = probation.size() == 0 ? protectedSegment.first() : probation.first();
+			Node<K, V> candidate = probation.last();
+			Node<K, V> evicted = victim;
+			if (candidate != null && candidate != victim && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+				evicted = candidate;
+			}
+			remove(evicted);
+			evictions++;
+		}
+	}
+
+	private void remove(Node<K, V> node) {
+		data.remove(node.key);
+		switch (node.queue) {
+		case WINDOW:
+			window.remove(node);
+			break;
+		case PROBATION:
+			probation.remove(node);
+			break;
+		default:
+			protectedSegment.remove(node);
+			break;
+		}
+	}
+
+	/**
+	 * A cached entry, the queue it is in and its neighbours there.
+	 */
+	private static final class Node<K, V> {
+
+		private final K key;
+		private V value;
+		private long writtenAt;
+		private int queue = WINDOW;
+		private Node<K, V> previous;
+		private Node<K, V> next;
+
+		private Node(K key, V value, long writtenAt) {
+			this.key = key;
+			this.value = value;
+			this.writtenAt = writtenAt;
+		}
+	}
+
+	/**
+	 * Entries from least to most recently used, linked through the nodes.
+	 */
+	private static final class AccessQueue<K, V> {
+
+		private Node<K, V> head;
+		private Node<K, V> tail;
+		private int size;
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * @return the least recently used entry, or null when empty
+		 */
+		Node<K, V> first() {
+			return head;
+		}
+
+		/**
+		 * @return the most recently used entry, or null when empty
+		 */
+		Node<K, V> last() {
+			return tail;
+		}
+
+		void add(Node<K, V> node) {
+			node.previous = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			size++;
+		}
+
+		void remove(Node<K, V> node) {
+			if (node.previous == null) {
+				head = node.next;
+			} else {
+				node.previous.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.previous;
+			} else {
+				node.next.previous = node.previous;
+			}
+			node.previous = null;
+			node.next = null;
+			size--;
+		}
+
+		void moveToEnd(Node<K, V> node) {
+			if (node != tail) {
+				remove(node);
+				add(node);
+			}
+		}
+
+		void clear() {
+			head = null;
+			tail = null;
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package utils;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps an {@link SQLException} where a checked exception cannot be thrown,
+ * such as while a {@link java.util.stream.Stream} over a result set is
+ * consumed.
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedSQLException(SQLException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	@Override
+	public synchronized SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+}
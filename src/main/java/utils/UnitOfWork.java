@@ -0,0 +1,291 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs several DAO calls as one database transaction on one connection.
+ *
+ * <p>
+ * While {@link #execute(Work)} runs, {@link DatabaseUtility#connect()} and
+ * {@link DatabaseUtility#connectForRead()} return the connection bound to the
+ * current thread instead of borrowing a new one, so the existing DAO methods
+ * take part in the transaction without any change. Closing that connection
+ * is a no-op; it is committed once and returned to the pool when the work
+ * completes.
+ * </p>
+ *
+ * <p>
+ * The DAO methods log and swallow {@link SQLException}s, so the unit of work
+ * watches the statements they create: the first statement that fails marks
+ * the unit of work rollback-only, and {@code execute} then rolls back and
+ * rethrows that exception. Callers can also call {@link #setRollbackOnly()}
+ * themselves, for example when a DAO method returns {@code false}.
+ * </p>
+ *
+ * <pre>{@code
+ * boolean created = UnitOfWork.execute(() -> {
+ * 	if (!useCaseDAO.createUseCase(useCase)) {
+ * 		UnitOfWork.setRollbackOnly();
+ * 		return false;
+ * 	}
+ * 	return useCaseActionDAO.createUseCaseAction(description, useCase, action);
+ * });
+ * }</pre>
+ *
+ * <p>
+ * A unit of work started while another one is active on the same thread joins
+ * the outer one. The binding is thread-local: work handed to other threads
+ * does not participate.
+ * </p>
+ */
+public final class UnitOfWork {
+
+	private static final Logger LOGGER = Logger.getLogger(UnitOfWork.class.getName());
+	private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+	private final Connection boundConnection;
+	private boolean rollbackOnly;
+	private SQLException failure;
+	private final List<Runnable> afterCommit = new ArrayList<>();
+
+	/**
+	 * A block of database work.
+	 *
+	 * @param <T> the result type
+	 */
+	@FunctionalInterface
+	public interface Work<T> {
+
+		T execute() throws SQLException;
+	}
+
+	private UnitOfWork(Connection connection) {
+		this.boundConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new BoundConnectionHandler(connection));
+	}
+
+	/**
+	 * Runs the work in a single transaction and commits it once.
+	 *
+	 * @param work the work to run
+	 * @param <T>  the result type
+	 * @return the result of the work
+	 * @throws SQLException if no connection is available, a statement of the
+	 *                      work failed, or the commit failed; the transaction is
+	 *                      rolled back in all these cases
+	 */
+	public static <T> T execute(Work<T> work) throws SQLException {
+		if (CURRENT.get() != null) {
+			return work.execute();
+		}
+		Connection connection = DatabaseUtility.connect();
+		if (connection == null) {
+			throw new SQLException("Unable to obtain a connection for the unit of work");
+		}
+		UnitOfWork unitOfWork = new UnitOfWork(connection);
+		CURRENT.set(unitOfWork);
+		try {
+			connection.setAutoCommit(false);
+			T result = work.execute();
+			if (unitOfWork.rollbackOnly) {
+				connection.rollback();
+				if (unitOfWork.failure != null) {
+					throw new SQLException("Unit of work rolled back after a failed statement", unitOfWork.failure);
+				}
+			} else {
+				connection.commit();
+				unitOfWork.runAfterCommit();
+			}
+			return result;
+		} catch (SQLException | RuntimeException | Error e) {
+			rollbackQuietly(connection);
+			throw e;
+		} finally {
+			CURRENT.remove();
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				LOGGER.log(Level.WARNING, "Error restoring auto-commit", e);
+			}
+			DatabaseUtility.disconnect(connection);
+		}
+	}
+
+	/**
+	 * Tells whether the current thread is inside a unit of work.
+	 *
+	 * @return true while {@link #execute(Work)} runs on this thread
+	 */
+	public static boolean isActive() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * Returns the connection bound to the current unit of work.
+	 *
+	 * @return the bound connection, or null outside a unit of work
+	 */
+	public static Connection currentConnection() {
+		UnitOfWork unitOfWork = CURRENT.get();
+		return unitOfWork == null ? null : unitOfWork.boundConnection;
+	}
+
+	/**
+	 * Marks the current unit of work so that it is rolled back instead of
+	 * committed.
+	 *
+	 * @throws IllegalStateException outside a unit of work
+	 */
+	public static void setRollbackOnly() {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork == null) {
+			throw new IllegalStateException("No unit of work is active");
+		}
+		unitOfWork.rollbackOnly = true;
+	}
+
+	/**
+	 * Tells whether the current unit of work will be rolled back.
+	 *
+	 * @return true when marked rollback-only
+	 */
+	public static boolean isRollbackOnly() {
+		UnitOfWork unitOfWork = CURRENT.get();
+		return unitOfWork != null && unitOfWork.rollbackOnly;
+	}
+
+	/**
+	 * Registers an action to run once the current unit of work has committed,
+	 * for example publishing change notifications that must not be seen
+	 * before the data is visible to other connections. The action is dropped
+	 * if the unit of work rolls back. Outside a unit of work it runs at once.
+	 *
+	 * @param action the action; failures are logged
+	 */
+	public static void afterCommit(Runnable action) {
+		UnitOfWork unitOfWork = CURRENT.get();
+		if (unitOfWork == null) {
+			action.run();
+		} else {
+			unitOfWork.afterCommit.add(action);
+		}
+	}
+
+	private void runAfterCommit() {
+		// the binding is released first, so actions run on their own connections
+		CURRENT.remove();
+		for (Runnable action : afterCommit) {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.SEVERE, "After-commit action failed", e);
+			}
+		}
+	}
+
+	private static void rollbackQuietly(Connection connection) {
+		try {
+			connection.rollback();
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "Error rolling back unit of work", e);
+		}
+	}
+
+	private void statementFailed(SQLException e) {
+		rollbackOnly = true;
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Connection handed to DAOs inside the unit of work. Transaction control is
+	 * reserved to {@link UnitOfWork#execute(Work)}.
+	 */
+	private final class BoundConnectionHandler implements InvocationHandler {
+
+		private final Connection delegate;
+
+		private BoundConnectionHandler(Connection delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				return null;
+			case "isClosed":
+				return delegate.isClosed();
+			case "commit":
+			case "rollback":
+			case "setAutoCommit":
+				throw new SQLException("Transaction is managed by the active unit of work");
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				break;
+			}
+			Object result;
+			try {
+				result = method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof SQLException) {
+					statementFailed((SQLException) e.getCause());
+				}
+				throw e.getCause();
+			}
+			if (result instanceof Statement && method.getReturnType().isInterface()) {
+				return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+						new Class<?>[] { method.getReturnType() }, new StatementHandler(result));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Records failures of statements created inside the unit of work.
+	 */
+	private final class StatementHandler implements InvocationHandler {
+
+		private final Object delegate;
+
+		private StatementHandler(Object delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getConnection":
+				return boundConnection;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				break;
+			}
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof SQLException) {
+					statementFailed((SQLException) e.getCause());
+				}
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+/**
+ * Buffers writes in memory and flushes them in batches, keeping only the
+ * latest value per key.
+ *
+ * <p>
+ * A value put while an earlier one for the same key is still pending replaces
+ * it, so a burst of changes to one key costs a single write. Pending values
+ * are handed to the flush function every {@code flushIntervalMs}, or as soon
+ * as {@code maxPending} keys are pending. A flush that fails is retried on the
+ * next run; values put in the meantime win over the failed ones.
+ * </p>
+ *
+ * <p>
+ * Pending values are lost if the JVM dies before they are flushed; callers
+ * should only buffer writes where that is acceptable. {@link #close()} flushes
+ * what is left.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class WriteBehindBuffer<K, V> implements AutoCloseable {
+
+	private static final Logger LOGGER = Logger.getLogger(WriteBehindBuffer.class.getName());
+
+	/**
+	 * Writes a batch of values.
+	 *
+	 * @param <V> the value type
+	 */
+	@FunctionalInterface
+	public interface Flusher<V> {
+
+		/**
+		 * @param values the values to write, at most one per key
+		 * @return true if the values were written, false to retry them later
+		 */
+		boolean flush(List<V> values);
+	}
+
+	private final String name;
+	private final int maxPending;
+	private final Flusher<V> flusher;
+	private final ScheduledExecutorService scheduler;
+	private final Object flushLock = new Object();
+
+	private Map<K, V> pending = new LinkedHashMap<>();
+	private Map<K, V> inFlight = new LinkedHashMap<>();
+	private boolean closed;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong failedFlushes = new AtomicLong();
+
+	/**
+	 * Creates the buffer and starts its flush thread.
+	 *
+	 * @param name            names the flush thread and the log messages
+	 * @param flushIntervalMs time between scheduled flushes
+	 * @param maxPending      number of pending keys that triggers an early
+	 *                        flush
+	 * @param flusher         writes the values
+	 */
+	public WriteBehindBuffer(String name, long flushIntervalMs, int maxPending, Flusher<V> flusher) {
+		this.name = name;
+		this.maxPending = Math.max(1, maxPending);
+		this.flusher = flusher;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "write-behind-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = Math.max(1, flushIntervalMs);
+		scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queues a value, replacing a pending value of the same key.
+	 *
+	 * @param key   the key
+	 * @param value the value
+	 * @return false if the buffer is closed and the value was not queued
+	 */
+	public boolean put(K key, V value) {
+		boolean full;
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			if (pending.put(key, value) != null) {
+				coalesced.incrementAndGet();
+			}
+			full = pending.size() >= maxPending;
+		}
+		submitted.incrementAndGet();
+		if (full) {
+			try {
+				scheduler.execute(this::flushQuietly);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.FINE, "Early flush of " + name + " not scheduled", e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the pending value of a key. Values of a flush that is still
+	 * running count as pending, so readers never miss a value that is neither
+	 * buffered nor written yet.
+	 *
+	 * @param key the key
+	 * @return the value not yet written, or null
+	 */
+	public synchronized V getPending(K key) {
+		V value = pending.get(key);
+		return value != null ? value : inFlight.get(key);
+	}
+
+	/**
+	 * Returns the pending values whose key matches, see
+	 * {@link #getPending(Object)}.
+	 *
+	 * @param keyFilter selects the keys
+	 * @return the values not yet written, one per key
+	 */
+	public synchronized List<V> getPending(Predicate<? super K> keyFilter) {
+		Map<K, V> merged = new LinkedHashMap<>(inFlight);
+		merged.putAll(pending);
+		List<V> values = new ArrayList<>();
+		for (Map.Entry<K, V> entry : merged.entrySet()) {
+			if (keyFilter.test(entry.getKey())) {
+				values.add(entry.getValue());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Drops the pending value of a key, for a write that bypasses the buffer
+	 * and supersedes it. Waits for a running flush to finish, so a value that
+	 * was already being written cannot land after the caller's own write.
+	 *
+	 * @param key the key
+	 * @return the dropped value, or null if none was pending
+	 */
+	public V remove(K key) {
+		synchronized (flushLock) {
+			synchronized (this) {
+				return pending.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending values now, on the calling thread.
+	 *
+	 * @return true if nothing was pending or the values were written
+	 */
+	public boolean flush() {
+		synchronized (flushLock) {
+			Map<K, V> batch;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return true;
+				}
+				batch = pending;
+				pending = new LinkedHashMap<>();
+				inFlight = batch;
+			}
+			boolean success;
+			try {
+				success = flusher.flush(new ArrayList<>(batch.values()));
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.SEVERE, "Write-behind flush of " + name + " failed", e);
+				success = false;
+			}
+			flushes.incrementAndGet();
+			if (success) {
+				written.addAndGet(batch.size());
+				synchronized (this) {
+					inFlight = new LinkedHashMap<>();
+				}
+				return true;
+			}
+			failedFlushes.incrementAndGet();
+			requeue(batch);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the number of pending keys.
+	 *
+	 * @return the number of values not yet flushed
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Returns the counters of the buffer.
+	 *
+	 * @return pending keys, submitted and coalesced values, written values,
+	 *         flushes and failed flushes
+	 */
+	public JSONObject toJson() {
+		JSONObject json = new JSONObject();
+		synchronized (this) {
+			json.put("pending", pending.size());
+		}
+		json.put("submitted", submitted.get());
+		json.put("coalesced", coalesced.get());
+		json.put("written", written.get());
+		json.put("flushes", flushes.get());
+		json.put("failedFlushes", failedFlushes.get());
+		return json;
+	}
+
+	/**
+	 * Stops accepting values, stops the flush thread and flushes what is left.
+	 * Values that still cannot be written are logged and dropped.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		scheduler.shutdown();
+		try {
+			if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+				LOGGER.warning("Write-behind flush of " + name + " did not stop within 5 seconds");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!flush()) {
+			int lost;
+			synchronized (this) {
+				lost = pending.size();
+				pending = new LinkedHashMap<>();
+			}
+			LOGGER.log(Level.SEVERE, "Dropped {0} pending writes of {1} on shutdown", new Object[] { lost, name });
+		}
+	}
+
+	private synchronized void requeue(Map<K, V> batch) {
+		// values put since the batch was taken are newer and win
+		Map<K, V> merged = new LinkedHashMap<>(batch);
+		merged.putAll(pending);
+		pending = merged;
+		inFlight = new LinkedHashMap<>();
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "Write-behind flush of " + name + " failed", e);
+		}
+	}
+}
@@ -0,0 +1,4 @@
+-- Index backing the exact company name check (CompanyDAO.checkCompanyNameUnique),
+-- queried only when the in-memory company name filter reports a possible match.
+
+CREATE INDEX IF NOT EXISTS idx_companies_company_name ON companies (company_name);
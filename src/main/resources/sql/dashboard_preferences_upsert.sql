@@ -0,0 +1,12 @@
+-- Unique key backing DashboardPreferenceDAO.upsertDashboardPreference(s)
+-- (INSERT ... ON CONFLICT (user_id, preference_type)). Existing duplicates
+-- are removed first, keeping the most recent row of every user and type.
+
+DELETE FROM dashboard_preferences d
+USING dashboard_preferences newer
+WHERE newer.user_id = d.user_id
+  AND newer.preference_type = d.preference_type
+  AND newer.id > d.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_dashboard_preferences_user_type
+    ON dashboard_preferences (user_id, preference_type);
@@ -0,0 +1,12 @@
+-- Indexes backing keyset pagination (ObjectTypeDAO.fetchObjectTypesPage,
+-- UseCaseDAO.fetchUseCasesPage). One index per sort column, ending with id
+-- as tie-breaker; descending pages scan the same index backwards.
+
+CREATE INDEX IF NOT EXISTS idx_object_types_name_id ON object_types (name, id);
+CREATE INDEX IF NOT EXISTS idx_object_types_status_options_id ON object_types (status_options, id);
+CREATE INDEX IF NOT EXISTS idx_object_types_created_at_id ON object_types (created_at, id);
+CREATE INDEX IF NOT EXISTS idx_object_types_updated_at_id ON object_types (updated_at, id);
+
+CREATE INDEX IF NOT EXISTS idx_use_cases_facility_types_id ON use_cases (facility_types, id);
+CREATE INDEX IF NOT EXISTS idx_use_cases_compliance_status_options_id ON use_cases (compliance_status_options, id);
+CREATE INDEX IF NOT EXISTS idx_use_cases_status_options_id ON use_cases (status_options, id);
@@ -0,0 +1,101 @@
+package dao;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.ObjectAttribute;
+import model.ObjectAttribute.DataTypes;
+import utils.RoaringBitmap;
+
+/**
+ * Time to apply a saved filter to the objects of a {@link ColumnarSnapshot}
+ * with {@link ColumnarSnapshot#select(FilterPlan)}, a column at a time,
+ * against evaluating the same plan row by row over the boxed values with
+ * {@link PerRowEvaluator}.
+ *
+ * <p>
+ * The objects are generated in memory with about one NULL in ten values, and
+ * the filter combines numeric, date, equality, IN, LIKE and code point text
+ * range comparisons; pass another as {@code -p criteria=...}. No database is
+ * needed. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ColumnarEvaluatorBenchmark}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ColumnarEvaluatorBenchmark {
+
+	private static final List<ObjectAttribute> ATTRIBUTES = Arrays.asList(FilterCompilerTest.attribute(1, "age", DataTypes.INTEGER),
+			FilterCompilerTest.attribute(2, "score", DataTypes.FLOAT), FilterCompilerTest.attribute(3, "name", DataTypes.VARCHAR),
+			FilterCompilerTest.attribute(4, "status", DataTypes.ENUM), FilterCompilerTest.attribute(5, "born", DataTypes.DATE),
+			FilterCompilerTest.attribute(6, "seen", DataTypes.DATETIME));
+
+	private static final String[] STATUSES = { "open", "closed", "pending", "archived" };
+
+	@Param({ "10000", "1000000" })
+	public int rows;
+
+	@Param({ "(age BETWEEN 20 AND 60 AND score > 0.5 OR status IN ('open', 'pending')) AND born >= '2020-01-01'"
+			+ " AND NOT name LIKE 'name 1%' AND name < 'name 5' AND seen IS NOT NULL" })
+	public String criteria;
+
+	private int[] ids;
+	private Object[][] values;
+	private ColumnarSnapshot snapshot;
+	private FilterPlan plan;
+	private PerRowEvaluator perRow;
+
+	@Setup
+	public void generateObjects() {
+		Random random = new Random(1);
+		ids = new int[rows];
+		values = new Object[rows][];
+		long start = Timestamp.valueOf("2020-01-01 00:00:00").getTime();
+		for (int row = 0; row < rows; row++) {
+			ids[row] = row + 1;
+			values[row] = new Object[] { (long) random.nextInt(100), random.nextDouble(), "name " + random.nextInt(10000),
+					STATUSES[random.nextInt(STATUSES.length)], Date.valueOf(LocalDate.of(2019, 1, 1).plusDays(random.nextInt(1500))),
+					new Timestamp(start + random.nextInt(1000000000)) };
+			for (int i = 0; i < ATTRIBUTES.size(); i++) {
+				if (random.nextInt(10) == 0) {
+					values[row][i] = null;
+				}
+			}
+		}
+		snapshot = ColumnarSnapshot.of(10, new FilterTarget("objects"), ATTRIBUTES, ids, values);
+		plan = FilterCompiler.compile(criteria, 10, ATTRIBUTES);
+		perRow = new PerRowEvaluator(plan, ATTRIBUTES);
+	}
+
+	@Benchmark
+	public RoaringBitmap columnar() throws SQLException {
+		return snapshot.select(plan);
+	}
+
+	@Benchmark
+	public RoaringBitmap perRow() {
+		return perRow.select(ids, values);
+	}
+}
@@ -0,0 +1,171 @@
+package dao;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import model.ObjectAttribute;
+import model.ObjectAttribute.DataTypes;
+import utils.RoaringBitmap;
+
+public class ColumnarEvaluatorTest extends TestCase {
+
+	private static final FilterTarget OBJECTS = new FilterTarget("objects");
+
+	private static final List<ObjectAttribute> ATTRIBUTES = Arrays.asList(FilterCompilerTest.attribute(1, "age", DataTypes.INTEGER),
+			FilterCompilerTest.attribute(2, "score", DataTypes.FLOAT), FilterCompilerTest.attribute(3, "name", DataTypes.VARCHAR),
+			FilterCompilerTest.attribute(4, "notes", DataTypes.TEXT), FilterCompilerTest.attribute(5, "status", DataTypes.ENUM),
+			FilterCompilerTest.attribute(6, "born", DataTypes.DATE), FilterCompilerTest.attribute(7, "seen", DataTypes.DATETIME));
+
+	/** Text around the edges of code point order: case, accents, the end of the BMP and beyond it. */
+	private static final String[] TEXTS = { "", "a", "B", "b", "ab", "a_b", "a%b", "\u00E9", "Zeta", "\uFFFF", "\uD83D\uDE00", "x\uD83D\uDE00y" };
+	private static final String[] STATUSES = { "open", "closed", "Open" };
+	private static final double[] SCORES = { -1.5, 0, 0.5, 2.25, 3 };
+
+	public void testMatchesPerRowEvaluationOfRandomFilters() throws Exception {
+		Random random = new Random(11);
+		for (int rows : new int[] { 0, 1, 63, 64, 65, 1000 }) {
+			int[] ids = new int[rows];
+			Object[][] values = new Object[rows][];
+			for (int row = 0; row < rows; row++) {
+				ids[row] = row * 3 + 1;
+				values[row] = randomRow(random);
+			}
+			ColumnarSnapshot snapshot = ColumnarSnapshot.of(10, OBJECTS, ATTRIBUTES, ids, values);
+			for (int i = 0; i < 300; i++) {
+				String criteria = randomExpression(random, 3);
+				FilterPlan plan = FilterCompiler.compile(criteria, 10, ATTRIBUTES);
+				assertEquals(criteria, new PerRowEvaluator(plan, ATTRIBUTES).select(ids, values), snapshot.select(plan));
+			}
+		}
+	}
+
+	public void testOrdersTextByCodePoint() throws Exception {
+		Object[][] rows = { text("B"), text("a"), text("\uFFFF"), text("\uD83D\uDE00"), text(null) };
+		ColumnarSnapshot snapshot = ColumnarSnapshot.of(10, OBJECTS, ATTRIBUTES, new int[] { 1, 2, 3, 4, 5 }, rows);
+		assertEquals(RoaringBitmap.of(1), select(snapshot, "name < 'a'"));
+		assertEquals(RoaringBitmap.of(1, 2, 3), select(snapshot, "name < '\uD83D\uDE00'"));
+		assertEquals(RoaringBitmap.of(3, 4), select(snapshot, "name > 'z'"));
+		assertEquals(RoaringBitmap.of(2, 3), select(snapshot, "name BETWEEN 'a' AND '\uFFFF'"));
+		assertEquals(RoaringBitmap.of(4), select(snapshot, "name = '\uD83D\uDE00'"));
+		assertEquals(RoaringBitmap.of(1, 2, 3, 4), select(snapshot, "name LIKE '_'"));
+	}
+
+	public void testFollowsThreeValuedLogic() throws Exception {
+		Object[][] rows = { age(1L), age(null), age(5L) };
+		ColumnarSnapshot snapshot = ColumnarSnapshot.of(10, OBJECTS, ATTRIBUTES, new int[] { 1, 2, 3 }, rows);
+		assertEquals(RoaringBitmap.of(3), select(snapshot, "NOT age < 3"));
+		assertEquals(RoaringBitmap.of(3), select(snapshot, "age NOT IN (1, 2)"));
+		assertEquals(RoaringBitmap.of(1, 3), select(snapshot, "age < 3 OR age >= 3"));
+		assertTrue(select(snapshot, "NOT (age < 3 OR age >= 3)").isEmpty());
+		assertEquals(RoaringBitmap.of(2), select(snapshot, "age IS NULL"));
+		assertEquals(RoaringBitmap.of(1, 2, 3), select(snapshot, "age IS NULL OR age > 0"));
+	}
+
+	public void testRejectsPlansOfAnotherObjectType() throws Exception {
+		ColumnarSnapshot snapshot = ColumnarSnapshot.of(10, OBJECTS, ATTRIBUTES, new int[0], new Object[0][]);
+		try {
+			snapshot.select(FilterCompiler.compile("age = 1", 11, ATTRIBUTES));
+			fail("The plan belongs to object type 11");
+		} catch (IllegalArgumentException expected) {
+			// plans are compiled against the attributes of one object type
+		}
+	}
+
+	private static RoaringBitmap select(ColumnarSnapshot snapshot, String criteria) throws Exception {
+		return snapshot.select(FilterCompiler.compile(criteria, 10, ATTRIBUTES));
+	}
+
+	private static Object[] text(String name) {
+		return new Object[] { null, null, name, null, null, null, null };
+	}
+
+	private static Object[] age(Long age) {
+		return new Object[] { age, null, null, null, null, null, null };
+	}
+
+	private static Object[] randomRow(Random random) {
+		Object[] row = new Object[ATTRIBUTES.size()];
+		row[0] = (long) random.nextInt(11) - 5;
+		row[1] = SCORES[random.nextInt(SCORES.length)];
+		row[2] = TEXTS[random.nextInt(TEXTS.length)];
+		row[3] = TEXTS[random.nextInt(TEXTS.length)];
+		row[4] = STATUSES[random.nextInt(STATUSES.length)];
+		row[5] = Date.valueOf("2024-01-0" + (1 + random.nextInt(5)));
+		row[6] = Timestamp.valueOf("2024-01-01 0" + random.nextInt(5) + ":00:00");
+		for (int i = 0; i < row.length; i++) {
+			if (random.nextInt(5) == 0) {
+				row[i] = null;
+			}
+		}
+		return row;
+	}
+
+	private static String randomExpression(Random random, int depth) {
+		int kind = depth == 0 ? 3 : random.nextInt(6);
+		switch (kind) {
+		case 0:
+			return "(" + randomExpression(random, depth - 1) + " AND " + randomExpression(random, depth - 1) + ")";
+		case 1:
+			return "(" + randomExpression(random, depth - 1) + " OR " + randomExpression(random, depth - 1) + ")";
+		case 2:
+			return "NOT " + randomExpression(random, depth - 1);
+		default:
+			return randomComparison(random);
+		}
+	}
+
+	private static String randomComparison(Random random) {
+		int attribute = random.nextInt(ATTRIBUTES.size());
+		String name = ATTRIBUTES.get(attribute).getAttributeName();
+		if (random.nextInt(10) == 0) {
+			return name + (random.nextBoolean() ? " IS NULL" : " IS NOT NULL");
+		}
+		boolean text = attribute == 2 || attribute == 3;
+		String[] operators = attribute == 4 ? new String[] { "=", "<>", "IN", "NOT IN" }
+				: text ? new String[] { "=", "<>", "<", "<=", ">", ">=", "IN", "NOT IN", "BETWEEN", "LIKE", "NOT LIKE" }
+						: new String[] { "=", "<>", "<", "<=", ">", ">=", "IN", "NOT IN", "BETWEEN" };
+		String operator = operators[random.nextInt(operators.length)];
+		switch (operator) {
+		case "IN":
+		case "NOT IN":
+			StringBuilder list = new StringBuilder(name).append(' ').append(operator).append(" (").append(randomLiteral(random, attribute));
+			for (int i = random.nextInt(12); i > 0; i--) {
+				list.append(", ").append(randomLiteral(random, attribute));
+			}
+			return list.append(')').toString();
+		case "BETWEEN":
+			return name + " BETWEEN " + randomLiteral(random, attribute) + " AND " + randomLiteral(random, attribute);
+		case "LIKE":
+		case "NOT LIKE":
+			String[] patterns = { "%", "_", "a%", "%b", "a\\_b", "a\\%%", "%\uD83D\uDE00%", "x_y", "" };
+			return name + " " + operator + " '" + patterns[random.nextInt(patterns.length)] + "'";
+		default:
+			return name + " " + operator + " " + randomLiteral(random, attribute);
+		}
+	}
+
+	private static String randomLiteral(Random random, int attribute) {
+		switch (attribute) {
+		case 0:
+			int choice = random.nextInt(14);
+			return choice == 12 ? "-9223372036854775808" : choice == 13 ? "9223372036854775807" : String.valueOf(choice - 6);
+		case 1:
+			return random.nextBoolean() ? String.valueOf(SCORES[random.nextInt(SCORES.length)]) : String.valueOf(random.nextInt(9) - 4) + ".75";
+		case 2:
+		case 3:
+			String[] probes = { "A", "aa", "c", "", "\uD83D\uDE01" };
+			String value = random.nextInt(3) == 0 ? probes[random.nextInt(probes.length)] : TEXTS[random.nextInt(TEXTS.length)];
+			return "'" + value.replace("'", "''") + "'";
+		case 4:
+			return "'" + (random.nextInt(4) == 0 ? "pending" : STATUSES[random.nextInt(STATUSES.length)]) + "'";
+		case 5:
+			return "'2024-01-0" + (1 + random.nextInt(6)) + "'";
+		default:
+			return "'2024-01-01T0" + random.nextInt(6) + ":" + (random.nextBoolean() ? "00" : "30") + ":00'";
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package dao;
+
+import junit.framework.TestCase;
+import utils.BloomFilter;
+
+public class CompanyNameIndexTest extends TestCase {
+
+	public void testNormalizesCaseSpacingAndCompatibleForms() {
+		assertEquals("acme corp", CompanyNameIndex.normalize("  ACME   Corp "));
+		assertEquals("acme corp", CompanyNameIndex.normalize("Acme\tCorp"));
+		assertEquals(CompanyNameIndex.normalize("Ａcme"), CompanyNameIndex.normalize("Acme")); // fullwidth A
+		assertEquals("caf\u00e9", CompanyNameIndex.normalize("Cafe\u0301")); // combining accent
+		assertFalse(CompanyNameIndex.normalize("Acme Corp").equals(CompanyNameIndex.normalize("AcmeCorp")));
+	}
+
+	public void testNormalizedNamesAreFoundInTheFilter() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		filter.put(CompanyNameIndex.normalize("Acme  Corp"));
+		assertTrue(filter.mightContain(CompanyNameIndex.normalize("ACME CORP ")));
+	}
+
+	public void testRebuildsAfterAQuarterOfTheNamesWereRemoved() {
+		BloomFilter filter = filter(8000);
+		assertFalse(CompanyNameIndex.needsRebuild(filter, 2000));
+		assertTrue(CompanyNameIndex.needsRebuild(filter, 2001));
+	}
+
+	public void testRebuildsAfterAtLeastAThousandRemovals() {
+		BloomFilter filter = filter(100);
+		assertFalse(CompanyNameIndex.needsRebuild(filter, 1000));
+		assertTrue(CompanyNameIndex.needsRebuild(filter, 1001));
+	}
+
+	public void testRebuildsWhenFullerThanSized() {
+		BloomFilter filter = new BloomFilter(10, 0.01);
+		for (int i = 0; i < 10; i++) {
+			filter.put("company " + i);
+		}
+		assertFalse(CompanyNameIndex.needsRebuild(filter, 0));
+		filter.put("company 0"); // a repeated name counts too
+		assertTrue(CompanyNameIndex.needsRebuild(filter, 0));
+	}
+
+	public void testNoRebuildWithoutAFilter() {
+		assertFalse(CompanyNameIndex.needsRebuild(null, 100000));
+	}
+
+	public void testChecksQueryTheDatabaseUntilTheFilterIsReady() {
+		// disabled without cluster.notify.enabled, so the filter is never built here
+		assertFalse(CompanyNameIndex.isDefinitelyAbsent("Acme"));
+		assertFalse(CompanyNameIndex.toJson().getBoolean("ready"));
+	}
+
+	private static BloomFilter filter(int names) {
+		BloomFilter filter = new BloomFilter(100000, 0.01);
+		for (int i = 0; i < names; i++) {
+			filter.put("company " + i);
+		}
+		return filter;
+	}
+}
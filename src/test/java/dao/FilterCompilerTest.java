@@ -0,0 +1,149 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import model.ObjectAttribute;
+import model.ObjectAttribute.DataTypes;
+import utils.FilterExpression;
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Operator;
+
+public class FilterCompilerTest extends TestCase {
+
+	static final ObjectAttribute AGE = attribute(1, "age", DataTypes.INTEGER);
+	static final ObjectAttribute SCORE = attribute(2, "score", DataTypes.FLOAT);
+	static final ObjectAttribute NAME = attribute(3, "name", DataTypes.VARCHAR);
+	static final ObjectAttribute NOTES = attribute(4, "notes", DataTypes.TEXT);
+	static final ObjectAttribute STATUS = attribute(5, "status", DataTypes.ENUM);
+	static final ObjectAttribute BORN = attribute(6, "born", DataTypes.DATE);
+	static final ObjectAttribute SEEN = attribute(7, "last seen", DataTypes.DATETIME);
+	static final List<ObjectAttribute> ATTRIBUTES = Arrays.asList(AGE, SCORE, NAME, NOTES, STATUS, BORN, SEEN);
+
+	public void testConvertsLiteralsToTheAttributeTypes() {
+		assertEquals(Arrays.<Object>asList(42L), values("age = 42"));
+		assertEquals(Arrays.<Object>asList(42L), values("age = 4.2e1"));
+		assertEquals(Arrays.<Object>asList(new BigDecimal("1.5"), new BigDecimal("7")), values("score BETWEEN 1.5 AND 7"));
+		assertEquals(Arrays.<Object>asList("a", "b"), values("name IN ('a', 'b')"));
+		assertEquals(Arrays.<Object>asList("%x%"), values("notes NOT LIKE '%x%'"));
+		assertEquals(Arrays.<Object>asList("open"), values("status <> 'open'"));
+		assertEquals(Arrays.<Object>asList(Date.valueOf("2024-05-31")), values("born >= '2024-05-31'"));
+		assertEquals(Arrays.<Object>asList(Timestamp.valueOf("2024-05-31 08:00:00")), values("\"last seen\" < '2024-05-31T08:00:00'"));
+		assertEquals(Arrays.<Object>asList(Timestamp.valueOf("2024-05-31 08:00:00")), values("\"last seen\" < '2024-05-31 08:00:00'"));
+		assertEquals(Arrays.<Object>asList(Timestamp.valueOf("2024-05-31 00:00:00")), values("\"last seen\" < '2024-05-31'"));
+		assertEquals(Collections.emptyList(), values("born IS NULL"));
+	}
+
+	public void testResolvesEveryComparisonOfTheTree() {
+		FilterPlan plan = compile("age > 1 OR NOT (name = 'x' AND AGE < 9)");
+		assertEquals(10, plan.getObjectTypeId());
+		assertEquals("age > 1 OR NOT (name = 'x' AND AGE < 9)", plan.getCriteria());
+		assertEquals(Arrays.asList(AGE, NAME), plan.getAttributes());
+		plan.getExpression().accept(new FilterExpression.Visitor<Void>() {
+
+			@Override
+			public Void visitAnd(FilterExpression.And and) {
+				and.getOperands().forEach(operand -> operand.accept(this));
+				return null;
+			}
+
+			@Override
+			public Void visitOr(FilterExpression.Or or) {
+				or.getOperands().forEach(operand -> operand.accept(this));
+				return null;
+			}
+
+			@Override
+			public Void visitNot(FilterExpression.Not not) {
+				return not.getOperand().accept(this);
+			}
+
+			@Override
+			public Void visitComparison(Comparison comparison) {
+				FilterPlan.Predicate predicate = plan.getPredicate(comparison);
+				assertNotNull(comparison.toString(), predicate);
+				assertEquals(comparison.getOperator(), predicate.getOperator());
+				assertTrue(comparison.getAttribute().equalsIgnoreCase(predicate.getAttribute().getAttributeName()));
+				return null;
+			}
+		});
+	}
+
+	public void testMatchesNamesIgnoringCaseOnlyWhenUnambiguous() {
+		assertSame(NAME, single(compile("NAME = 'x'")).getAttribute());
+
+		ObjectAttribute upper = attribute(8, "Code", DataTypes.VARCHAR);
+		ObjectAttribute lower = attribute(9, "code", DataTypes.VARCHAR);
+		List<ObjectAttribute> attributes = Arrays.asList(upper, lower);
+		assertSame(upper, single(FilterCompiler.compile("\"Code\" = 'x'", 10, attributes)).getAttribute());
+		assertSame(lower, single(FilterCompiler.compile("code = 'x'", 10, attributes)).getAttribute());
+		try {
+			FilterCompiler.compile("CODE = 'x'", 10, attributes);
+			fail("CODE matches two attributes");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("attribute 'CODE' is ambiguous"));
+		}
+	}
+
+	public void testRejectsComparisonsThatDoNotFitTheAttributes() {
+		assertInvalid("height = 1", "unknown attribute 'height'");
+		assertInvalid("age = 1.5", "'age' (integer) expects a whole number, not 1.5");
+		assertInvalid("age = 99999999999999999999", "expects a whole number");
+		assertInvalid("age = '1'", "expects a whole number");
+		assertInvalid("score = 'high'", "'score' (float) expects a number");
+		assertInvalid("name = 1", "'name' (varchar) expects a quoted string, not 1");
+		assertInvalid("born = '31.05.2024'", "'born' (date) expects a date");
+		assertInvalid("\"last seen\" = '2024-05-31T25:00'", "expects a date and time");
+		assertInvalid("age LIKE '1%'", "LIKE needs a text attribute, 'age' is INTEGER");
+		assertInvalid("status > 'a'", "> cannot order the ENUM attribute 'status'");
+		assertInvalid("status BETWEEN 'a' AND 'b'", "BETWEEN cannot order the ENUM attribute 'status'");
+	}
+
+	public void testReportsAllProblemsTogether() {
+		try {
+			FilterCompiler.compile("height = 1 OR age = 'x'", 10, ATTRIBUTES);
+			fail("Expected the filter to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid filter for object type 10: unknown attribute 'height'; 'age' (integer) expects a whole number, not 'x'",
+					e.getMessage());
+		}
+	}
+
+	public void testReportsSyntaxErrors() {
+		assertInvalid("age = ", "at position 7");
+	}
+
+	static FilterPlan compile(String criteria) {
+		return FilterCompiler.compile(criteria, 10, ATTRIBUTES);
+	}
+
+	static ObjectAttribute attribute(int id, String name, DataTypes type) {
+		ObjectAttribute attribute = new ObjectAttribute();
+		attribute.setId(id);
+		attribute.setAttributeName(name);
+		attribute.setDataType(type);
+		return attribute;
+	}
+
+	private static List<Object> values(String criteria) {
+		return single(compile(criteria)).getValues();
+	}
+
+	private static FilterPlan.Predicate single(FilterPlan plan) {
+		return plan.getPredicate((Comparison) plan.getExpression());
+	}
+
+	private static void assertInvalid(String criteria, String message) {
+		try {
+			compile(criteria);
+			fail("Expected " + criteria + " to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class FilterPlanTest extends TestCase {
+
+	private static final FilterTarget OBJECTS = new FilterTarget("objects");
+
+	public void testRendersEveryOperator() {
+		assertSql("age = ?", "age = 1", 1L);
+		assertSql("age <> ?", "age != 1", 1L);
+		assertSql("age < ?", "age < 1", 1L);
+		assertSql("age <= ?", "age <= 1", 1L);
+		assertSql("age > ?", "age > 1", 1L);
+		assertSql("age >= ?", "age >= 1", 1L);
+		assertSql("age IN (?, ?, ?)", "age IN (1, 2, 3)", 1L, 2L, 3L);
+		assertSql("age NOT IN (?)", "age NOT IN (1)", 1L);
+		assertSql("score BETWEEN ? AND ?", "score BETWEEN 1 AND 2.5", new BigDecimal("1"), new BigDecimal("2.5"));
+		assertSql("name LIKE ?", "name LIKE 'a%'", "a%");
+		assertSql("notes NOT LIKE ?", "notes NOT LIKE '%b'", "%b");
+		assertSql("born IS NULL", "born IS NULL");
+		assertSql("born IS NOT NULL", "born is not null");
+	}
+
+	public void testRendersJunctionsAndNegationInParentheses() {
+		assertSql("(age = ? OR (name = ? AND NOT (score > ?)))", "age = 1 OR name = 'x' AND NOT score > 2", 1L, "x",
+				new BigDecimal("2"));
+		assertSql("((age = ? OR age = ?) AND born >= ?)", "(age = 1 OR age = 2) AND born >= '2024-01-01'", 1L, 2L,
+				Date.valueOf("2024-01-01"));
+		assertSql("NOT ((age = ? OR age = ?))", "NOT (age = 1 OR age = 2)", 1L, 2L);
+	}
+
+	public void testKeepsValuesOutOfTheSql() {
+		FilterPlan.Sql sql = FilterCompilerTest.compile("name = 'x'' OR 1=1 --'").toSql(OBJECTS);
+		assertEquals("name = ?", sql.getWhere());
+		assertEquals(Collections.<Object>singletonList("x' OR 1=1 --"), sql.getParameters());
+	}
+
+	public void testUsesTheColumnsOfTheTarget() {
+		FilterTarget target = new FilterTarget("crm.objects").objectTypeColumn("type_id").column("last seen", "last_seen")
+				.column("age", "age_years");
+		FilterPlan.Sql sql = FilterCompilerTest.compile("age > 1 AND \"last seen\" IS NULL").toSql(target);
+		assertEquals("type_id = ? AND (age_years > ? AND last_seen IS NULL)", sql.getWhere());
+		assertEquals(Arrays.<Object>asList(10, 1L), sql.getParameters());
+	}
+
+	public void testRejectsAttributesWithoutAColumn() {
+		FilterPlan plan = FilterCompilerTest.compile("\"last seen\" IS NULL");
+		try {
+			plan.toSql(OBJECTS);
+			fail("'last seen' is not a column name");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("No column registered for attribute 'last seen' of objects"));
+		}
+	}
+
+	public void testRemembersTheSqlPerTarget() {
+		FilterPlan plan = FilterCompilerTest.compile("age = 1");
+		FilterTarget other = new FilterTarget("objects").column("age", "years");
+		assertSame(plan.toSql(OBJECTS), plan.toSql(OBJECTS));
+		assertEquals("years = ?", plan.toSql(other).getWhere());
+		assertEquals("age = ?", plan.toSql(OBJECTS).getWhere());
+	}
+
+	public void testTargetRejectsNamesThatAreNotIdentifiers() {
+		for (String table : new String[] { null, "", "objects; DROP TABLE x", "a.b.c", "\"objects\"" }) {
+			try {
+				new FilterTarget(table);
+				fail("Accepted table " + table);
+			} catch (IllegalArgumentException expected) {
+				// only plain identifiers reach the SQL
+			}
+		}
+		try {
+			OBJECTS.column("age", "age years");
+			fail("Accepted a column with a space");
+		} catch (IllegalArgumentException expected) {
+			// only plain identifiers reach the SQL
+		}
+	}
+
+	private static void assertSql(String where, String criteria, Object... parameters) {
+		FilterPlan.Sql sql = FilterCompilerTest.compile(criteria).toSql(OBJECTS);
+		assertEquals(where, sql.getWhere());
+		assertEquals(Arrays.asList(parameters), sql.getParameters());
+	}
+}
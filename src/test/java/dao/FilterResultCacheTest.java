@@ -0,0 +1,169 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import utils.ChangeEvent;
+import utils.ChangeEventBus;
+import utils.RoaringBitmap;
+
+public class FilterResultCacheTest extends TestCase {
+
+	private static final FilterTarget OBJECTS = new FilterTarget("objects");
+	private static final FilterTarget PUBLIC_OBJECTS = new FilterTarget("public.objects");
+
+	/** The queries run by the cache, to see which lookups missed. */
+	private final List<String> loads = new ArrayList<>();
+
+	@Override
+	protected void setUp() {
+		FilterResultCache.invalidateAll();
+	}
+
+	@Override
+	protected void tearDown() {
+		FilterResultCache.invalidateAll();
+	}
+
+	public void testKeyIsTheCanonicalForm() {
+		assertEquals("objects(id): (age > 1 AND name = 'x')", key("age > 1 AND name = 'x'", OBJECTS));
+		assertEquals("objects(id, type_id = 10): score BETWEEN 1 AND 2.5",
+				key("score BETWEEN 1.0 AND 2.50", new FilterTarget("objects").objectTypeColumn("type_id")));
+	}
+
+	public void testSpellingDoesNotChangeTheKey() {
+		assertSameKey("age = 1 AND name = 'x'", "NAME = 'x' and AGE = 1.0");
+		assertSameKey("score = 2.5", "score = 2.50");
+		assertSameKey("score = 0", "score = -0.0");
+		assertSameKey("(age = 1 AND age = 2) AND age = 3", "age = 3 AND (age = 2 AND (age = 1))");
+		assertSameKey("age = 1 OR (age = 2 OR age = 3)", "(age = 3 OR age = 1) OR age = 2");
+		assertSameKey("age = 1 AND age = 1", "age = 1");
+		assertSameKey("age IN (3, 1, 2)", "age IN (1, 2, 3)");
+		assertSameKey("age IN (1, 1)", "age = 1");
+		assertSameKey("age NOT IN (4)", "age <> 4");
+		assertSameKey("born = '2024-05-31'", "born = '2024-05-31'");
+	}
+
+	public void testNotIsPushedIntoTheComparisons() {
+		assertSameKey("NOT age < 3", "age >= 3");
+		assertSameKey("NOT NOT age < 3", "age < 3");
+		assertSameKey("NOT (age = 1 AND name LIKE 'a%')", "age <> 1 OR name NOT LIKE 'a%'");
+		assertSameKey("NOT (age IN (1, 2) OR born IS NULL)", "age NOT IN (2, 1) AND born IS NOT NULL");
+		assertSameKey("NOT (age = 1 OR NOT (age = 2 OR age = 3))", "age <> 1 AND (age = 2 OR age = 3)");
+		assertEquals("objects(id): NOT (age BETWEEN 1 AND 2)", key("NOT age BETWEEN 1 AND 2", OBJECTS));
+	}
+
+	public void testDifferentResultsHaveDifferentKeys() {
+		assertFalse(key("age < 3", OBJECTS).equals(key("age <= 3", OBJECTS)));
+		assertFalse(key("name = 'a'", OBJECTS).equals(key("name = 'A'", OBJECTS)));
+		assertFalse(key("age = 1 AND age = 2", OBJECTS).equals(key("age = 1 OR age = 2", OBJECTS)));
+		assertFalse(key("age = 1", OBJECTS).equals(key("age = 1", PUBLIC_OBJECTS)));
+		assertFalse(key("age = 1", OBJECTS).equals(key("age = 1", new FilterTarget("objects").column("age", "years"))));
+		assertFalse(key("age = 1", OBJECTS).equals(key("age = 1", new FilterTarget("objects").idColumn("object_id"))));
+		FilterTarget byType = new FilterTarget("objects").objectTypeColumn("type_id");
+		FilterPlan otherType = FilterCompiler.compile("age = 1", 11, FilterCompilerTest.ATTRIBUTES);
+		assertFalse(key("age = 1", byType).equals(FilterResultCache.keyOf(otherType, byType)));
+	}
+
+	public void testSharesResultsBetweenSpellings() throws Exception {
+		get("age = 1 AND name = 'x'", OBJECTS, 0);
+		get("name = 'x' AND age = 1", OBJECTS, 0);
+		assertEquals(1, loads.size());
+	}
+
+	public void testChangeOfTheTargetTableDropsItsEntries() throws Exception {
+		get("age = 1", OBJECTS, 0);
+		get("age = 1", PUBLIC_OBJECTS, 0);
+		get("age = 1", new FilterTarget("other_objects"), 0);
+		assertEquals(3, loads.size());
+
+		ChangeEventBus.deliver(new ChangeEvent("objects", ChangeEvent.Type.UPDATED, 5));
+		get("age = 1", OBJECTS, 0);
+		get("age = 1", PUBLIC_OBJECTS, 0);
+		get("age = 1", new FilterTarget("other_objects"), 0);
+		assertEquals(5, loads.size());
+	}
+
+	public void testChangeOfAnAttributeDropsTheEntriesReadingIt() throws Exception {
+		get("age = 1", OBJECTS, 0);
+		get("name = 'x'", OBJECTS, 0);
+
+		ChangeEventBus.deliver(new ChangeEvent("object_attributes", ChangeEvent.Type.CREATED, FilterCompilerTest.AGE.getId()));
+		ChangeEventBus.deliver(new ChangeEvent("object_attributes", ChangeEvent.Type.UPDATED, FilterCompilerTest.SCORE.getId()));
+		get("age = 1", OBJECTS, 0);
+		get("name = 'x'", OBJECTS, 0);
+		assertEquals(2, loads.size());
+
+		ChangeEventBus.deliver(new ChangeEvent("object_attributes", ChangeEvent.Type.UPDATED, FilterCompilerTest.AGE.getId()));
+		get("age = 1", OBJECTS, 0);
+		get("name = 'x'", OBJECTS, 0);
+		assertEquals(3, loads.size());
+
+		ChangeEventBus.deliver(new ChangeEvent("object_attributes", ChangeEvent.Type.DELETED, 0));
+		get("age = 1", OBJECTS, 0);
+		get("name = 'x'", OBJECTS, 0);
+		assertEquals(5, loads.size());
+	}
+
+	public void testDeletedObjectTypeDropsItsEntries() throws Exception {
+		get("age = 1", OBJECTS, 0);
+		ChangeEventBus.deliver(new ChangeEvent("object_types", ChangeEvent.Type.UPDATED, 10));
+		ChangeEventBus.deliver(new ChangeEvent("object_types", ChangeEvent.Type.DELETED, 11));
+		get("age = 1", OBJECTS, 0);
+		assertEquals(1, loads.size());
+
+		ChangeEventBus.deliver(new ChangeEvent("object_types", ChangeEvent.Type.DELETED, 10));
+		get("age = 1", OBJECTS, 0);
+		assertEquals(2, loads.size());
+	}
+
+	public void testEntryStaysWhileAnotherSavedFilterUsesIt() throws Exception {
+		get("age = 1", OBJECTS, 1);
+		get("AGE = 1", OBJECTS, 2);
+		assertEquals(1, loads.size());
+
+		ChangeEventBus.deliver(new ChangeEvent("object_filters", ChangeEvent.Type.CREATED, 3));
+		ChangeEventBus.deliver(new ChangeEvent("object_filters", ChangeEvent.Type.UPDATED, 1));
+		get("age = 1", OBJECTS, 0);
+		assertEquals(1, loads.size());
+
+		ChangeEventBus.deliver(new ChangeEvent("object_filters", ChangeEvent.Type.DELETED, 2));
+		get("age = 1", OBJECTS, 0);
+		assertEquals(2, loads.size());
+	}
+
+	public void testAllTablesEventDropsEverything() throws Exception {
+		get("age = 1", OBJECTS, 0);
+		get("name = 'x'", PUBLIC_OBJECTS, 0);
+		ChangeEventBus.deliver(new ChangeEvent(ChangeEvent.ALL_TABLES, ChangeEvent.Type.UPDATED, 0));
+		get("age = 1", OBJECTS, 0);
+		get("name = 'x'", PUBLIC_OBJECTS, 0);
+		assertEquals(4, loads.size());
+	}
+
+	public void testReturnsACopyOfTheCachedIds() throws Exception {
+		get("age = 1", OBJECTS, 0).add(99);
+		assertEquals(RoaringBitmap.of(1, 2, 3), get("age = 1", OBJECTS, 0));
+	}
+
+	public void testTableName() {
+		assertEquals("objects", FilterResultCache.tableName("objects"));
+		assertEquals("objects", FilterResultCache.tableName("Public.Objects"));
+	}
+
+	private RoaringBitmap get(String criteria, FilterTarget target, int filterId) throws Exception {
+		return FilterResultCache.get(FilterCompilerTest.compile(criteria), target, filterId, (query, parameters) -> {
+			loads.add(query);
+			return RoaringBitmap.of(1, 2, 3);
+		});
+	}
+
+	private static String key(String criteria, FilterTarget target) {
+		return FilterResultCache.keyOf(FilterCompilerTest.compile(criteria), target);
+	}
+
+	private static void assertSameKey(String criteria, String sameCriteria) {
+		assertEquals(key(criteria, OBJECTS), key(sameCriteria, OBJECTS));
+	}
+}
@@ -0,0 +1,191 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LinkIndexTest extends TestCase {
+
+	public void testLooksUpByEitherEnd() {
+		LinkIndex index = new LinkIndex(4);
+		index.put(1, 10, 100);
+		index.put(2, 10, 200);
+		index.put(3, 20, 100);
+
+		assertEquals(3, index.size());
+		assertEquals(links(1, 100, 2, 200), from(index, 10));
+		assertEquals(links(3, 100), from(index, 20));
+		assertEquals(links(1, 10, 3, 20), to(index, 100));
+		assertEquals(links(2, 10), to(index, 200));
+		assertTrue(from(index, 30).isEmpty());
+		assertTrue(to(index, 300).isEmpty());
+	}
+
+	public void testPutReplacesTheLinkWithTheSameId() {
+		LinkIndex index = new LinkIndex(4);
+		index.put(1, 10, 100);
+		index.put(1, 10, 100);
+		assertEquals(1, index.size());
+
+		index.put(1, 11, 101);
+		assertEquals(1, index.size());
+		assertTrue(from(index, 10).isEmpty());
+		assertTrue(to(index, 100).isEmpty());
+		assertEquals(links(1, 101), from(index, 11));
+		assertEquals(links(1, 11), to(index, 101));
+	}
+
+	public void testRemove() {
+		LinkIndex index = new LinkIndex(4);
+		index.put(1, 10, 100);
+		index.put(2, 10, 200);
+		index.put(3, 10, 300);
+
+		// the middle, then the head, then the tail of the list of from id 10
+		assertTrue(index.remove(2));
+		assertEquals(links(1, 100, 3, 300), from(index, 10));
+		assertTrue(index.remove(3));
+		assertEquals(links(1, 100), from(index, 10));
+		assertTrue(index.remove(1));
+		assertTrue(from(index, 10).isEmpty());
+		assertTrue(to(index, 100).isEmpty());
+		assertFalse(index.remove(1));
+		assertEquals(0, index.size());
+	}
+
+	public void testRemoveByEnd() {
+		LinkIndex index = new LinkIndex(4);
+		index.put(1, 10, 100);
+		index.put(2, 10, 200);
+		index.put(3, 20, 100);
+		index.put(4, 20, 200);
+
+		assertEquals(2, index.removeFrom(10));
+		assertEquals(links(3, 20), to(index, 100));
+		assertEquals(links(4, 20), to(index, 200));
+		assertEquals(2, index.removeTo(200) + index.removeTo(100));
+		assertEquals(0, index.size());
+		assertEquals(0, index.removeFrom(10));
+	}
+
+	public void testReusesFreedSlotsAndGrows() {
+		LinkIndex index = new LinkIndex(1);
+		for (int round = 0; round < 3; round++) {
+			for (int id = 1; id <= 1000; id++) {
+				index.put(id, id % 7, id % 11);
+			}
+			assertEquals(1000, index.size());
+			for (int id = 1; id <= 1000; id += 2) {
+				assertTrue(index.remove(id));
+			}
+			assertEquals(500, index.size());
+		}
+		int links = 0;
+		for (int fromId = 0; fromId < 7; fromId++) {
+			links += from(index, fromId).size() / 2;
+		}
+		assertEquals(500, links);
+	}
+
+	public void testMatchesAMapOfLinksUnderRandomChanges() {
+		Random random = new Random(7);
+		LinkIndex index = new LinkIndex(16);
+		Map<Integer, int[]> expected = new HashMap<>();
+		for (int i = 0; i < 50000; i++) {
+			int id = random.nextInt(500);
+			int operation = random.nextInt(20);
+			if (operation < 12) {
+				int fromId = random.nextInt(30);
+				int toId = random.nextInt(30);
+				index.put(id, fromId, toId);
+				expected.put(id, new int[] { fromId, toId });
+			} else if (operation < 18) {
+				assertEquals(expected.remove(id) != null, index.remove(id));
+			} else if (operation == 18) {
+				int fromId = random.nextInt(30);
+				assertEquals(removeWhere(expected, 0, fromId), index.removeFrom(fromId));
+			} else {
+				int toId = random.nextInt(30);
+				assertEquals(removeWhere(expected, 1, toId), index.removeTo(toId));
+			}
+			assertEquals(expected.size(), index.size());
+		}
+		for (int end = 0; end < 30; end++) {
+			assertEquals(sorted(expectedLinks(expected, 0, end)), sorted(from(index, end)));
+			assertEquals(sorted(expectedLinks(expected, 1, end)), sorted(to(index, end)));
+		}
+	}
+
+	/**
+	 * @return the (link id, other id) pairs of the from id, ordered by link id
+	 */
+	private static List<Integer> from(LinkIndex index, int fromId) {
+		List<Integer> visited = new ArrayList<>();
+		index.forEachFrom(fromId, (linkId, otherId) -> {
+			visited.add(linkId);
+			visited.add(otherId);
+		});
+		return sorted(visited);
+	}
+
+	private static List<Integer> to(LinkIndex index, int toId) {
+		List<Integer> visited = new ArrayList<>();
+		index.forEachTo(toId, (linkId, otherId) -> {
+			visited.add(linkId);
+			visited.add(otherId);
+		});
+		return sorted(visited);
+	}
+
+	/**
+	 * @return the (link id, other id) pairs ordered by link id
+	 */
+	private static List<Integer> links(int... pairs) {
+		List<Integer> list = new ArrayList<>();
+		for (int pair : pairs) {
+			list.add(pair);
+		}
+		return sorted(list);
+	}
+
+	private static List<Integer> sorted(List<Integer> pairs) {
+		List<long[]> entries = new ArrayList<>();
+		for (int i = 0; i < pairs.size(); i += 2) {
+			entries.add(new long[] { pairs.get(i), pairs.get(i + 1) });
+		}
+		Collections.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+		List<Integer> result = new ArrayList<>();
+		for (long[] entry : entries) {
+			result.add((int) entry[0]);
+			result.add((int) entry[1]);
+		}
+		return result;
+	}
+
+	private static List<Integer> expectedLinks(Map<Integer, int[]> links, int end, int id) {
+		List<Integer> pairs = new ArrayList<>();
+		for (Map.Entry<Integer, int[]> link : links.entrySet()) {
+			if (link.getValue()[end] == id) {
+				pairs.add(link.getKey());
+				pairs.add(link.getValue()[1 - end]);
+			}
+		}
+		return pairs;
+	}
+
+	private static int removeWhere(Map<Integer, int[]> links, int end, int id) {
+		int removed = 0;
+		for (Integer linkId : new ArrayList<>(links.keySet())) {
+			if (links.get(linkId)[end] == id) {
+				links.remove(linkId);
+				removed++;
+			}
+		}
+		return removed;
+	}
+}
@@ -0,0 +1,175 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+import model.ObjectAttribute;
+import utils.FilterExpression;
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Operator;
+import utils.RoaringBitmap;
+
+/**
+ * Evaluates a {@link FilterPlan} one row at a time over boxed values, as
+ * {@link ColumnarSnapshot#of} takes them: the reference for
+ * {@link ColumnarEvaluator} in tests and benchmarks.
+ *
+ * <p>
+ * Follows SQL's three-valued logic with null for unknown, compares FLOAT
+ * values as {@code double}s and orders text by code point, as the
+ * {@code C} collation does.
+ * </p>
+ */
+final class PerRowEvaluator {
+
+	private final FilterPlan plan;
+	private final int[] columnOfAttribute;
+
+	/**
+	 * @param plan       the compiled filter
+	 * @param attributes the attributes in the order of the row values
+	 */
+	PerRowEvaluator(FilterPlan plan, List<ObjectAttribute> attributes) {
+		this.plan = plan;
+		this.columnOfAttribute = new int[plan.getAttributes().size()];
+		for (int i = 0; i < columnOfAttribute.length; i++) {
+			columnOfAttribute[i] = attributes.indexOf(plan.getAttributes().get(i));
+		}
+	}
+
+	/**
+	 * @return the ids of the rows where the filter is true
+	 */
+	RoaringBitmap select(int[] ids, Object[][] rows) {
+		RoaringBitmap result = new RoaringBitmap();
+		for (int row = 0; row < rows.length; row++) {
+			if (Boolean.TRUE.equals(evaluate(plan.getExpression(), rows[row]))) {
+				result.add(ids[row]);
+			}
+		}
+		return result;
+	}
+
+	private Boolean evaluate(FilterExpression node, Object[] row) {
+		if (node instanceof FilterExpression.And) {
+			Boolean result = Boolean.TRUE;
+			for (FilterExpression operand : ((FilterExpression.And) node).getOperands()) {
+				Boolean value = evaluate(operand, row);
+				if (Boolean.FALSE.equals(value)) {
+					return Boolean.FALSE;
+				}
+				if (value == null) {
+					result = null;
+				}
+			}
+			return result;
+		}
+		if (node instanceof FilterExpression.Or) {
+			Boolean result = Boolean.FALSE;
+			for (FilterExpression operand : ((FilterExpression.Or) node).getOperands()) {
+				Boolean value = evaluate(operand, row);
+				if (Boolean.TRUE.equals(value)) {
+					return Boolean.TRUE;
+				}
+				if (value == null) {
+					result = null;
+				}
+			}
+			return result;
+		}
+		if (node instanceof FilterExpression.Not) {
+			Boolean value = evaluate(((FilterExpression.Not) node).getOperand(), row);
+			return value == null ? null : !value;
+		}
+		FilterPlan.Predicate predicate = plan.getPredicate((Comparison) node);
+		Object value = row[columnOfAttribute[plan.getAttributes().indexOf(predicate.getAttribute())]];
+		Operator operator = predicate.getOperator();
+		if (operator == Operator.IS_NULL || operator == Operator.IS_NOT_NULL) {
+			return (value == null) == (operator == Operator.IS_NULL);
+		}
+		if (value == null) {
+			return null;
+		}
+		List<Object> operands = predicate.getValues();
+		switch (operator) {
+		case EQ:
+			return compare(value, operands.get(0)) == 0;
+		case NE:
+			return compare(value, operands.get(0)) != 0;
+		case LT:
+			return compare(value, operands.get(0)) < 0;
+		case LE:
+			return compare(value, operands.get(0)) <= 0;
+		case GT:
+			return compare(value, operands.get(0)) > 0;
+		case GE:
+			return compare(value, operands.get(0)) >= 0;
+		case BETWEEN:
+			return compare(value, operands.get(0)) >= 0 && compare(value, operands.get(1)) <= 0;
+		case IN:
+		case NOT_IN:
+			boolean found = false;
+			for (Object operand : operands) {
+				found |= compare(value, operand) == 0;
+			}
+			return found == (operator == Operator.IN);
+		default: // LIKE, NOT_LIKE
+			int[] text = ((String) value).codePoints().toArray();
+			int[] pattern = ((String) operands.get(0)).codePoints().toArray();
+			return like(text, 0, pattern, 0) == (operator == Operator.LIKE);
+		}
+	}
+
+	private static int compare(Object value, Object operand) {
+		if (value instanceof String) {
+			return Arrays.compare(((String) value).codePoints().toArray(), ((String) operand).codePoints().toArray());
+		}
+		if (value instanceof Date) {
+			return ((Date) value).toLocalDate().compareTo(((Date) operand).toLocalDate());
+		}
+		if (value instanceof Timestamp) {
+			return Long.compare(((Timestamp) value).getTime(), ((Timestamp) operand).getTime());
+		}
+		if (operand instanceof BigDecimal) {
+			return Double.compare(((Number) value).doubleValue(), ((BigDecimal) operand).doubleValue());
+		}
+		return Long.compare(((Number) value).longValue(), (Long) operand);
+	}
+
+	/**
+	 * Matches the code points of a LIKE pattern from the given positions on,
+	 * with {@code \} escaping the next character.
+	 */
+	private static boolean like(int[] text, int t, int[] pattern, int p) {
+		while (p < pattern.length) {
+			int c = pattern[p];
+			if (c == '%') {
+				for (int from = t; from <= text.length; from++) {
+					if (like(text, from, pattern, p + 1)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			if (t == text.length) {
+				return false;
+			}
+			if (c == '\\' && p + 1 < pattern.length) {
+				c = pattern[++p];
+			} else if (c == '_') {
+				t++;
+				p++;
+				continue;
+			}
+			if (text[t] != c) {
+				return false;
+			}
+			t++;
+			p++;
+		}
+		return t == text.length;
+	}
+}
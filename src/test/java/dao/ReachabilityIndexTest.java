@@ -0,0 +1,251 @@
+package dao;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import dao.RelationshipGraph.Edge;
+import junit.framework.TestCase;
+import model.ObjectRelationship.RelationshipType;
+
+public class ReachabilityIndexTest extends TestCase {
+
+	public void testBuildsTheClosureOfAGraph() {
+		ReachabilityIndex index = index(edge(1, 1, 2), edge(2, 2, 3), edge(3, 1, 4));
+		assertTrue(index.isReachable(1, 3));
+		assertTrue(index.isReachable(1, 4));
+		assertFalse(index.isReachable(3, 1));
+		assertFalse(index.isReachable(2, 4));
+		assertFalse(index.isReachable(1, 1));
+		assertFalse(index.isReachable(1, 99));
+		assertEquals(set(2, 3, 4), new TreeSet<>(index.descendantsOf(1)));
+		assertEquals(set(1, 2), new TreeSet<>(index.ancestorsOf(3)));
+		assertEquals(Collections.emptyList(), index.descendantsOf(99));
+		assertEquals(4, index.size());
+		assertFalse(index.hasCycles());
+		assertEquals(4, index.toJson().getLong("reachablePairs"));
+	}
+
+	public void testAddJoinsTheAncestorsToTheDescendants() {
+		ReachabilityIndex index = index(edge(1, 1, 2), edge(2, 3, 4));
+		assertFalse(index.isReachable(1, 4));
+		index.add(3, 2, 3);
+		assertTrue(index.isReachable(1, 3));
+		assertTrue(index.isReachable(1, 4));
+		assertTrue(index.isReachable(2, 4));
+		assertEquals(set(1, 2), new TreeSet<>(index.ancestorsOf(3)));
+		assertEquals(set(1, 2, 3), new TreeSet<>(index.ancestorsOf(4)));
+		index.add(4, 5, 1);
+		assertEquals(set(1, 2, 3, 4), new TreeSet<>(index.descendantsOf(5)));
+		assertFalse(index.hasCycles());
+	}
+
+	public void testRemoveKeepsPairsStillReachableAnotherWay() {
+		// 1 -> 2 -> 4 and 1 -> 3 -> 4
+		ReachabilityIndex index = index(edge(1, 1, 2), edge(2, 2, 4), edge(3, 1, 3), edge(4, 3, 4));
+		index.remove(2);
+		assertTrue(index.isReachable(1, 4));
+		assertFalse(index.isReachable(2, 4));
+		assertEquals(set(1, 3), new TreeSet<>(index.ancestorsOf(4)));
+		index.remove(4);
+		assertFalse(index.isReachable(1, 4));
+		assertEquals(Collections.emptyList(), index.ancestorsOf(4));
+		index.remove(4); // already gone
+		assertTrue(index.isReachable(1, 3));
+	}
+
+	public void testDuplicateRelationshipsBetweenTheSamePair() {
+		ReachabilityIndex index = index(edge(1, 1, 2), edge(2, 1, 2), edge(3, 2, 3));
+		index.remove(1);
+		assertTrue(index.isReachable(1, 3));
+		index.remove(2);
+		assertFalse(index.isReachable(1, 2));
+		assertFalse(index.isReachable(1, 3));
+		assertTrue(index.isReachable(2, 3));
+	}
+
+	public void testAddWithAKnownIdMovesTheRelationship() {
+		ReachabilityIndex index = index(edge(1, 1, 2), edge(2, 2, 3));
+		index.add(2, 2, 4);
+		assertFalse(index.isReachable(1, 3));
+		assertTrue(index.isReachable(1, 4));
+		assertEquals(2, index.toJson().getLong("relationships"));
+	}
+
+	public void testRemoveObjectTypeDropsItsRelationships() {
+		ReachabilityIndex index = index(edge(1, 1, 2), edge(2, 2, 3), edge(3, 4, 2), edge(4, 1, 5));
+		index.removeObjectType(2);
+		assertFalse(index.isReachable(1, 3));
+		assertFalse(index.isReachable(4, 3));
+		assertFalse(index.isReachable(1, 2));
+		assertTrue(index.isReachable(1, 5));
+		assertEquals(1, index.toJson().getLong("relationships"));
+		index.removeObjectType(99);
+	}
+
+	public void testCyclesAreDetectedAndClearedByARemoval() {
+		ReachabilityIndex index = index(edge(1, 1, 2), edge(2, 2, 3));
+		assertTrue(index.wouldCreateCycle(3, 1));
+		assertTrue(index.wouldCreateCycle(2, 2));
+		assertFalse(index.wouldCreateCycle(1, 3));
+		index.add(3, 3, 1);
+		assertTrue(index.hasCycles());
+		assertTrue(index.isReachable(1, 1));
+		assertTrue(index.isReachable(3, 2));
+		assertEquals(set(1, 2, 3), new TreeSet<>(index.ancestorsOf(1)));
+		index.remove(3);
+		assertFalse(index.hasCycles());
+		assertFalse(index.isReachable(1, 1));
+		assertFalse(index.isReachable(3, 1));
+		assertTrue(index.isReachable(1, 3));
+	}
+
+	public void testSelfRelationshipIsACycle() {
+		ReachabilityIndex index = index(edge(1, 1, 2));
+		index.add(2, 2, 2);
+		assertTrue(index.hasCycles());
+		assertTrue(index.isReachable(2, 2));
+		assertFalse(index.isReachable(1, 1));
+		index.remove(2);
+		assertFalse(index.hasCycles());
+		assertFalse(index.isReachable(2, 2));
+	}
+
+	public void testRandomAcyclicChangesMatchTheClosureComputedFromScratch() {
+		Random random = new Random(7);
+		Map<Integer, int[]> edges = new HashMap<>();
+		ReachabilityIndex index = ReachabilityIndex.of(RelationshipGraph.of(Collections.<Edge> emptyList()));
+		for (int step = 0; step < 2000; step++) {
+			int id = 1 + random.nextInt(60);
+			int change = random.nextInt(10);
+			if (change < 6) {
+				// lower to higher ids only, so the graph stays acyclic
+				int from = random.nextInt(29);
+				int to = from + 1 + random.nextInt(30 - from - 1);
+				edges.put(id, new int[] { from, to });
+				index.add(id, from, to);
+			} else if (change < 9) {
+				edges.remove(id);
+				index.remove(id);
+			} else {
+				int objectType = random.nextInt(30);
+				edges.values().removeIf(edge -> edge[0] == objectType || edge[1] == objectType);
+				index.removeObjectType(objectType);
+			}
+			assertFalse(index.hasCycles());
+			assertSameClosure("step " + step, edges, index, 30);
+		}
+	}
+
+	public void testRandomChangesWithCyclesMatchTheClosureComputedFromScratch() {
+		Random random = new Random(11);
+		Map<Integer, int[]> edges = new HashMap<>();
+		ReachabilityIndex index = ReachabilityIndex.of(RelationshipGraph.of(Collections.<Edge> emptyList()));
+		for (int step = 0; step < 2000; step++) {
+			int id = 1 + random.nextInt(40);
+			if (random.nextInt(3) < 2) {
+				int from = random.nextInt(20);
+				int to = random.nextInt(20);
+				edges.put(id, new int[] { from, to });
+				index.add(id, from, to);
+			} else {
+				edges.remove(id);
+				index.remove(id);
+			}
+			assertSameClosure("step " + step, edges, index, 20);
+		}
+	}
+
+	public void testBuiltIndexMatchesIncrementalOne() {
+		Random random = new Random(3);
+		List<Edge> edges = new ArrayList<>();
+		Map<Integer, int[]> byId = new HashMap<>();
+		for (int id = 1; id <= 80; id++) {
+			int from = random.nextInt(25);
+			int to = random.nextInt(25);
+			edges.add(edge(id, from, to));
+			byId.put(id, new int[] { from, to });
+		}
+		ReachabilityIndex built = ReachabilityIndex.of(RelationshipGraph.of(edges));
+		assertSameClosure("built", byId, built, 25);
+		assertEquals(!objectTypesOnCycles(byId, 25).isEmpty(), built.hasCycles());
+	}
+
+	/**
+	 * Compares the index with a search from every object type over the
+	 * remaining relationships.
+	 */
+	private static void assertSameClosure(String message, Map<Integer, int[]> edges, ReachabilityIndex index, int objectTypes) {
+		Map<Integer, Set<Integer>> reachable = closure(edges, objectTypes);
+		for (int from = 0; from < objectTypes; from++) {
+			assertEquals(message + ", descendants of " + from, reachable.get(from), new TreeSet<>(index.descendantsOf(from)));
+			Set<Integer> ancestors = new TreeSet<>();
+			for (int other = 0; other < objectTypes; other++) {
+				if (reachable.get(other).contains(from)) {
+					ancestors.add(other);
+				}
+			}
+			assertEquals(message + ", ancestors of " + from, ancestors, new TreeSet<>(index.ancestorsOf(from)));
+			for (int to = 0; to < objectTypes; to++) {
+				assertEquals(message + ", " + from + " -> " + to, reachable.get(from).contains(to), index.isReachable(from, to));
+			}
+		}
+		// the flag is cleared only by a full recomputation, so it may outlive the cycle
+		if (!objectTypesOnCycles(edges, objectTypes).isEmpty()) {
+			assertTrue(message + ", cyclic", index.hasCycles());
+		}
+	}
+
+	private static Map<Integer, Set<Integer>> closure(Map<Integer, int[]> edges, int objectTypes) {
+		Map<Integer, List<Integer>> out = new HashMap<>();
+		for (int[] edge : edges.values()) {
+			out.computeIfAbsent(edge[0], k -> new ArrayList<>()).add(edge[1]);
+		}
+		Map<Integer, Set<Integer>> reachable = new HashMap<>();
+		for (int from = 0; from < objectTypes; from++) {
+			Set<Integer> seen = new TreeSet<>();
+			Deque<Integer> queue = new ArrayDeque<>(Arrays.asList(from));
+			while (!queue.isEmpty()) {
+				for (Integer next : out.getOrDefault(queue.poll(), Collections.<Integer> emptyList())) {
+					if (seen.add(next)) {
+						queue.add(next);
+					}
+				}
+			}
+			reachable.put(from, seen);
+		}
+		return reachable;
+	}
+
+	private static Set<Integer> objectTypesOnCycles(Map<Integer, int[]> edges, int objectTypes) {
+		Set<Integer> onCycles = new HashSet<>();
+		Map<Integer, Set<Integer>> reachable = closure(edges, objectTypes);
+		for (int from = 0; from < objectTypes; from++) {
+			if (reachable.get(from).contains(from)) {
+				onCycles.add(from);
+			}
+		}
+		return onCycles;
+	}
+
+	private static ReachabilityIndex index(Edge... edges) {
+		return ReachabilityIndex.of(RelationshipGraph.of(Arrays.asList(edges)));
+	}
+
+	private static Edge edge(int id, int objectTypeId, int relatedObjectTypeId) {
+		return RelationshipGraphTest.edge(id, objectTypeId, relatedObjectTypeId, RelationshipType.values()[0]);
+	}
+
+	private static Set<Integer> set(Integer... ids) {
+		return new TreeSet<>(Arrays.asList(ids));
+	}
+}
@@ -0,0 +1,179 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import dao.RelationshipGraph.Edge;
+import junit.framework.TestCase;
+
+public class RelationshipCycleGuardTest extends TestCase {
+
+	/** The relationships of the fake database: id to object type and related object type. */
+	private final Map<Integer, int[]> relationships = new TreeMap<>();
+	/** The statements run, in order. */
+	private final List<String> statements = new ArrayList<>();
+
+	public void testRejectsARelationshipClosingACycle() throws Exception {
+		relate(1, 1, 2);
+		relate(2, 2, 3);
+		assertTrue(RelationshipCycleGuard.closesCycle(connection(), 0, 3, 1));
+		assertTrue(RelationshipCycleGuard.closesCycle(connection(), 0, 3, 2));
+		assertFalse(RelationshipCycleGuard.closesCycle(connection(), 0, 1, 3));
+		assertFalse(RelationshipCycleGuard.closesCycle(connection(), 0, 4, 1));
+	}
+
+	public void testRejectsASelfRelationship() throws Exception {
+		assertTrue(RelationshipCycleGuard.closesCycle(connection(), 0, 4, 4));
+	}
+
+	public void testPathsThroughTheChangedRelationshipDoNotCount() throws Exception {
+		relate(1, 1, 2);
+		// turning 1 -> 2 around is no cycle, adding 2 -> 1 next to it is
+		assertFalse(RelationshipCycleGuard.closesCycle(connection(), 1, 2, 1));
+		assertTrue(RelationshipCycleGuard.closesCycle(connection(), 0, 2, 1));
+	}
+
+	public void testLocksBeforeChecking() throws Exception {
+		RelationshipCycleGuard.closesCycle(connection(), 0, 1, 2);
+		assertEquals(2, statements.size());
+		assertEquals("SELECT pg_advisory_xact_lock(?)", statements.get(0));
+		assertTrue(statements.get(1).startsWith("WITH RECURSIVE"));
+	}
+
+	public void testFailsOutsideAUnitOfWork() throws Exception {
+		try {
+			RelationshipCycleGuard.closesCycle(0, 1, 2);
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(statements.isEmpty());
+		}
+	}
+
+	public void testListsOnlyTheNewRelationshipsOnCycles() throws Exception {
+		relate(1, 1, 2);
+		relate(2, 2, 3);
+		relate(3, 5, 6);
+		relate(4, 6, 5); // an older cycle, written while the check was off
+		relate(5, 3, 1);
+		relate(6, 3, 4);
+		List<Integer> ids = new ArrayList<>();
+		for (Edge edge : RelationshipCycleGuard.newEdgesOnCycles(connection(), 4)) {
+			ids.add(edge.getRelationshipId());
+		}
+		assertEquals(Arrays.asList(5), ids);
+		assertTrue(RelationshipCycleGuard.newEdgesOnCycles(connection(), 5).isEmpty());
+	}
+
+	public void testNoRelationships() throws Exception {
+		assertTrue(RelationshipCycleGuard.newEdgesOnCycles(connection(), 0).isEmpty());
+	}
+
+	private void relate(int id, int objectTypeId, int relatedObjectTypeId) {
+		relationships.put(id, new int[] { objectTypeId, relatedObjectTypeId });
+	}
+
+	/**
+	 * A connection answering the lock, the recursive reachability query and
+	 * the listing of every relationship from {@link #relationships}.
+	 */
+	private Connection connection() {
+		return proxy(Connection.class, (target, method, args) -> {
+			if (method.getName().equals("prepareStatement")) {
+				return statement((String) args[0]);
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	private PreparedStatement statement(String sql) {
+		Map<Integer, Object> parameters = new HashMap<>();
+		return proxy(PreparedStatement.class, (target, method, args) -> {
+			switch (method.getName()) {
+			case "setInt":
+			case "setLong":
+				parameters.put((Integer) args[0], args[1]);
+				return null;
+			case "execute":
+				statements.add(sql);
+				return true;
+			case "executeQuery":
+				statements.add(sql);
+				if (sql.startsWith("WITH RECURSIVE")) {
+					boolean reaches = reaches((Integer) parameters.get(1), (Integer) parameters.get(2),
+							(Integer) parameters.get(3));
+					return resultSet(Arrays.asList("exists"), Arrays.<List<Object>> asList(Arrays.<Object> asList(reaches)));
+				}
+				List<List<Object>> rows = new ArrayList<>();
+				for (Map.Entry<Integer, int[]> entry : relationships.entrySet()) {
+					rows.add(Arrays.<Object> asList(entry.getKey(), entry.getValue()[0], entry.getValue()[1], "ONE_TO_MANY"));
+				}
+				return resultSet(Arrays.asList("id", "fk_object_type_id", "fk_related_object_type_id", "relationship_type"), rows);
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static ResultSet resultSet(List<String> labels, List<List<Object>> rows) {
+		ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (target, method, args) -> {
+			switch (method.getName()) {
+			case "getColumnCount":
+				return labels.size();
+			case "getColumnLabel":
+				return labels.get((Integer) args[0] - 1);
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		int[] row = { -1 };
+		return proxy(ResultSet.class, (target, method, args) -> {
+			switch (method.getName()) {
+			case "next":
+				return ++row[0] < rows.size();
+			case "getMetaData":
+				return metaData;
+			case "getInt":
+			case "getBoolean":
+			case "getString":
+				return rows.get(row[0]).get((Integer) args[0] - 1);
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	/** What the recursive query computes: whether from reaches to without the excluded relationship. */
+	private boolean reaches(int from, int excludedId, int to) {
+		Set<Integer> reached = new HashSet<>(Arrays.asList(from));
+		Deque<Integer> queue = new ArrayDeque<>(reached);
+		while (!queue.isEmpty()) {
+			int objectTypeId = queue.poll();
+			for (Map.Entry<Integer, int[]> entry : relationships.entrySet()) {
+				int[] relationship = entry.getValue();
+				if (entry.getKey() != excludedId && relationship[0] == objectTypeId && reached.add(relationship[1])) {
+					queue.add(relationship[1]);
+				}
+			}
+		}
+		return reached.contains(to);
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				(target, method, args) -> method.getName().equals("close") ? null : handler.invoke(target, method, args)));
+	}
+}
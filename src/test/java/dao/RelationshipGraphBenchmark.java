@@ -0,0 +1,146 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dao.RelationshipGraph.Direction;
+import dao.RelationshipGraph.Edge;
+import model.ObjectRelationship.RelationshipType;
+
+/**
+ * Time of the relationship lookups of {@link ObjectRelationshipDAO} when
+ * answered in memory: a neighborhood within three hops and a shortest path on
+ * the compressed {@link RelationshipGraph}, with and without an overlay of
+ * recent changes, against the same breadth-first search over a map of edge
+ * lists, and a reachability check on the {@link ReachabilityIndex} against
+ * searching the graph.
+ *
+ * <p>
+ * The relationships are generated in memory, about three per object type and
+ * each from a lower to a higher id, so the graph is acyclic like a type
+ * hierarchy. No database is needed. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=RelationshipGraphBenchmark}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RelationshipGraphBenchmark {
+
+	private static final RelationshipType[] TYPES = RelationshipType.values();
+
+	@Param({ "1000", "10000" })
+	public int objectTypes;
+
+	private RelationshipGraph compacted;
+	private RelationshipGraph withOverlay;
+	private Map<Integer, List<Edge>> adjacency;
+	private ReachabilityIndex closure;
+	/** Object type ids to query, taken in turn. */
+	private int[] starts;
+	private int next;
+
+	@Setup
+	public void generateGraph() {
+		Random random = new Random(1);
+		List<Edge> edges = new ArrayList<>();
+		for (int id = 1; id <= objectTypes * 3; id++) {
+			int source = random.nextInt(objectTypes - 1);
+			int target = source + 1 + random.nextInt(Math.min(50, objectTypes - 1 - source));
+			edges.add(new Edge(id, source, target, TYPES[random.nextInt(TYPES.length)]));
+		}
+		compacted = RelationshipGraph.of(edges);
+		// recent changes not compacted yet: relationships moved to another object type
+		withOverlay = compacted;
+		for (int i = 0; i < 400; i++) {
+			Edge moved = edges.get(random.nextInt(edges.size()));
+			int target = moved.getSourceId() + 1 + random.nextInt(Math.min(50, objectTypes - 1 - moved.getSourceId()));
+			withOverlay = withOverlay.withEdge(new Edge(moved.getRelationshipId(), moved.getSourceId(), target, moved.getType()));
+		}
+		adjacency = new HashMap<>();
+		withOverlay.forEachEdge(edge -> {
+			adjacency.computeIfAbsent(edge.getSourceId(), k -> new ArrayList<>()).add(edge);
+			adjacency.computeIfAbsent(edge.getTargetId(), k -> new ArrayList<>()).add(edge);
+		});
+		closure = ReachabilityIndex.of(withOverlay);
+		starts = new int[1024];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = random.nextInt(objectTypes);
+		}
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> neighborhoodCompacted() {
+		return compacted.neighborhood(start(), 3, Direction.BOTH, null);
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> neighborhoodWithOverlay() {
+		return withOverlay.neighborhood(start(), 3, Direction.BOTH, null);
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> neighborhoodEdgeLists() {
+		int start = start();
+		Map<Integer, Integer> distances = new LinkedHashMap<>();
+		distances.put(start, 0);
+		List<Integer> queue = new ArrayList<>();
+		queue.add(start);
+		for (int head = 0; head < queue.size(); head++) {
+			int node = queue.get(head);
+			int distance = distances.get(node);
+			if (distance == 3) {
+				continue;
+			}
+			for (Edge edge : adjacency.getOrDefault(node, Collections.<Edge> emptyList())) {
+				int neighbor = edge.getSourceId() == node ? edge.getTargetId() : edge.getSourceId();
+				if (!distances.containsKey(neighbor)) {
+					distances.put(neighbor, distance + 1);
+					queue.add(neighbor);
+				}
+			}
+		}
+		return distances;
+	}
+
+	@Benchmark
+	public List<Edge> shortestPath() {
+		return withOverlay.shortestPath(start(), start(), Direction.BOTH, null);
+	}
+
+	@Benchmark
+	public boolean reachableByClosure() {
+		return closure.isReachable(start(), start());
+	}
+
+	@Benchmark
+	public boolean reachableBySearch() {
+		return withOverlay.shortestPath(start(), start(), Direction.OUTGOING, null) != null;
+	}
+
+	private int start() {
+		next = (next + 1) & (starts.length - 1);
+		return starts[next];
+	}
+}
@@ -0,0 +1,254 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import dao.RelationshipGraph.Direction;
+import dao.RelationshipGraph.Edge;
+import junit.framework.TestCase;
+import model.ObjectRelationship.RelationshipType;
+
+public class RelationshipGraphTest extends TestCase {
+
+	private static final RelationshipType[] TYPES = { RelationshipType.ONE_TO_ONE, RelationshipType.ONE_TO_MANY,
+			RelationshipType.MANY_TO_ONE, RelationshipType.MANY_TO_MANY, null };
+
+	public void testTraversesByDirectionHopsAndType() {
+		// 1 -> 2 -> 3 -> 4, 1 -> 5 (many to many), 6 -> 1
+		RelationshipGraph graph = RelationshipGraph.of(Arrays.asList(edge(10, 1, 2, RelationshipType.ONE_TO_MANY),
+				edge(11, 2, 3, RelationshipType.ONE_TO_MANY), edge(12, 3, 4, RelationshipType.ONE_TO_ONE),
+				edge(13, 1, 5, RelationshipType.MANY_TO_MANY), edge(14, 6, 1, null)));
+
+		assertEquals(distances(1, 0, 2, 1, 5, 1, 3, 2, 4, 3), graph.neighborhood(1, -1, Direction.OUTGOING, null));
+		assertEquals(distances(1, 0, 2, 1, 5, 1), graph.neighborhood(1, 1, Direction.OUTGOING, null));
+		assertEquals(distances(1, 0, 6, 1), graph.neighborhood(1, -1, Direction.INCOMING, null));
+		assertEquals(distances(3, 0, 2, 1, 4, 1, 1, 2, 5, 3, 6, 3), graph.neighborhood(3, -1, Direction.BOTH, null));
+		assertEquals(distances(1, 0, 2, 1, 3, 2), graph.neighborhood(1, -1, Direction.OUTGOING, EnumSet.of(RelationshipType.ONE_TO_MANY)));
+		assertTrue(graph.neighborhood(99, -1, Direction.BOTH, null).isEmpty());
+
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), graph.depthFirst(1, Direction.OUTGOING, null));
+		assertEquals(Arrays.asList(4, 3, 2, 1), graph.depthFirst(4, Direction.INCOMING, null).subList(0, 4));
+
+		List<Edge> path = graph.shortestPath(6, 4, Direction.OUTGOING, null);
+		assertEquals(Arrays.asList(14, 10, 11, 12), relationshipIds(path));
+		assertNull(graph.shortestPath(4, 6, Direction.OUTGOING, null));
+		List<Edge> back = graph.shortestPath(4, 6, Direction.BOTH, null);
+		assertEquals(Arrays.asList(12, 11, 10, 14), relationshipIds(back));
+		// edges keep their own direction when walked backwards
+		assertEquals(3, back.get(0).getSourceId());
+		assertEquals(4, back.get(0).getTargetId());
+		assertTrue(graph.shortestPath(2, 2, Direction.OUTGOING, null).isEmpty());
+		assertNull(graph.shortestPath(1, 4, Direction.OUTGOING, EnumSet.of(RelationshipType.MANY_TO_MANY)));
+	}
+
+	public void testOverlayAddsReplacesAndHidesEdges() {
+		RelationshipGraph base = RelationshipGraph.of(Arrays.asList(edge(1, 1, 2, null), edge(2, 2, 3, null)));
+
+		RelationshipGraph added = base.withEdge(edge(3, 3, 4, RelationshipType.ONE_TO_ONE));
+		assertEquals(distances(1, 0, 2, 1, 3, 2, 4, 3), added.neighborhood(1, -1, Direction.OUTGOING, null));
+		assertEquals(Arrays.asList(edge(3, 3, 4, RelationshipType.ONE_TO_ONE)).toString(),
+				added.edges(4, Direction.BOTH, null).toString());
+		// the original graph is unchanged
+		assertFalse(base.contains(4));
+
+		RelationshipGraph moved = added.withEdge(edge(2, 2, 5, null));
+		assertEquals(distances(1, 0, 2, 1, 5, 2), moved.neighborhood(1, -1, Direction.OUTGOING, null));
+		assertEquals(distances(3, 0, 4, 1), moved.neighborhood(3, -1, Direction.OUTGOING, null));
+
+		RelationshipGraph removed = moved.withoutEdges(Arrays.asList(1, 3));
+		assertEquals(distances(1, 0), removed.neighborhood(1, -1, Direction.BOTH, null));
+		assertEquals(distances(2, 0, 5, 1), removed.neighborhood(2, -1, Direction.BOTH, null));
+		assertTrue(removed.edges(4, Direction.BOTH, null).isEmpty());
+
+		RelationshipGraph withoutTwo = moved.withoutObjectType(2);
+		assertEquals(distances(1, 0), withoutTwo.neighborhood(1, -1, Direction.BOTH, null));
+		assertEquals(distances(3, 0, 4, 1), withoutTwo.neighborhood(3, -1, Direction.BOTH, null));
+		assertSame(moved, moved.withoutEdges(Collections.<Integer> emptyList()));
+	}
+
+	public void testCompactsOnceTheOverlayGrows() {
+		List<Edge> edges = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			edges.add(edge(i, i, i + 1, null));
+		}
+		RelationshipGraph graph = RelationshipGraph.of(edges);
+		// an added edge also hides its id in the arrays, so each counts twice against the 1024 changes
+		for (int i = 100; i < 612; i++) {
+			graph = graph.withEdge(edge(i, i, i + 1, null));
+			assertEquals(i - 99, graph.toJson().getInt("overlayAdded"));
+		}
+		graph = graph.withEdge(edge(612, 612, 613, null));
+		assertEquals(0, graph.toJson().getInt("overlayAdded"));
+		assertEquals(0, graph.toJson().getInt("overlayHidden"));
+		assertEquals(613, graph.toJson().getInt("compactedEdges"));
+		assertEquals(614, graph.neighborhood(0, -1, Direction.OUTGOING, null).size());
+		assertEquals(613, graph.shortestPath(0, 613, Direction.OUTGOING, null).size());
+
+		graph = graph.withoutEdges(Collections.singletonList(5));
+		assertEquals(1, graph.toJson().getInt("overlayHidden"));
+		assertEquals(distances(0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5), graph.neighborhood(0, -1, Direction.OUTGOING, null));
+	}
+
+	public void testRandomChangesMatchAGraphBuiltFromScratch() {
+		Random random = new Random(7);
+		Map<Integer, Edge> current = new HashMap<>();
+		for (int id = 1; id <= 300; id++) {
+			current.put(id, randomEdge(random, id));
+		}
+		RelationshipGraph graph = RelationshipGraph.of(current.values());
+		int nextId = 301;
+		for (int step = 0; step < 3000; step++) {
+			int choice = random.nextInt(10);
+			if (choice < 4) {
+				Edge edge = randomEdge(random, nextId++);
+				current.put(edge.getRelationshipId(), edge);
+				graph = graph.withEdge(edge);
+			} else if (choice < 6 && !current.isEmpty()) {
+				Edge edge = randomEdge(random, randomKey(random, current));
+				current.put(edge.getRelationshipId(), edge);
+				graph = graph.withEdge(edge);
+			} else if (choice < 9 && !current.isEmpty()) {
+				int id = randomKey(random, current);
+				current.remove(id);
+				graph = graph.withoutEdges(Collections.singletonList(id));
+			} else {
+				int objectTypeId = random.nextInt(60);
+				current.values().removeIf(edge -> edge.getSourceId() == objectTypeId || edge.getTargetId() == objectTypeId);
+				graph = graph.withoutObjectType(objectTypeId);
+			}
+			if (step % 100 == 0) {
+				assertSameTraversals(current, graph, random);
+			}
+		}
+		assertSameTraversals(current, graph, random);
+	}
+
+	public void testFindsTheEdgesOnCycles() {
+		// 1 <-> 2 -> 3 -> 4 -> 2, 5 -> 5, 6 -> 1
+		RelationshipGraph graph = RelationshipGraph.of(Arrays.asList(edge(1, 1, 2, null), edge(2, 2, 1, null),
+				edge(3, 2, 3, null), edge(4, 3, 4, null), edge(5, 4, 2, null), edge(6, 5, 5, null), edge(7, 6, 1, null)));
+		assertEquals(new TreeSet<>(Arrays.asList(1, 2, 3, 4, 5, 6)), new TreeSet<>(relationshipIds(graph.edgesOnCycles())));
+		assertTrue(RelationshipGraph.of(Arrays.asList(edge(1, 1, 2, null), edge(2, 2, 3, null), edge(3, 1, 3, null)))
+				.edgesOnCycles().isEmpty());
+		// an overlay edge closing a cycle counts too
+		assertEquals(new TreeSet<>(Arrays.asList(1, 2, 4)),
+				new TreeSet<>(relationshipIds(RelationshipGraph.of(Arrays.asList(edge(1, 1, 2, null), edge(2, 2, 3, null)))
+						.withEdge(edge(4, 3, 1, null)).edgesOnCycles())));
+	}
+
+	private static void assertSameTraversals(Map<Integer, Edge> current, RelationshipGraph graph, Random random) {
+		RelationshipGraph rebuilt = RelationshipGraph.of(current.values());
+		Set<Integer> objectTypes = new TreeSet<>();
+		for (Edge edge : current.values()) {
+			objectTypes.add(edge.getSourceId());
+			objectTypes.add(edge.getTargetId());
+		}
+		for (int objectTypeId : objectTypes) {
+			for (Direction direction : Direction.values()) {
+				Set<RelationshipType> types = random.nextBoolean() ? null : EnumSet.of(RelationshipType.ONE_TO_MANY, RelationshipType.MANY_TO_ONE);
+				Map<Integer, Integer> expected = reference(current, objectTypeId, direction, types);
+				assertEquals(expected, graph.neighborhood(objectTypeId, -1, direction, types));
+				assertEquals(expected, rebuilt.neighborhood(objectTypeId, -1, direction, types));
+				assertEquals(expected.keySet(), new HashSet<>(graph.depthFirst(objectTypeId, direction, types)));
+				assertEquals(sortedIds(current, objectTypeId, direction), sortedIds(graph.edges(objectTypeId, direction, null)));
+				int to = random.nextInt(60);
+				List<Edge> path = graph.shortestPath(objectTypeId, to, direction, types);
+				Integer hops = expected.get(to);
+				if (hops == null) {
+					assertNull(path);
+				} else {
+					assertEquals(hops.intValue(), path.size());
+				}
+			}
+		}
+	}
+
+	/** Breadth-first search over the current edges. */
+	private static Map<Integer, Integer> reference(Map<Integer, Edge> current, int start, Direction direction,
+			Set<RelationshipType> types) {
+		Map<Integer, Integer> distances = new LinkedHashMap<>();
+		distances.put(start, 0);
+		List<Integer> queue = new ArrayList<>(Collections.singletonList(start));
+		for (int head = 0; head < queue.size(); head++) {
+			int node = queue.get(head);
+			for (Edge edge : current.values()) {
+				if (types != null && !types.contains(edge.getType())) {
+					continue;
+				}
+				List<Integer> next = new ArrayList<>();
+				if (direction != Direction.INCOMING && edge.getSourceId() == node) {
+					next.add(edge.getTargetId());
+				}
+				if (direction != Direction.OUTGOING && edge.getTargetId() == node) {
+					next.add(edge.getSourceId());
+				}
+				for (int neighbor : next) {
+					if (!distances.containsKey(neighbor)) {
+						distances.put(neighbor, distances.get(node) + 1);
+						queue.add(neighbor);
+					}
+				}
+			}
+		}
+		return distances;
+	}
+
+	private static List<Integer> sortedIds(Map<Integer, Edge> current, int objectTypeId, Direction direction) {
+		List<Integer> ids = new ArrayList<>();
+		for (Edge edge : current.values()) {
+			if (direction != Direction.INCOMING && edge.getSourceId() == objectTypeId) {
+				ids.add(edge.getRelationshipId());
+			}
+			if (direction != Direction.OUTGOING && edge.getTargetId() == objectTypeId) {
+				ids.add(edge.getRelationshipId());
+			}
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+
+	private static List<Integer> sortedIds(List<Edge> edges) {
+		List<Integer> ids = relationshipIds(edges);
+		Collections.sort(ids);
+		return ids;
+	}
+
+	private static Edge randomEdge(Random random, int id) {
+		return edge(id, random.nextInt(60), random.nextInt(60), TYPES[random.nextInt(TYPES.length)]);
+	}
+
+	private static int randomKey(Random random, Map<Integer, Edge> current) {
+		List<Integer> keys = new ArrayList<>(current.keySet());
+		return keys.get(random.nextInt(keys.size()));
+	}
+
+	static Edge edge(int id, int source, int target, RelationshipType type) {
+		return new Edge(id, source, target, type);
+	}
+
+	private static Map<Integer, Integer> distances(int... idAndDistance) {
+		Map<Integer, Integer> distances = new LinkedHashMap<>();
+		for (int i = 0; i < idAndDistance.length; i += 2) {
+			distances.put(idAndDistance[i], idAndDistance[i + 1]);
+		}
+		return distances;
+	}
+
+	private static List<Integer> relationshipIds(List<Edge> edges) {
+		List<Integer> ids = new ArrayList<>();
+		for (Edge edge : edges) {
+			ids.add(edge.getRelationshipId());
+		}
+		return ids;
+	}
+}
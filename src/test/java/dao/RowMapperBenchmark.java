@@ -0,0 +1,145 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.ManufacturingFacility;
+import model.ObjectType;
+import model.UseCase;
+import utils.ColumnIndex;
+import utils.DatabaseUtility;
+import utils.RowMapper;
+
+/**
+ * Cost of mapping rows to {@link ObjectType}s and {@link UseCase}s by column
+ * label with {@code Enum.valueOf}, as {@link ObjectTypeDAO} and
+ * {@link UseCaseDAO} did before {@link RowMappers}, against the index-based
+ * {@link RowMappers#OBJECT_TYPE} and {@link RowMappers#USE_CASE}.
+ *
+ * <p>
+ * The rows are generated by the database of {@code application.properties}
+ * with {@code generate_series}, so no tables are needed, and read once into a
+ * scrollable result set of the driver; every invocation rewinds it and maps
+ * all rows, so the numbers exclude the query and the network. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=RowMapperBenchmark}.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RowMapperBenchmark {
+
+	@Param({ "1000" })
+	public int rows;
+
+	private Connection connection;
+	private ResultSet objectTypes;
+	private ResultSet useCases;
+
+	@Setup
+	public void readRows() throws SQLException {
+		connection = DatabaseUtility.connectForRead();
+		Statement statement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		objectTypes = statement.executeQuery("SELECT g AS id, 'type ' || g AS name, 'description of type ' || g AS description,"
+				+ " now() AS created_at, now() AS updated_at, " + pick(ObjectType.StatusOption.values()) + " AS status_options"
+				+ " FROM generate_series(1, " + rows + ") g");
+		statement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		useCases = statement.executeQuery("SELECT g AS id, 'use case ' || g AS use_case_description,"
+				+ " " + pick(UseCase.FacilityType.values()) + " AS facility_types,"
+				+ " " + pick(UseCase.ComplianceStatusOption.values()) + " AS compliance_status_options,"
+				+ " " + pick(UseCase.StatusOption.values()) + " AS status_options, g % 50 AS fk_facility_id"
+				+ " FROM generate_series(1, " + rows + ") g");
+	}
+
+	@TearDown
+	public void close() throws SQLException {
+		objectTypes.getStatement().close();
+		useCases.getStatement().close();
+		DatabaseUtility.disconnect(connection);
+	}
+
+	@Benchmark
+	public void objectTypeByLabel(Blackhole blackhole) throws SQLException {
+		ResultSet rs = objectTypes;
+		rs.beforeFirst();
+		while (rs.next()) {
+			ObjectType objectType = new ObjectType();
+			objectType.setId(rs.getInt("id"));
+			objectType.setName(rs.getString("name"));
+			objectType.setDescription(rs.getString("description"));
+			objectType.setCreatedAt(rs.getTimestamp("created_at"));
+			objectType.setUpdatedAt(rs.getTimestamp("updated_at"));
+			objectType.setStatusOption(ObjectType.StatusOption.valueOf(rs.getString("status_options")));
+			blackhole.consume(objectType);
+		}
+	}
+
+	@Benchmark
+	public void objectTypeRowMapper(Blackhole blackhole) throws SQLException {
+		ResultSet rs = objectTypes;
+		rs.beforeFirst();
+		RowMapper<ObjectType> mapper = RowMappers.OBJECT_TYPE.create(ColumnIndex.of(rs));
+		while (rs.next()) {
+			blackhole.consume(mapper.mapRow(rs));
+		}
+	}
+
+	@Benchmark
+	public void useCaseByLabel(Blackhole blackhole) throws SQLException {
+		ResultSet rs = useCases;
+		rs.beforeFirst();
+		while (rs.next()) {
+			UseCase useCase = new UseCase();
+			useCase.setId(rs.getInt("id"));
+			useCase.setUseCaseDescription(rs.getString("use_case_description"));
+			useCase.setFacilityType(UseCase.FacilityType.valueOf(rs.getString("facility_types")));
+			useCase.setComplianceStatus(UseCase.ComplianceStatusOption.valueOf(rs.getString("compliance_status_options")));
+			useCase.setStatus(UseCase.StatusOption.valueOf(rs.getString("status_options")));
+			ManufacturingFacility facility = new ManufacturingFacility();
+			facility.setId(rs.getInt("fk_facility_id"));
+			useCase.setFacility(facility);
+			blackhole.consume(useCase);
+		}
+	}
+
+	@Benchmark
+	public void useCaseRowMapper(Blackhole blackhole) throws SQLException {
+		ResultSet rs = useCases;
+		rs.beforeFirst();
+		RowMapper<UseCase> mapper = RowMappers.USE_CASE.create(ColumnIndex.of(rs));
+		while (rs.next()) {
+			blackhole.consume(mapper.mapRow(rs));
+		}
+	}
+
+	/**
+	 * @return an SQL expression cycling through the names of the constants by row
+	 */
+	private static String pick(Enum<?>[] constants) {
+		StringBuilder sql = new StringBuilder("(ARRAY[");
+		for (int i = 0; i < constants.length; i++) {
+			sql.append(i == 0 ? "'" : ", '").append(constants[i].name()).append('\'');
+		}
+		return sql.append("])[1 + g % ").append(constants.length).append(']').toString();
+	}
+}
@@ -0,0 +1,149 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.Action;
+import model.ManufacturingFacility;
+import model.ObjectType;
+import model.UseCase;
+import model.UseCaseAction;
+import model.UseCaseObjectType;
+import utils.EnumLookup;
+import utils.QueryExecutor;
+import utils.RowMapperFactory;
+
+/**
+ * Latency of loading a use case with its facility, facility documents,
+ * actions and object types with {@link UseCaseDAO#fetchUseCaseAggregate(int)},
+ * one statement, against the query per association it replaces: the use case,
+ * the facility, the documents, the use case actions, their actions by id, the
+ * use case object types and their object types by id, seven round trips.
+ *
+ * <p>
+ * Runs against the database of {@code application.properties}; pass the id
+ * of a use case with actions and object types as {@code -p useCaseId=<id>}.
+ * Both variants read the database directly, bypassing the entity and ontology
+ * caches. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=UseCaseAggregateBenchmark}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class UseCaseAggregateBenchmark {
+
+	private static final EnumLookup<UseCaseObjectType.RelevantObjectTypes> RELEVANT_OBJECT_TYPES = EnumLookup.of(UseCaseObjectType.RelevantObjectTypes.class);
+	private static final EnumLookup<UseCaseObjectType.ImpactLevel> IMPACT_LEVEL = EnumLookup.of(UseCaseObjectType.ImpactLevel.class);
+
+	/**
+	 * Maps a row of {@code use_case_object_types}; the object type is a
+	 * reference holding only its id.
+	 */
+	private static final RowMapperFactory<UseCaseObjectType> USE_CASE_OBJECT_TYPE = columns -> {
+		int id = columns.indexOf("id");
+		int useCaseDescription = columns.indexOf("use_case_description");
+		int relevantObjectTypes = columns.indexOf("relevant_object_types");
+		int associatedFunctionality = columns.indexOf("associated_functionality");
+		int impactLevel = columns.indexOf("impact_level");
+		int creationDate = columns.indexOf("creation_date");
+		int lastUpdated = columns.indexOf("last_updated");
+		int objectTypeId = columns.indexOf("fk_object_type_id");
+		return rs -> {
+			UseCaseObjectType useCaseObjectType = new UseCaseObjectType();
+			useCaseObjectType.setId(rs.getInt(id));
+			useCaseObjectType.setUseCaseDescription(rs.getString(useCaseDescription));
+			useCaseObjectType.setRelevantObjectTypes(RELEVANT_OBJECT_TYPES.lookup(rs.getString(relevantObjectTypes)));
+			useCaseObjectType.setAssociatedFunctionality(rs.getString(associatedFunctionality));
+			useCaseObjectType.setImpactLevel(IMPACT_LEVEL.lookup(rs.getString(impactLevel)));
+			useCaseObjectType.setCreationDate(rs.getDate(creationDate));
+			useCaseObjectType.setLastUpdated(rs.getTimestamp(lastUpdated));
+			ObjectType objectType = new ObjectType();
+			objectType.setId(rs.getInt(objectTypeId));
+			useCaseObjectType.setObjectType(objectType);
+			return useCaseObjectType;
+		};
+	};
+
+	@Param({ "1" })
+	public int useCaseId;
+
+	private final UseCaseDAO useCaseDAO = new UseCaseDAO();
+
+	@Setup
+	public void checkUseCase() throws SQLException {
+		if (useCaseDAO.fetchUseCaseAggregate(useCaseId) == null || queryPerAssociation() == null) {
+			throw new IllegalStateException("Use case " + useCaseId + " cannot be read; pass an existing id with -p useCaseId=<id>");
+		}
+	}
+
+	@Benchmark
+	public UseCase aggregate() {
+		return useCaseDAO.fetchUseCaseAggregate(useCaseId);
+	}
+
+	@Benchmark
+	public UseCase queryPerAssociation() throws SQLException {
+		UseCase useCase = QueryExecutor.queryOne("SELECT * FROM use_cases WHERE id = ?", RowMappers.USE_CASE, useCaseId);
+		if (useCase == null) {
+			return null;
+		}
+		int facilityId = useCase.getFacility().getId();
+		ManufacturingFacility facility = QueryExecutor.queryOne("SELECT * FROM manufacturing_facilities WHERE id = ?",
+				RowMappers.MANUFACTURING_FACILITY, facilityId);
+		if (facility != null) {
+			facility.setDocuments(QueryExecutor.query("SELECT * FROM facility_documents WHERE fk_facility_id = ? ORDER BY id",
+					RowMappers.FACILITY_DOCUMENT, facilityId));
+			useCase.setFacility(facility);
+		}
+
+		List<UseCaseAction> actions = QueryExecutor.query("SELECT * FROM use_case_actions WHERE fk_use_case_id = ? ORDER BY id",
+				RowMappers.USE_CASE_ACTION, useCaseId);
+		Set<Integer> actionIds = new LinkedHashSet<>();
+		for (UseCaseAction action : actions) {
+			actionIds.add(action.getAction().getId());
+		}
+		Map<Integer, Action> actionsById = QueryExecutor.queryByIds("SELECT * FROM actions WHERE id = ANY(?)", actionIds,
+				RowMappers.ACTION, Action::getId);
+		for (UseCaseAction action : actions) {
+			action.setUseCase(useCase);
+			action.setAction(actionsById.get(action.getAction().getId()));
+		}
+		useCase.setActions(actions);
+
+		List<UseCaseObjectType> objectTypes = QueryExecutor.query(
+				"SELECT * FROM use_case_object_types WHERE fk_use_case_id = ? ORDER BY id", USE_CASE_OBJECT_TYPE, useCaseId);
+		Set<Integer> objectTypeIds = new LinkedHashSet<>();
+		for (UseCaseObjectType objectType : objectTypes) {
+			objectTypeIds.add(objectType.getObjectType().getId());
+		}
+		Map<Integer, ObjectType> objectTypesById = QueryExecutor.queryByIds("SELECT * FROM object_types WHERE id = ANY(?)",
+				objectTypeIds, RowMappers.OBJECT_TYPE, ObjectType::getId);
+		for (UseCaseObjectType objectType : objectTypes) {
+			objectType.setUseCase(useCase);
+			objectType.setObjectType(objectTypesById.get(objectType.getObjectType().getId()));
+		}
+		useCase.setObjectTypes(new ArrayList<>(objectTypes));
+		return useCase;
+	}
+}
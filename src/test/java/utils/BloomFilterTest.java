@@ -0,0 +1,95 @@
+package utils;
+
+import junit.framework.TestCase;
+
+public class BloomFilterTest extends TestCase {
+
+	public void testNoFalseNegatives() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put("company " + i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue("company " + i, filter.mightContain("company " + i));
+		}
+	}
+
+	public void testFalsePositiveRateIsNearTheConfiguredRate() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put("company " + i);
+		}
+		double measured = falsePositiveRate(filter, 100000);
+		assertTrue("measured " + measured, measured > 0.005 && measured < 0.015);
+		double estimated = filter.expectedFalsePositiveRate();
+		assertTrue("estimated " + estimated, Math.abs(estimated - measured) < 0.005);
+	}
+
+	public void testFalsePositiveRateGrowsPastTheExpectedInsertions() {
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		for (int i = 0; i < 5000; i++) {
+			filter.put("company " + i);
+		}
+		assertTrue(falsePositiveRate(filter, 20000) > 0.2);
+		assertTrue(filter.expectedFalsePositiveRate() > 0.2);
+	}
+
+	public void testEmptyFilterContainsNothing() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		assertFalse(filter.mightContain("company"));
+		assertFalse(filter.mightContain(""));
+		assertEquals(0.0, filter.expectedFalsePositiveRate());
+	}
+
+	public void testCountsEveryPut() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		assertTrue(filter.put("acme"));
+		assertFalse(filter.put("acme")); // no new bit
+		assertTrue(filter.put("globex"));
+		assertEquals(3, filter.getInsertions());
+		assertEquals(100, filter.getExpectedInsertions());
+	}
+
+	public void testHashesEveryLengthAndNonAsciiNames() {
+		BloomFilter filter = new BloomFilter(1000, 0.001);
+		StringBuilder name = new StringBuilder();
+		for (int length = 0; length < 40; length++) {
+			filter.put(name.toString());
+			name.append(length % 2 == 0 ? 'a' : 'é');
+		}
+		name.setLength(0);
+		for (int length = 0; length < 40; length++) {
+			assertTrue("length " + length, filter.mightContain(name.toString()));
+			name.append(length % 2 == 0 ? 'a' : 'é');
+		}
+		assertFalse(filter.mightContain("éa"));
+	}
+
+	public void testRejectsARateOutsideZeroAndOne() {
+		for (double rate : new double[] { 0, 1, -0.5, 2 }) {
+			try {
+				new BloomFilter(100, rate);
+				fail("rate " + rate);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testSizeFollowsTheRate() {
+		// about 9.6 bits per name at 1%, 14.4 at 0.1%
+		assertEquals(12000, new BloomFilter(10000, 0.01).getSizeInBytes(), 100);
+		assertEquals(18000, new BloomFilter(10000, 0.001).getSizeInBytes(), 100);
+		assertEquals(8, new BloomFilter(0, 0.5).getSizeInBytes());
+	}
+
+	private static double falsePositiveRate(BloomFilter filter, int probes) {
+		int positives = 0;
+		for (int i = 0; i < probes; i++) {
+			if (filter.mightContain("absent " + i)) {
+				positives++;
+			}
+		}
+		return (double) positives / probes;
+	}
+}
@@ -0,0 +1,116 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+import utils.FilterExpression.Comparison;
+import utils.FilterExpression.Literal;
+import utils.FilterExpression.Operator;
+
+public class FilterParserTest extends TestCase {
+
+	public void testParsesEveryComparison() {
+		assertEquals(comparison("a", Operator.EQ, number("1")), FilterParser.parse("a = 1"));
+		assertEquals(comparison("a", Operator.NE, number("1")), FilterParser.parse("a != 1"));
+		assertEquals(comparison("a", Operator.NE, number("1")), FilterParser.parse("a <> 1"));
+		assertEquals(comparison("a", Operator.LT, number("-1.5")), FilterParser.parse("a < -1.5"));
+		assertEquals(comparison("a", Operator.LE, number("2e3")), FilterParser.parse("a<=2e3"));
+		assertEquals(comparison("a", Operator.GT, string("x")), FilterParser.parse("a > 'x'"));
+		assertEquals(comparison("a", Operator.GE, number(".5")), FilterParser.parse("a >= .5"));
+		assertEquals(comparison("a", Operator.IN, number("1"), string("b")), FilterParser.parse("a IN (1, 'b')"));
+		assertEquals(comparison("a", Operator.NOT_IN, number("1")), FilterParser.parse("a not in (1)"));
+		assertEquals(comparison("a", Operator.BETWEEN, number("1"), number("9")), FilterParser.parse("a BETWEEN 1 AND 9"));
+		assertEquals(comparison("a", Operator.LIKE, string("x%")), FilterParser.parse("a LIKE 'x%'"));
+		assertEquals(comparison("a", Operator.NOT_LIKE, string("x%")), FilterParser.parse("a NOT LIKE 'x%'"));
+		assertEquals(comparison("a", Operator.IS_NULL), FilterParser.parse("a is null"));
+		assertEquals(comparison("a", Operator.IS_NOT_NULL), FilterParser.parse("a IS NOT NULL"));
+	}
+
+	public void testAndBindsTighterThanOr() {
+		FilterExpression a = comparison("a", Operator.EQ, number("1"));
+		FilterExpression b = comparison("b", Operator.EQ, number("2"));
+		FilterExpression c = comparison("c", Operator.EQ, number("3"));
+		assertEquals(new FilterExpression.Or(Arrays.asList(a, new FilterExpression.And(Arrays.asList(b, c)))),
+				FilterParser.parse("a = 1 OR b = 2 AND c = 3"));
+		assertEquals(new FilterExpression.And(Arrays.asList(new FilterExpression.Or(Arrays.asList(a, b)), c)),
+				FilterParser.parse("(a = 1 OR b = 2) AND c = 3"));
+		assertEquals(new FilterExpression.And(Arrays.asList(new FilterExpression.Not(a), b)),
+				FilterParser.parse("NOT a = 1 AND b = 2"));
+	}
+
+	public void testQuotedNamesAndStrings() {
+		assertEquals(comparison("first name", Operator.EQ, string("O'Brien")),
+				FilterParser.parse("\"first name\" = 'O''Brien'"));
+		assertEquals(comparison("say \"hi\"", Operator.EQ, string("")), FilterParser.parse("\"say \"\"hi\"\"\" = ''"));
+		assertEquals(comparison("and", Operator.IS_NULL), FilterParser.parse("\"and\" IS NULL"));
+	}
+
+	public void testToStringParsesBackToTheSameTree() {
+		String[] expressions = { "a = 1 OR b = 2 AND NOT (c IN ('x', 'y''z') OR d IS NOT NULL)",
+				"\"first name\" LIKE 'J%' AND \"or\" BETWEEN -1 AND 2.5", "NOT NOT a NOT LIKE '%'" };
+		for (String expression : expressions) {
+			FilterExpression tree = FilterParser.parse(expression);
+			assertEquals(tree, FilterParser.parse(tree.toString()));
+		}
+	}
+
+	public void testQuoteIdentifier() {
+		assertEquals("name", FilterParser.quoteIdentifier("name"));
+		assertEquals("\"first name\"", FilterParser.quoteIdentifier("first name"));
+		assertEquals("\"Or\"", FilterParser.quoteIdentifier("Or"));
+		assertEquals("\"a\"\"b\"", FilterParser.quoteIdentifier("a\"b"));
+	}
+
+	public void testRejectsInvalidExpressionsWithTheirPosition() {
+		assertInvalid(null, "empty");
+		assertInvalid("   ", "empty");
+		assertInvalid("a = ", "Expected a number or string but found end of input at position 5");
+		assertInvalid("a = 1 b = 2", "Expected AND, OR or end of input but found 'b' at position 7");
+		assertInvalid("a = 'x", "Unterminated string at position 5");
+		assertInvalid("\"a = 1", "Unterminated quoted name at position 1");
+		assertInvalid("a ! 1", "Expected '!=' but found '!' at position 3");
+		assertInvalid("a = 1.2.3", "Invalid number '1.2.3' at position 5");
+		assertInvalid("a = 1 ; b = 2", "Unexpected character ';' at position 7");
+		assertInvalid("and = 1", "Expected an attribute name but found 'and' at position 1");
+		assertInvalid("\"\" = 1", "Attribute name is empty");
+		assertInvalid("a LIKE 1", "LIKE needs a string pattern");
+		assertInvalid("a NOT BETWEEN 1 AND 2", "Expected IN or LIKE after NOT");
+		assertInvalid("a BETWEEN 1 OR 2", "Expected AND in BETWEEN but found 'OR'");
+		assertInvalid("a IS 1", "Expected NULL but found '1'");
+		assertInvalid("a IN (1, )", "Expected a number or string but found ')'");
+		assertInvalid("(a = 1", "Expected ')' but found end of input");
+		assertInvalid("a", "Expected a comparison after 'a' but found end of input");
+	}
+
+	public void testLimitsLengthAndDepth() {
+		assertInvalid("a = 1" + String.join("", Collections.nCopies(FilterParser.MAX_LENGTH, " ")), "longer than");
+
+		String nested = String.join("", Collections.nCopies(FilterParser.MAX_DEPTH - 1, "("))
+				+ "a = 1" + String.join("", Collections.nCopies(FilterParser.MAX_DEPTH - 1, ")"));
+		assertEquals(comparison("a", Operator.EQ, number("1")), FilterParser.parse(nested));
+		assertInvalid("(" + nested + ")", "nested deeper than " + FilterParser.MAX_DEPTH);
+		assertInvalid(String.join("", Collections.nCopies(FilterParser.MAX_DEPTH, "NOT ")) + "a = 1", "nested deeper than");
+	}
+
+	private static void assertInvalid(String expression, String message) {
+		try {
+			FilterParser.parse(expression);
+			fail("Expected " + expression + " to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private static Comparison comparison(String attribute, Operator operator, Literal... values) {
+		return new Comparison(attribute, operator, Arrays.asList(values));
+	}
+
+	private static Literal number(String text) {
+		return new Literal(Literal.Kind.NUMBER, text);
+	}
+
+	private static Literal string(String text) {
+		return new Literal(Literal.Kind.STRING, text);
+	}
+}
@@ -0,0 +1,128 @@
+package utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class IntIntHashMapTest extends TestCase {
+
+	private static final int MISSING = -1;
+
+	public void testPutGetAndReplace() {
+		IntIntHashMap map = new IntIntHashMap(4, MISSING);
+		assertEquals(MISSING, map.put(7, 70));
+		assertEquals(MISSING, map.put(-3, 30));
+		assertEquals(MISSING, map.put(0, 0));
+		assertEquals(70, map.put(7, 71));
+
+		assertEquals(3, map.size());
+		assertEquals(71, map.get(7));
+		assertEquals(30, map.get(-3));
+		assertEquals(0, map.get(0));
+		assertTrue(map.containsKey(0));
+		assertEquals(MISSING, map.get(8));
+		assertFalse(map.containsKey(8));
+	}
+
+	public void testMissingValueIsConfigurable() {
+		IntIntHashMap map = new IntIntHashMap(4, 42);
+		assertEquals(42, map.get(1));
+		assertEquals(42, map.remove(1));
+		assertEquals(42, map.put(1, 5));
+	}
+
+	public void testRemove() {
+		IntIntHashMap map = new IntIntHashMap(4, MISSING);
+		map.put(1, 10);
+		map.put(2, 20);
+		assertEquals(10, map.remove(1));
+		assertEquals(MISSING, map.remove(1));
+		assertFalse(map.containsKey(1));
+		assertEquals(20, map.get(2));
+		assertEquals(1, map.size());
+	}
+
+	public void testMinValueKeyIsRejected() {
+		IntIntHashMap map = new IntIntHashMap(4, MISSING);
+		try {
+			map.put(Integer.MIN_VALUE, 1);
+			fail("Integer.MIN_VALUE must not be accepted as a key");
+		} catch (IllegalArgumentException expected) {
+			// the free slot marker
+		}
+		assertFalse(map.containsKey(Integer.MIN_VALUE));
+		assertEquals(0, map.size());
+	}
+
+	public void testGrowsPastExpectedSize() {
+		IntIntHashMap map = new IntIntHashMap(1, MISSING);
+		for (int i = 0; i < 10000; i++) {
+			map.put(i, i * 2);
+		}
+		assertEquals(10000, map.size());
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(i * 2, map.get(i));
+		}
+	}
+
+	public void testClear() {
+		IntIntHashMap map = new IntIntHashMap(4, MISSING);
+		for (int i = 0; i < 100; i++) {
+			map.put(i, i);
+		}
+		map.clear();
+		assertEquals(0, map.size());
+		assertFalse(map.containsKey(5));
+		map.put(5, 6);
+		assertEquals(6, map.get(5));
+	}
+
+	/**
+	 * Removing a key must keep the keys probed past it reachable. 16 keys fill
+	 * the map to its load limit of half the slots, so most of them sit in
+	 * probe runs.
+	 */
+	public void testRemoveKeepsTheRestOfAProbeRunReachable() {
+		for (int removed = 0; removed < 16; removed++) {
+			IntIntHashMap map = new IntIntHashMap(8, MISSING);
+			for (int i = 0; i < 16; i++) {
+				map.put(i * 7919, i);
+			}
+			map.remove(removed * 7919);
+			for (int i = 0; i < 16; i++) {
+				assertEquals(i == removed ? MISSING : i, map.get(i * 7919));
+			}
+			assertEquals(15, map.size());
+		}
+	}
+
+	public void testMatchesHashMapUnderRandomOperations() {
+		Random random = new Random(42);
+		IntIntHashMap map = new IntIntHashMap(16, MISSING);
+		Map<Integer, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 200000; i++) {
+			// a small key range forces long probe runs, wraparound and reuse
+			int key = random.nextInt(2000) - 1000;
+			int operation = random.nextInt(10);
+			if (operation < 5) {
+				int value = random.nextInt(1000);
+				Integer previous = expected.put(key, value);
+				assertEquals(previous == null ? MISSING : previous.intValue(), map.put(key, value));
+			} else if (operation < 8) {
+				Integer previous = expected.remove(key);
+				assertEquals(previous == null ? MISSING : previous.intValue(), map.remove(key));
+			} else {
+				Integer value = expected.get(key);
+				assertEquals(value == null ? MISSING : value.intValue(), map.get(key));
+				assertEquals(value != null, map.containsKey(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (int key = -1000; key < 1000; key++) {
+			Integer value = expected.get(key);
+			assertEquals(value == null ? MISSING : value.intValue(), map.get(key));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of borrowing and returning a connection with each
+ * {@link ConnectionPool} implementation.
+ *
+ * <p>
+ * Runs against the database of {@code application.properties} with the
+ * configured pool sizes. 64 threads share a pool of {@code pool.maxSize}
+ * connections, so the numbers include waiting for a free connection; vary
+ * the contention with {@code -t}. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PoolAcquireBenchmark}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(64)
+public class PoolAcquireBenchmark {
+
+	@Param({ PoolConfig.IMPLEMENTATION_C3P0, PoolConfig.IMPLEMENTATION_BAG })
+	public String implementation;
+
+	private ConnectionPool pool;
+
+	@Setup
+	public void openPool() {
+		PoolConfig config = PoolConfig.fromApplicationConfig();
+		config.setPoolName("benchmark-" + implementation);
+		config.setImplementation(implementation);
+		pool = ConnectionPool.create(config);
+	}
+
+	@TearDown
+	public void closePool() {
+		pool.close();
+	}
+
+	@Benchmark
+	public boolean acquireAndRelease() throws SQLException {
+		try (Connection connection = pool.getConnection()) {
+			return connection.getAutoCommit();
+		}
+	}
+}
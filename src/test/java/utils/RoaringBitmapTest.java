@@ -0,0 +1,169 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class RoaringBitmapTest extends TestCase {
+
+	public void testAddRemoveContains() {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		assertTrue(bitmap.isEmpty());
+		assertTrue(bitmap.add(5));
+		assertFalse(bitmap.add(5));
+		assertTrue(bitmap.add(70000));
+		assertTrue(bitmap.contains(5));
+		assertTrue(bitmap.contains(70000));
+		assertFalse(bitmap.contains(6));
+		assertEquals(2, bitmap.getCardinality());
+
+		assertTrue(bitmap.remove(5));
+		assertFalse(bitmap.remove(5));
+		assertFalse(bitmap.remove(123456789));
+		assertEquals(1, bitmap.getCardinality());
+		assertTrue(bitmap.remove(70000));
+		assertTrue(bitmap.isEmpty());
+	}
+
+	public void testOrdersValuesUnsigned() {
+		RoaringBitmap bitmap = RoaringBitmap.of(-1, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, 65536, 65535);
+		assertTrue(Arrays.equals(new int[] { 0, 65535, 65536, Integer.MAX_VALUE, Integer.MIN_VALUE, -1 },
+				bitmap.toArray()));
+		assertTrue(bitmap.contains(-1));
+		assertTrue(bitmap.contains(Integer.MIN_VALUE));
+	}
+
+	public void testForEachVisitsInOrder() {
+		RoaringBitmap bitmap = RoaringBitmap.of(300000, 3, 65536, 2);
+		List<Integer> visited = new ArrayList<>();
+		bitmap.forEach(visited::add);
+		assertEquals(Arrays.asList(2, 3, 65536, 300000), visited);
+	}
+
+	/**
+	 * A chunk switches from a sorted array to a bitmap above 4096 values and
+	 * back at or below it; the values must survive both conversions.
+	 */
+	public void testConvertsBetweenArrayAndBitmapContainers() {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		for (int i = 0; i < 5000; i++) {
+			bitmap.add(i * 13 % 65536);
+		}
+		assertEquals(5000, bitmap.getCardinality());
+		for (int i = 0; i < 5000; i++) {
+			assertTrue(bitmap.contains(i * 13 % 65536));
+		}
+		for (int i = 0; i < 4000; i++) {
+			assertTrue(bitmap.remove(i * 13 % 65536));
+		}
+		assertEquals(1000, bitmap.getCardinality());
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(i >= 4000, bitmap.contains(i * 13 % 65536));
+		}
+	}
+
+	public void testDenseChunkTakesAtMostEightKilobytes() {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		for (int i = 0; i < 65536; i++) {
+			bitmap.add(i);
+		}
+		assertEquals(65536, bitmap.getCardinality());
+		assertTrue(bitmap.getSizeInBytes() < 9000);
+	}
+
+	public void testAndOrLeaveTheOperandsUnchanged() {
+		RoaringBitmap a = RoaringBitmap.of(1, 2, 3, 100000);
+		RoaringBitmap b = RoaringBitmap.of(2, 3, 4, 200000);
+		assertEquals(RoaringBitmap.of(2, 3), RoaringBitmap.and(a, b));
+		assertEquals(RoaringBitmap.of(1, 2, 3, 4, 100000, 200000), RoaringBitmap.or(a, b));
+		assertEquals(RoaringBitmap.of(1, 2, 3, 100000), a);
+		assertEquals(RoaringBitmap.of(2, 3, 4, 200000), b);
+		assertTrue(RoaringBitmap.and(a, new RoaringBitmap()).isEmpty());
+		assertEquals(a, RoaringBitmap.or(a, new RoaringBitmap()));
+	}
+
+	public void testCopyIsIndependent() {
+		RoaringBitmap original = RoaringBitmap.of(1, 2, 70000);
+		RoaringBitmap copy = original.copy();
+		copy.add(3);
+		copy.remove(70000);
+		assertEquals(RoaringBitmap.of(1, 2, 70000), original);
+		assertEquals(RoaringBitmap.of(1, 2, 3), copy);
+	}
+
+	public void testEqualsAndHashCodeFollowTheValues() {
+		RoaringBitmap a = RoaringBitmap.of(1, 5000, 65537);
+		RoaringBitmap b = new RoaringBitmap();
+		b.add(65537);
+		b.add(1);
+		b.add(5000);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		b.add(2);
+		assertFalse(a.equals(b));
+	}
+
+	/**
+	 * Compares every operation against a {@link TreeSet} over sparse and
+	 * dense ranges, so chunks of both container kinds meet in AND and OR.
+	 */
+	public void testMatchesTreeSetUnderRandomOperations() {
+		Random random = new Random(3);
+		for (int round = 0; round < 12; round++) {
+			int range = round % 2 == 0 ? 200000 : 20000000;
+			int count = round % 3 == 0 ? 60000 : 5000;
+			RoaringBitmap a = new RoaringBitmap();
+			RoaringBitmap b = new RoaringBitmap();
+			TreeSet<Integer> expectedA = new TreeSet<>();
+			TreeSet<Integer> expectedB = new TreeSet<>();
+			for (int i = 0; i < count; i++) {
+				int value = random.nextInt(range);
+				assertEquals(expectedA.add(value), a.add(value));
+				value = random.nextInt(range);
+				assertEquals(expectedB.add(value), b.add(value));
+			}
+			for (int i = 0; i < count / 2; i++) {
+				int value = random.nextInt(range);
+				assertEquals(expectedA.remove(value), a.remove(value));
+			}
+			for (int i = 0; i < 1000; i++) {
+				int value = random.nextInt(range);
+				assertEquals(expectedA.contains(value), a.contains(value));
+			}
+			assertEquals(expectedA.size(), a.getCardinality());
+			assertEquals(toList(expectedA), toList(a.toArray()));
+
+			TreeSet<Integer> intersection = new TreeSet<>(expectedA);
+			intersection.retainAll(expectedB);
+			TreeSet<Integer> union = new TreeSet<>(expectedA);
+			union.addAll(expectedB);
+			assertEquals(toList(intersection), toList(RoaringBitmap.and(a, b).toArray()));
+			assertEquals(toList(union), toList(RoaringBitmap.or(a, b).toArray()));
+
+			for (int value : expectedA) {
+				assertTrue(a.remove(value));
+			}
+			assertTrue(a.isEmpty());
+		}
+	}
+
+	private static List<Integer> toList(Iterable<Integer> values) {
+		List<Integer> list = new ArrayList<>();
+		for (int value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	private static List<Integer> toList(int[] values) {
+		List<Integer> list = new ArrayList<>();
+		for (int value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,164 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TinyLfuCacheTest extends TestCase {
+
+	public void testLoadsOnceAndCachesTheValue() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, 0);
+		AtomicInteger loads = new AtomicInteger();
+		assertEquals("v1", cache.get(1, key -> {
+			loads.incrementAndGet();
+			return "v" + key;
+		}));
+		assertEquals("v1", cache.get(1, key -> "other"));
+		assertEquals(1, loads.get());
+		assertEquals("v1", cache.getIfPresent(1));
+		assertNull(cache.getIfPresent(2));
+	}
+
+	public void testDoesNotCacheNull() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, 0);
+		assertNull(cache.get(1, key -> null));
+		assertEquals(0, cache.size());
+		assertEquals("v", cache.get(1, key -> "v"));
+	}
+
+	public void testNewEntriesMoveFromWindowToProbationToProtected() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, 0);
+		cache.put(1, "a");
+		assertEquals("window", cache.segmentOf(1));
+		cache.put(2, "b"); // the window holds one entry
+		assertEquals("probation", cache.segmentOf(1));
+		assertEquals("window", cache.segmentOf(2));
+		cache.getIfPresent(1);
+		assertEquals("protected", cache.segmentOf(1));
+		cache.getIfPresent(1);
+		assertEquals("protected", cache.segmentOf(1));
+	}
+
+	public void testProtectedOverflowIsDemotedToProbation() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, 0);
+		// window 1, protected at most 79
+		for (int key = 0; key <= 80; key++) {
+			cache.put(key, "v");
+		}
+		for (int key = 0; key < 80; key++) {
+			cache.getIfPresent(key);
+		}
+		assertEquals("probation", cache.segmentOf(0));
+		for (int key = 1; key < 80; key++) {
+			assertEquals("protected", cache.segmentOf(key));
+		}
+	}
+
+	public void testFrequentlyReadEntriesSurviveABurstOfOneTimeKeys() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, 0);
+		for (int round = 0; round < 5; round++) {
+			for (int key = 0; key < 50; key++) {
+				cache.get(key, k -> "hot");
+			}
+		}
+		for (int key = 1000; key < 11000; key++) {
+			cache.get(key, k -> "cold");
+			assertTrue(cache.size() <= 100);
+			if (key % 500 == 0) {
+				for (int hot = 0; hot < 50; hot++) {
+					assertEquals("hot " + hot, "hot", cache.getIfPresent(hot));
+				}
+			}
+		}
+		for (int key = 0; key < 50; key++) {
+			assertEquals("hot " + key, "hot", cache.getIfPresent(key));
+		}
+		assertEquals(100, cache.size());
+		assertEquals(10000 + 50 - 100, cache.toJson().getLong("evictions"));
+	}
+
+	public void testAdmitsACandidateReadMoreOftenThanTheVictim() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, 0);
+		for (int key = 0; key < 10; key++) {
+			cache.get(key, k -> "v");
+		}
+		for (int i = 0; i < 5; i++) {
+			cache.getIfPresent(42);
+		}
+		cache.get(42, k -> "popular");
+		cache.put(43, "next"); // pushes 42 out of the window into the competition
+		assertEquals("popular", cache.getIfPresent(42));
+		assertEquals(10, cache.size());
+	}
+
+	public void testEntriesExpireAfterTheirTtl() throws Exception {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, 50);
+		cache.put(1, "v");
+		assertEquals("v", cache.getIfPresent(1));
+		Thread.sleep(120);
+		assertNull(cache.getIfPresent(1));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.toJson().getLong("expirations"));
+		assertEquals("reloaded", cache.get(1, key -> "reloaded"));
+	}
+
+	public void testValueLoadedWhileTheKeyWasInvalidatedIsNotCached() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, 0);
+		assertEquals("stale", cache.get(1, key -> {
+			cache.invalidate(key); // a write committed while the old row was read
+			return "stale";
+		}));
+		assertNull(cache.getIfPresent(1));
+		assertEquals("stale", cache.get(2, key -> {
+			cache.invalidateAll();
+			return "stale";
+		}));
+		assertNull(cache.getIfPresent(2));
+		assertEquals("fresh", cache.get(1, key -> "fresh"));
+		assertEquals("fresh", cache.getIfPresent(1));
+	}
+
+	public void testInvalidateRemovesFromEverySegment() {
+		TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100, 0);
+		cache.put(1, "a");
+		cache.put(2, "b");
+		cache.put(3, "c");
+		cache.getIfPresent(1);
+		cache.invalidate(1); // protected
+		cache.invalidate(2); // probation
+		cache.invalidate(3); // window
+		assertEquals(0, cache.size());
+		for (int key = 0; key < 200; key++) {
+			cache.put(key, "v");
+		}
+		assertEquals(100, cache.size());
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		cache.put(7, "v");
+		assertEquals("v", cache.getIfPresent(7));
+	}
+
+	public void testSketchCountsUpToFifteen() {
+		FrequencySketch sketch = new FrequencySketch(1000);
+		assertEquals(0, sketch.frequency("a"));
+		for (int i = 1; i <= 20; i++) {
+			sketch.increment("a");
+			assertEquals(Math.min(i, 15), sketch.frequency("a"));
+		}
+		assertEquals(0, sketch.frequency("b"));
+	}
+
+	public void testSketchHalvesItsCountersAfterTheSample() {
+		FrequencySketch sketch = new FrequencySketch(1000);
+		for (int i = 0; i < 15; i++) {
+			sketch.increment("a");
+		}
+		// the reset comes after ten increments per expected key
+		int key = 0;
+		while (sketch.frequency("a") == 15 && key < 20000) {
+			sketch.increment(key++);
+		}
+		assertEquals(7, sketch.frequency("a"));
+		assertTrue("reset after " + key + " increments", key > 9000);
+	}
+}